@@ -65,9 +65,10 @@ public class CloudWatchMetricConfig {
      */
     static final int MAX_METRICS_DATUM_SIZE = 20;
     /**
-     * Default metrics queue size. If the queue size
-     * exceeds this value, then excessive metrics will be dropped to prevent
-     * resource exhaustion.
+     * Default metrics queue size, which is the maximum number of unique
+     * metrics (by metric name and dimensions) summarized in memory between two
+     * uploads. The data points of any further unique metric will be dropped to
+     * prevent resource exhaustion.
      */
     public static final int DEFAULT_METRICS_QSIZE = 1000;
     /**
@@ -122,8 +123,10 @@ public class CloudWatchMetricConfig {
     }
 
     /**
-     * Sets the metric queue polling timeout in millisecond. The default set
-     * set to one-minute per the finest granularity of Amazon CloudWatch
+     * Sets the metric queue polling timeout in millisecond, which is the
+     * period at which the statistics summarized in memory are uploaded. The
+     * default set set to one-minute per the finest granularity of Amazon
+     * CloudWatch
      */
     public void setQueuePollTimeoutMilli(long queuePollTimeoutMilli) {
         this.queuePollTimeoutMilli = queuePollTimeoutMilli;
@@ -159,7 +162,8 @@ public class CloudWatchMetricConfig {
 
     /**
      * Configure the metric queue size, overriding the default. Must be at
-     * least 1.
+     * least 1. This is the maximum number of unique metrics, by metric name
+     * and dimensions, summarized in memory between two uploads.
      * 
      * @see #DEFAULT_METRICS_QSIZE
      */
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.metrics.internal.cloudwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.StatisticSet;
+
+/**
+ * Summarizes the metric data points recorded into statistic sets, by metric
+ * name and dimensions, as they are recorded, so that only one statistic set
+ * per unique metric is kept in memory and uploaded per upload period.
+ * <p>
+ * Recording is lock-free: each unique metric accumulates its sample count,
+ * sum, minimum and maximum in cells updated by compare-and-set, which are
+ * striped across threads once they contend, in the manner of
+ * {@code java.util.concurrent.atomic.LongAdder}. Draining swaps in fresh
+ * cells and waits for the data points being recorded into the old ones to
+ * complete before reading them, so that a data point is counted whole in
+ * exactly one upload, even when recorded just as its metric is retired after
+ * having been idle for {@link #IDLE_DRAINS_BEFORE_RETIREMENT} uploads.
+ */
+@ThreadSafe
+class MetricAggregator {
+    /**
+     * Number of consecutive drains without any data point after which a unique
+     * metric is forgotten, to bound the memory held by metrics no longer used.
+     */
+    static final int IDLE_DRAINS_BEFORE_RETIREMENT = 5;
+    private static final int MAX_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final ConcurrentMap<MetricKey, StatisticAccumulator> accumulators =
+            new ConcurrentHashMap<MetricKey, StatisticAccumulator>();
+    private final int maxUniqueMetrics;
+
+    /** True if a data point was recorded since the last drain. */
+    private volatile boolean pending;
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition pendingCondition = pendingLock.newCondition();
+
+    /**
+     * @param maxUniqueMetrics
+     *            the maximum number of unique metrics to keep track of, beyond
+     *            which the data points of new metrics are dropped to prevent
+     *            resource exhaustion.
+     */
+    MetricAggregator(int maxUniqueMetrics) {
+        this.maxUniqueMetrics = maxUniqueMetrics;
+    }
+
+    /**
+     * Records the value of the given metric datum into the statistics of its
+     * metric, ignoring the datum if it has no value.
+     *
+     * @return false if the datum was dropped because too many unique metrics
+     *         are being tracked; true otherwise.
+     */
+    boolean record(MetricDatum datum) {
+        Double value = datum.getValue();
+        if (value == null) {
+            return true;
+        }
+        MetricKey key = new MetricKey(datum.getMetricName(), datum.getDimensions());
+        StatisticAccumulator accumulator = accumulators.get(key);
+        if (accumulator == null && accumulators.size() >= maxUniqueMetrics) {
+            return false;
+        }
+        while (accumulator == null || !accumulator.record(value)) {
+            accumulator = accumulatorOf(key, datum.getUnit());
+        }
+        if (!pending) {
+            signalPending();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a data point was recorded since the last drain.
+     */
+    boolean hasPending() {
+        return pending;
+    }
+
+    /**
+     * Blocks until a data point is recorded, unless one was already recorded
+     * since the last drain.
+     */
+    void awaitPending() throws InterruptedException {
+        pendingLock.lockInterruptibly();
+        try {
+            while (!pending) {
+                pendingCondition.await();
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a metric datum with the statistic set of each unique metric with
+     * data points recorded since the last drain, and resets the statistics.
+     */
+    List<MetricDatum> drain() {
+        pending = false;
+        List<MetricDatum> data = new ArrayList<MetricDatum>();
+        for (Map.Entry<MetricKey, StatisticAccumulator> entry : accumulators.entrySet()) {
+            MetricKey key = entry.getKey();
+            StatisticAccumulator accumulator = entry.getValue();
+            Snapshot snapshot = accumulator.drain();
+            if (snapshot.count > 0) {
+                accumulator.idleDrains = 0;
+            } else if (++accumulator.idleDrains >= IDLE_DRAINS_BEFORE_RETIREMENT
+                    && accumulators.remove(key, accumulator)) {
+                // carry over what was recorded while it was being retired
+                snapshot = accumulator.retire();
+                if (snapshot.count > 0) {
+                    accumulatorOf(key, accumulator.unit).merge(snapshot);
+                    pending = true;
+                }
+                continue;
+            }
+            if (snapshot.count > 0) {
+                data.add(new MetricDatum()
+                    .withMetricName(key.metricName)
+                    .withDimensions(key.toDimensions())
+                    .withUnit(accumulator.unit)
+                    .withStatisticValues(new StatisticSet()
+                        .withSampleCount((double) snapshot.count)
+                        .withSum(snapshot.sum)
+                        .withMinimum(snapshot.min)
+                        .withMaximum(snapshot.max)));
+            }
+        }
+        return data;
+    }
+
+    private StatisticAccumulator accumulatorOf(MetricKey key, String unit) {
+        StatisticAccumulator accumulator = accumulators.get(key);
+        if (accumulator == null) {
+            StatisticAccumulator newAccumulator = new StatisticAccumulator(unit);
+            accumulator = accumulators.putIfAbsent(key, newAccumulator);
+            if (accumulator == null) {
+                accumulator = newAccumulator;
+            }
+        }
+        return accumulator;
+    }
+
+    private void signalPending() {
+        pendingLock.lock();
+        try {
+            pending = true;
+            pendingCondition.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int n) {
+        int power = 1;
+        while (power < n) {
+            power <<= 1;
+        }
+        return power;
+    }
+
+    /**
+     * The identity of a unique metric: its name and its dimensions, sorted so
+     * that the order in which the dimensions are given does not matter.
+     */
+    static final class MetricKey {
+        private static final Dimension[] NO_DIMENSIONS = new Dimension[0];
+
+        final String metricName;
+        private final Dimension[] dimensions;
+        private final int hashCode;
+
+        MetricKey(String metricName, List<Dimension> dims) {
+            this.metricName = metricName;
+            if (dims == null || dims.isEmpty()) {
+                this.dimensions = NO_DIMENSIONS;
+            } else {
+                this.dimensions = dims.toArray(new Dimension[dims.size()]);
+                if (dimensions.length > 1) {
+                    Arrays.sort(dimensions, DimensionComparator.INSTANCE);
+                }
+            }
+            int h = metricName == null ? 0 : metricName.hashCode();
+            for (Dimension dim : dimensions) {
+                h = 31 * h + nullSafeHashCode(dim.getName());
+                h = 31 * h + nullSafeHashCode(dim.getValue());
+            }
+            this.hashCode = h;
+        }
+
+        /** Returns a new list of new dimensions, sorted. */
+        List<Dimension> toDimensions() {
+            if (dimensions.length == 0) {
+                return Collections.emptyList();
+            }
+            List<Dimension> list = new ArrayList<Dimension>(dimensions.length);
+            for (Dimension dim : dimensions) {
+                list.add(new Dimension().withName(dim.getName()).withValue(dim.getValue()));
+            }
+            return list;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MetricKey)) {
+                return false;
+            }
+            MetricKey that = (MetricKey) o;
+            if (hashCode != that.hashCode || dimensions.length != that.dimensions.length
+                    || !nullSafeEquals(metricName, that.metricName)) {
+                return false;
+            }
+            for (int i = 0; i < dimensions.length; i++) {
+                if (DimensionComparator.INSTANCE.compare(dimensions[i], that.dimensions[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int nullSafeHashCode(String s) {
+            return s == null ? 0 : s.hashCode();
+        }
+
+        private static boolean nullSafeEquals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /** The statistics of a unique metric, drained at once. */
+    static final class Snapshot {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * The statistics of a unique metric, striped across cells once recording
+     * threads contend.
+     */
+    static final class StatisticAccumulator {
+        final String unit;
+        private volatile Cell[] cells = new Cell[] { new Cell() };
+        /** Accessed by the draining thread only. */
+        int idleDrains;
+        private volatile boolean retired;
+
+        StatisticAccumulator(String unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * @return false if the value was not recorded because the accumulator
+         *         was retired.
+         */
+        boolean record(double value) {
+            Cell cell = enter(probe());
+            if (cell == null) {
+                return false;
+            }
+            boolean uncontended;
+            try {
+                uncontended = cell.record(value);
+            } finally {
+                Cell.WRITERS.decrementAndGet(cell);
+            }
+            if (!uncontended) {
+                Cell[] cs = cells;
+                if (cs.length < MAX_STRIPES) {
+                    grow(cs);
+                }
+            }
+            return true;
+        }
+
+        /** Adds the given statistics, carried over from a retired accumulator. */
+        void merge(Snapshot snapshot) {
+            Cell cell = enter(0);
+            try {
+                Cell.COUNT.addAndGet(cell, snapshot.count);
+                cell.addToSum(snapshot.sum);
+                cell.updateMin(snapshot.min);
+                cell.updateMax(snapshot.max);
+            } finally {
+                Cell.WRITERS.decrementAndGet(cell);
+            }
+        }
+
+        /**
+         * Stops the recording of any further value and drains the values
+         * recorded since the last drain.
+         */
+        Snapshot retire() {
+            retired = true;
+            return drain();
+        }
+
+        /**
+         * Swaps in fresh cells and returns the statistics of the old ones, once
+         * the data points being recorded into them are complete.
+         */
+        Snapshot drain() {
+            Snapshot snapshot = new Snapshot();
+            for (Cell cell : swapCells()) {
+                while (cell.writers != 0) {
+                    Thread.yield(); // a writer is between its first and last update
+                }
+                snapshot.count += cell.count;
+                snapshot.sum += Double.longBitsToDouble(cell.sum);
+                snapshot.min = Math.min(snapshot.min, Double.longBitsToDouble(cell.min));
+                snapshot.max = Math.max(snapshot.max, Double.longBitsToDouble(cell.max));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Returns the cell for the given hash among the current cells, marked
+         * as being written to so that it is not drained before the caller is
+         * done with it, or null if the accumulator is retired.
+         */
+        private Cell enter(int hash) {
+            for (;;) {
+                Cell[] cs = cells;
+                Cell cell = cs[hash & (cs.length - 1)];
+                Cell.WRITERS.incrementAndGet(cell);
+                if (cells == cs) {
+                    if (!retired) {
+                        return cell;
+                    }
+                    Cell.WRITERS.decrementAndGet(cell);
+                    return null;
+                }
+                // swapped out to be drained, or grown, in the meantime
+                Cell.WRITERS.decrementAndGet(cell);
+            }
+        }
+
+        private synchronized Cell[] swapCells() {
+            Cell[] drained = cells;
+            Cell[] fresh = new Cell[drained.length];
+            for (int i = 0; i < fresh.length; i++) {
+                fresh[i] = new Cell();
+            }
+            cells = fresh;
+            return drained;
+        }
+
+        private synchronized void grow(Cell[] contended) {
+            if (cells != contended) {
+                return; // already grown by another thread
+            }
+            Cell[] grown = Arrays.copyOf(contended, contended.length << 1);
+            for (int i = contended.length; i < grown.length; i++) {
+                grown[i] = new Cell();
+            }
+            cells = grown;
+        }
+
+        /** Spreads the threads over the cells. */
+        private static int probe() {
+            long id = Thread.currentThread().getId();
+            int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * A stripe of the statistics of a metric, holding the sum, minimum and
+     * maximum as the bits of doubles, and the number of threads updating them.
+     */
+    static final class Cell {
+        static final long ZERO_BITS = Double.doubleToRawLongBits(0.0);
+        static final long POSITIVE_INFINITY_BITS = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        static final long NEGATIVE_INFINITY_BITS = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+        static final AtomicIntegerFieldUpdater<Cell> WRITERS = AtomicIntegerFieldUpdater.newUpdater(Cell.class, "writers");
+        static final AtomicLongFieldUpdater<Cell> COUNT = AtomicLongFieldUpdater.newUpdater(Cell.class, "count");
+        static final AtomicLongFieldUpdater<Cell> SUM = AtomicLongFieldUpdater.newUpdater(Cell.class, "sum");
+        static final AtomicLongFieldUpdater<Cell> MIN = AtomicLongFieldUpdater.newUpdater(Cell.class, "min");
+        static final AtomicLongFieldUpdater<Cell> MAX = AtomicLongFieldUpdater.newUpdater(Cell.class, "max");
+
+        volatile int writers;
+        volatile long count;
+        volatile long sum = ZERO_BITS;
+        volatile long min = POSITIVE_INFINITY_BITS;
+        volatile long max = NEGATIVE_INFINITY_BITS;
+
+        /**
+         * Records the given value.
+         *
+         * @return false if another thread was updating the cell at the same
+         *         time.
+         */
+        boolean record(double value) {
+            long c = count;
+            boolean uncontended = COUNT.compareAndSet(this, c, c + 1);
+            if (!uncontended) {
+                COUNT.incrementAndGet(this);
+            }
+            uncontended &= addToSum(value);
+            updateMin(value);
+            updateMax(value);
+            return uncontended;
+        }
+
+        /** @return false if the first attempt failed. */
+        boolean addToSum(double value) {
+            long bits = sum;
+            if (SUM.compareAndSet(this, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value))) {
+                return true;
+            }
+            do {
+                bits = sum;
+            } while (!SUM.compareAndSet(this, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value)));
+            return false;
+        }
+
+        void updateMin(double value) {
+            long bits;
+            while (value < Double.longBitsToDouble(bits = min)) {
+                if (MIN.compareAndSet(this, bits, Double.doubleToRawLongBits(value))) {
+                    return;
+                }
+            }
+        }
+
+        void updateMax(double value) {
+            long bits;
+            while (value > Double.longBitsToDouble(bits = max)) {
+                if (MAX.compareAndSet(this, bits, Double.doubleToRawLongBits(value))) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -14,7 +14,6 @@
  */
 package com.amazonaws.metrics.internal.cloudwatch;
 
-import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,18 +38,18 @@ import com.amazonaws.util.AWSRequestMetrics;
 public class RequestMetricCollectorSupport extends RequestMetricCollector 
 {
     protected final static Log log = LogFactory.getLog(RequestMetricCollectorSupport.class);
-    private final BlockingQueue<MetricDatum> queue;
+    private final MetricAggregator aggregator;
     private final PredefinedMetricTransformer transformer = new PredefinedMetricTransformer();
 
-    protected RequestMetricCollectorSupport(BlockingQueue<MetricDatum> queue) {
-        this.queue = queue;
+    RequestMetricCollectorSupport(MetricAggregator aggregator) {
+        this.aggregator = aggregator;
     }
 
     /**
      * Collects the metrics at the end of a request/response cycle, transforms
      * the metric data points into a cloud watch metric datum representation,
-     * and then adds it to a memory queue so it will get summarized into the
-     * necessary statistics and uploaded to Amazon CloudWatch.
+     * and then summarizes it into the necessary statistics in memory to be
+     * uploaded to Amazon CloudWatch.
      */
     @Override
     public void collectMetrics(Request<?> request, Response<?> response) {
@@ -75,7 +74,7 @@ public class RequestMetricCollectorSupport extends RequestMetricCollector
                 try {
                     if (!addMetricsToQueue(datum)) {
                         if (log.isDebugEnabled()) {
-                            log.debug("Failed to add to the metrics queue (due to no space available) for "
+                            log.debug("Failed to add to the metrics queue (due to too many unique metrics) for "
                                     + type.name()
                                     + ":"
                                     + request.getServiceName());
@@ -91,11 +90,12 @@ public class RequestMetricCollectorSupport extends RequestMetricCollector
     }
 
     /**
-     * Adds the given metric to the queue, returning true if successful or false
-     * if no space available.
+     * Summarizes the given metric into the statistics to be uploaded, returning
+     * true if successful or false if too many unique metrics are being
+     * tracked.
      */
     protected boolean addMetricsToQueue(MetricDatum metric) {
-        return queue.offer(metric); 
+        return aggregator.record(metric);
     }
     /** Returns the predefined metrics transformer. */
     protected PredefinedMetricTransformer getTransformer() { return transformer; }
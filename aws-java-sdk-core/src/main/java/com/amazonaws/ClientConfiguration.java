@@ -84,6 +84,12 @@ public class ClientConfiguration {
      */
     public static final int DEFAULT_RESPONSE_METADATA_CACHE_SIZE = 50;
 
+    /**
+     * The default on whether to adaptively throttle retries and the sending
+     * rate of requests.
+     */
+    public static final boolean DEFAULT_USE_ADAPTIVE_THROTTLING = false;
+
     /** The HTTP user agent header passed with all HTTP requests. */
     private String userAgent = DEFAULT_USER_AGENT;
 
@@ -209,6 +215,13 @@ public class ClientConfiguration {
      */
     private int responseMetadataCacheSize = DEFAULT_RESPONSE_METADATA_CACHE_SIZE;
 
+    /**
+     * Whether retries are limited by a token bucket shared by all the requests
+     * of the client, and the sending rate of requests adapted to throttling
+     * errors.
+     */
+    private boolean useAdaptiveThrottling = DEFAULT_USE_ADAPTIVE_THROTTLING;
+
     /**
      * Can be used to specify custom specific Apache HTTP client configurations.
      */
@@ -240,6 +253,7 @@ public class ClientConfiguration {
         this.socketSendBufferSizeHint    = other.socketSendBufferSizeHint;
         this.signerOverride              = other.signerOverride;
         this.responseMetadataCacheSize   = other.responseMetadataCacheSize;
+        this.useAdaptiveThrottling       = other.useAdaptiveThrottling;
         this.apacheHttpClientConfig =
             new ApacheHttpClientConfig(other.apacheHttpClientConfig);
     }
@@ -1181,6 +1195,53 @@ public class ClientConfiguration {
         return this;
     }
 
+    /**
+     * Returns whether retries and the sending rate of requests are adaptively
+     * throttled.
+     *
+     * @see #setUseAdaptiveThrottling(boolean)
+     */
+    public boolean useAdaptiveThrottling() {
+        return useAdaptiveThrottling;
+    }
+
+    /**
+     * Sets whether to adaptively throttle retries and the sending rate of
+     * requests. By default, it is set to
+     * {@value #DEFAULT_USE_ADAPTIVE_THROTTLING}.
+     * <p>
+     * When enabled, each retry needs to acquire tokens from a
+     * {@link com.amazonaws.retry.RetryTokenBucket} shared by all the requests
+     * of the client, and is not attempted if the bucket is empty; and once the
+     * service has returned a throttling error, requests are sent no faster
+     * than the rate allowed by an
+     * {@link com.amazonaws.retry.AdaptiveRateLimiter}. This avoids the
+     * independent retries of many threads amplifying the load on a service
+     * that is already throttling or failing.
+     * <p>
+     * The wait for the rate limiter blocks the thread sending the request,
+     * which for the asynchronous clients is a thread of their executor.
+     *
+     * @param use
+     *            true to adaptively throttle retries and requests; false
+     *            otherwise.
+     */
+    public void setUseAdaptiveThrottling(boolean use) {
+        this.useAdaptiveThrottling = use;
+    }
+
+    /**
+     * Sets whether to adaptively throttle retries and the sending rate of
+     * requests.
+     *
+     * @see #setUseAdaptiveThrottling(boolean)
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withAdaptiveThrottling(boolean use) {
+        setUseAdaptiveThrottling(use);
+        return this;
+    }
+
     /**
      * Returns a non-null object that can be used to specify Apache HTTP client
      * specific custom configurations.
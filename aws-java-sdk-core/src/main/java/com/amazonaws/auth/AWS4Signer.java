@@ -37,7 +37,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.AmazonClientException;
@@ -46,7 +49,6 @@ import com.amazonaws.SignableRequest;
 import com.amazonaws.auth.internal.AWS4SignerRequestParams;
 import com.amazonaws.auth.internal.AWS4SignerUtils;
 import com.amazonaws.auth.internal.SignerKey;
-import com.amazonaws.internal.FIFOCache;
 import com.amazonaws.log.InternalLogApi;
 import com.amazonaws.log.InternalLogFactory;
 import com.amazonaws.util.BinaryUtils;
@@ -61,7 +63,12 @@ public class AWS4Signer extends AbstractAWSSigner implements
 
     protected static final InternalLogApi log = InternalLogFactory.getLog(AWS4Signer.class);
     private static final int SIGNER_CACHE_MAX_SIZE = 300;
-    private static final FIFOCache<SignerKey> signerCache = new FIFOCache<SignerKey>(SIGNER_CACHE_MAX_SIZE);
+    /**
+     * Signing keys by secret key, region and service. Lookups don't take any
+     * lock, which matters as every request signed by every thread goes
+     * through this cache.
+     */
+    private static final ConcurrentMap<String, SignerKey> signerCache = new ConcurrentHashMap<String, SignerKey>();
 
     /**
      * Service name override for use when the endpoint can't be used to
@@ -357,11 +364,27 @@ public class AWS4Signer extends AbstractAWSSigner implements
                 signerRequestParams.getFormattedSigningDate(),
                 signerRequestParams.getRegionName(),
                 signerRequestParams.getServiceName());
-        signerCache.add(cacheKey, new SignerKey(
+        addToSignerCache(cacheKey, new SignerKey(
                 daysSinceEpochSigningDate, signingKey));
         return signingKey;
     }
 
+    /**
+     * Adds the given signing key to the cache, first evicting some entry if
+     * the cache is full.
+     */
+    private static void addToSignerCache(String cacheKey, SignerKey signerKey) {
+        if (signerCache.size() >= SIGNER_CACHE_MAX_SIZE
+                && !signerCache.containsKey(cacheKey)) {
+            Iterator<String> keys = signerCache.keySet().iterator();
+            while (signerCache.size() >= SIGNER_CACHE_MAX_SIZE && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        signerCache.put(cacheKey, signerKey);
+    }
+
     /**
      * Computes the name to be used to reference the signing key in the cache.
      */
@@ -450,12 +473,12 @@ public class AWS4Signer extends AbstractAWSSigner implements
         final Map<String, String> requestHeaders = request.getHeaders();
         StringBuilder buffer = new StringBuilder();
         for (String header : sortedHeaders) {
-            String key = header.toLowerCase().replaceAll("\\s+", " ");
             String value = requestHeaders.get(header);
 
-            buffer.append(key).append(":");
+            appendCompactedString(buffer, header.toLowerCase());
+            buffer.append(":");
             if (value != null) {
-                buffer.append(value.replaceAll("\\s+", " "));
+                appendCompactedString(buffer, value);
             }
 
             buffer.append("\n");
@@ -464,6 +487,33 @@ public class AWS4Signer extends AbstractAWSSigner implements
         return buffer.toString();
     }
 
+    /**
+     * Appends the given string to the builder, replacing each run of
+     * consecutive whitespace characters (as matched by the regular expression
+     * <code>\s+</code>) with a single space.
+     */
+    private static void appendCompactedString(StringBuilder builder, String source) {
+        final int length = source.length();
+        boolean previousIsWhiteSpace = false;
+        for (int i = 0; i < length; i++) {
+            char ch = source.charAt(i);
+            if (isWhiteSpace(ch)) {
+                if (!previousIsWhiteSpace) {
+                    builder.append(' ');
+                    previousIsWhiteSpace = true;
+                }
+            } else {
+                builder.append(ch);
+                previousIsWhiteSpace = false;
+            }
+        }
+    }
+
+    private static boolean isWhiteSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000b'
+                || ch == '\f' || ch == '\r';
+    }
+
     protected String getSignedHeadersString(SignableRequest<?> request) {
         final List<String> sortedHeaders = new ArrayList<String>(request
                 .getHeaders().keySet());
@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
@@ -48,6 +49,22 @@ import com.amazonaws.util.SdkHttpUtils;
  */
 public abstract class AbstractAWSSigner implements Signer {
 
+    /**
+     * The SHA-256 digest of the current thread, reused across requests to
+     * avoid looking up a new instance through the JCA providers every time.
+     */
+    private static final ThreadLocal<MessageDigest> SHA256_MESSAGE_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AmazonClientException(
+                        "Unable to get SHA256 Function: " + e.getMessage(), e);
+            }
+        }
+    };
+
     /**
      * Computes an RFC 2104-compliant HMAC signature and returns the result as a
      * Base64 encoded string.
@@ -88,7 +105,7 @@ public abstract class AbstractAWSSigner implements Signer {
     protected byte[] sign(byte[] data, byte[] key,
             SigningAlgorithm algorithm) throws AmazonClientException {
         try {
-            Mac mac = Mac.getInstance(algorithm.toString());
+            Mac mac = algorithm.getMac();
             mac.init(new SecretKeySpec(key, algorithm.toString()));
             return mac.doFinal(data);
         } catch (Exception e) {
@@ -112,7 +129,7 @@ public abstract class AbstractAWSSigner implements Signer {
      */
     public byte[] hash(String text) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            MessageDigest md = getMessageDigestInstance();
             md.update(text.getBytes(UTF8));
             return md.digest();
         } catch (Exception e) {
@@ -124,6 +141,8 @@ public abstract class AbstractAWSSigner implements Signer {
 
     protected byte[] hash(InputStream input) throws AmazonClientException {
         try {
+            // Not the thread's shared digest, since reading the input could
+            // itself involve hashing
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             @SuppressWarnings("resource")
             DigestInputStream digestInputStream = new SdkDigestInputStream(
@@ -151,9 +170,28 @@ public abstract class AbstractAWSSigner implements Signer {
      *             If the hash cannot be computed.
      */
     public byte[] hash(byte[] data) throws AmazonClientException {
+        return hash(data, 0, data.length);
+    }
+
+    /**
+     * Hashes a range of the binary data using the SHA-256 algorithm.
+     *
+     * @param data
+     *            The binary data to hash.
+     * @param offset
+     *            The offset of the first byte to hash.
+     * @param length
+     *            The number of bytes to hash.
+     *
+     * @return The hashed bytes from the specified range of data.
+     *
+     * @throws AmazonClientException
+     *             If the hash cannot be computed.
+     */
+    public byte[] hash(byte[] data, int offset, int length) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(data);
+            MessageDigest md = getMessageDigestInstance();
+            md.update(data, offset, length);
             return md.digest();
         } catch (Exception e) {
             throw new AmazonClientException(
@@ -161,6 +199,16 @@ public abstract class AbstractAWSSigner implements Signer {
                             + e.getMessage(), e);
         }
     }
+
+    /**
+     * Returns the reset SHA-256 digest of the current thread.
+     */
+    private static MessageDigest getMessageDigestInstance() {
+        MessageDigest messageDigest = SHA256_MESSAGE_DIGEST.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+
     /**
      * Examines the specified query string parameters and returns a
      * canonicalized form.
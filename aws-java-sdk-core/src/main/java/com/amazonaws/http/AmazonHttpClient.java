@@ -25,6 +25,7 @@ import static com.amazonaws.util.AWSRequestMetrics.Field.HttpClientPoolAvailable
 import static com.amazonaws.util.AWSRequestMetrics.Field.HttpClientPoolLeasedCount;
 import static com.amazonaws.util.AWSRequestMetrics.Field.HttpClientPoolPendingCount;
 import static com.amazonaws.util.AWSRequestMetrics.Field.HttpRequestTime;
+import static com.amazonaws.util.AWSRequestMetrics.Field.RateLimiterWaitTime;
 import static com.amazonaws.util.AWSRequestMetrics.Field.RedirectLocation;
 import static com.amazonaws.util.AWSRequestMetrics.Field.RequestCount;
 import static com.amazonaws.util.AWSRequestMetrics.Field.RequestSigningTime;
@@ -96,7 +97,9 @@ import com.amazonaws.internal.ResettableInputStream;
 import com.amazonaws.internal.SdkBufferedInputStream;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.AdaptiveRateLimiter;
 import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryTokenBucket;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.retry.internal.AuthErrorRetryStrategy;
 import com.amazonaws.retry.internal.AuthRetryParameters;
@@ -164,6 +167,29 @@ public class AmazonHttpClient {
     /** The time difference in seconds between this client and AWS. */
     private volatile int timeOffset = SDKGlobalTime.getGlobalTimeOffset();
 
+    /**
+     * The token bucket retries of this client must acquire tokens from; or
+     * null if retries are not throttled.
+     *
+     * @see ClientConfiguration#useAdaptiveThrottling()
+     */
+    private final RetryTokenBucket retryTokenBucket;
+
+    /**
+     * The limit on the sending rate of requests of this client; or null if
+     * requests are not throttled.
+     *
+     * @see ClientConfiguration#useAdaptiveThrottling()
+     */
+    private final AdaptiveRateLimiter sendRateLimiter;
+
+    /**
+     * What is known about the error codes handled by the error unmarshallers
+     * of this client, shared by its {@link DefaultErrorResponseHandler}s, which
+     * are typically created per request.
+     */
+    private volatile DefaultErrorResponseHandler.DispatchCache errorDispatchCache;
+
     /**
      * Constructs a new AWS client using the specified client configuration
      * options (ex: max retry attempts, proxy settings, etc).
@@ -205,6 +231,13 @@ public class AmazonHttpClient {
         this.httpClient = httpClient;
         this.requestMetricCollector = requestMetricCollector;
         this.responseMetadataCache = new ResponseMetadataCache(config.getResponseMetadataCacheSize());
+        if (config.useAdaptiveThrottling()) {
+            this.retryTokenBucket = new RetryTokenBucket();
+            this.sendRateLimiter = new AdaptiveRateLimiter();
+        } else {
+            this.retryTokenBucket = null;
+            this.sendRateLimiter = null;
+        }
     }
 
     /**
@@ -409,109 +442,136 @@ public class AmazonHttpClient {
             HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
             HttpResponseHandler<AmazonServiceException> errorResponseHandler,
             final ExecutionContext executionContext) {
+        final ExecOneRequestParams p = prepareExecution(request, executionContext);
+        while (true) {
+            Response<T> response = executeAttempt(request, responseHandler,
+                    errorResponseHandler, executionContext, p);
+            if (response != null)
+                return response;
+        } /* end while (true) */
+    }
+
+    /**
+     * Prepares the given request for execution, and returns the stateful
+     * parameters to be used across all the attempts of executing the request.
+     */
+    private ExecOneRequestParams prepareExecution(final Request<?> request,
+            final ExecutionContext executionContext) {
         /*
          * add the service endpoint to the logs. You can infer service name from
          * service endpoint
          */
-        final AWSRequestMetrics awsRequestMetrics =
-            executionContext.getAwsRequestMetrics()
+        executionContext.getAwsRequestMetrics()
             .addPropertyWith(ServiceName, request.getServiceName())
             .addPropertyWith(ServiceEndpoint, request.getEndpoint())
             ;
         // Apply whatever request options we know how to handle, such as
         // user-agent.
         setUserAgent(request);
+        final ExecOneRequestParams p = new ExecOneRequestParams();
         // Make a copy of the original request params and headers so that we can
-        // permute it in this loop and start over with the original every time.
-        final Map<String, String> originalParameters =
+        // permute it in each attempt and start over with the original every time.
+        p.originalParameters =
             new LinkedHashMap<String, String>(request.getParameters());
-        final Map<String, String> originalHeaders =
+        p.originalHeaders =
             new HashMap<String, String>(request.getHeaders());
         // Always mark the input stream before execution.
-        final InputStream originalContent = request.getContent();
-        if (originalContent != null && originalContent.markSupported()) {
+        p.originalContent = request.getContent();
+        if (p.originalContent != null && p.originalContent.markSupported()) {
             AmazonWebServiceRequest awsreq = request.getOriginalRequest();
             final int readLimit = awsreq.getRequestClientOptions().getReadLimit();
-            originalContent.mark(readLimit);
+            p.originalContent.mark(readLimit);
         }
-        final ExecOneRequestParams p = new ExecOneRequestParams();
-        while (true) {
-            p.initPerRetry();
-            if (p.redirectedURI != null) {
-                /*
-                 * [scheme:][//authority][path][?query][#fragment]
-                 */
-                String scheme = p.redirectedURI.getScheme();
-                String beforeAuthority = scheme == null ? "" : scheme + "://";
-                String authority = p.redirectedURI.getAuthority();
-                String path = p.redirectedURI.getPath();
-
-                request.setEndpoint(URI.create(beforeAuthority + authority));
-                request.setResourcePath(path);
-            }
-            if (p.authRetryParam != null) {
-                request.setEndpoint(p.authRetryParam.getEndpointForRetry());
+        return p;
+    }
+
+    /**
+     * Executes a single attempt of the given request, returning the response
+     * if successful, or null if the request should be retried.
+     *
+     * @throws AmazonClientException
+     *             if the request failed and should not be retried
+     */
+    private <T> Response<T> executeAttempt(final Request<?> request,
+            HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            final ExecutionContext executionContext,
+            final ExecOneRequestParams p) {
+        final AWSRequestMetrics awsRequestMetrics =
+            executionContext.getAwsRequestMetrics();
+        p.initPerRetry();
+        if (p.redirectedURI != null) {
+            /*
+             * [scheme:][//authority][path][?query][#fragment]
+             */
+            String scheme = p.redirectedURI.getScheme();
+            String beforeAuthority = scheme == null ? "" : scheme + "://";
+            String authority = p.redirectedURI.getAuthority();
+            String path = p.redirectedURI.getPath();
+
+            request.setEndpoint(URI.create(beforeAuthority + authority));
+            request.setResourcePath(path);
+        }
+        if (p.authRetryParam != null) {
+            request.setEndpoint(p.authRetryParam.getEndpointForRetry());
+        }
+        awsRequestMetrics.setCounter(RequestCount, p.requestCount);
+        if (p.isRetry()) {
+            request.setParameters(p.originalParameters);
+            request.setHeaders(p.originalHeaders);
+            request.setContent(p.originalContent);
+        }
+        try {
+            return executeOneRequest(request, responseHandler,
+                errorResponseHandler, executionContext, awsRequestMetrics,
+                p);
+        } catch (IOException ioe) {
+            if (log.isInfoEnabled()) {
+                log.info("Unable to execute HTTP request: " + ioe.getMessage(), ioe);
             }
-            awsRequestMetrics.setCounter(RequestCount, p.requestCount);
-            if (p.isRetry()) {
-                request.setParameters(originalParameters);
-                request.setHeaders(originalHeaders);
-                request.setContent(originalContent);
+            captureExceptionMetrics(ioe, awsRequestMetrics);
+            awsRequestMetrics.addProperty(AWSRequestID, null);
+            AmazonClientException ace = new AmazonClientException(
+                    "Unable to execute HTTP request: " + ioe.getMessage(),
+                    ioe);
+            if (!shouldRetry(request.getOriginalRequest(),
+                            p,
+                            ace,
+                            config.getRetryPolicy())) {
+                throw lastReset(ace, request);
             }
-            try {
-                Response<T> response = executeOneRequest(request, responseHandler,
-                    errorResponseHandler, executionContext, awsRequestMetrics,
-                    p);
-                if (response != null)
-                    return response;
-            } catch (IOException ioe) {
-                if (log.isInfoEnabled()) {
-                    log.info("Unable to execute HTTP request: " + ioe.getMessage(), ioe);
-                }
-                captureExceptionMetrics(ioe, awsRequestMetrics);
-                awsRequestMetrics.addProperty(AWSRequestID, null);
-                AmazonClientException ace = new AmazonClientException(
-                        "Unable to execute HTTP request: " + ioe.getMessage(),
-                        ioe);
-                if (!shouldRetry(request.getOriginalRequest(),
-                                p.apacheRequest,
-                                ace,
-                                p.requestCount,
-                                config.getRetryPolicy())) {
-                    throw lastReset(ace, request);
-                }
-                // Cache the retryable exception
-                p.retriedException = ace;
-            } catch(RuntimeException e) {
-                throw lastReset(
-                        captureExceptionMetrics(e, awsRequestMetrics),
-                        request);
-            } catch(Error e) {
-                throw lastReset(
-                        captureExceptionMetrics(e, awsRequestMetrics),
-                        request);
-            } finally {
-                /*
-                 * Some response handlers need to manually manage the HTTP
-                 * connection and will take care of releasing the connection on
-                 * their own, but if this response handler doesn't need the
-                 * connection left open, we go ahead and release the it to free
-                 * up resources.
-                 */
-                if (!p.leaveHttpConnectionOpen) {
-                    if (p.apacheResponse != null) {
-                        HttpEntity entity = p.apacheResponse.getEntity();
-                        if (entity != null) {
-                            try {
-                                closeQuietly(entity.getContent(), log);
-                            } catch (IOException e) {
-                                log.warn("Cannot close the response content.", e);
-                            }
+            // Cache the retryable exception
+            p.retriedException = ace;
+            return null; // => retry
+        } catch(RuntimeException e) {
+            throw lastReset(
+                    captureExceptionMetrics(e, awsRequestMetrics),
+                    request);
+        } catch(Error e) {
+            throw lastReset(
+                    captureExceptionMetrics(e, awsRequestMetrics),
+                    request);
+        } finally {
+            /*
+             * Some response handlers need to manually manage the HTTP
+             * connection and will take care of releasing the connection on
+             * their own, but if this response handler doesn't need the
+             * connection left open, we go ahead and release the it to free
+             * up resources.
+             */
+            if (!p.leaveHttpConnectionOpen) {
+                if (p.apacheResponse != null) {
+                    HttpEntity entity = p.apacheResponse.getEntity();
+                    if (entity != null) {
+                        try {
+                            closeQuietly(entity.getContent(), log);
+                        } catch (IOException e) {
+                            log.warn("Cannot close the response content.", e);
                         }
                     }
                 }
             }
-        } /* end while (true) */
+        }
     }
 
     /**
@@ -551,6 +611,15 @@ public class AmazonHttpClient {
         int requestCount; // monotonic increasing
         AmazonClientException retriedException; // last retryable exception
 
+        Map<String, String> originalParameters;
+        Map<String, String> originalHeaders;
+        InputStream originalContent;
+        /*
+         * The number of tokens acquired from the retry token bucket for the
+         * current retry; or zero if none.
+         */
+        int retryTokensAcquired;
+
         HttpRequestBase apacheRequest;
         org.apache.http.HttpResponse apacheResponse;
         URI redirectedURI;
@@ -692,6 +761,15 @@ public class AmazonHttpClient {
             AWSRequestMetrics.class.getSimpleName(),
             awsRequestMetrics);
         p.resetBeforeHttpRequest();
+        if (sendRateLimiter != null) {
+            // Blocks the current thread, like the pause before a retry
+            awsRequestMetrics.startEvent(RateLimiterWaitTime);
+            try {
+                sendRateLimiter.acquire();
+            } finally {
+                awsRequestMetrics.endEvent(RateLimiterWaitTime);
+            }
+        }
         publishProgress(listener, ProgressEventType.HTTP_REQUEST_STARTED_EVENT);
         awsRequestMetrics.startEvent(HttpRequestTime);
 
@@ -708,6 +786,7 @@ public class AmazonHttpClient {
         final int statusCode = statusLine == null ? -1 : statusLine.getStatusCode();
         if (isRequestSuccessful(p.apacheResponse)) {
             awsRequestMetrics.addProperty(StatusCode, statusCode);
+            onSuccessfulAttempt(p);
             /*
              * If we get back any 2xx status code, then we know we should
              * treat the service call as successful.
@@ -741,6 +820,9 @@ public class AmazonHttpClient {
         p.leaveHttpConnectionOpen = errorResponseHandler.needsConnectionLeftOpen();
         final AmazonServiceException ase = handleErrorResponse(request,
                 errorResponseHandler, p.apacheRequest, p.apacheResponse);
+        if (sendRateLimiter != null) {
+            sendRateLimiter.updateSendingRate(isSendRateThrottlingException(ase));
+        }
         awsRequestMetrics
             .addPropertyWith(AWSRequestID, ase.getRequestId())
             .addPropertyWith(AWSErrorCode, ase.getErrorCode())
@@ -753,9 +835,8 @@ public class AmazonHttpClient {
         }
         if (p.authRetryParam == null &&
             !shouldRetry(request.getOriginalRequest(),
-                p.apacheRequest,
+                p,
                 ase,
-                p.requestCount,
                 config.getRetryPolicy())) {
             throw ase;
         }
@@ -880,21 +961,24 @@ public class AmazonHttpClient {
      *
      * @param originalRequest
      *            The original service request that is being executed.
-     * @param method
-     *            The current HTTP method being executed.
+     * @param p
+     *            The execution state of the request, including the current
+     *            HTTP method being executed and the number of attempts made
+     *            so far.
      * @param exception
      *            The client/service exception from the failed request.
-     * @param requestCount
-     *            The number of times the current request has been attempted.
+     * @param retryPolicy
+     *            The retry policy configured in this http client.
      *
      * @return True if the failed request should be retried.
      */
     private boolean shouldRetry(AmazonWebServiceRequest originalRequest,
-                                HttpRequestBase method,
+                                ExecOneRequestParams p,
                                 AmazonClientException exception,
-                                int requestCount,
                                 RetryPolicy retryPolicy) {
-        final int retries = requestCount - 1;
+        final HttpRequestBase method = p.apacheRequest;
+        final int retries = p.requestCount - 1;
+        p.retryTokensAcquired = 0;
 
         int maxErrorRetry = config.getMaxErrorRetry();
         // We should use the maxErrorRetry in
@@ -922,9 +1006,53 @@ public class AmazonHttpClient {
 
         // Pass all the context information to the RetryCondition and let it
         // decide whether it should be retried.
-        return retryPolicy.getRetryCondition().shouldRetry(originalRequest,
-                                                           exception,
-                                                           retries);
+        if (!retryPolicy.getRetryCondition().shouldRetry(originalRequest,
+                                                         exception,
+                                                         retries)) {
+            return false;
+        }
+
+        // Fail fast rather than retry if too many of the recent requests of
+        // this client have failed
+        if (retryTokenBucket != null) {
+            final int cost = exception instanceof AmazonServiceException
+                    ? RetryTokenBucket.RETRY_COST
+                    : RetryTokenBucket.IO_ERROR_RETRY_COST;
+            if (!retryTokenBucket.tryAcquire(cost)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Retry token bucket is empty; not retrying the request");
+                }
+                return false;
+            }
+            p.retryTokensAcquired = cost;
+        }
+        return true;
+    }
+
+    /**
+     * Updates the adaptive throttling state, if enabled, following a
+     * successful response.
+     */
+    private void onSuccessfulAttempt(ExecOneRequestParams p) {
+        if (sendRateLimiter != null) {
+            sendRateLimiter.updateSendingRate(false);
+        }
+        if (retryTokenBucket != null) {
+            retryTokenBucket.release(p.retryTokensAcquired > 0
+                    ? p.retryTokensAcquired
+                    : RetryTokenBucket.NO_RETRY_INCREMENT);
+        }
+    }
+
+    /**
+     * Returns true if the given error should slow down the sending rate of
+     * requests. Besides the throttling errors known to {@link RetryUtils},
+     * this includes the "RequestLimitExceeded" error of the query services
+     * such as EC2, which is otherwise not treated as a throttling error.
+     */
+    private static boolean isSendRateThrottlingException(AmazonServiceException ase) {
+        return RetryUtils.isThrottlingException(ase)
+            || "RequestLimitExceeded".equals(ase.getErrorCode());
     }
 
     private static boolean isTemporaryRedirect(org.apache.http.HttpResponse response) {
@@ -1074,6 +1202,10 @@ public class AmazonHttpClient {
         }
         HttpResponse response = createResponse(method, request, apacheHttpResponse);
         AmazonServiceException exception = null;
+        if (errorResponseHandler instanceof DefaultErrorResponseHandler) {
+            errorDispatchCache = ((DefaultErrorResponseHandler) errorResponseHandler)
+                .shareDispatchCache(errorDispatchCache);
+        }
         try {
             exception = errorResponseHandler.handle(response);
             if (requestLog.isDebugEnabled())
@@ -1160,6 +1292,27 @@ public class AmazonHttpClient {
                                     AmazonClientException previousException,
                                     int requestCount,
                                     RetryPolicy retryPolicy) {
+        final long delay = computeRetryDelay(originalRequest,
+                previousException, requestCount, retryPolicy);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the time (in milliseconds) to wait before the next retry, as
+     * determined by the back-off strategy of the given retry policy.
+     *
+     * @param requestCount
+     *            current request count (including the next attempt after the delay)
+     */
+    private long computeRetryDelay(AmazonWebServiceRequest originalRequest,
+                                   AmazonClientException previousException,
+                                   int requestCount,
+                                   RetryPolicy retryPolicy) {
         final int retries = requestCount // including next attempt
                             - 1          // number of attempted requests
                             - 1;         // number of attempted retries
@@ -1171,13 +1324,7 @@ public class AmazonHttpClient {
             log.debug("Retriable error detected, " +
                     "will retry in " + delay + "ms, attempt number: " + retries);
         }
-
-        try {
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new AmazonClientException(e.getMessage(), e);
-        }
+        return delay;
     }
 
     // SWF: Signature not yet current: 20140819T173921Z is still later than 20140819T173829Z (20140819T173329Z + 5 min.)
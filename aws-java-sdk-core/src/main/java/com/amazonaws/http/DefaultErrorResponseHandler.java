@@ -20,11 +20,16 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.internal.FIFOCache;
+import com.amazonaws.transform.LegacyErrorUnmarshaller;
+import com.amazonaws.transform.StandardErrorUnmarshaller;
 import com.amazonaws.transform.Unmarshaller;
+import com.amazonaws.transform.XmlErrorDetails;
 import com.amazonaws.util.IOUtils;
 import com.amazonaws.util.XpathUtils;
 
@@ -36,11 +41,35 @@ import com.amazonaws.util.XpathUtils;
  * unmarshaller is found that can unmarshall the error response, a generic
  * AmazonServiceException is created and populated with the AWS error response
  * information (error message, AWS error code, AWS request ID, etc).
+ * <p>
+ * The unmarshaller that handled a given error code is remembered, so that
+ * subsequent responses with the same error code are dispatched directly to it.
+ * The {@link AmazonHttpClient} of a client shares what is remembered between
+ * the handlers it is given for the same list of unmarshallers, which are
+ * typically created per request. Once an error code is known to be handled by the
+ * generic {@link StandardErrorUnmarshaller} or {@link LegacyErrorUnmarshaller}
+ * (such as throttling errors), the error code of each response is first
+ * extracted with a single streaming pass, and the responses with such an error
+ * code are unmarshalled without building a DOM at all.
  */
 public class DefaultErrorResponseHandler
         implements HttpResponseHandler<AmazonServiceException> {
     private static final Log log = LogFactory.getLog(DefaultErrorResponseHandler.class);
 
+    /** Maximum number of error codes remembered per list of unmarshallers. */
+    private static final int MAX_DISPATCH_CACHE_SIZE = 100;
+
+    /** The root element name of the standard AWS error layout. */
+    private static final String STANDARD_ROOT = "ErrorResponse";
+    /** The root element name of the legacy AWS error layout. */
+    private static final String LEGACY_ROOT = "Response";
+
+    /**
+     * What is known about the error codes handled by the unmarshallers;
+     * created on first use unless shared by the http client.
+     */
+    private volatile DispatchCache dispatchCache;
+
     /**
      * The list of error response unmarshallers to try to apply to error
      * responses.
@@ -74,6 +103,31 @@ public class DefaultErrorResponseHandler
             return newAmazonServiceException(
                     "Unable to unmarshall error response", errorResponse, ex);
         }
+        // Extract the error code without building a DOM, if the unmarshaller
+        // of some error code is known to need nothing else
+        final DispatchCache dispatchCache = getDispatchCache();
+        String dispatchKey = null;
+        Unmarshaller<AmazonServiceException, Node> knownUnmarshaller = null;
+        if (dispatchCache.genericDispatchCached) {
+            XmlErrorDetails details = null;
+            try {
+                details = XmlErrorDetails.parse(content);
+            } catch (Exception e) {
+                // Leave it to the DOM parsing below to report the failure
+            }
+            if (details != null && details.getErrorCode() != null) {
+                dispatchKey = details.getRootElement() + "/" + details.getErrorCode();
+                knownUnmarshaller = dispatchCache.unmarshallers.get(dispatchKey);
+                if (knownUnmarshaller != null) {
+                    AmazonServiceException ase = unmarshallWithoutDom(knownUnmarshaller, details);
+                    if (ase != null) {
+                        ase.setStatusCode(errorResponse.getStatusCode());
+                        return ase;
+                    }
+                }
+            }
+        }
+
         // Try to parse the error response as XML
         Document document;
         try {
@@ -84,6 +138,20 @@ public class DefaultErrorResponseHandler
                     errorResponse, e);
         }
 
+        if (dispatchKey == null) {
+            dispatchKey = dispatchKeyOf(document);
+            if (dispatchKey != null) {
+                knownUnmarshaller = dispatchCache.unmarshallers.get(dispatchKey);
+            }
+        }
+        if (knownUnmarshaller != null) {
+            AmazonServiceException ase = knownUnmarshaller.unmarshall(document);
+            if (ase != null) {
+                ase.setStatusCode(errorResponse.getStatusCode());
+                return ase;
+            }
+        }
+
         /*
          * We need to select which exception unmarshaller is the correct one to
          * use from all the possible exceptions this operation can throw.
@@ -94,6 +162,12 @@ public class DefaultErrorResponseHandler
         for (Unmarshaller<AmazonServiceException, Node> unmarshaller : unmarshallerList) {
             AmazonServiceException ase = unmarshaller.unmarshall(document);
             if (ase != null) {
+                if (dispatchKey != null) {
+                    dispatchCache.unmarshallers.add(dispatchKey, unmarshaller);
+                    if (isGeneric(unmarshaller)) {
+                        dispatchCache.genericDispatchCached = true;
+                    }
+                }
                 ase.setStatusCode(errorResponse.getStatusCode());
                 return ase;
             }
@@ -102,6 +176,103 @@ public class DefaultErrorResponseHandler
         throw new AmazonClientException("Unable to unmarshall error response from service");
     }
 
+    /**
+     * Returns the dispatch cache of this handler, creating it if necessary.
+     */
+    DispatchCache getDispatchCache() {
+        DispatchCache cache = dispatchCache;
+        if (cache == null) {
+            cache = new DispatchCache(unmarshallerList);
+            dispatchCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Makes this handler use the given dispatch cache, provided it was created
+     * for the same list of unmarshallers.
+     *
+     * @return The dispatch cache now used by this handler.
+     */
+    DispatchCache shareDispatchCache(DispatchCache cache) {
+        if (cache != null && cache.unmarshallerList == unmarshallerList) {
+            dispatchCache = cache;
+            return cache;
+        }
+        return getDispatchCache();
+    }
+
+    /**
+     * Returns the root element name and error code of the given error
+     * response, the same way {@link XmlErrorDetails} extracts them; or null if
+     * the response has no error code.
+     */
+    private static String dispatchKeyOf(Document document) {
+        Element root = document.getDocumentElement();
+        if (root == null) {
+            return null;
+        }
+        Element errors;
+        if (STANDARD_ROOT.equals(root.getNodeName())) {
+            errors = root;
+        } else if (LEGACY_ROOT.equals(root.getNodeName())) {
+            errors = firstChild(root, "Errors");
+        } else {
+            return null;
+        }
+        // The first error code of any error, as per the streaming extraction
+        for (Element error = firstChild(errors, "Error"); error != null;
+                error = nextSibling(error, "Error")) {
+            Element code = firstChild(error, "Code");
+            if (code != null) {
+                return root.getNodeName() + "/" + code.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    private static Element firstChild(Element parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        return nextElement(parent.getFirstChild(), name);
+    }
+
+    private static Element nextSibling(Element element, String name) {
+        return nextElement(element.getNextSibling(), name);
+    }
+
+    private static Element nextElement(Node node, String name) {
+        for (; node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isGeneric(Unmarshaller<AmazonServiceException, Node> unmarshaller) {
+        return unmarshaller.getClass() == StandardErrorUnmarshaller.class
+                || unmarshaller.getClass() == LegacyErrorUnmarshaller.class;
+    }
+
+    /**
+     * Unmarshalls the error response from its already extracted details if
+     * the given unmarshaller is one of the generic ones, which need nothing
+     * else from the response; or returns null otherwise.
+     */
+    private static AmazonServiceException unmarshallWithoutDom(
+            Unmarshaller<AmazonServiceException, Node> unmarshaller,
+            XmlErrorDetails details) throws Exception {
+        if (unmarshaller.getClass() == StandardErrorUnmarshaller.class) {
+            return ((StandardErrorUnmarshaller) unmarshaller).unmarshall(details);
+        }
+        if (unmarshaller.getClass() == LegacyErrorUnmarshaller.class) {
+            return ((LegacyErrorUnmarshaller) unmarshaller).unmarshall(details);
+        }
+        return null;
+    }
+
     /**
      * Used to create an {@link newAmazonServiceException} when we failed to
      * read the error response or parsed the error response as XML.
@@ -126,4 +297,26 @@ public class DefaultErrorResponseHandler
         return false;
     }
 
+    /**
+     * The unmarshaller known to handle each error code of a list of
+     * unmarshallers.
+     */
+    static final class DispatchCache {
+        private final List<Unmarshaller<AmazonServiceException, Node>> unmarshallerList;
+
+        private final FIFOCache<Unmarshaller<AmazonServiceException, Node>> unmarshallers =
+                new FIFOCache<Unmarshaller<AmazonServiceException, Node>>(MAX_DISPATCH_CACHE_SIZE);
+
+        /**
+         * Whether an error code is known to be handled by a generic
+         * unmarshaller, in which case the error responses are worth parsing
+         * without a DOM first.
+         */
+        private volatile boolean genericDispatchCached;
+
+        private DispatchCache(List<Unmarshaller<AmazonServiceException, Node>> unmarshallerList) {
+            this.unmarshallerList = unmarshallerList;
+        }
+    }
+
 }
\ No newline at end of file
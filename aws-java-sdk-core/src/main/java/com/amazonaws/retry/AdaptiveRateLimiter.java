@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.retry;
+
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.annotation.ThreadSafe;
+
+/**
+ * A client side limit on the rate at which requests are sent, which adapts to
+ * throttling errors from the service.
+ * <p>
+ * The limiter is inactive until the first throttling error is reported.
+ * From then on, requests are admitted by a token bucket whose fill rate
+ * follows the CUBIC congestion control algorithm: each throttling error
+ * multiplicatively decreases the rate, while each successful response lets
+ * it grow back along a cubic curve, slowly around the rate at which the last
+ * throttling error occurred and then faster as it probes beyond. The rate is
+ * also capped at twice the measured sending rate, so that an idle client does
+ * not build up an unbounded allowance.
+ *
+ * @see com.amazonaws.ClientConfiguration#setUseAdaptiveThrottling(boolean)
+ */
+@ThreadSafe
+public class AdaptiveRateLimiter {
+    /** Lowest fill rate (requests per second) the limiter will throttle down to. */
+    private static final double MIN_FILL_RATE = 0.5;
+    private static final double MIN_CAPACITY = 1;
+    /** Weight of the latest sample in the smoothed measured sending rate. */
+    private static final double SMOOTH = 0.8;
+    /** Multiplicative decrease factor applied on throttling. */
+    private static final double BETA = 0.7;
+    /** Scales the cubic growth of the rate after throttling. */
+    private static final double SCALE_CONSTANT = 0.4;
+
+    private boolean enabled;
+    private double fillRate;
+    private double maxCapacity;
+    private double currentCapacity;
+    /** Time (in seconds) of the last refill; or negative if none yet. */
+    private double lastTimestamp = -1;
+
+    private double measuredTxRate;
+    private double lastTxRateBucket;
+    private long requestCount;
+
+    private double lastMaxRate;
+    private double lastThrottleTime;
+    private double timeWindow;
+
+    public AdaptiveRateLimiter() {
+        lastTxRateBucket = Math.floor(currentTimeSeconds());
+        lastThrottleTime = currentTimeSeconds();
+    }
+
+    /**
+     * Waits, if necessary, until a request can be sent at the current rate.
+     * The calling thread is blocked while waiting.
+     *
+     * @throws AbortedException
+     *             if the current thread is interrupted while waiting
+     */
+    public void acquire() {
+        final long delayNanos;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            refill();
+            // Reserve the token right away, so that concurrent callers queue
+            // up behind each other rather than all waking up at once
+            currentCapacity -= 1;
+            if (currentCapacity >= 0) {
+                return;
+            }
+            delayNanos = (long) (-currentCapacity / fillRate * TimeUnit.SECONDS.toNanos(1));
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException(e);
+        }
+    }
+
+    /**
+     * Updates the sending rate following the response to a request.
+     *
+     * @param throttled
+     *            true if the request failed with a throttling error; false
+     *            otherwise.
+     */
+    public synchronized void updateSendingRate(boolean throttled) {
+        updateMeasuredRate();
+
+        final double calculatedRate;
+        if (throttled) {
+            final double rateToUse = enabled
+                    ? Math.min(measuredTxRate, fillRate)
+                    : measuredTxRate;
+            lastMaxRate = rateToUse;
+            calculateTimeWindow();
+            lastThrottleTime = currentTimeSeconds();
+            calculatedRate = rateToUse * BETA;
+            enabled = true;
+        } else {
+            calculateTimeWindow();
+            calculatedRate = cubicSuccess(currentTimeSeconds());
+        }
+
+        updateFillRate(Math.min(calculatedRate, 2 * measuredTxRate));
+    }
+
+    /**
+     * Returns true if the limiter has been activated by a throttling error.
+     */
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current limit on the sending rate, in requests per second;
+     * only meaningful if the limiter is enabled.
+     */
+    public synchronized double getFillRate() {
+        return fillRate;
+    }
+
+    private static double currentTimeSeconds() {
+        return System.nanoTime() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void refill() {
+        final double timestamp = currentTimeSeconds();
+        if (lastTimestamp < 0) {
+            lastTimestamp = timestamp;
+            return;
+        }
+        final double fill = (timestamp - lastTimestamp) * fillRate;
+        currentCapacity = Math.min(maxCapacity, currentCapacity + fill);
+        lastTimestamp = timestamp;
+    }
+
+    private void updateFillRate(double newRate) {
+        refill();
+        fillRate = Math.max(newRate, MIN_FILL_RATE);
+        maxCapacity = Math.max(newRate, MIN_CAPACITY);
+        currentCapacity = Math.min(currentCapacity, maxCapacity);
+    }
+
+    /**
+     * Updates the measured sending rate, which is sampled in half second
+     * buckets and exponentially smoothed.
+     */
+    private void updateMeasuredRate() {
+        final double timestamp = currentTimeSeconds();
+        final double timeBucket = Math.floor(timestamp * 2) / 2;
+        requestCount++;
+        if (timeBucket > lastTxRateBucket) {
+            final double currentRate = requestCount / (timeBucket - lastTxRateBucket);
+            measuredTxRate = currentRate * SMOOTH + measuredTxRate * (1 - SMOOTH);
+            requestCount = 0;
+            lastTxRateBucket = timeBucket;
+        }
+    }
+
+    /**
+     * Computes the time (in seconds) it takes for the cubic function to grow
+     * back to the rate at the last throttling error.
+     */
+    private void calculateTimeWindow() {
+        timeWindow = Math.cbrt(lastMaxRate * (1 - BETA) / SCALE_CONSTANT);
+    }
+
+    private double cubicSuccess(double timestamp) {
+        final double dt = timestamp - lastThrottleTime;
+        return SCALE_CONSTANT * Math.pow(dt - timeWindow, 3) + lastMaxRate;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.retry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.annotation.ThreadSafe;
+
+/**
+ * A token bucket shared by all the requests of a client, from which a retry
+ * must acquire tokens before it can be attempted. Successful requests put
+ * tokens back, so while a service is healthy the bucket stays full and retries
+ * are unaffected; but when most requests are failing, the bucket quickly
+ * drains and further retries fail fast instead of adding to the load on the
+ * service.
+ *
+ * @see com.amazonaws.ClientConfiguration#setUseAdaptiveThrottling(boolean)
+ */
+@ThreadSafe
+public class RetryTokenBucket {
+
+    /** The default number of tokens in a full bucket. */
+    public static final int DEFAULT_CAPACITY = 500;
+
+    /** The number of tokens needed to retry a failed request. */
+    public static final int RETRY_COST = 5;
+
+    /**
+     * The number of tokens needed to retry a request that failed due to an
+     * I/O error, such as a timeout, which is more likely to indicate that the
+     * service is unhealthy.
+     */
+    public static final int IO_ERROR_RETRY_COST = 10;
+
+    /**
+     * The number of tokens returned to the bucket by a request that succeeded
+     * without being retried.
+     */
+    public static final int NO_RETRY_INCREMENT = 1;
+
+    private final int capacity;
+    private final AtomicInteger availableTokens;
+
+    public RetryTokenBucket() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the number of tokens in a full bucket
+     */
+    public RetryTokenBucket(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.availableTokens = new AtomicInteger(capacity);
+    }
+
+    /**
+     * Acquires the given number of tokens if available.
+     *
+     * @return true if the tokens have been acquired; false if there are not
+     *         enough tokens in the bucket, in which case none is acquired.
+     */
+    public boolean tryAcquire(int tokens) {
+        if (tokens < 0) {
+            throw new IllegalArgumentException("tokens must not be negative: " + tokens);
+        }
+        while (true) {
+            final int available = availableTokens.get();
+            if (available < tokens) {
+                return false;
+            }
+            if (availableTokens.compareAndSet(available, available - tokens)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the given number of tokens to the bucket, up to its capacity.
+     */
+    public void release(int tokens) {
+        if (tokens < 0) {
+            throw new IllegalArgumentException("tokens must not be negative: " + tokens);
+        }
+        while (true) {
+            final int available = availableTokens.get();
+            if (available == capacity) {
+                return;
+            }
+            if (availableTokens.compareAndSet(available, Math.min(capacity, available + tokens))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tokens currently available.
+     */
+    public int getAvailableTokens() {
+        return availableTokens.get();
+    }
+
+    /**
+     * Returns the number of tokens in a full bucket.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
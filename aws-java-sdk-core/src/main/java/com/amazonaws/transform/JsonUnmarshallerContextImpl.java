@@ -21,9 +21,9 @@ import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
 import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
 
 import com.amazonaws.http.HttpResponse;
 import com.fasterxml.jackson.core.JsonParser;
@@ -31,6 +31,9 @@ import com.fasterxml.jackson.core.JsonToken;
 
 public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
 
+    /** The initial capacity of the field/token stack; grown as needed. **/
+    private static final int INITIAL_STACK_CAPACITY = 16;
+
     /** The current JsonToken that the private JsonParser is currently pointing to. **/
     private JsonToken currentToken;
 
@@ -42,7 +45,7 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
     private String currentHeader;
 
     /**
-     * A stack of JsonFieldTokenPair objects that indicates the current state of the context.
+     * A stack of (field, token) pairs that indicates the current state of the context.
      * For example, if we have a JSON object:
      * {
      *   A :
@@ -58,15 +61,22 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
      * }
      * When the parser points to "D", the state of this stack should be (from top to bottom):
      *  [ (C, START_OBJECT), (B, START_ARRAY), (A, START_OBJECT) ]
+     * <p>
+     * The fields and tokens of the stack are kept in two parallel arrays, so
+     * that no object needs to be allocated per push, and no synchronization is
+     * involved (unlike with {@link java.util.Stack}).
      */
-    private final Stack<JsonFieldTokenPair> stack = new Stack<JsonFieldTokenPair>();
+    private String[] stackFields = new String[INITIAL_STACK_CAPACITY];
+    private JsonToken[] stackTokens = new JsonToken[INITIAL_STACK_CAPACITY];
+
+    /** The number of (field, token) pairs currently in the stack. **/
+    private int stackSize;
 
     /**
      * The name of the field that is currently being parsed. This value is
      * nulled out when the parser reaches into the object/array structure of the
      * corresponding value, and then it will be pushed into the stack after
-     * wrapped into a JsonFieldTokenPair object with the START_OBJECT or
-     * START_ARRAY token following it.
+     * paired with the START_OBJECT or START_ARRAY token following it.
      * So in the same example as shown above:
      *   (1) when the parser moves from "C" to "{", (currentField, START_OBJECT)
      *       will be pushed into the stack and currentField will be set null;
@@ -109,7 +119,7 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
 
     @Override
     public int getCurrentDepth() {
-        int depth = stack.size();
+        int depth = stackSize;
         if (currentField != null) depth++;
         return depth;
     }
@@ -154,16 +164,10 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
 
     @Override
     public boolean testExpression(String expression) {
-        if (expression.equals(".")) {
+        if (isCurrentElementExpression(expression)) {
             return true;
-        } else {
-            if (currentField != null) {
-                return currentField.equals(expression);
-            } else {
-                return (!stack.isEmpty())
-                        && stack.peek().getField().equals(expression);
-            }
         }
+        return fieldMatches(expression);
     }
 
     @Override
@@ -171,8 +175,8 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
         String parentElement;
         if (currentField != null) {
             parentElement = currentField;
-        } else if ( !stack.isEmpty() ) {
-            parentElement = stack.peek().getField();
+        } else if (stackSize > 0) {
+            parentElement = stackFields[stackSize - 1];
         } else {
             parentElement = "";
         }
@@ -181,12 +185,30 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
 
     @Override
     public boolean testExpression(String expression, int stackDepth) {
-        if (expression.equals(".")) {
+        if (isCurrentElementExpression(expression)) {
             return true;
-        } else {
-            return testExpression(expression)
-                    && stackDepth == getCurrentDepth();
         }
+        // The depth comparison is much cheaper than the field name comparison,
+        // and fails for most of the expressions tested by an unmarshaller.
+        return stackDepth == getCurrentDepth()
+                && fieldMatches(expression);
+    }
+
+    private static boolean isCurrentElementExpression(String expression) {
+        return expression.length() == 1 && expression.charAt(0) == '.';
+    }
+
+    /**
+     * Returns true if the innermost field name is the given expression. Field
+     * names are interned by the JSON parser, as are the literal expressions in
+     * the unmarshallers, so the identity comparison is usually sufficient.
+     */
+    private boolean fieldMatches(String expression) {
+        final String field = currentField != null ? currentField
+                : stackSize > 0 ? stackFields[stackSize - 1]
+                : null;
+        return field != null
+                && (field == expression || field.equals(expression));
     }
 
     @Override
@@ -237,15 +259,16 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
 
         if (currentToken == START_OBJECT || currentToken == START_ARRAY) {
             if (currentField != null) {
-                stack.push(new JsonFieldTokenPair(currentField, currentToken));
+                push(currentField, currentToken);
                 currentField = null;
             }
         } else if (currentToken == END_OBJECT || currentToken == END_ARRAY) {
-            if (!stack.isEmpty()) {
-                boolean squareBracketsMatch = currentToken == END_ARRAY && stack.peek().getToken() == START_ARRAY;
-                boolean curlyBracketsMatch = currentToken == END_OBJECT && stack.peek().getToken() == START_OBJECT;
+            if (stackSize > 0) {
+                final JsonToken top = stackTokens[stackSize - 1];
+                boolean squareBracketsMatch = currentToken == END_ARRAY && top == START_ARRAY;
+                boolean curlyBracketsMatch = currentToken == END_OBJECT && top == START_OBJECT;
                 if (squareBracketsMatch || curlyBracketsMatch) {
-                    lastParsedParentElement = stack.pop().getField();
+                    lastParsedParentElement = pop();
                 }
             }
             currentField = null;
@@ -255,13 +278,34 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
         }
     }
 
+    private void push(String field, JsonToken token) {
+        if (stackSize == stackFields.length) {
+            stackFields = Arrays.copyOf(stackFields, stackSize << 1);
+            stackTokens = Arrays.copyOf(stackTokens, stackSize << 1);
+        }
+        stackFields[stackSize] = field;
+        stackTokens[stackSize] = token;
+        stackSize++;
+    }
+
+    /**
+     * Pops the top of the stack and returns its field.
+     */
+    private String pop() {
+        stackSize--;
+        final String field = stackFields[stackSize];
+        stackFields[stackSize] = null;
+        stackTokens[stackSize] = null;
+        return field;
+    }
+
     @Override
     public String toString() {
         StringBuilder stackString = new StringBuilder();
 
-        for (JsonFieldTokenPair jsonFieldTokenPair : stack) {
+        for (int i = 0; i < stackSize; i++) {
             stackString.append("/")
-                       .append(jsonFieldTokenPair.getField());
+                       .append(stackFields[i]);
         }
 
         if (currentField != null) {
@@ -276,37 +320,4 @@ public class JsonUnmarshallerContextImpl extends JsonUnmarshallerContext {
     public String getLastParsedParentElement() {
         return lastParsedParentElement;
     }
-
-    /**
-     * An immutable class used to indicate a JSON field value followed by a
-     * subsequent JSON token. This inner class should only be used by the
-     * private stack to indicate the current state of the context.
-     */
-    private static class JsonFieldTokenPair {
-        private final String field;
-        private final JsonToken jsonToken;
-
-        /**
-         * @param fieldString
-         *            Not null.
-         * @param token
-         *            Not null.
-         */
-        public JsonFieldTokenPair(String fieldString, JsonToken token) {
-            field = fieldString;
-            jsonToken = token;
-        }
-
-        public String getField() {
-            return field;
-        }
-
-        public JsonToken getToken() {
-            return jsonToken;
-        }
-
-        public String toString() {
-            return field + ": " + jsonToken.asString();
-        }
-    }
 }
@@ -67,6 +67,30 @@ public class LegacyErrorUnmarshaller implements Unmarshaller<AmazonServiceExcept
         String requestId = asString("Response/RequestID", in, xpath);
         String errorType = asString("Response/Errors/Error/Type", in, xpath);
 
+        return newException(errorCode, errorType, requestId, message);
+    }
+
+    /**
+     * Unmarshalls the already extracted details of an error response as a
+     * generic AmazonServiceException, producing the same result as
+     * {@link #unmarshall(Node)} would for the corresponding document. This is
+     * only equivalent for this class itself, not for subclasses which look up
+     * further properties of the error response.
+     *
+     * @param details
+     *            The error code, type, message and request id of the error
+     *            response.
+     */
+    public AmazonServiceException unmarshall(XmlErrorDetails details) throws Exception {
+        if (!details.isLegacyLayout()) {
+            return newException(null, null, null, null);
+        }
+        return newException(details.getErrorCode(), details.getErrorType(),
+                details.getRequestId(), details.getMessage());
+    }
+
+    private AmazonServiceException newException(String errorCode,
+            String errorType, String requestId, String message) throws Exception {
         Constructor<? extends AmazonServiceException> constructor = exceptionClass.getConstructor(String.class);
         AmazonServiceException ase = constructor.newInstance(message);
         ase.setErrorCode(errorCode);
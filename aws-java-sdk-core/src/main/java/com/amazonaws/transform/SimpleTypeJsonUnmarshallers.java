@@ -21,6 +21,9 @@ import java.util.Date;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.util.Base64;
 import com.amazonaws.util.DateUtils;
+import com.amazonaws.util.StreamingBase64;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 public class SimpleTypeJsonUnmarshallers {
     /**
@@ -182,6 +185,13 @@ public class SimpleTypeJsonUnmarshallers {
      */
     public static class ByteBufferJsonUnmarshaller implements Unmarshaller<ByteBuffer, JsonUnmarshallerContext> {
         public ByteBuffer unmarshall(JsonUnmarshallerContext unmarshallerContext) throws Exception {
+            JsonParser jsonParser = unmarshallerContext.getJsonParser();
+            if (jsonParser != null && !unmarshallerContext.isInsideResponseHeader()
+                    && unmarshallerContext.getCurrentToken() == JsonToken.VALUE_STRING) {
+                // decode straight from the parser's text buffer, without an intermediate String
+                return StreamingBase64.decode(jsonParser.getTextCharacters(),
+                        jsonParser.getTextOffset(), jsonParser.getTextLength());
+            }
             String base64EncodedString = unmarshallerContext.readText();
             byte[] decodedBytes = Base64.decode(base64EncodedString);
             return ByteBuffer.wrap(decodedBytes);
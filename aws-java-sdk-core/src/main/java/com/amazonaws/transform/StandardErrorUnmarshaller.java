@@ -62,6 +62,30 @@ public class StandardErrorUnmarshaller extends AbstractErrorUnmarshaller<Node> {
         String requestId = asString("ErrorResponse/RequestId", in, xpath);
         String message = asString("ErrorResponse/Error/Message", in, xpath);
 
+        return newException(errorCode, errorType, requestId, message);
+    }
+
+    /**
+     * Unmarshalls the already extracted details of an error response as a
+     * generic AmazonServiceException, producing the same result as
+     * {@link #unmarshall(Node)} would for the corresponding document. This is
+     * only equivalent for this class itself, not for subclasses which look up
+     * further properties of the error response.
+     *
+     * @param details
+     *            The error code, type, message and request id of the error
+     *            response.
+     */
+    public AmazonServiceException unmarshall(XmlErrorDetails details) throws Exception {
+        if (!details.isStandardLayout()) {
+            return newException(null, null, null, null);
+        }
+        return newException(details.getErrorCode(), details.getErrorType(),
+                details.getRequestId(), details.getMessage());
+    }
+
+    private AmazonServiceException newException(String errorCode,
+            String errorType, String requestId, String message) throws Exception {
         AmazonServiceException ase = newException(message);
         ase.setErrorCode(errorCode);
         ase.setRequestId(requestId);
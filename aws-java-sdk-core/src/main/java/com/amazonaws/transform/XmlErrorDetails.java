@@ -0,0 +1,235 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.transform;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The error code, type, message and request id of an XML error response,
+ * extracted in a single streaming pass without building a DOM.
+ * <p>
+ * Both the standard AWS error layout (
+ * <code>ErrorResponse/Error/Code</code>, <code>ErrorResponse/RequestId</code>)
+ * and the legacy layout (<code>Response/Errors/Error/Code</code>,
+ * <code>Response/RequestID</code>) are recognized. Each property holds the
+ * trimmed text of the first matching element, or null if there is no such
+ * element, which is the same value {@link StandardErrorUnmarshaller} and
+ * {@link LegacyErrorUnmarshaller} would extract via XPath.
+ *
+ * @see StandardErrorUnmarshaller#unmarshall(XmlErrorDetails)
+ * @see LegacyErrorUnmarshaller#unmarshall(XmlErrorDetails)
+ */
+public final class XmlErrorDetails {
+    /** The root element name of the standard AWS error layout. */
+    private static final String STANDARD_ROOT = "ErrorResponse";
+    /** The root element name of the legacy AWS error layout. */
+    private static final String LEGACY_ROOT = "Response";
+
+    /** Shared factory for creating XML stream readers */
+    private static final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+
+    private final String rootElement;
+    private String errorCode;
+    private String errorType;
+    private String message;
+    private String requestId;
+
+    private XmlErrorDetails(String rootElement) {
+        this.rootElement = rootElement;
+    }
+
+    /**
+     * Returns the name of the root element of the error response.
+     */
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns true if the error response uses the standard AWS error layout.
+     */
+    public boolean isStandardLayout() {
+        return STANDARD_ROOT.equals(rootElement);
+    }
+
+    /**
+     * Returns true if the error response uses the legacy AWS error layout.
+     */
+    public boolean isLegacyLayout() {
+        return LEGACY_ROOT.equals(rootElement);
+    }
+
+    /**
+     * Parses the given XML error response.
+     *
+     * @param xml
+     *            The content of the error response.
+     *
+     * @return The extracted error details; or null if the content contains a
+     *         document type declaration, in which case only a full DOM parse
+     *         is guaranteed to interpret it correctly.
+     *
+     * @throws XMLStreamException
+     *             If the content is not well-formed XML.
+     */
+    public static XmlErrorDetails parse(String xml) throws XMLStreamException {
+        XMLStreamReader reader;
+        synchronized (xmlInputFactory) {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+        }
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static XmlErrorDetails parse(XMLStreamReader reader) throws XMLStreamException {
+        XmlErrorDetails details = null;
+        // Names of the currently open elements, excluding the root
+        String[] path = new String[3];
+        int depth = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.DTD:
+                return null;
+            case XMLStreamConstants.START_ELEMENT:
+                String name = reader.getLocalName();
+                if (details == null) {
+                    details = new XmlErrorDetails(name);
+                    break;
+                }
+                if (depth < path.length) {
+                    path[depth] = name;
+                }
+                depth++;
+                if (depth <= path.length && details.collect(path, depth, reader)) {
+                    // the reader is now positioned on the matching end element
+                    depth--;
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            default:
+                break;
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Reads the text of the current element into the property it corresponds
+     * to, if any and if that property has not been set yet.
+     *
+     * @return true if the text was read; false if the element was skipped.
+     */
+    private boolean collect(String[] path, int depth, XMLStreamReader reader)
+            throws XMLStreamException {
+        if (isStandardLayout()) {
+            if (depth == 1 && "RequestId".equals(path[0])) {
+                if (requestId == null) {
+                    requestId = readText(reader);
+                    return true;
+                }
+            } else if (depth == 2 && "Error".equals(path[0])) {
+                return collectError(path[1], reader);
+            }
+        } else if (isLegacyLayout()) {
+            if (depth == 1 && "RequestID".equals(path[0])) {
+                if (requestId == null) {
+                    requestId = readText(reader);
+                    return true;
+                }
+            } else if (depth == 3 && "Errors".equals(path[0]) && "Error".equals(path[1])) {
+                return collectError(path[2], reader);
+            }
+        }
+        return false;
+    }
+
+    private boolean collectError(String name, XMLStreamReader reader)
+            throws XMLStreamException {
+        if ("Code".equals(name) && errorCode == null) {
+            errorCode = readText(reader);
+        } else if ("Type".equals(name) && errorType == null) {
+            errorType = readText(reader);
+        } else if ("Message".equals(name) && message == null) {
+            message = readText(reader);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the trimmed text content of the current element, including that
+     * of any nested elements, leaving the reader on its end element.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int nested = 0;
+        while (true) {
+            switch (reader.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                text.append(reader.getTextCharacters(),
+                        reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                nested++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (nested-- == 0) {
+                    return text.toString().trim();
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Match the non namespace aware DOM parsing of error responses, which
+        // refers to elements by their qualified names
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+}
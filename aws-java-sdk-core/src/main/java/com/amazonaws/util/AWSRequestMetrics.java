@@ -136,6 +136,11 @@ public class AWSRequestMetrics {
         ServiceEndpoint,
         ServiceName,
         StatusCode, // The http status code
+        /**
+         * Number of milliseconds spent waiting for the client side sending
+         * rate limiter before sending a request to AWS.
+         */
+        RateLimiterWaitTime,
         ;
     }
 
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Base 64 encoding and decoding without intermediate copies: binary data is
+ * encoded straight from a {@link ByteBuffer} into the destination array or
+ * writer, and decoded straight from a range of characters, such as the text
+ * buffer of a JSON parser, into a single byte buffer of the exact size.
+ * <p>
+ * The output is the same as that of {@link Base64}, and so is the input
+ * accepted: carriage returns, line feeds and spaces are skipped, and any other
+ * character outside the alphabet throws an {@link IllegalArgumentException}.
+ *
+ * See http://www.ietf.org/rfc/rfc4648.txt
+ */
+public enum StreamingBase64 {
+    ;
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char PAD = '=';
+    private static final int SKIPPED = -2;
+    private static final int INVALID = -1;
+
+    /** The number of bytes encoded at a time into the chunks given to a writer; a multiple of 3. */
+    private static final int WRITER_CHUNK_BYTES = 768;
+
+    private static final byte[] DECODED = decodeTable();
+
+    private static byte[] decodeTable() {
+        byte[] table = new byte[128];
+        for (int i = 0; i < table.length; i++)
+            table[i] = INVALID;
+        for (int i = 0; i < ALPHABET.length; i++)
+            table[ALPHABET[i]] = (byte) i;
+        table['\r'] = SKIPPED;
+        table['\n'] = SKIPPED;
+        table[' '] = SKIPPED;
+        return table;
+    }
+
+    /**
+     * Returns the number of characters the base 64 encoding of the given number
+     * of bytes takes, padding included.
+     */
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Encodes the remaining bytes of the given buffer into the given array,
+     * one byte per base 64 character, without changing the position of the
+     * buffer.
+     *
+     * @param src
+     *            The bytes to encode.
+     * @param dest
+     *            The array to encode them into, which must have room for
+     *            {@link #encodedLength(int)} bytes from the given offset.
+     * @param offset
+     *            The index of the array to start encoding at.
+     * @return The index of the array following the last encoded byte.
+     */
+    public static int encode(ByteBuffer src, byte[] dest, int offset) {
+        final int length = src.remaining();
+        int d = offset;
+        if (src.hasArray()) {
+            final byte[] array = src.array();
+            int s = src.arrayOffset() + src.position();
+            final int end = s + length - length % 3;
+            for (; s < end; s += 3) {
+                int bits = (array[s] & 0xff) << 16 | (array[s + 1] & 0xff) << 8 | (array[s + 2] & 0xff);
+                dest[d++] = (byte) ALPHABET[bits >>> 18];
+                dest[d++] = (byte) ALPHABET[bits >>> 12 & 0x3f];
+                dest[d++] = (byte) ALPHABET[bits >>> 6 & 0x3f];
+                dest[d++] = (byte) ALPHABET[bits & 0x3f];
+            }
+            return encodeFinalQuantum(array, s, length % 3, dest, d);
+        }
+        int s = src.position();
+        final int end = s + length - length % 3;
+        for (; s < end; s += 3) {
+            int bits = (src.get(s) & 0xff) << 16 | (src.get(s + 1) & 0xff) << 8 | (src.get(s + 2) & 0xff);
+            dest[d++] = (byte) ALPHABET[bits >>> 18];
+            dest[d++] = (byte) ALPHABET[bits >>> 12 & 0x3f];
+            dest[d++] = (byte) ALPHABET[bits >>> 6 & 0x3f];
+            dest[d++] = (byte) ALPHABET[bits & 0x3f];
+        }
+        byte[] last = new byte[length % 3];
+        for (int i = 0; i < last.length; i++)
+            last[i] = src.get(s + i);
+        return encodeFinalQuantum(last, 0, last.length, dest, d);
+    }
+
+    private static int encodeFinalQuantum(byte[] src, int s, int remainder, byte[] dest, int d) {
+        if (remainder == 0)
+            return d;
+        int bits = (src[s] & 0xff) << 16 | (remainder == 2 ? (src[s + 1] & 0xff) << 8 : 0);
+        dest[d++] = (byte) ALPHABET[bits >>> 18];
+        dest[d++] = (byte) ALPHABET[bits >>> 12 & 0x3f];
+        dest[d++] = remainder == 2 ? (byte) ALPHABET[bits >>> 6 & 0x3f] : (byte) PAD;
+        dest[d++] = (byte) PAD;
+        return d;
+    }
+
+    /**
+     * Writes the base 64 encoding of the remaining bytes of the given buffer
+     * to the given writer, a chunk at a time, without changing the position of
+     * the buffer.
+     */
+    public static void encode(ByteBuffer src, Writer out) throws IOException {
+        final int length = src.remaining();
+        final char[] chunk = new char[encodedLength(Math.min(length, WRITER_CHUNK_BYTES))];
+        final byte[] encoded = new byte[chunk.length];
+        ByteBuffer slice = src.duplicate();
+        for (int done = 0; done < length; done += WRITER_CHUNK_BYTES) {
+            int n = Math.min(length - done, WRITER_CHUNK_BYTES);
+            slice.limit(src.position() + done + n);
+            slice.position(src.position() + done);
+            int count = encode(slice, encoded, 0);
+            for (int i = 0; i < count; i++)
+                chunk[i] = (char) encoded[i];
+            out.write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * Decodes the given base 64 encoded characters into a new byte buffer,
+     * skipping carriage returns, line feeds and spaces.
+     *
+     * @param src
+     *            The array holding the characters to decode.
+     * @param offset
+     *            The index of the first character to decode.
+     * @param length
+     *            The number of characters to decode.
+     * @return A buffer of the decoded bytes, positioned at zero.
+     * @throws IllegalArgumentException
+     *             If the characters are not valid base 64.
+     */
+    public static ByteBuffer decode(char[] src, int offset, int length) {
+        ByteBuffer decoded = decodeUnbroken(src, offset, length);
+        return decoded != null ? decoded : decodeSkipping(src, offset, length);
+    }
+
+    /**
+     * Decodes the given characters in a single pass, assuming they are all
+     * base 64 characters, as is the case of the binary values of the service
+     * responses.
+     *
+     * @return The decoded bytes, or null if the characters need to be checked
+     *         one by one, because some are to be skipped or are invalid.
+     */
+    private static ByteBuffer decodeUnbroken(char[] src, int offset, int length) {
+        if (length % 4 != 0)
+            return null;
+        if (length == 0)
+            return ByteBuffer.allocate(0);
+        final int end = offset + length;
+        final int pads = src[end - 1] != PAD ? 0 : src[end - 2] != PAD ? 1 : 2;
+        final byte[] dest = new byte[length / 4 * 3 - pads];
+        final int quantaEnd = pads == 0 ? end : end - 4;
+        int d = 0;
+        for (int i = offset; i < quantaEnd; i += 4) {
+            char c0 = src[i], c1 = src[i + 1], c2 = src[i + 2], c3 = src[i + 3];
+            if ((c0 | c1 | c2 | c3) >= DECODED.length)
+                return null;
+            int v0 = DECODED[c0], v1 = DECODED[c1], v2 = DECODED[c2], v3 = DECODED[c3];
+            if ((v0 | v1 | v2 | v3) < 0)
+                return null;
+            int bits = v0 << 18 | v1 << 12 | v2 << 6 | v3;
+            dest[d++] = (byte) (bits >>> 16);
+            dest[d++] = (byte) (bits >>> 8);
+            dest[d++] = (byte) bits;
+        }
+        if (pads == 0)
+            return ByteBuffer.wrap(dest);
+
+        char c0 = src[end - 4], c1 = src[end - 3], c2 = pads == 1 ? src[end - 2] : 'A';
+        if ((c0 | c1 | c2) >= DECODED.length)
+            return null;
+        int v0 = DECODED[c0], v1 = DECODED[c1], v2 = DECODED[c2];
+        if ((v0 | v1 | v2) < 0)
+            return null;
+        int bits = v0 << 18 | v1 << 12 | v2 << 6;
+        checkUnusedBits(bits, pads == 1 ? 0xff : 0xffff);
+        dest[d++] = (byte) (bits >>> 16);
+        if (pads == 1)
+            dest[d] = (byte) (bits >>> 8);
+        return ByteBuffer.wrap(dest);
+    }
+
+    private static ByteBuffer decodeSkipping(char[] src, int offset, int length) {
+        final int end = offset + length;
+        int significant = 0;
+        int pads = 0;
+        for (int i = offset; i < end; i++) {
+            char c = src[i];
+            if (c == PAD) {
+                pads++;
+            } else if (c >= DECODED.length || DECODED[c] == INVALID) {
+                throw new IllegalArgumentException("Invalid base 64 character: '" + c + "'");
+            } else if (DECODED[c] != SKIPPED) {
+                if (pads > 0)
+                    throw new IllegalArgumentException("Invalid base 64 character after padding: '" + c + "'");
+                significant++;
+            }
+        }
+        if ((significant + pads) % 4 != 0)
+            throw new IllegalArgumentException(
+                    "Input is expected to be encoded in multiple of 4 bytes but found: " + (significant + pads));
+        if (pads > 2)
+            throw new IllegalArgumentException("Invalid base 64 padding");
+
+        final byte[] dest = new byte[significant / 4 * 3 + (significant % 4 == 0 ? 0 : significant % 4 - 1)];
+        int bits = 0;
+        int quantum = 0;
+        int d = 0;
+        for (int i = offset; i < end; i++) {
+            char c = src[i];
+            int value = DECODED[c];
+            if (value < 0)
+                continue;
+            bits = bits << 6 | value;
+            if (++quantum == 4) {
+                dest[d++] = (byte) (bits >>> 16);
+                dest[d++] = (byte) (bits >>> 8);
+                dest[d++] = (byte) bits;
+                bits = 0;
+                quantum = 0;
+            }
+        }
+        switch (quantum) {
+        case 0:
+            break;
+        case 2:
+            checkUnusedBits(bits, 0xf);
+            dest[d] = (byte) (bits >>> 4);
+            break;
+        case 3:
+            checkUnusedBits(bits, 0x3);
+            dest[d++] = (byte) (bits >>> 10);
+            dest[d] = (byte) (bits >>> 2);
+            break;
+        default:
+            throw new IllegalArgumentException("Invalid base 64 padding");
+        }
+        return ByteBuffer.wrap(dest);
+    }
+
+    private static void checkUnusedBits(int bits, int mask) {
+        if ((bits & mask) != 0)
+            throw new IllegalArgumentException("Invalid last non-pad base 64 character");
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.util;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.io.ByteArrayInputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.http.annotation.NotThreadSafe;
+
+/**
+ * A writer that encodes the characters written to it as UTF-8 directly into a
+ * growable byte array, so that the encoded content can be used as a request
+ * payload without first being buffered as a String and then copied into a
+ * separate byte array.
+ * <p>
+ * Malformed surrogate pairs are encoded as <code>'?'</code>, consistent with
+ * {@link String#getBytes(java.nio.charset.Charset)}.
+ */
+@NotThreadSafe
+public class Utf8ByteArrayWriter extends Writer {
+    private static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+    private byte[] buf;
+    private int count;
+    /** A high surrogate waiting for its low surrogate; or 0 if none. */
+    private char pendingHighSurrogate;
+
+    public Utf8ByteArrayWriter() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity
+     *            the initial size (in bytes) of the underlying byte array
+     */
+    public Utf8ByteArrayWriter(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Negative initial capacity: " + initialCapacity);
+        this.buf = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int c) {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        ensureCapacity(count + len);
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = cbuf[i];
+            if (c < 0x80 && pendingHighSurrogate == 0 && count < buf.length) {
+                buf[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        ensureCapacity(count + len);
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80 && pendingHighSurrogate == 0 && count < buf.length) {
+                buf[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    /**
+     * Writes the base 64 encoding of the remaining bytes of the given buffer,
+     * encoding them straight into the underlying byte array. The position of
+     * the buffer is left unchanged.
+     */
+    public void writeBase64(ByteBuffer data) {
+        flush();
+        ensureCapacity(count + StreamingBase64.encodedLength(data.remaining()));
+        count = StreamingBase64.encode(data, buf, count);
+    }
+
+    private void encode(char c) {
+        if (pendingHighSurrogate != 0) {
+            final char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                ensureCapacity(count + 4);
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            // unpaired high surrogate
+            appendByte('?');
+        }
+        if (c < 0x80) {
+            appendByte(c);
+        } else if (c < 0x800) {
+            ensureCapacity(count + 2);
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            // unpaired low surrogate
+            appendByte('?');
+        } else {
+            ensureCapacity(count + 3);
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void appendByte(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0)
+            throw new OutOfMemoryError();
+        if (minCapacity > buf.length) {
+            int newCapacity = Math.max(buf.length << 1, minCapacity);
+            if (newCapacity < 0)
+                newCapacity = Integer.MAX_VALUE;
+            buf = Arrays.copyOf(buf, newCapacity);
+        }
+    }
+
+    /**
+     * Completes the encoding of any trailing unpaired high surrogate.
+     */
+    @Override
+    public void flush() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            appendByte('?');
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Returns the number of bytes of encoded content written so far.
+     */
+    public int size() {
+        flush();
+        return count;
+    }
+
+    /**
+     * Returns a mark-and-resettable input stream over the encoded content,
+     * sharing (rather than copying) the underlying byte array. The writer
+     * should not be written to after calling this method.
+     */
+    public ByteArrayInputStream toInputStream() {
+        flush();
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * Returns a copy of the encoded content.
+     */
+    public byte[] toByteArray() {
+        flush();
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Returns the encoded content decoded back into a String.
+     */
+    @Override
+    public String toString() {
+        flush();
+        return new String(buf, 0, count, UTF8);
+    }
+}
@@ -28,8 +28,9 @@ import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.util.Date;
 
-import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.DateUtils;
+import com.amazonaws.util.StreamingBase64;
+import com.amazonaws.util.Utf8ByteArrayWriter;
 
 /**
  * JSONWriter provides a quick and convenient way of producing JSON text.
@@ -123,12 +124,28 @@ public class JSONWriter {
         if (s == null) {
             throw new JSONException("Null pointer");
         }
+        return this.append(s, null);
+    }
+
+    /**
+     * Append a value, either the given text or the quoted base 64 encoding
+     * of the remaining bytes of the given buffer.
+     * @param s A string value, or null to append the buffer.
+     * @param b A ByteBuffer, used when the string is null.
+     * @return this
+     * @throws JSONException If the value is out of sequence.
+     */
+    private JSONWriter append(String s, ByteBuffer b) throws JSONException {
         if (this.mode == 'o' || this.mode == 'a') {
             try {
                 if (this.comma && this.mode == 'a') {
                     this.writer.write(',');
                 }
-                this.writer.write(s);
+                if (s != null) {
+                    this.writer.write(s);
+                } else {
+                    this.writeBase64(b);
+                }
             } catch (IOException e) {
                 throw new JSONException(e);
             }
@@ -340,11 +357,25 @@ public class JSONWriter {
      * @throws JSONException
      */
     public JSONWriter value(ByteBuffer b) throws JSONException {
-        b.mark();
-        byte[] bytes = new byte[b.remaining()];
-        b.get(bytes, 0, bytes.length);
-        b.reset();
-        return this.value(BinaryUtils.toBase64(bytes));
+        if (b == null) {
+            throw new JSONException("Null pointer");
+        }
+        return this.append(null, b);
+    }
+
+    /**
+     * Writes the quoted base 64 encoding of the remaining bytes of the given
+     * buffer, straight into the output bytes when the writer encodes them,
+     * without changing the position of the buffer.
+     */
+    private void writeBase64(ByteBuffer b) throws IOException {
+        this.writer.write('"');
+        if (this.writer instanceof Utf8ByteArrayWriter) {
+            ((Utf8ByteArrayWriter) this.writer).writeBase64(b);
+        } else {
+            StreamingBase64.encode(b, this.writer);
+        }
+        this.writer.write('"');
     }
 
     /**
@@ -26,11 +26,17 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.SimpleTimeZone;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -120,6 +126,43 @@ public class AWS4SignerTest {
                 request.getHeaders().get("Authorization"));
     }
 
+    /**
+     * Tests that signing from many threads at once, with the thread local Mac
+     * and digest instances and the shared signing key cache, produces the
+     * same signatures as signing from a single thread.
+     */
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        final String EXPECTED_AUTHORIZATION_HEADER =
+            "AWS4-HMAC-SHA256 Credential=access/19810216/us-east-1/demo/aws4_request, SignedHeaders=host;x-amz-archive-description;x-amz-date, Signature=77fe7c02927966018667f21d1dc3dfad9057e58401cbb9ed64f1b7868288e35a";
+
+        final AWSCredentials credentials = new BasicAWSCredentials("access", "secret");
+        Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.setOverrideDate(c.getTime());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        Request<?> request = generateBasicRequest();
+                        signer.sign(request, credentials);
+                        return request.getHeaders().get("Authorization");
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(EXPECTED_AUTHORIZATION_HEADER, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Tests that if passed anonymous credentials, signer will not generate a signature
      */
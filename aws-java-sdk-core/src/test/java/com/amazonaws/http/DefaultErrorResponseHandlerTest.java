@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.transform.LegacyErrorUnmarshaller;
+import com.amazonaws.transform.StandardErrorUnmarshaller;
+import com.amazonaws.transform.Unmarshaller;
+import com.amazonaws.transform.XmlErrorDetails;
+import com.amazonaws.util.StringInputStream;
+import com.amazonaws.util.XpathUtils;
+
+public class DefaultErrorResponseHandlerTest {
+
+    private static final String THROTTLING_ERROR =
+            "<ErrorResponse xmlns=\"http://queue.amazonaws.com/doc/2012-11-05/\">"
+            + "<Error><Type>Sender</Type><Code>Throttling</Code>"
+            + "<Message> Rate exceeded </Message><Detail/></Error>"
+            + "<RequestId>req-1</RequestId></ErrorResponse>";
+
+    private static final String CUSTOM_ERROR =
+            "<ErrorResponse><Error><Type>Receiver</Type><Code>Custom</Code>"
+            + "<Message>Custom failure</Message><Extra>42</Extra></Error>"
+            + "<RequestId>req-2</RequestId></ErrorResponse>";
+
+    private static final String LEGACY_ERROR =
+            "<Response><Errors><Error><Code>RequestLimitExceeded</Code>"
+            + "<Message>Request limit exceeded.</Message></Error></Errors>"
+            + "<RequestID>req-3</RequestID></Response>";
+
+    @Test
+    public void testParseStandardErrorDetails() throws Exception {
+        XmlErrorDetails details = XmlErrorDetails.parse(THROTTLING_ERROR);
+        assertTrue(details.isStandardLayout());
+        assertEquals("Throttling", details.getErrorCode());
+        assertEquals("Sender", details.getErrorType());
+        assertEquals("Rate exceeded", details.getMessage());
+        assertEquals("req-1", details.getRequestId());
+    }
+
+    @Test
+    public void testParseLegacyErrorDetails() throws Exception {
+        XmlErrorDetails details = XmlErrorDetails.parse(LEGACY_ERROR);
+        assertTrue(details.isLegacyLayout());
+        assertEquals("RequestLimitExceeded", details.getErrorCode());
+        assertNull(details.getErrorType());
+        assertEquals("Request limit exceeded.", details.getMessage());
+        assertEquals("req-3", details.getRequestId());
+    }
+
+    @Test
+    public void testDispatchIsConsistentAcrossResponses() throws Exception {
+        CountingCustomUnmarshaller custom = new CountingCustomUnmarshaller();
+        List<Unmarshaller<AmazonServiceException, Node>> unmarshallers =
+                new ArrayList<Unmarshaller<AmazonServiceException, Node>>();
+        unmarshallers.add(custom);
+        unmarshallers.add(new StandardErrorUnmarshaller());
+        DefaultErrorResponseHandler handler = new DefaultErrorResponseHandler(unmarshallers);
+
+        for (int i = 0; i < 3; i++) {
+            AmazonServiceException ase = handle(handler, THROTTLING_ERROR, 400);
+            assertEquals("Throttling", ase.getErrorCode());
+            assertEquals("Rate exceeded", ase.getErrorMessage());
+            assertEquals("req-1", ase.getRequestId());
+            assertEquals(ErrorType.Client, ase.getErrorType());
+            assertEquals(400, ase.getStatusCode());
+
+            ase = handle(handler, CUSTOM_ERROR, 500);
+            assertTrue(ase instanceof CustomException);
+            assertEquals("42", ((CustomException) ase).extra);
+            assertEquals("Custom", ase.getErrorCode());
+            assertEquals(ErrorType.Service, ase.getErrorType());
+            assertEquals(500, ase.getStatusCode());
+        }
+        // The custom unmarshaller is only tried against the throttling error
+        // the first time around, and after that is dispatched to directly
+        assertEquals(1, custom.throttlingAttempts);
+        assertEquals(3, custom.customAttempts);
+    }
+
+    @Test
+    public void testDispatchIsSharedBetweenHandlersOfTheSameUnmarshallers() throws Exception {
+        CountingCustomUnmarshaller custom = new CountingCustomUnmarshaller();
+        List<Unmarshaller<AmazonServiceException, Node>> unmarshallers =
+                new ArrayList<Unmarshaller<AmazonServiceException, Node>>();
+        unmarshallers.add(custom);
+        unmarshallers.add(new StandardErrorUnmarshaller());
+
+        // As the http client does with a new handler per request
+        DefaultErrorResponseHandler.DispatchCache cache = null;
+        for (int i = 0; i < 3; i++) {
+            DefaultErrorResponseHandler handler = new DefaultErrorResponseHandler(unmarshallers);
+            cache = handler.shareDispatchCache(cache);
+            assertEquals("Throttling", handle(handler, THROTTLING_ERROR, 400).getErrorCode());
+        }
+        assertEquals(1, custom.throttlingAttempts);
+
+        // A handler of other unmarshallers doesn't use the cache
+        DefaultErrorResponseHandler other = new DefaultErrorResponseHandler(
+                new ArrayList<Unmarshaller<AmazonServiceException, Node>>(unmarshallers));
+        assertNotSame(cache, other.shareDispatchCache(cache));
+        handle(other, THROTTLING_ERROR, 400);
+        assertEquals(2, custom.throttlingAttempts);
+    }
+
+    @Test
+    public void testLegacyErrorWithoutDom() throws Exception {
+        List<Unmarshaller<AmazonServiceException, Node>> unmarshallers =
+                new ArrayList<Unmarshaller<AmazonServiceException, Node>>();
+        unmarshallers.add(new LegacyErrorUnmarshaller());
+        DefaultErrorResponseHandler handler = new DefaultErrorResponseHandler(unmarshallers);
+
+        for (int i = 0; i < 2; i++) {
+            AmazonServiceException ase = handle(handler, LEGACY_ERROR, 503);
+            assertEquals("RequestLimitExceeded", ase.getErrorCode());
+            assertEquals("Request limit exceeded.", ase.getErrorMessage());
+            assertEquals("req-3", ase.getRequestId());
+            assertEquals(ErrorType.Unknown, ase.getErrorType());
+            assertEquals(503, ase.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testMalformedErrorResponse() throws Exception {
+        List<Unmarshaller<AmazonServiceException, Node>> unmarshallers =
+                new ArrayList<Unmarshaller<AmazonServiceException, Node>>();
+        unmarshallers.add(new StandardErrorUnmarshaller());
+
+        AmazonServiceException ase = handle(
+                new DefaultErrorResponseHandler(unmarshallers), "<ErrorResponse>", 500);
+        assertEquals("Unable to unmarshall error response (<ErrorResponse>)", ase.getErrorMessage());
+        assertEquals(ErrorType.Unknown, ase.getErrorType());
+        assertEquals(500, ase.getStatusCode());
+    }
+
+    private static AmazonServiceException handle(DefaultErrorResponseHandler handler,
+            String content, int statusCode) throws Exception {
+        HttpResponse response = new HttpResponse(new DefaultRequest<Object>("test"), null);
+        response.setStatusCode(statusCode);
+        response.setContent(new StringInputStream(content));
+        return handler.handle(response);
+    }
+
+    public static class CustomException extends AmazonServiceException {
+        private static final long serialVersionUID = 1L;
+        private String extra;
+
+        public CustomException(String message) {
+            super(message);
+        }
+    }
+
+    private static class CountingCustomUnmarshaller extends StandardErrorUnmarshaller {
+        private int throttlingAttempts;
+        private int customAttempts;
+
+        CountingCustomUnmarshaller() {
+            super(CustomException.class);
+        }
+
+        @Override
+        public AmazonServiceException unmarshall(Node node) throws Exception {
+            String errorCode = parseErrorCode(node);
+            if ("Throttling".equals(errorCode)) throttlingAttempts++;
+            if (errorCode == null || !errorCode.equals("Custom"))
+                return null;
+            customAttempts++;
+            CustomException e = (CustomException) super.unmarshall(node);
+            e.extra = XpathUtils.asString(getErrorPropertyPath("Extra"), node);
+            return e;
+        }
+    }
+}
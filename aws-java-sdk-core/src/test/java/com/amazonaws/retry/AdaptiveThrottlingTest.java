@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.AmazonHttpClient;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+/**
+ * Tests the retry token bucket and the adaptive rate limiter, on their own
+ * and as used by {@link AmazonHttpClient}.
+ */
+public class AdaptiveThrottlingTest extends RetryPolicyTestBase {
+
+    @Test
+    public void testTokenBucket() {
+        RetryTokenBucket bucket = new RetryTokenBucket(12);
+        assertTrue(bucket.tryAcquire(RetryTokenBucket.RETRY_COST));
+        assertTrue(bucket.tryAcquire(RetryTokenBucket.RETRY_COST));
+        assertFalse(bucket.tryAcquire(RetryTokenBucket.RETRY_COST));
+        assertEquals(2, bucket.getAvailableTokens());
+
+        bucket.release(RetryTokenBucket.RETRY_COST);
+        assertEquals(7, bucket.getAvailableTokens());
+        bucket.release(100);
+        assertEquals(12, bucket.getAvailableTokens());
+    }
+
+    @Test
+    public void testRateLimiterBacksOffOnThrottling() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+        assertFalse(limiter.isEnabled());
+        // Not enabled: never waits
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.updateSendingRate(false);
+        }
+        assertFalse(limiter.isEnabled());
+
+        limiter.updateSendingRate(true);
+        assertTrue(limiter.isEnabled());
+        double throttledRate = limiter.getFillRate();
+
+        limiter.updateSendingRate(true);
+        assertTrue(limiter.getFillRate() <= throttledRate);
+        assertTrue(limiter.getFillRate() >= 0.5);
+    }
+
+    @Test
+    public void testRetriesStopWhenTokenBucketIsEmpty() {
+        ClientConfiguration config = new ClientConfiguration()
+                .withAdaptiveThrottling(true)
+                .withRetryPolicy(new RetryPolicy(
+                        new ContextDataCollectionRetryCondition(),
+                        new ContextDataCollectionBackoffStrategy(),
+                        1000,
+                        false));
+        AmazonHttpClient client = new AmazonHttpClient(config);
+        injectMockHttpClient(client, new ReturnServiceErrorHttpClient(500, "InternalFailure"));
+
+        // A full bucket pays for this many retries of service errors
+        int expectedRetries = RetryTokenBucket.DEFAULT_CAPACITY / RetryTokenBucket.RETRY_COST;
+        assertEquals(expectedRetries + 1, executeAndCountRequests(client));
+        // After which requests are no longer retried at all
+        assertEquals(1, executeAndCountRequests(client));
+    }
+
+    @Test
+    public void testRateLimiterWaitIsNotCountedAsHttpRequestTime() {
+        ClientConfiguration config = new ClientConfiguration()
+                .withAdaptiveThrottling(true)
+                .withRetryPolicy(new RetryPolicy(
+                        new ContextDataCollectionRetryCondition(),
+                        new ContextDataCollectionBackoffStrategy(),
+                        1,
+                        false));
+        AmazonHttpClient client = new AmazonHttpClient(config);
+        injectMockHttpClient(client, new ReturnServiceErrorHttpClient(400, "Throttling"));
+
+        ExecutionContext context = new ExecutionContext(true);
+        int requests = executeAndCountRequests(client, context);
+        TimingInfo timingInfo = context.getAwsRequestMetrics().getTimingInfo();
+        // Each attempt waits for the limiter apart from its HTTP request
+        assertEquals(requests, timingInfo.getAllSubMeasurements(
+                AWSRequestMetrics.Field.RateLimiterWaitTime.toString()).size());
+        assertEquals(requests, timingInfo.getAllSubMeasurements(
+                AWSRequestMetrics.Field.HttpRequestTime.toString()).size());
+    }
+
+    private static int executeAndCountRequests(AmazonHttpClient client) {
+        return executeAndCountRequests(client, new ExecutionContext(true));
+    }
+
+    private static int executeAndCountRequests(AmazonHttpClient client, ExecutionContext context) {
+        try {
+            client.execute(getSampleRequestWithRepeatableContent(originalRequest),
+                    null, errorResponseHandler, context);
+            fail("AmazonServiceException is expected.");
+        } catch (AmazonServiceException expected) {
+        }
+        return context.getAwsRequestMetrics().getTimingInfo()
+                .getCounter(AWSRequestMetrics.Field.RequestCount.toString()).intValue();
+    }
+}
@@ -19,6 +19,7 @@
 package com.amazonaws.unmarshaller;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -28,6 +29,7 @@ import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.junit.Test;
 
 import com.amazonaws.transform.JsonUnmarshallerContext;
@@ -65,6 +67,53 @@ public class JsonUnmarshallerTest {
         assertEquals(Arrays.asList("value2"), map.get("key2"));
     }
 
+    @Test
+    public void testNestedContext() throws Exception {
+        JsonUnmarshallerContext context = setupUnmarshaller(
+                "{\"A\" : {\"B\" : [ {\"C\" : {\"D\" : \"E\"} } ] } }");
+        JsonToken token;
+        while ((token = context.nextToken()) != JsonToken.VALUE_STRING) {
+            assertTrue(token != null);
+        }
+        assertEquals("/A/B/C/D", context.toString());
+        assertEquals(4, context.getCurrentDepth());
+        assertEquals("D", context.getCurrentParentElement());
+        assertTrue(context.testExpression("D", 4));
+        assertTrue(context.testExpression(new String("D"), 4));
+        assertFalse(context.testExpression("D", 3));
+        assertFalse(context.testExpression("C", 4));
+        assertTrue(context.testExpression(".", 0));
+        assertEquals("E", context.readText());
+
+        assertEquals(JsonToken.END_OBJECT, context.nextToken());
+        assertEquals("C", context.getLastParsedParentElement());
+        assertEquals("/A/B", context.toString());
+        assertTrue(context.testExpression("B", 2));
+    }
+
+    @Test
+    public void testDeeplyNestedContext() throws Exception {
+        final int depth = 40;
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append("{\"f").append(i).append("\":");
+        }
+        json.append("1");
+        for (int i = 0; i < depth; i++) {
+            json.append("}");
+        }
+        JsonUnmarshallerContext context = setupUnmarshaller(json.toString());
+        while (context.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+        }
+        assertEquals(depth, context.getCurrentDepth());
+        assertTrue(context.testExpression("f" + (depth - 1), depth));
+        for (int i = depth - 1; i >= 0; i--) {
+            assertEquals(JsonToken.END_OBJECT, context.nextToken());
+        }
+        assertEquals(0, context.getCurrentDepth());
+        assertEquals("/", context.toString());
+    }
+
     private JsonUnmarshallerContext setupUnmarshaller(String snippet) throws Exception {
         JsonParser jsonParser = jsonFactory.createJsonParser(new ByteArrayInputStream(snippet.getBytes()));
         JsonUnmarshallerContext unmarshallerContext = new JsonUnmarshallerContextImpl(jsonParser);
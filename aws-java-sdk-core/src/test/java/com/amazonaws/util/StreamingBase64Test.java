@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.util;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.amazonaws.transform.JsonUnmarshallerContextImpl;
+import com.amazonaws.transform.SimpleTypeJsonUnmarshallers.ByteBufferJsonUnmarshaller;
+import com.amazonaws.util.json.JSONWriter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+public class StreamingBase64Test {
+
+    @Test
+    public void testMatchesBase64() throws Exception {
+        Random random = new Random(42);
+        for (int length = 0; length < 2000; length += 1 + length / 10) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = Base64.encodeAsString(data);
+
+            // heap, sliced and direct buffers
+            byte[] padded = new byte[length + 7];
+            System.arraycopy(data, 0, padded, 3, length);
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(data).flip();
+            ByteBuffer[] buffers = { ByteBuffer.wrap(data), ByteBuffer.wrap(padded, 3, length).slice(), direct };
+            for (ByteBuffer buffer : buffers) {
+                byte[] encoded = new byte[StreamingBase64.encodedLength(length) + 1];
+                int end = StreamingBase64.encode(buffer, encoded, 1);
+                assertEquals(expected, new String(encoded, 1, end - 1, UTF8));
+
+                StringWriter writer = new StringWriter();
+                StreamingBase64.encode(buffer, writer);
+                assertEquals(expected, writer.toString());
+                assertEquals(length, buffer.remaining());
+            }
+
+            // without and with characters to skip
+            char[] chars = ("+" + expected + " \r\n").toCharArray();
+            ByteBuffer decoded = StreamingBase64.decode(chars, 1, expected.length());
+            assertEquals(length, decoded.remaining());
+            assertArrayEquals(data, decoded.array());
+            decoded = StreamingBase64.decode(chars, 1, chars.length - 1);
+            assertArrayEquals(data, decoded.array());
+        }
+    }
+
+    @Test
+    public void testInvalidInput() {
+        String[] invalid = { "ZE==", "ZmC=", "Zm9vYE==", "Zm9vYmC=", "Zg=", "Zg===", "Z===", "Zg==Zg==", "Zm9*", "Zm9é" };
+        for (String s : invalid) {
+            try {
+                StreamingBase64.decode(s.toCharArray(), 0, s.length());
+                fail(s);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 10, 900);
+
+        Utf8ByteArrayWriter bytes = new Utf8ByteArrayWriter();
+        new JSONWriter(bytes).array().value("é").value(buffer).value(buffer).endArray();
+        StringWriter chars = new StringWriter();
+        new JSONWriter(chars).array().value("é").value(buffer).value(buffer).endArray();
+        assertEquals(chars.toString(), bytes.toString());
+        assertEquals(10, buffer.position());
+
+        JsonParser parser = new JsonFactory().createParser(bytes.toByteArray());
+        JsonUnmarshallerContextImpl context = new JsonUnmarshallerContextImpl(parser);
+        context.nextToken();
+        context.nextToken();
+        context.nextToken();
+        ByteBuffer decoded = ByteBufferJsonUnmarshaller.getInstance().unmarshall(context);
+        assertEquals(buffer, decoded);
+    }
+}
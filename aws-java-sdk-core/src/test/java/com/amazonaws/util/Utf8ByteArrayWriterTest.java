@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.util;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import com.amazonaws.util.json.JSONWriter;
+
+public class Utf8ByteArrayWriterTest {
+
+    private static final String[] SAMPLES = {
+        "",
+        "hello world",
+        "café über",
+        "東京",
+        "emoji 😀 and 𝄞",
+        "unpaired \ud83d high",
+        "unpaired \ude00 low",
+        "trailing high \ud83d",
+    };
+
+    @Test
+    public void testEncodingMatchesStringGetBytes() {
+        for (String s : SAMPLES) {
+            Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter(1);
+            writer.write(s);
+            assertArrayEquals(s, s.getBytes(UTF8), writer.toByteArray());
+            assertEquals(s.getBytes(UTF8).length, writer.size());
+        }
+    }
+
+    @Test
+    public void testSurrogatePairSplitAcrossWrites() {
+        String s = "a😀b";
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter();
+        for (int i = 0; i < s.length(); i++) {
+            writer.write(s.charAt(i));
+        }
+        assertArrayEquals(s.getBytes(UTF8), writer.toByteArray());
+
+        writer = new Utf8ByteArrayWriter();
+        char[] chars = s.toCharArray();
+        writer.write(chars, 0, 2);
+        writer.write(chars, 2, 2);
+        assertArrayEquals(s.getBytes(UTF8), writer.toByteArray());
+    }
+
+    @Test
+    public void testToInputStreamIsRepeatable() throws Exception {
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter();
+        new JSONWriter(writer).object().key("k").value("vé").endObject();
+        byte[] expected = "{\"k\":\"vé\"}".getBytes(UTF8);
+
+        ByteArrayInputStream in = writer.toInputStream();
+        assertEquals(expected.length, in.available());
+        in.mark(Integer.MAX_VALUE);
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+        in.reset();
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+    }
+}
@@ -0,0 +1,756 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ResponseMetadata;
+import com.amazonaws.metrics.AwsSdkMetrics;
+import com.amazonaws.metrics.ServiceLatencyProvider;
+import com.amazonaws.metrics.ServiceMetricCollector;
+import com.amazonaws.regions.Region;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.metrics.DynamoDBServiceMetric;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ListTablesRequest;
+import com.amazonaws.services.dynamodbv2.model.ListTablesResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * CachingAmazonDynamoDBClient is a read-through item cache in front of
+ * another DynamoDB client. Eventually consistent <i>GetItem</i> and
+ * <i>BatchGetItem</i> reads of whole items are served from the cache when the
+ * items have been read recently, and the items read from DynamoDB are cached,
+ * up to a number of items and for a time configured per table by an
+ * {@link ItemCacheConfig}. Consistent reads always go to DynamoDB, and reads
+ * of some attributes only are neither served from nor added to the cache.
+ * The key attributes of a table are learned from its first successful read,
+ * whose items are not cached.
+ * <p>
+ * The <i>PutItem</i>, <i>UpdateItem</i>, <i>DeleteItem</i> and
+ * <i>BatchWriteItem</i> calls made through this client invalidate the cached
+ * items they write; the writes made by other clients are only seen once the
+ * cached items expire. All the other calls are passed through as they are.
+ * <p>
+ * Since the document API and the {@link
+ * com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper} both take
+ * the client they use, either can be given a caching client:
+ *
+ * <pre class="brush: java">
+ * AmazonDynamoDB client = new CachingAmazonDynamoDBClient(
+ *     new AmazonDynamoDBClient(credentials), new ItemCacheConfig());
+ * DynamoDB dynamo = new DynamoDB(client);
+ * DynamoDBMapper mapper = new DynamoDBMapper(client);
+ * </pre>
+ *
+ * The cache hits and misses are collected as the
+ * {@link DynamoDBServiceMetric#DynamoDBItemCacheHit} and
+ * {@link DynamoDBServiceMetric#DynamoDBItemCacheMiss} metrics when the AWS SDK
+ * metrics are enabled, and counted by {@link #getCacheHitCount()} and
+ * {@link #getCacheMissCount()}.
+ * <p>
+ * CachingAmazonDynamoDBClient is thread-safe.
+ */
+public class CachingAmazonDynamoDBClient implements AmazonDynamoDB {
+
+    static {
+        AwsSdkMetrics.addAll(Arrays.asList(DynamoDBServiceMetric.values()));
+    }
+
+    private final AmazonDynamoDB realDynamoDB;
+    private final ItemCacheConfig config;
+
+    /** The caches of the tables read so far, by table name. */
+    private final ConcurrentMap<String, TableCache> tableCaches =
+            new ConcurrentHashMap<String, TableCache>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingAmazonDynamoDBClient(AmazonDynamoDB realDynamoDB) {
+        this(realDynamoDB, new ItemCacheConfig());
+    }
+
+    public CachingAmazonDynamoDBClient(AmazonDynamoDB realDynamoDB, ItemCacheConfig config) {
+        if (realDynamoDB == null || config == null) {
+            throw new IllegalArgumentException("realDynamoDB and config must not be null");
+        }
+        this.realDynamoDB = realDynamoDB;
+        this.config = config;
+    }
+
+    /**
+     * The cached items of a table.
+     */
+    private static final class TableCache {
+        /** The load token of an item not to be cached. */
+        static final long NO_LOAD_TOKEN = -1;
+
+        final TinyLfuCache<Map<String, AttributeValue>, Map<String, AttributeValue>> items;
+
+        /**
+         * The names of the key attributes, learned from the first key read
+         * successfully, as DynamoDB rejects the keys not matching the key
+         * schema of the table; null until then.
+         */
+        volatile Set<String> keyNames;
+
+        TableCache(ItemCacheConfig config) {
+            this.items = new TinyLfuCache<Map<String, AttributeValue>, Map<String, AttributeValue>>(
+                    config.getMaxItems(),
+                    TimeUnit.MILLISECONDS.toNanos(config.getTimeToLiveMillis()));
+        }
+
+        /**
+         * Returns the token to cache the item of the given key once loaded;
+         * or {@link #NO_LOAD_TOKEN} if the key attributes are not known yet,
+         * as the writes made in the meantime could not invalidate the item.
+         */
+        long startLoad(Map<String, AttributeValue> key) {
+            return keyNames == null ? NO_LOAD_TOKEN : items.getLoadToken(key);
+        }
+
+        /**
+         * Learns the names of the key attributes from a key read
+         * successfully, if not known yet.
+         */
+        void loaded(Map<String, AttributeValue> key) {
+            if (keyNames == null) {
+                keyNames = Collections.unmodifiableSet(new HashSet<String>(key.keySet()));
+            }
+        }
+
+        /**
+         * Returns the key of the given item; or null if it can't be told.
+         */
+        Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+            Set<String> names = keyNames;
+            if (names == null || item == null) {
+                return null;
+            }
+            Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+            for (String name : names) {
+                AttributeValue value = item.get(name);
+                if (value == null) {
+                    return null;
+                }
+                key.put(name, value);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Returns the cache of the given table; or null if its items are not to
+     * be cached.
+     */
+    private TableCache getTableCache(String tableName) {
+        TableCache cache = tableCaches.get(tableName);
+        if (cache != null) {
+            return cache;
+        }
+        ItemCacheConfig tableConfig = config.getTableConfig(tableName);
+        if (tableName == null || tableConfig.getMaxItems() == 0) {
+            return null;
+        }
+        cache = new TableCache(tableConfig);
+        TableCache existing = tableCaches.putIfAbsent(tableName, cache);
+        return existing == null ? cache : existing;
+    }
+
+    /**
+     * Removes the given items or keys of a table from the cache.
+     */
+    private void invalidate(String tableName, List<Map<String, AttributeValue>> itemsOrKeys) {
+        TableCache cache = tableName == null ? null : tableCaches.get(tableName);
+        if (cache == null) {
+            return;
+        }
+        for (Map<String, AttributeValue> itemOrKey : itemsOrKeys) {
+            Map<String, AttributeValue> key = cache.keyOf(itemOrKey);
+            if (key != null) {
+                cache.items.invalidate(key);
+            }
+        }
+    }
+
+    private static boolean readsWholeItem(List<String> attributesToGet, String projectionExpression) {
+        return attributesToGet == null && projectionExpression == null;
+    }
+
+    private static ServiceLatencyProvider startTiming(DynamoDBServiceMetric metric) {
+        ServiceMetricCollector collector = AwsSdkMetrics.getServiceMetricCollector();
+        return collector.isEnabled() ? new ServiceLatencyProvider(metric) : null;
+    }
+
+    private static void endTiming(ServiceLatencyProvider latency, int samples) {
+        if (latency == null) {
+            return;
+        }
+        latency.endTiming();
+        ServiceMetricCollector collector = AwsSdkMetrics.getServiceMetricCollector();
+        for (int i = 0; i < samples; i++) {
+            collector.collectLatency(latency);
+        }
+    }
+
+    private static Map<String, AttributeValue> copy(Map<String, AttributeValue> map) {
+        return new HashMap<String, AttributeValue>(map);
+    }
+
+    /**
+     * Returns the number of items read from the cache so far.
+     */
+    public long getCacheHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of items looked up in the cache and read from
+     * DynamoDB so far, whether found there or not.
+     */
+    public long getCacheMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of items evicted from the cache to make room for
+     * other ones so far.
+     */
+    public long getCacheEvictionCount() {
+        long count = 0;
+        for (TableCache cache : tableCaches.values()) {
+            count += cache.items.getEvictionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Removes all the cached items.
+     */
+    public void clearCache() {
+        for (TableCache cache : tableCaches.values()) {
+            cache.items.clear();
+        }
+    }
+
+    @Override
+    public void setEndpoint(String endpoint) throws IllegalArgumentException {
+        realDynamoDB.setEndpoint(endpoint);
+        clearCache();
+    }
+
+    @Override
+    public void setRegion(Region region) throws IllegalArgumentException {
+        realDynamoDB.setRegion(region);
+        clearCache();
+    }
+
+    @Override
+    public GetItemResult getItem(GetItemRequest getItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        TableCache cache = readsWholeItem(getItemRequest.getAttributesToGet(),
+                getItemRequest.getProjectionExpression())
+                ? getTableCache(getItemRequest.getTableName())
+                : null;
+        Map<String, AttributeValue> key = getItemRequest.getKey();
+        if (cache == null || key == null) {
+            return realDynamoDB.getItem(getItemRequest);
+        }
+
+        boolean consistentRead = Boolean.TRUE.equals(getItemRequest.getConsistentRead());
+        if (!consistentRead) {
+            ServiceLatencyProvider latency = startTiming(DynamoDBServiceMetric.DynamoDBItemCacheHit);
+            Map<String, AttributeValue> item = cache.items.get(key);
+            if (item != null) {
+                hits.incrementAndGet();
+                endTiming(latency, 1);
+                return new GetItemResult().withItem(copy(item));
+            }
+            misses.incrementAndGet();
+        }
+
+        ServiceLatencyProvider latency = consistentRead
+                ? null
+                : startTiming(DynamoDBServiceMetric.DynamoDBItemCacheMiss);
+        long loadToken = cache.startLoad(key);
+        GetItemResult result = realDynamoDB.getItem(getItemRequest);
+        endTiming(latency, 1);
+        cache.loaded(key);
+        if (result.getItem() != null && loadToken != TableCache.NO_LOAD_TOKEN) {
+            cache.items.put(copy(key), Collections.unmodifiableMap(copy(result.getItem())), loadToken);
+        }
+        return result;
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(BatchGetItemRequest batchGetItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        Map<String, KeysAndAttributes> requestItems = batchGetItemRequest.getRequestItems();
+        if (requestItems == null) {
+            return realDynamoDB.batchGetItem(batchGetItemRequest);
+        }
+
+        ServiceLatencyProvider hitLatency = startTiming(DynamoDBServiceMetric.DynamoDBItemCacheHit);
+        Map<String, List<Map<String, AttributeValue>>> cachedResponses =
+                new HashMap<String, List<Map<String, AttributeValue>>>();
+        Map<String, KeysAndAttributes> remainingItems = new HashMap<String, KeysAndAttributes>();
+        // The load tokens of the keys to read from DynamoDB, by table name
+        Map<String, Map<Map<String, AttributeValue>, Long>> loadTokens =
+                new HashMap<String, Map<Map<String, AttributeValue>, Long>>();
+        int hitCount = 0;
+        int missCount = 0;
+
+        for (Map.Entry<String, KeysAndAttributes> entry : requestItems.entrySet()) {
+            String tableName = entry.getKey();
+            KeysAndAttributes keysAndAttributes = entry.getValue();
+            TableCache cache = readsWholeItem(keysAndAttributes.getAttributesToGet(),
+                    keysAndAttributes.getProjectionExpression())
+                    ? getTableCache(tableName)
+                    : null;
+            if (cache == null || keysAndAttributes.getKeys() == null) {
+                remainingItems.put(tableName, keysAndAttributes);
+                continue;
+            }
+
+            boolean consistentRead = Boolean.TRUE.equals(keysAndAttributes.getConsistentRead());
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            List<Map<String, AttributeValue>> remainingKeys = new ArrayList<Map<String, AttributeValue>>();
+            Map<Map<String, AttributeValue>, Long> tableLoadTokens =
+                    new HashMap<Map<String, AttributeValue>, Long>();
+            for (Map<String, AttributeValue> key : keysAndAttributes.getKeys()) {
+                Map<String, AttributeValue> item = consistentRead ? null : cache.items.get(key);
+                if (item != null) {
+                    items.add(copy(item));
+                    continue;
+                }
+                if (!consistentRead) {
+                    missCount++;
+                }
+                long loadToken = cache.startLoad(key);
+                if (loadToken != TableCache.NO_LOAD_TOKEN) {
+                    tableLoadTokens.put(copy(key), loadToken);
+                }
+                remainingKeys.add(key);
+            }
+            hitCount += items.size();
+
+            if (!items.isEmpty()) {
+                cachedResponses.put(tableName, items);
+            }
+            if (!remainingKeys.isEmpty()) {
+                KeysAndAttributes remaining = keysAndAttributes.clone();
+                remaining.setKeys(remainingKeys);
+                remainingItems.put(tableName, remaining);
+                loadTokens.put(tableName, tableLoadTokens);
+            }
+        }
+        hits.addAndGet(hitCount);
+        misses.addAndGet(missCount);
+        endTiming(hitLatency, hitCount);
+
+        if (remainingItems.isEmpty()) {
+            return new BatchGetItemResult()
+                    .withResponses(cachedResponses)
+                    .withUnprocessedKeys(new HashMap<String, KeysAndAttributes>());
+        }
+
+        ServiceLatencyProvider missLatency = startTiming(DynamoDBServiceMetric.DynamoDBItemCacheMiss);
+        BatchGetItemRequest remainingRequest = batchGetItemRequest.clone();
+        remainingRequest.setRequestItems(remainingItems);
+        BatchGetItemResult result = realDynamoDB.batchGetItem(remainingRequest);
+        endTiming(missLatency, missCount);
+        for (Map.Entry<String, KeysAndAttributes> entry : remainingItems.entrySet()) {
+            TableCache cache = tableCaches.get(entry.getKey());
+            List<Map<String, AttributeValue>> keys = entry.getValue().getKeys();
+            if (cache != null && keys != null && !keys.isEmpty()) {
+                cache.loaded(keys.get(0));
+            }
+        }
+
+        Map<String, List<Map<String, AttributeValue>>> responses =
+                new HashMap<String, List<Map<String, AttributeValue>>>();
+        if (result.getResponses() != null) {
+            responses.putAll(result.getResponses());
+        }
+        for (Map.Entry<String, Map<Map<String, AttributeValue>, Long>> entry : loadTokens.entrySet()) {
+            List<Map<String, AttributeValue>> items = responses.get(entry.getKey());
+            if (items == null) {
+                continue;
+            }
+            TableCache cache = tableCaches.get(entry.getKey());
+            for (Map<String, AttributeValue> item : items) {
+                Map<String, AttributeValue> key = cache.keyOf(item);
+                Long loadToken = key == null ? null : entry.getValue().get(key);
+                if (loadToken != null) {
+                    cache.items.put(key, Collections.unmodifiableMap(copy(item)), loadToken);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Map<String, AttributeValue>>> entry : cachedResponses.entrySet()) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(entry.getValue());
+            if (responses.get(entry.getKey()) != null) {
+                items.addAll(responses.get(entry.getKey()));
+            }
+            responses.put(entry.getKey(), items);
+        }
+        result.setResponses(responses);
+        return result;
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest putItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        try {
+            return realDynamoDB.putItem(putItemRequest);
+        } finally {
+            invalidate(putItemRequest.getTableName(), Collections.singletonList(putItemRequest.getItem()));
+        }
+    }
+
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest updateItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        try {
+            return realDynamoDB.updateItem(updateItemRequest);
+        } finally {
+            invalidate(updateItemRequest.getTableName(), Collections.singletonList(updateItemRequest.getKey()));
+        }
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(DeleteItemRequest deleteItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        try {
+            return realDynamoDB.deleteItem(deleteItemRequest);
+        } finally {
+            invalidate(deleteItemRequest.getTableName(), Collections.singletonList(deleteItemRequest.getKey()));
+        }
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest batchWriteItemRequest)
+            throws AmazonServiceException, AmazonClientException {
+        try {
+            return realDynamoDB.batchWriteItem(batchWriteItemRequest);
+        } finally {
+            Map<String, List<WriteRequest>> requestItems = batchWriteItemRequest.getRequestItems();
+            if (requestItems != null) {
+                for (Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+                    List<Map<String, AttributeValue>> itemsOrKeys = new ArrayList<Map<String, AttributeValue>>();
+                    for (WriteRequest writeRequest : entry.getValue()) {
+                        if (writeRequest.getPutRequest() != null) {
+                            itemsOrKeys.add(writeRequest.getPutRequest().getItem());
+                        } else if (writeRequest.getDeleteRequest() != null) {
+                            itemsOrKeys.add(writeRequest.getDeleteRequest().getKey());
+                        }
+                    }
+                    invalidate(entry.getKey(), itemsOrKeys);
+                }
+            }
+        }
+    }
+
+    @Override
+    public DeleteTableResult deleteTable(DeleteTableRequest deleteTableRequest)
+            throws AmazonServiceException, AmazonClientException {
+        try {
+            return realDynamoDB.deleteTable(deleteTableRequest);
+        } finally {
+            TableCache cache = deleteTableRequest.getTableName() == null
+                    ? null
+                    : tableCaches.get(deleteTableRequest.getTableName());
+            if (cache != null) {
+                cache.items.clear();
+            }
+        }
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest scanRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.scan(scanRequest);
+    }
+
+    @Override
+    public UpdateTableResult updateTable(UpdateTableRequest updateTableRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.updateTable(updateTableRequest);
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest describeTableRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.describeTable(describeTableRequest);
+    }
+
+    @Override
+    public CreateTableResult createTable(CreateTableRequest createTableRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.createTable(createTableRequest);
+    }
+
+    @Override
+    public QueryResult query(QueryRequest queryRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.query(queryRequest);
+    }
+
+    @Override
+    public ListTablesResult listTables(ListTablesRequest listTablesRequest)
+            throws AmazonServiceException, AmazonClientException {
+        return realDynamoDB.listTables(listTablesRequest);
+    }
+
+    @Override
+    public ListTablesResult listTables()
+            throws AmazonServiceException, AmazonClientException {
+        return listTables(new ListTablesRequest());
+    }
+
+    @Override
+    public ScanResult scan(String tableName, List<String> attributesToGet)
+            throws AmazonServiceException, AmazonClientException {
+        return scan(new ScanRequest()
+                .withTableName(tableName)
+                .withAttributesToGet(attributesToGet));
+    }
+
+    @Override
+    public ScanResult scan(String tableName, Map<String, Condition> scanFilter)
+            throws AmazonServiceException, AmazonClientException {
+        return scan(new ScanRequest()
+                .withTableName(tableName)
+                .withScanFilter(scanFilter));
+    }
+
+    @Override
+    public ScanResult scan(String tableName, List<String> attributesToGet,
+            Map<String, Condition> scanFilter)
+            throws AmazonServiceException, AmazonClientException {
+        return scan(new ScanRequest()
+                .withTableName(tableName)
+                .withAttributesToGet(attributesToGet)
+                .withScanFilter(scanFilter));
+    }
+
+    @Override
+    public UpdateTableResult updateTable(String tableName,
+            ProvisionedThroughput provisionedThroughput)
+            throws AmazonServiceException, AmazonClientException {
+        return updateTable(new UpdateTableRequest()
+                .withTableName(tableName)
+                .withProvisionedThroughput(provisionedThroughput));
+    }
+
+    @Override
+    public DeleteTableResult deleteTable(String tableName)
+            throws AmazonServiceException, AmazonClientException {
+        return deleteTable(new DeleteTableRequest().withTableName(tableName));
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(Map<String, List<WriteRequest>> requestItems)
+            throws AmazonServiceException, AmazonClientException {
+        return batchWriteItem(new BatchWriteItemRequest().withRequestItems(requestItems));
+    }
+
+    @Override
+    public DescribeTableResult describeTable(String tableName)
+            throws AmazonServiceException, AmazonClientException {
+        return describeTable(new DescribeTableRequest().withTableName(tableName));
+    }
+
+    @Override
+    public GetItemResult getItem(String tableName, Map<String, AttributeValue> key)
+            throws AmazonServiceException, AmazonClientException {
+        return getItem(new GetItemRequest()
+                .withTableName(tableName)
+                .withKey(key));
+    }
+
+    @Override
+    public GetItemResult getItem(String tableName, Map<String, AttributeValue> key,
+            Boolean consistentRead)
+            throws AmazonServiceException, AmazonClientException {
+        return getItem(new GetItemRequest()
+                .withTableName(tableName)
+                .withKey(key)
+                .withConsistentRead(consistentRead));
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(String tableName, Map<String, AttributeValue> key)
+            throws AmazonServiceException, AmazonClientException {
+        return deleteItem(new DeleteItemRequest()
+                .withTableName(tableName)
+                .withKey(key));
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(String tableName, Map<String, AttributeValue> key,
+            String returnValues)
+            throws AmazonServiceException, AmazonClientException {
+        return deleteItem(new DeleteItemRequest()
+                .withTableName(tableName)
+                .withKey(key)
+                .withReturnValues(returnValues));
+    }
+
+    @Override
+    public CreateTableResult createTable(List<AttributeDefinition> attributeDefinitions,
+            String tableName, List<KeySchemaElement> keySchema,
+            ProvisionedThroughput provisionedThroughput)
+            throws AmazonServiceException, AmazonClientException {
+        return createTable(new CreateTableRequest()
+                .withAttributeDefinitions(attributeDefinitions)
+                .withTableName(tableName)
+                .withKeySchema(keySchema)
+                .withProvisionedThroughput(provisionedThroughput));
+    }
+
+    @Override
+    public PutItemResult putItem(String tableName, Map<String, AttributeValue> item)
+            throws AmazonServiceException, AmazonClientException {
+        return putItem(new PutItemRequest()
+                .withTableName(tableName)
+                .withItem(item));
+    }
+
+    @Override
+    public PutItemResult putItem(String tableName, Map<String, AttributeValue> item,
+            String returnValues)
+            throws AmazonServiceException, AmazonClientException {
+        return putItem(new PutItemRequest()
+                .withTableName(tableName)
+                .withItem(item)
+                .withReturnValues(returnValues));
+    }
+
+    @Override
+    public ListTablesResult listTables(String exclusiveStartTableName)
+            throws AmazonServiceException, AmazonClientException {
+        return listTables(new ListTablesRequest()
+                .withExclusiveStartTableName(exclusiveStartTableName));
+    }
+
+    @Override
+    public ListTablesResult listTables(String exclusiveStartTableName, Integer limit)
+            throws AmazonServiceException, AmazonClientException {
+        return listTables(new ListTablesRequest()
+                .withExclusiveStartTableName(exclusiveStartTableName)
+                .withLimit(limit));
+    }
+
+    @Override
+    public ListTablesResult listTables(Integer limit)
+            throws AmazonServiceException, AmazonClientException {
+        return listTables(new ListTablesRequest().withLimit(limit));
+    }
+
+    @Override
+    public UpdateItemResult updateItem(String tableName, Map<String, AttributeValue> key,
+            Map<String, AttributeValueUpdate> attributeUpdates)
+            throws AmazonServiceException, AmazonClientException {
+        return updateItem(new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(key)
+                .withAttributeUpdates(attributeUpdates));
+    }
+
+    @Override
+    public UpdateItemResult updateItem(String tableName, Map<String, AttributeValue> key,
+            Map<String, AttributeValueUpdate> attributeUpdates, String returnValues)
+            throws AmazonServiceException, AmazonClientException {
+        return updateItem(new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(key)
+                .withAttributeUpdates(attributeUpdates)
+                .withReturnValues(returnValues));
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(Map<String, KeysAndAttributes> requestItems,
+            String returnConsumedCapacity)
+            throws AmazonServiceException, AmazonClientException {
+        return batchGetItem(new BatchGetItemRequest()
+                .withRequestItems(requestItems)
+                .withReturnConsumedCapacity(returnConsumedCapacity));
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(Map<String, KeysAndAttributes> requestItems)
+            throws AmazonServiceException, AmazonClientException {
+        return batchGetItem(new BatchGetItemRequest().withRequestItems(requestItems));
+    }
+
+    /**
+     * Shuts down the client it wraps, and removes all the cached items.
+     */
+    @Override
+    public void shutdown() {
+        realDynamoDB.shutdown();
+        clearCache();
+    }
+
+    @Override
+    public ResponseMetadata getCachedResponseMetadata(AmazonWebServiceRequest request) {
+        return realDynamoDB.getCachedResponseMetadata(request);
+    }
+}
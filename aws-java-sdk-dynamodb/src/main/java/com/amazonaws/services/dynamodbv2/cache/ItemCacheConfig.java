@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Options controlling the item cache of a {@link CachingAmazonDynamoDBClient}.
+ * The options apply to every table, unless overridden for a given table. For
+ * example, to cache up to 1000 items of the "Products" table for 5 minutes,
+ * and no item of any other table:
+ *
+ * <pre class="brush: java">
+ * new ItemCacheConfig()
+ *     .withMaxItems(0)
+ *     .withTableConfig("Products", new ItemCacheConfig()
+ *         .withMaxItems(1000)
+ *         .withTimeToLiveMillis(5 * 60 * 1000));
+ * </pre>
+ */
+public class ItemCacheConfig {
+
+    /** The default maximum number of items cached per table. */
+    public static final int DEFAULT_MAX_ITEMS = 10000;
+
+    /** The default time an item stays cached after it is read. */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60 * 1000;
+
+    /** The maximum number of items cached per table. */
+    private int maxItems = DEFAULT_MAX_ITEMS;
+
+    /** The time an item stays cached after it is read. */
+    private long timeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+
+    /** The options overridden for specific tables, by table name. */
+    private final Map<String, ItemCacheConfig> tableConfigs =
+            new ConcurrentHashMap<String, ItemCacheConfig>();
+
+    /**
+     * Returns the maximum number of items cached per table.
+     */
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Sets the maximum number of items cached per table; 0 disables the
+     * caching of the tables this configuration applies to. When a table's
+     * cache is full, the item least likely to be read again, based on how
+     * frequently and how recently the items were read, is evicted.
+     */
+    public void setMaxItems(int maxItems) {
+        if (maxItems < 0) {
+            throw new IllegalArgumentException("maxItems must not be negative");
+        }
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Sets the maximum number of items cached per table and returns a pointer
+     * to this object for method-chaining.
+     *
+     * @see #setMaxItems(int)
+     */
+    public ItemCacheConfig withMaxItems(int maxItems) {
+        setMaxItems(maxItems);
+        return this;
+    }
+
+    /**
+     * Returns the time in milliseconds an item stays cached after it is read.
+     */
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds an item stays cached after it is read
+     * from DynamoDB. This bounds how stale an item returned from the cache
+     * can be when the item is modified by other clients, as only the writes
+     * made through the caching client invalidate the cached items.
+     */
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("timeToLiveMillis must be positive");
+        }
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds an item stays cached and returns a
+     * pointer to this object for method-chaining.
+     *
+     * @see #setTimeToLiveMillis(long)
+     */
+    public ItemCacheConfig withTimeToLiveMillis(long timeToLiveMillis) {
+        setTimeToLiveMillis(timeToLiveMillis);
+        return this;
+    }
+
+    /**
+     * Returns the options of the given table: the ones overridden for it, if
+     * any, or else these options.
+     */
+    public ItemCacheConfig getTableConfig(String tableName) {
+        ItemCacheConfig config = tableConfigs.get(tableName);
+        return config == null ? this : config;
+    }
+
+    /**
+     * Overrides the options for the given table. The table options of the
+     * given configuration itself are ignored.
+     */
+    public void setTableConfig(String tableName, ItemCacheConfig config) {
+        if (config == null) {
+            tableConfigs.remove(tableName);
+        } else {
+            tableConfigs.put(tableName, config);
+        }
+    }
+
+    /**
+     * Overrides the options for the given table and returns a pointer to this
+     * object for method-chaining.
+     *
+     * @see #setTableConfig(String, ItemCacheConfig)
+     */
+    public ItemCacheConfig withTableConfig(String tableName, ItemCacheConfig config) {
+        setTableConfig(tableName, config);
+        return this;
+    }
+}
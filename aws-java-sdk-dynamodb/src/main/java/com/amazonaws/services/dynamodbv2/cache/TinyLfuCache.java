@@ -0,0 +1,404 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache whose entries expire a fixed time after they are put, and
+ * whose eviction policy is W-TinyLFU. New entries go to a small LRU window;
+ * an entry leaving the window is only admitted to the main, segmented LRU part
+ * of the cache if its key has been accessed more often than the key of the
+ * entry it would evict from there, according to an approximate count of the
+ * recent accesses to each key. This keeps the popular entries cached through
+ * bursts of keys accessed only once, which would flush a plain LRU cache.
+ * <p>
+ * The cache is split into segments, each guarded by its own lock. Entries put
+ * after being loaded are dropped if their key may have been invalidated while
+ * they were loaded; see {@link #getLoadToken(Object)}.
+ */
+final class TinyLfuCache<K, V> {
+
+    /** The maximum number of segments. */
+    private static final int MAX_SEGMENTS = 16;
+
+    /** The minimum number of entries of each segment, if more than one. */
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    private final Segment<K, V>[] segments;
+    private final long timeToLiveNanos;
+
+    /**
+     * @param maxItems
+     *            The maximum number of entries, at least 1.
+     * @param timeToLiveNanos
+     *            The time an entry stays cached after it is put.
+     */
+    TinyLfuCache(int maxItems, long timeToLiveNanos) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("maxItems must be at least 1");
+        }
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_CAPACITY <= maxItems) {
+            count *= 2;
+        }
+        // Arrays of a generic type can't be created; this one only ever
+        // holds the Segment<K, V> created below.
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Segment<K, V>[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<K, V>(maxItems / count + (i < maxItems % count ? 1 : 0));
+        }
+        this.segments = segments;
+        this.timeToLiveNanos = timeToLiveNanos;
+    }
+
+    /**
+     * Returns the value cached for the given key, or null if none.
+     */
+    V get(K key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash, System.nanoTime());
+    }
+
+    /**
+     * Returns the token to pass to {@link #put(Object, Object, long)} once the
+     * value of the given key is loaded; to be called before it is loaded.
+     */
+    long getLoadToken(K key) {
+        return segmentFor(hash(key)).getInvalidations();
+    }
+
+    /**
+     * Caches the value loaded for the given key, unless the key may have been
+     * invalidated since the given load token was returned.
+     */
+    void put(K key, V value, long loadToken) {
+        int hash = hash(key);
+        segmentFor(hash).put(key, hash, value, System.nanoTime() + timeToLiveNanos, loadToken);
+    }
+
+    /**
+     * Removes the value cached for the given key, if any, and prevents the
+     * values being loaded for it from being cached.
+     */
+    void invalidate(K key) {
+        segmentFor(hash(key)).invalidate(key);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries, including the expired ones not removed
+     * yet.
+     */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for other ones.
+     */
+    long getEvictionCount() {
+        long count = 0;
+        for (Segment<K, V> segment : segments) {
+            count += segment.getEvictions();
+        }
+        return count;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> 24) & (segments.length - 1)];
+    }
+
+    /**
+     * A part of the cache with its own window, main space and access counts.
+     */
+    private static final class Segment<K, V> {
+        private final int capacity;
+        private final int windowCapacity;
+        private final int protectedCapacity;
+
+        private final Map<K, Node<K, V>> nodes;
+        private final Queue<K, V> window = new Queue<K, V>();
+        /** The entries of the main space accessed once since admitted. */
+        private final Queue<K, V> probation = new Queue<K, V>();
+        /** The entries of the main space accessed again since admitted. */
+        private final Queue<K, V> protectedQueue = new Queue<K, V>();
+        private final FrequencySketch sketch;
+
+        /** The number of invalidations so far, used as load token. */
+        private long invalidations;
+        private long evictions;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.protectedCapacity = (capacity - windowCapacity) * 4 / 5;
+            this.nodes = new HashMap<K, Node<K, V>>();
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized V get(K key, int hash, long now) {
+            sketch.increment(hash);
+            Node<K, V> node = nodes.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (now - node.expiresAt >= 0) {
+                remove(node);
+                return null;
+            }
+            onAccess(node);
+            return node.value;
+        }
+
+        synchronized void put(K key, int hash, V value, long expiresAt, long loadToken) {
+            if (loadToken != invalidations) {
+                return;
+            }
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                node.value = value;
+                node.expiresAt = expiresAt;
+                onAccess(node);
+                return;
+            }
+
+            node = new Node<K, V>(key, hash, value, expiresAt);
+            nodes.put(key, node);
+            window.addLast(node);
+            if (window.size > windowCapacity) {
+                Node<K, V> candidate = window.removeFirst();
+                probation.addLast(candidate);
+                if (nodes.size() > capacity) {
+                    evictFromMain(candidate, System.nanoTime());
+                }
+            }
+        }
+
+        synchronized void invalidate(K key) {
+            invalidations++;
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        }
+
+        synchronized void clear() {
+            invalidations++;
+            nodes.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        }
+
+        synchronized long getInvalidations() {
+            return invalidations;
+        }
+
+        synchronized int size() {
+            return nodes.size();
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Moves the given entry to the tail of its queue, promoting it to the
+         * protected queue if it was on probation.
+         */
+        private void onAccess(Node<K, V> node) {
+            Queue<K, V> queue = node.queue;
+            queue.remove(node);
+            if (queue == probation) {
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > protectedCapacity) {
+                    probation.addLast(protectedQueue.removeFirst());
+                }
+            } else {
+                queue.addLast(node);
+            }
+        }
+
+        /**
+         * Evicts either the entry just moved out of the window or the least
+         * recently used entry on probation, whichever is expired or else
+         * accessed less frequently.
+         */
+        private void evictFromMain(Node<K, V> candidate, long now) {
+            Node<K, V> victim = probation.first();
+            if (victim != candidate
+                    && now - candidate.expiresAt < 0
+                    && (now - victim.expiresAt >= 0
+                            || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash))) {
+                remove(victim);
+            } else {
+                remove(candidate);
+            }
+            evictions++;
+        }
+
+        private void remove(Node<K, V> node) {
+            node.queue.remove(node);
+            nodes.remove(node.key);
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final int hash;
+        V value;
+        long expiresAt;
+
+        Queue<K, V> queue;
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, int hash, V value, long expiresAt) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A doubly linked list of entries, from the least recently used.
+     */
+    private static final class Queue<K, V> {
+        private final Node<K, V> head = new Node<K, V>(null, 0, null, 0);
+        int size;
+
+        Queue() {
+            head.previous = head;
+            head.next = head;
+        }
+
+        Node<K, V> first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.queue = this;
+            node.previous = head.previous;
+            node.next = head;
+            head.previous.next = node;
+            head.previous = node;
+            size++;
+        }
+
+        Node<K, V> removeFirst() {
+            Node<K, V> node = head.next;
+            remove(node);
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.queue = null;
+            size--;
+        }
+
+        void clear() {
+            head.previous = head;
+            head.next = head;
+            size = 0;
+        }
+    }
+
+    /**
+     * Approximately counts the recent accesses to each key, as a count-min
+     * sketch of small counters which are all halved periodically, so that
+     * past popularity fades away.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {
+            0x97CB3127, 0xB8B0A4A5, 0xE4B7D1F5, 0x5C7E4B8F
+        };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int length = 16;
+            while (length < capacity * 4 && length < (1 << 24)) {
+                length <<= 1;
+            }
+            this.counters = new byte[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * Math.max(capacity, 1);
+        }
+
+        int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, counters[indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        /**
+         * Counts one access, only incrementing the lowest counters of the key,
+         * as the others are already overestimated.
+         */
+        void increment(int hash) {
+            int min = frequency(hash);
+            if (min < MAX_COUNT) {
+                for (int i = 0; i < SEEDS.length; i++) {
+                    int index = indexOf(hash, i);
+                    if (counters[index] == min) {
+                        counters[index]++;
+                    }
+                }
+            }
+            if (++additions == sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, int i) {
+            int h = hash * SEEDS[i];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
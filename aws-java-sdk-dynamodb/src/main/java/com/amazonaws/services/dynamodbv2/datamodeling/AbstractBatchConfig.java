@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The options shared by the batch operations of the {@link DynamoDBMapper}
+ * sending several batches to DynamoDB at once.
+ *
+ * @see BatchWriteConfig
+ * @see BatchLoadConfig
+ */
+public abstract class AbstractBatchConfig {
+
+    /** The default maximum number of batches in flight at once. */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 1;
+
+    /** The maximum number of batches in flight at once. */
+    private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+
+    /** The threads sending the batches; or null to use a pool of its own. */
+    private ExecutorService executorService;
+
+    AbstractBatchConfig() {
+    }
+
+    /**
+     * Returns the maximum number of batches in flight at once.
+     */
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Sets the maximum number of batches in flight at once. Defaults to 1,
+     * meaning batches are sent one after another by the calling thread.
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        if (maxInFlightBatches < 1) {
+            throw new IllegalArgumentException(
+                    "maxInFlightBatches must be at least 1");
+        }
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    /**
+     * Sets the maximum number of batches in flight at once and returns a
+     * pointer to this object for method-chaining.
+     *
+     * @see #setMaxInFlightBatches(int)
+     */
+    public AbstractBatchConfig withMaxInFlightBatches(int maxInFlightBatches) {
+        setMaxInFlightBatches(maxInFlightBatches);
+        return this;
+    }
+
+    /**
+     * Returns the executor sending the batches, or null if not specified.
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Sets the executor sending the batches when more than one batch may be
+     * in flight. The executor is not shut down by the batch operation. If not
+     * specified, each batch operation uses threads of its own, which are
+     * released when it completes.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Sets the executor sending the batches and returns a pointer to this
+     * object for method-chaining.
+     *
+     * @see #setExecutorService(ExecutorService)
+     */
+    public AbstractBatchConfig withExecutorService(ExecutorService executorService) {
+        setExecutorService(executorService);
+        return this;
+    }
+}
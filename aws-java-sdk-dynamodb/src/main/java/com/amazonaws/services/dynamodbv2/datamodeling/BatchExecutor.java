@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import static com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.MAX_BACKOFF_IN_MILLISECONDS;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * The threads running the batches of a {@link ParallelBatchWriter} or
+ * {@link ParallelBatchLoader}, as set up by their
+ * {@link AbstractBatchConfig}, along with the back-off they share.
+ */
+final class BatchExecutor {
+
+    /** The base delay of the back-off before retrying a batch. */
+    static final long BASE_BACKOFF_IN_MILLISECONDS = 100;
+
+    private static final Random random = new Random();
+
+    private final int maxInFlightBatches;
+
+    /** Null if the batches are run by the calling thread. */
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+
+    BatchExecutor(AbstractBatchConfig config) {
+        this.maxInFlightBatches = config.getMaxInFlightBatches();
+        if (maxInFlightBatches == 1) {
+            this.executor = null;
+            this.ownExecutor = false;
+        } else if (config.getExecutorService() != null) {
+            this.executor = config.getExecutorService();
+            this.ownExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(maxInFlightBatches,
+                    new ThreadFactory() {
+                        private final AtomicInteger threadCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            // not to keep the JVM alive if a batch operation
+                            // is abandoned without being shut down
+                            Thread t = new Thread(r);
+                            t.setName("java-sdk-dynamodb-batch-thread-" + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            this.ownExecutor = true;
+        }
+    }
+
+    /**
+     * Returns the maximum number of batches in flight at once.
+     */
+    int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Returns true if the batches are run by the calling thread.
+     */
+    boolean isCallingThread() {
+        return executor == null;
+    }
+
+    /**
+     * Runs the given batch on one of the threads.
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Releases the threads, if they were created for this batch operation.
+     * Batches still in flight complete in the background.
+     */
+    void shutdown() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Sleeps for a random time up to an exponentially growing bound, so that
+     * threads retrying at the same time spread out.
+     */
+    static void pause(int retries) {
+        long bound = BASE_BACKOFF_IN_MILLISECONDS << Math.min(retries, 20);
+        bound = Math.min(bound, MAX_BACKOFF_IN_MILLISECONDS);
+        sleep((long) (random.nextDouble() * bound));
+    }
+
+    static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options controlling how a batch load operation of the
+ * {@link DynamoDBMapper} sends its requests to DynamoDB. For example, to load
+ * a large number of items with up to 8 requests in flight:
+ *
+ * <pre class="brush: java">
+ * mapper.batchLoad(keyObjects, null, new BatchLoadConfig().withMaxInFlightBatches(8));
+ * </pre>
+ *
+ * <p>
+ * The key objects given to the batch load are only read as batches complete,
+ * so the maximum number of batches in flight also bounds the number of keys
+ * held in memory.
+ *
+ * @see DynamoDBMapper#batchLoad(java.util.Iterator, DynamoDBMapperConfig, BatchLoadConfig, DynamoDBMapper.BatchLoadListener)
+ */
+public class BatchLoadConfig extends AbstractBatchConfig {
+
+    /**
+     * Sets the maximum number of batches being loaded at once and returns a
+     * pointer to this object for method-chaining.
+     *
+     * @see #setMaxInFlightBatches(int)
+     */
+    @Override
+    public BatchLoadConfig withMaxInFlightBatches(int maxInFlightBatches) {
+        setMaxInFlightBatches(maxInFlightBatches);
+        return this;
+    }
+
+    /**
+     * Sets the executor loading the batches and returns a pointer to this
+     * object for method-chaining.
+     *
+     * @see #setExecutorService(ExecutorService)
+     */
+    @Override
+    public BatchLoadConfig withExecutorService(ExecutorService executorService) {
+        setExecutorService(executorService);
+        return this;
+    }
+}
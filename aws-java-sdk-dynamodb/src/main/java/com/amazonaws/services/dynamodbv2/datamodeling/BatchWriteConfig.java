@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options controlling how a batch write operation of the
+ * {@link DynamoDBMapper} sends its batches to DynamoDB. For example, to write
+ * a large number of items with up to 8 batches in flight, without using more
+ * than 1000 write capacity units per second of the table "MyTable":
+ *
+ * <pre class="brush: java">
+ * BatchWriteConfig batchConfig = new BatchWriteConfig()
+ *         .withMaxInFlightBatches(8)
+ *         .withWriteCapacityLimit("MyTable", 1000);
+ * mapper.batchWrite(objectsToSave, Collections.emptyList(), null, batchConfig);
+ * </pre>
+ *
+ * <p>
+ * The objects given to the batch write are only converted to items as
+ * batches complete, so the maximum number of batches in flight also bounds
+ * the number of items held in memory.
+ *
+ * @see DynamoDBMapper#batchWrite(java.util.Iterator, java.util.Iterator, DynamoDBMapperConfig, BatchWriteConfig)
+ */
+public class BatchWriteConfig extends AbstractBatchConfig {
+
+    /** The default maximum number of times unprocessed items are retried. */
+    public static final int DEFAULT_MAX_UNPROCESSED_ITEMS_RETRIES = Integer.MAX_VALUE;
+
+    /**
+     * The maximum number of times the unprocessed items of a batch are
+     * retried before they are reported as a failed batch.
+     */
+    private int maxUnprocessedItemsRetries = DEFAULT_MAX_UNPROCESSED_ITEMS_RETRIES;
+
+    /** The write capacity units per second each table may use. */
+    private final Map<String, Double> writeCapacityLimits = new HashMap<String, Double>();
+
+    /**
+     * Sets the maximum number of batches being written at once. Defaults to
+     * 1, meaning batches are written one after another by the calling thread.
+     * <p>
+     * With more than one batch in flight, the batches may complete in any
+     * order, and so may two writes of the same item made in different
+     * batches: a save followed by a delete of the same key may leave the
+     * item saved. Objects written more than once in the same batch write
+     * should be written with a single batch in flight.
+     */
+    @Override
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        super.setMaxInFlightBatches(maxInFlightBatches);
+    }
+
+    /**
+     * Sets the maximum number of batches being written at once and returns a
+     * pointer to this object for method-chaining.
+     *
+     * @see #setMaxInFlightBatches(int)
+     */
+    @Override
+    public BatchWriteConfig withMaxInFlightBatches(int maxInFlightBatches) {
+        setMaxInFlightBatches(maxInFlightBatches);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of times the unprocessed items of a batch
+     * are retried.
+     */
+    public int getMaxUnprocessedItemsRetries() {
+        return maxUnprocessedItemsRetries;
+    }
+
+    /**
+     * Sets the maximum number of times the unprocessed items of a batch are
+     * retried, with an exponential and jittered back-off, before they are
+     * reported as a {@link DynamoDBMapper.FailedBatch} with no exception.
+     * Defaults to retrying until all the items are processed.
+     */
+    public void setMaxUnprocessedItemsRetries(int maxUnprocessedItemsRetries) {
+        if (maxUnprocessedItemsRetries < 0) {
+            throw new IllegalArgumentException(
+                    "maxUnprocessedItemsRetries must not be negative");
+        }
+        this.maxUnprocessedItemsRetries = maxUnprocessedItemsRetries;
+    }
+
+    /**
+     * Sets the maximum number of times the unprocessed items of a batch are
+     * retried and returns a pointer to this object for method-chaining.
+     *
+     * @see #setMaxUnprocessedItemsRetries(int)
+     */
+    public BatchWriteConfig withMaxUnprocessedItemsRetries(int maxUnprocessedItemsRetries) {
+        setMaxUnprocessedItemsRetries(maxUnprocessedItemsRetries);
+        return this;
+    }
+
+    /**
+     * Returns the write capacity units per second each table may use, by
+     * table name. Tables not in the map are not limited.
+     */
+    public Map<String, Double> getWriteCapacityLimits() {
+        return writeCapacityLimits;
+    }
+
+    /**
+     * Limits the write capacity units per second the batch write may use on
+     * the given table, typically to leave some of the table's provisioned
+     * throughput to other applications rather than being throttled. Batches
+     * are paced on the capacity actually consumed, as reported by DynamoDB.
+     *
+     * @param tableName
+     *            The name of the table, after any table name override.
+     * @param capacityUnitsPerSecond
+     *            The write capacity units per second; or null to remove the
+     *            limit.
+     */
+    public void setWriteCapacityLimit(String tableName, Double capacityUnitsPerSecond) {
+        if (capacityUnitsPerSecond == null) {
+            writeCapacityLimits.remove(tableName);
+            return;
+        }
+        if (!(capacityUnitsPerSecond > 0)) {
+            throw new IllegalArgumentException(
+                    "capacityUnitsPerSecond must be positive");
+        }
+        writeCapacityLimits.put(tableName, capacityUnitsPerSecond);
+    }
+
+    /**
+     * Limits the write capacity units per second the batch write may use on
+     * the given table and returns a pointer to this object for
+     * method-chaining.
+     *
+     * @see #setWriteCapacityLimit(String, Double)
+     */
+    public BatchWriteConfig withWriteCapacityLimit(String tableName, double capacityUnitsPerSecond) {
+        setWriteCapacityLimit(tableName, capacityUnitsPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the executor writing the batches and returns a pointer to this
+     * object for method-chaining.
+     *
+     * @see #setExecutorService(ExecutorService)
+     */
+    @Override
+    public BatchWriteConfig withExecutorService(ExecutorService executorService) {
+        setExecutorService(executorService);
+        return this;
+    }
+}
@@ -23,12 +23,15 @@ import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -211,6 +214,14 @@ public final class ConversionSchemas {
         private final DynamoDBReflector reflector;
         private final S3ClientCache s3cc;
 
+        /**
+         * The properties of each class converted so far, so that converting
+         * an item doesn't have to look up the attribute name, marshaller and
+         * unmarshaller of every property again.
+         */
+        private final ConcurrentMap<Class<?>, Property[]> properties =
+                new ConcurrentHashMap<Class<?>, Property[]>();
+
         public StandardItemConverter(
                 MarshallerSet marshallerSet,
                 UnmarshallerSet unmarshallerSet,
@@ -276,15 +287,15 @@ public final class ConversionSchemas {
             Map<String, AttributeValue> result =
                     new HashMap<String, AttributeValue>();
 
-            for (Method getter : reflector.getRelevantGetters(clazz)) {
+            for (Property property : getProperties(clazz)) {
                 Object getterResult =
-                        ReflectionUtils.safeInvoke(getter, object);
+                        ReflectionUtils.safeInvoke(property.getter, object);
 
                 if (getterResult != null) {
-                    AttributeValue value = convert(getter, getterResult);
+                    AttributeValue value =
+                            property.getMarshaller().marshall(getterResult);
                     if (value != null) {
-                        String name = reflector.getAttributeName(getter);
-                        result.put(name, value);
+                        result.put(property.getAttributeName(), value);
                     }
                 }
             }
@@ -292,6 +303,74 @@ public final class ConversionSchemas {
             return result;
         }
 
+        private Property[] getProperties(Class<?> clazz) {
+            Property[] result = properties.get(clazz);
+            if (result == null) {
+                Collection<Method> getters = reflector.getRelevantGetters(clazz);
+                result = new Property[getters.size()];
+                int i = 0;
+                for (Method getter : getters) {
+                    result[i++] = new Property(getter);
+                }
+                properties.putIfAbsent(clazz, result);
+            }
+            return result;
+        }
+
+        /**
+         * A property of a mapped class. Everything but the getter is resolved
+         * on first use, so that a property which can't be (un)marshalled only
+         * fails when it actually holds a value, as it always has.
+         */
+        private final class Property {
+            private final Method getter;
+            private volatile String attributeName;
+            private volatile ArgumentMarshaller marshaller;
+            private volatile Method setter;
+            private volatile ArgumentUnmarshaller unmarshaller;
+
+            Property(Method getter) {
+                this.getter = getter;
+            }
+
+            String getAttributeName() {
+                String name = attributeName;
+                if (name == null) {
+                    name = reflector.getAttributeName(getter);
+                    attributeName = name;
+                }
+                return name;
+            }
+
+            ArgumentMarshaller getMarshaller() {
+                ArgumentMarshaller m = marshaller;
+                if (m == null) {
+                    m = StandardItemConverter.this.getMarshaller(getter);
+                    marshaller = m;
+                }
+                return m;
+            }
+
+            Method getSetter() {
+                Method m = setter;
+                if (m == null) {
+                    m = reflector.getSetter(getter);
+                    setter = m;
+                }
+                return m;
+            }
+
+            ArgumentUnmarshaller getUnmarshaller() {
+                ArgumentUnmarshaller u = unmarshaller;
+                if (u == null) {
+                    u = StandardItemConverter.this.getUnmarshaller(
+                            getter, getSetter());
+                    unmarshaller = u;
+                }
+                return u;
+            }
+        }
+
         private ArgumentMarshaller getMarshaller(Method getter) {
             ArgumentMarshaller marshaller =
                     marshallerSet.getMarshaller(getter);
@@ -422,11 +501,10 @@ public final class ConversionSchemas {
                 return result;
             }
 
-            for (Method m : reflector.getRelevantGetters(clazz)) {
-                String attributeName = reflector.getAttributeName(m);
-                AttributeValue av = value.get(attributeName);
+            for (Property property : getProperties(clazz)) {
+                AttributeValue av = value.get(property.getAttributeName());
                 if (av != null) {
-                    setValue(result, m, av);
+                    setValue(result, property, av);
                 }
             }
 
@@ -435,12 +513,11 @@ public final class ConversionSchemas {
 
         private void setValue(
                 Object target,
-                Method getter,
+                Property property,
                 AttributeValue value) {
 
-            Method setter = reflector.getSetter(getter);
-            ArgumentUnmarshaller unmarshaller =
-                    getUnmarshaller(getter, setter);
+            Method setter = property.getSetter();
+            ArgumentUnmarshaller unmarshaller = property.getUnmarshaller();
 
             Object unmarshalled = unmarshall(unmarshaller, setter, value);
             ReflectionUtils.safeInvoke(setter, target, unmarshalled);
@@ -1309,13 +1386,19 @@ public final class ConversionSchemas {
         }
     }
 
+    /**
+     * Caches the marshallers returned by a wrapped {@code MarshallerSet}.
+     * Lookups don't take any lock; two threads racing on the same getter may
+     * both compute its marshaller, which is harmless as marshallers are
+     * stateless.
+     */
     static class CachingMarshallerSet implements MarshallerSet {
 
-        private final Map<Method, ArgumentMarshaller> cache =
-                new HashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentMarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
 
-        private final Map<Type, ArgumentMarshaller> memberCache =
-                new HashMap<Type, ArgumentMarshaller>();
+        private final ConcurrentMap<Type, ArgumentMarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentMarshaller>();
 
         private final MarshallerSet wrapped;
 
@@ -1325,40 +1408,41 @@ public final class ConversionSchemas {
 
         @Override
         public ArgumentMarshaller getMarshaller(Method getter) {
-            synchronized (cache) {
-                ArgumentMarshaller marshaler = cache.get(getter);
-                if (marshaler != null) {
-                    return marshaler;
-                }
-
-                marshaler = wrapped.getMarshaller(getter);
-                cache.put(getter, marshaler);
+            ArgumentMarshaller marshaler = cache.get(getter);
+            if (marshaler != null) {
                 return marshaler;
             }
+
+            marshaler = wrapped.getMarshaller(getter);
+            ArgumentMarshaller existing = cache.putIfAbsent(getter, marshaler);
+            return existing == null ? marshaler : existing;
         }
 
         @Override
         public ArgumentMarshaller getMemberMarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentMarshaller marshaller = memberCache.get(memberType);
-                if (marshaller != null) {
-                    return marshaller;
-                }
-
-                marshaller = wrapped.getMemberMarshaller(memberType);
-                memberCache.put(memberType, marshaller);
+            ArgumentMarshaller marshaller = memberCache.get(memberType);
+            if (marshaller != null) {
                 return marshaller;
             }
+
+            marshaller = wrapped.getMemberMarshaller(memberType);
+            ArgumentMarshaller existing =
+                    memberCache.putIfAbsent(memberType, marshaller);
+            return existing == null ? marshaller : existing;
         }
     }
 
+    /**
+     * Caches the unmarshallers returned by a wrapped {@code UnmarshallerSet},
+     * without taking any lock on lookups.
+     */
     static class CachingUnmarshallerSet implements UnmarshallerSet {
 
-        private final Map<Method, ArgumentUnmarshaller> cache =
-                new HashMap<Method, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
 
-        private final Map<Type, ArgumentUnmarshaller> memberCache =
-                new HashMap<Type, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Type, ArgumentUnmarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentUnmarshaller>();
 
         private final UnmarshallerSet wrapped;
 
@@ -1371,30 +1455,27 @@ public final class ConversionSchemas {
                 Method getter,
                 Method setter) {
 
-            synchronized (cache) {
-                ArgumentUnmarshaller unmarshaler = cache.get(getter);
-                if (unmarshaler != null) {
-                    return unmarshaler;
-                }
-
-                unmarshaler = wrapped.getUnmarshaller(getter, setter);
-                cache.put(getter, unmarshaler);
+            ArgumentUnmarshaller unmarshaler = cache.get(getter);
+            if (unmarshaler != null) {
                 return unmarshaler;
             }
+
+            unmarshaler = wrapped.getUnmarshaller(getter, setter);
+            ArgumentUnmarshaller existing = cache.putIfAbsent(getter, unmarshaler);
+            return existing == null ? unmarshaler : existing;
         }
 
         @Override
         public ArgumentUnmarshaller getMemberUnmarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
-                if (unmarshaller != null) {
-                    return unmarshaller;
-                }
-
-                unmarshaller = wrapped.getMemberUnmarshaller(memberType);
-                memberCache.put(memberType, unmarshaller);
+            ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
+            if (unmarshaller != null) {
                 return unmarshaller;
             }
+
+            unmarshaller = wrapped.getMemberUnmarshaller(memberType);
+            ArgumentUnmarshaller existing =
+                    memberCache.putIfAbsent(memberType, unmarshaller);
+            return existing == null ? unmarshaller : existing;
         }
     }
 
@@ -26,9 +26,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,7 +38,6 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.ConsistentReads;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.PaginationLoadingStrategy;
@@ -47,9 +47,7 @@ import com.amazonaws.services.dynamodbv2.model.AttributeAction;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
@@ -60,7 +58,6 @@ import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
-import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.PutRequest;
@@ -73,6 +70,7 @@ import com.amazonaws.services.dynamodbv2.model.Select;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.services.dynamodbv2.util.ParallelScanner;
 import com.amazonaws.services.s3.model.Region;
 import com.amazonaws.util.VersionInfoUtils;
 
@@ -177,6 +175,14 @@ public class DynamoDBMapper {
     private final DynamoDBTableSchemaParser schemaParser = new DynamoDBTableSchemaParser();
     private final VersionIncrementor incrementor = new VersionIncrementor();
 
+    /**
+     * The converters of the standard conversion schemas, which only depend on
+     * the schema and this mapper, and which cache what they learn about each
+     * mapped class; so they are kept rather than created for every operation.
+     */
+    private final ConcurrentMap<ConversionSchema, ItemConverter> converters =
+            new ConcurrentHashMap<ConversionSchema, ItemConverter>();
+
     private final AttributeTransformer transformer;
 
     /** The max back off time for batch write */
@@ -1512,237 +1518,158 @@ public class DynamoDBMapper {
      *         the exceptions causing the failure.
      */
     public List<FailedBatch> batchWrite(List<? extends Object> objectsToWrite, List<? extends Object> objectsToDelete, DynamoDBMapperConfig config) {
-        config = mergeConfig(config);
-
-        List<FailedBatch> totalFailedBatches = new LinkedList<FailedBatch>();
-
-        HashMap<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>();
-
-        ItemConverter converter = getConverter(config);
-
-        List<ValueUpdate> inMemoryUpdates = new LinkedList<ValueUpdate>();
-        for ( Object toWrite : objectsToWrite ) {
-            Class<?> clazz = toWrite.getClass();
-            String tableName = getTableName(clazz, toWrite, config);
-
-            Map<String, AttributeValue> attributeValues = new HashMap<String, AttributeValue>();
-
-            // Look at every getter and construct a value object for it
-            for ( Method method : reflector.getRelevantGetters(clazz) ) {
-                Object getterResult =
-                        ReflectionUtils.safeInvoke(method, toWrite);
-
-                String attributeName = reflector.getAttributeName(method);
-
-                AttributeValue currentValue = null;
-                if ( getterResult == null && reflector.isAssignableKey(method) ) {
-                    currentValue = getAutoGeneratedKeyAttributeValue(converter, method);
-                    inMemoryUpdates.add(new ValueUpdate(method, currentValue, toWrite, converter));
-                } else {
-                    currentValue = converter.convert(method, getterResult);
-                }
-
-                if ( currentValue != null ) {
-                    attributeValues.put(attributeName, currentValue);
-                }
-            }
-
-            if ( !requestItems.containsKey(tableName) ) {
-                requestItems.put(tableName, new LinkedList<WriteRequest>());
-            }
-
-            AttributeTransformer.Parameters<?> parameters =
-                toParameters(attributeValues, clazz, tableName, config);
-
-            requestItems.get(tableName).add(
-                new WriteRequest().withPutRequest(
-                    new PutRequest().withItem(
-                        transformAttributes(parameters))));
-        }
-
-        for ( Object toDelete : objectsToDelete ) {
-            Class<?> clazz = toDelete.getClass();
+        return batchWrite(objectsToWrite.iterator(), objectsToDelete.iterator(), config, null);
+    }
 
-            String tableName = getTableName(clazz, toDelete, config);
+    /**
+     * Saves and deletes the objects given using one or more calls to the
+     * {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)} API,
+     * possibly writing several batches at once.
+     *
+     * @see DynamoDBMapper#batchWrite(Iterator, Iterator, DynamoDBMapperConfig, BatchWriteConfig)
+     */
+    public List<FailedBatch> batchWrite(
+            Iterable<? extends Object> objectsToWrite,
+            Iterable<? extends Object> objectsToDelete,
+            DynamoDBMapperConfig config,
+            BatchWriteConfig batchWriteConfig) {
 
-            Map<String, AttributeValue> key = getKey(converter, toDelete);
+        return batchWrite(objectsToWrite.iterator(),
+                objectsToDelete.iterator(), config, batchWriteConfig);
+    }
 
-            if ( !requestItems.containsKey(tableName) ) {
-                requestItems.put(tableName, new LinkedList<WriteRequest>());
-            }
+    /**
+     * Saves and deletes the objects given using one or more calls to the
+     * {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)} API,
+     * possibly writing several batches at once.
+     * <p>
+     * The objects are read from the iterators as batches are sent, rather
+     * than all up front, so an arbitrarily large number of objects can be
+     * written without holding them all in memory. When several batches are
+     * in flight, they may complete in any order: an object should not be
+     * written or deleted more than once by the same operation.
+     * <p>
+     * The unprocessed items of a batch are retried with an exponential and
+     * jittered back-off, up to
+     * {@link BatchWriteConfig#getMaxUnprocessedItemsRetries()} times; the
+     * items of a batch that fails with an exception are not retried, but
+     * returned as a failed batch.
+     *
+     * @param objectsToWrite
+     *            The objects to save to DynamoDB. <b>No version checks are
+     *            performed</b>, as required by the
+     *            {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)}
+     *            API.
+     * @param objectsToDelete
+     *            The objects to delete from DynamoDB. <b>No version checks
+     *            are performed</b>, as required by the
+     *            {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)}
+     *            API.
+     * @param config
+     *            Only {@link DynamoDBMapperConfig#getTableNameOverride()} is
+     *            considered; this method <b>always acts as if
+     *            SaveBehavior.CLOBBER was specified</b>.
+     * @param batchWriteConfig
+     *            How the batches are sent; or null to send them one after
+     *            another.
+     * @return A list of failed batches which includes the unprocessed items and
+     *         the exceptions causing the failure.
+     */
+    public List<FailedBatch> batchWrite(
+            Iterator<? extends Object> objectsToWrite,
+            Iterator<? extends Object> objectsToDelete,
+            DynamoDBMapperConfig config,
+            BatchWriteConfig batchWriteConfig) {
 
-            requestItems.get(tableName).add(
-                    new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)));
+        config = mergeConfig(config);
+        if (batchWriteConfig == null) {
+            batchWriteConfig = new BatchWriteConfig();
         }
 
-        // Break into chunks of 25 items and make service requests to DynamoDB
-        while ( !requestItems.isEmpty() ) {
-
-            HashMap<String, List<WriteRequest>> batch =
-                    new HashMap<String, List<WriteRequest>>();
-
-            int i = 0;
-
-            Iterator<Entry<String, List<WriteRequest>>> tableIter = requestItems.entrySet().iterator();
-            while ( tableIter.hasNext() && i < MAX_ITEMS_PER_BATCH ) {
+        ItemConverter converter = getConverter(config);
 
-                Entry<String, List<WriteRequest>> tableRequest = tableIter.next();
+        ParallelBatchWriter writer = new ParallelBatchWriter(db, batchWriteConfig);
+        try {
+            while ( objectsToWrite.hasNext() ) {
+                Object toWrite = objectsToWrite.next();
+                Class<?> clazz = toWrite.getClass();
+                String tableName = getTableName(clazz, toWrite, config);
 
-                batch.put(tableRequest.getKey(), new LinkedList<WriteRequest>());
-                Iterator<WriteRequest> writeRequestIter = tableRequest.getValue().iterator();
+                Map<String, AttributeValue> attributeValues = new HashMap<String, AttributeValue>();
+                List<ValueUpdate> inMemoryUpdates = null;
 
-                while ( writeRequestIter.hasNext() && i++ < MAX_ITEMS_PER_BATCH ) {
-                    WriteRequest writeRequest = writeRequestIter.next();
-                    batch.get(tableRequest.getKey()).add(writeRequest);
-                    writeRequestIter.remove();
-                }
+                // Look at every getter and construct a value object for it
+                for ( Method method : reflector.getRelevantGetters(clazz) ) {
+                    Object getterResult =
+                            ReflectionUtils.safeInvoke(method, toWrite);
 
-                // If we've processed all the write requests for this table,
-                // remove it from the parent iterator.
-                if ( !writeRequestIter.hasNext() ) {
-                    tableIter.remove();
-                }
-            }
+                    String attributeName = reflector.getAttributeName(method);
 
-            List<FailedBatch> failedBatches = writeOneBatch(batch);
-            if (failedBatches != null) {
-                totalFailedBatches.addAll(failedBatches);
-
-                // If contains throttling exception, we do a backoff
-                if (containsThrottlingException(failedBatches)) {
-                    try {
-                        Thread.sleep(1000 * 2);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new AmazonClientException(e.getMessage(), e);
+                    AttributeValue currentValue = null;
+                    if ( getterResult == null && reflector.isAssignableKey(method) ) {
+                        currentValue = getAutoGeneratedKeyAttributeValue(converter, method);
+                        if ( inMemoryUpdates == null ) {
+                            inMemoryUpdates = new LinkedList<ValueUpdate>();
+                        }
+                        inMemoryUpdates.add(new ValueUpdate(method, currentValue, toWrite, converter));
+                    } else {
+                        currentValue = converter.convert(method, getterResult);
                     }
-                }
-            }
-        }
-
-
-
-        // Once the entire batch is processed, update assigned keys in memory
-        for ( ValueUpdate update : inMemoryUpdates ) {
-            update.apply();
-        }
-
-        return totalFailedBatches;
-    }
-
-    /**
-     * Process one batch of requests(max 25). It will divide the batch if
-     * receives request too large exception(the total size of the request is beyond 1M).
-     */
-    private List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch) {
-
-        List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
-        Map<String, List<WriteRequest>> firstHalfBatch = new HashMap<String, List<WriteRequest>>();
-        Map<String, List<WriteRequest>> secondHalfBatch = new HashMap<String, List<WriteRequest>>();
-        FailedBatch failedBatch = callUntilCompletion(batch);
 
-        if (failedBatch != null) {
-            // If the exception is request entity too large, we divide the batch
-            // into smaller parts.
-
-            if (failedBatch.getException() instanceof AmazonServiceException
-            && RetryUtils.isRequestEntityTooLargeException((AmazonServiceException) failedBatch.getException())) {
-
-                // If only one item left, the item size must beyond 64k, which
-                // exceedes the limit.
-
-                if (computeFailedBatchSize(failedBatch) == 1) {
-                    failedBatches.add(failedBatch);
-                } else {
-                    divideBatch(batch, firstHalfBatch, secondHalfBatch);
-                    failedBatches.addAll(writeOneBatch(firstHalfBatch));
-                    failedBatches.addAll(writeOneBatch(secondHalfBatch));
+                    if ( currentValue != null ) {
+                        attributeValues.put(attributeName, currentValue);
+                    }
                 }
 
-            } else {
-                failedBatches.add(failedBatch);
-            }
+                AttributeTransformer.Parameters<?> parameters =
+                    toParameters(attributeValues, clazz, tableName, config);
 
-        }
-        return failedBatches;
-    }
+                WriteRequest writeRequest = new WriteRequest().withPutRequest(
+                        new PutRequest().withItem(
+                            transformAttributes(parameters)));
 
-    /**
-     * Check whether there are throttling exception in the failed batches.
-     */
-    private boolean containsThrottlingException (List<FailedBatch> failedBatches) {
-        for (FailedBatch failedBatch : failedBatches) {
-           Exception e = failedBatch.getException();
-            if (e instanceof AmazonServiceException
-                    && RetryUtils.isThrottlingException((AmazonServiceException) e)) {
-                return true;
+                // Once the batch of the object is processed, update assigned
+                // keys in memory
+                writer.add(tableName, writeRequest, inMemoryUpdates == null
+                        ? null
+                        : new InMemoryUpdates(inMemoryUpdates));
             }
-        }
-        return false;
-    }
 
-    /**
-     * Divide the batch of objects to save into two smaller batches. Each contains half of the elements.
-     */
-    private void divideBatch(Map<String, List<WriteRequest>> batch, Map<String, List<WriteRequest>> firstHalfBatch, Map<String, List<WriteRequest>> secondHalfBatch) {
-        for (String key : batch.keySet()) {
-
-            List<WriteRequest> requests = batch.get(key);
-
-            List<WriteRequest> firstHalfRequests = requests.subList(0, requests.size() / 2);
+            while ( objectsToDelete.hasNext() ) {
+                Object toDelete = objectsToDelete.next();
+                Class<?> clazz = toDelete.getClass();
 
-            List<WriteRequest> secondHalfRequests = requests.subList(requests.size() / 2, requests.size());
+                String tableName = getTableName(clazz, toDelete, config);
 
-            firstHalfBatch.put(key, firstHalfRequests);
+                Map<String, AttributeValue> key = getKey(converter, toDelete);
 
-            secondHalfBatch.put(key, secondHalfRequests);
+                writer.add(tableName,
+                        new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)),
+                        null);
+            }
 
+            return writer.finish();
+        } finally {
+            writer.shutdown();
         }
-
     }
 
     /**
-     * Count the total number of unprocessed items in the failed batch.
+     * Applies the in-memory updates of an object once it has been written.
      */
+    private static final class InMemoryUpdates implements Runnable {
+        private final List<ValueUpdate> updates;
 
-    private int computeFailedBatchSize(FailedBatch failedBatch) {
-
-        int count = 0;
-
-        for (String tableName : failedBatch.getUnprocessedItems().keySet()) {
-            count += failedBatch.getUnprocessedItems().get(tableName).size();
+        InMemoryUpdates(List<ValueUpdate> updates) {
+            this.updates = updates;
         }
-        return count;
-    }
-
-    /**
-     * Continue trying to process the batch until it finishes or an exception
-     * occurs.
-     */
 
-    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch) {
-        BatchWriteItemResult result = null;
-        int retries = 0;
-        FailedBatch failedBatch = null;
-        while (true) {
-            try {
-                result = db.batchWriteItem(applyBatchOperationUserAgent(
-                        new BatchWriteItemRequest().withRequestItems(batch)));
-            } catch (Exception e) {
-                failedBatch = new FailedBatch();
-                failedBatch.setUnprocessedItems(batch);
-                failedBatch.setException(e);
-                return failedBatch;
-            }
-            retries++;
-            batch = result.getUnprocessedItems();
-            if (batch.size() > 0) {
-                pauseExponentially(retries);
-            } else {
-                break;
+        @Override
+        public void run() {
+            for ( ValueUpdate update : updates ) {
+                update.apply();
             }
         }
-        return failedBatch;
     }
 
     /**
@@ -1778,49 +1705,114 @@ public class DynamoDBMapper {
      *         mapping that table.
      */
     public Map<String, List<Object>> batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config) {
-        config = mergeConfig(config);
-        boolean consistentReads = (config.getConsistentReads() == ConsistentReads.CONSISTENT);
-
         if ( itemsToGet == null || itemsToGet.isEmpty() ) {
             return new HashMap<String, List<Object>>();
         }
+        return batchLoad(itemsToGet, config, null);
+    }
 
-        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
-        Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
-        Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
-        int count = 0;
-
-        ItemConverter converter = getConverter(config);
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * possibly loading several batches of keys at once.
+     *
+     * @see DynamoDBMapper#batchLoad(Iterator, DynamoDBMapperConfig, BatchLoadConfig, BatchLoadListener)
+     *
+     * @return A map of the loaded objects. Each key in the map is the name of a
+     *         DynamoDB table. Each value in the map is a list of objects that
+     *         have been loaded from that table. All objects for each table can
+     *         be cast to the associated user defined type that is annotated as
+     *         mapping that table.
+     */
+    public Map<String, List<Object>> batchLoad(
+            Iterable<? extends Object> itemsToGet,
+            DynamoDBMapperConfig config,
+            BatchLoadConfig batchLoadConfig) {
+
+        final Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
+        batchLoad(itemsToGet.iterator(), config, batchLoadConfig, new BatchLoadListener() {
+            @Override
+            public void onItemLoaded(String tableName, Object item) {
+                List<Object> objects = resultSet.get(tableName);
+                if ( objects == null ) {
+                    objects = new LinkedList<Object>();
+                    resultSet.put(tableName, objects);
+                }
+                objects.add(item);
+            }
+        });
+        return resultSet;
+    }
 
-        for ( Object keyObject : itemsToGet ) {
-            Class<?> clazz = keyObject.getClass();
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * possibly loading several batches of keys at once, and hands each object
+     * to the listener given as soon as it is loaded.
+     * <p>
+     * The key objects are read from the iterator as batches are sent, rather
+     * than all up front, so an arbitrarily large number of objects can be
+     * loaded without holding them all in memory. A key read again while it
+     * is still being loaded is ignored, but a key read again after it was
+     * loaded is loaded again. The keys left unprocessed by DynamoDB are sent
+     * again along with the next batches of keys.
+     *
+     * @param itemsToGet
+     *            Key objects, corresponding to the class to fetch, with their
+     *            primary key values set.
+     * @param config
+     *            Only {@link DynamoDBMapperConfig#getTableNameOverride()} and
+     *            {@link DynamoDBMapperConfig#getConsistentReads()} are
+     *            considered.
+     * @param batchLoadConfig
+     *            How the batches are sent; or null to send them one after
+     *            another.
+     * @param listener
+     *            Receives the loaded objects, in no particular order. It is
+     *            called by one thread at a time, but not necessarily the
+     *            calling thread.
+     */
+    public void batchLoad(
+            Iterator<? extends Object> itemsToGet,
+            DynamoDBMapperConfig config,
+            BatchLoadConfig batchLoadConfig,
+            final BatchLoadListener listener) {
 
-            String tableName = getTableName(clazz, keyObject, config);
-            classesByTableName.put(tableName, clazz);
+        final DynamoDBMapperConfig finalConfig = mergeConfig(config);
+        boolean consistentReads = (finalConfig.getConsistentReads() == ConsistentReads.CONSISTENT);
+        if ( batchLoadConfig == null ) {
+            batchLoadConfig = new BatchLoadConfig();
+        }
 
-            if ( !requestItems.containsKey(tableName) ) {
-                requestItems.put(
-                        tableName,
-                        new KeysAndAttributes().withConsistentRead(consistentReads).withKeys(
-                                new LinkedList<Map<String, AttributeValue>>()));
-            }
+        final ItemConverter converter = getConverter(finalConfig);
+        final Map<String, Class<?>> classesByTableName = new ConcurrentHashMap<String, Class<?>>();
+
+        ParallelBatchLoader loader = new ParallelBatchLoader(db, batchLoadConfig,
+                consistentReads, finalConfig.getRequestMetricCollector(),
+                new ParallelBatchLoader.ItemHandler() {
+                    @Override
+                    public void handle(String tableName, Map<String, AttributeValue> item) {
+                        Class<?> clazz = classesByTableName.get(tableName);
+                        AttributeTransformer.Parameters<?> parameters =
+                            toParameters(item, clazz, tableName, finalConfig);
+                        Object object = privateMarshallIntoObject(converter, parameters);
+                        synchronized (listener) {
+                            listener.onItemLoaded(tableName, object);
+                        }
+                    }
+                });
+        try {
+            while ( itemsToGet.hasNext() ) {
+                Object keyObject = itemsToGet.next();
+                Class<?> clazz = keyObject.getClass();
 
-            requestItems.get(tableName).getKeys().add(
-                    getKey(converter, keyObject));
+                String tableName = getTableName(clazz, keyObject, finalConfig);
+                classesByTableName.put(tableName, clazz);
 
-            // Reach the maximum number which can be handled in a single batchGet
-            if ( ++count == 100 ) {
-                processBatchGetRequest(classesByTableName, requestItems, resultSet, config, converter);
-                requestItems.clear();
-                count = 0;
+                loader.add(tableName, getKey(converter, keyObject));
             }
+            loader.finish();
+        } finally {
+            loader.shutdown();
         }
-
-        if ( count > 0 ) {
-            processBatchGetRequest(classesByTableName, requestItems, resultSet, config, converter);
-        }
-
-        return resultSet;
     }
 
     /**
@@ -1876,69 +1868,6 @@ public class DynamoDBMapper {
         return batchLoad(keys, config);
     }
 
-    /**
-     * @param config never null
-     */
-    private void processBatchGetRequest(
-            final Map<String, Class<?>> classesByTableName,
-            final Map<String, KeysAndAttributes> requestItems,
-            final Map<String, List<Object>> resultSet,
-            final DynamoDBMapperConfig config,
-            final ItemConverter converter) {
-
-        BatchGetItemResult batchGetItemResult = null;
-        BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest()
-            .withRequestMetricCollector(config.getRequestMetricCollector());
-        batchGetItemRequest.setRequestItems(requestItems);
-
-        int retries = 0;
-        int noOfItemsInOriginalRequest = requestItems.size();
-
-        do {
-            if ( batchGetItemResult != null ) {
-                retries++;
-
-                if (noOfItemsInOriginalRequest == batchGetItemResult
-                        .getUnprocessedKeys().size()){
-                    pauseExponentially(retries);
-                    if (retries > BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
-                        throw new AmazonClientException(
-                                "Batch Get Item request to server hasn't received any data. "
-                                + "Please try again later.");
-                    }
-                }
-
-                batchGetItemRequest.setRequestItems(
-                        batchGetItemResult.getUnprocessedKeys());
-            }
-
-            batchGetItemResult = db.batchGetItem(
-                    applyBatchOperationUserAgent(batchGetItemRequest));
-
-            Map<String, List<Map<String, AttributeValue>>> responses = batchGetItemResult.getResponses();
-            for ( String tableName : responses.keySet() ) {
-                List<Object> objects = null;
-                if ( resultSet.get(tableName) != null ) {
-                    objects = resultSet.get(tableName);
-                } else {
-                    objects = new LinkedList<Object>();
-                }
-
-                Class<?> clazz = classesByTableName.get(tableName);
-
-                for ( Map<String, AttributeValue> item : responses.get(tableName) ) {
-                    AttributeTransformer.Parameters<?> parameters =
-                        toParameters(item, clazz, tableName, config);
-                    objects.add(privateMarshallIntoObject(converter, parameters));
-                }
-
-                resultSet.put(tableName, objects);
-            }
-            // To see whether there are unprocessed keys.
-        } while ( batchGetItemResult.getUnprocessedKeys() != null && batchGetItemResult.getUnprocessedKeys().size() > 0 );
-
-    }
-
     private final class ValueUpdate {
 
         private final Method method;
@@ -2114,6 +2043,66 @@ public class DynamoDBMapper {
         return new PaginatedParallelScanList<T>(this, clazz, db, parallelScanTask, config.getPaginationLoadingStrategy(), config);
     }
 
+    /**
+     * Scans through an Amazon DynamoDB table on logically partitioned segments
+     * in parallel, and returns the pages of each segment as soon as they
+     * arrive. Unlike {@link #parallelScan(Class, DynamoDBScanExpression, int, DynamoDBMapperConfig)},
+     * the results are not accumulated in memory, and segments don't wait for
+     * each other: a segment fetches its next page as soon as its previous page
+     * arrives, unless too many pages are waiting to be consumed.
+     * <p>
+     * The objects of each page are unmarshalled by the threads fetching the
+     * pages. The scan can be configured, for example to resume it from a
+     * checkpoint, with the methods of the returned scanner, before iterating
+     * over its pages.
+     *
+     * @param <T>
+     *            The type of the objects being returned.
+     * @param clazz
+     *            The class annotated with DynamoDB annotations describing how
+     *            to store the object data in Amazon DynamoDB.
+     * @param scanExpression
+     *            Details on how to run the scan, including any filters to apply
+     *            to limit results.
+     * @param totalSegments
+     *            Number of total parallel scan segments.
+     *            <b>Range: </b>1 - 4096
+     * @param config
+     *            The configuration to use for this scan, which overrides the
+     *            default provided at object construction.
+     * @return An iterator over the pages of the scan, which starts scanning
+     *         when first used.
+     * @see ParallelScanner
+     */
+    public <T> ParallelScanner<ScanResultPage<T>> parallelScanPages(
+            final Class<T> clazz,
+            DynamoDBScanExpression scanExpression,
+            int totalSegments,
+            DynamoDBMapperConfig config) {
+
+        final DynamoDBMapperConfig finalConfig = mergeConfig(config);
+
+        List<ScanRequest> parallelScanRequests = createParallelScanRequestsFromExpression(clazz, scanExpression, totalSegments, finalConfig);
+        for ( ScanRequest scanRequest : parallelScanRequests ) {
+            applyUserAgent(scanRequest);
+        }
+        final String tableName = parallelScanRequests.get(0).getTableName();
+
+        return new ParallelScanner<ScanResultPage<T>>(db, parallelScanRequests,
+                new ParallelScanner.PageConverter<ScanResultPage<T>>() {
+                    @Override
+                    public ScanResultPage<T> convert(ScanResult scanResult) {
+                        ScanResultPage<T> result = new ScanResultPage<T>();
+                        List<AttributeTransformer.Parameters<T>> parameters =
+                            toParameters(scanResult.getItems(), clazz, tableName, finalConfig);
+
+                        result.setResults(marshallIntoObjects(parameters));
+                        result.setLastEvaluatedKey(scanResult.getLastEvaluatedKey());
+                        return result;
+                    }
+                });
+    }
+
     /**
      * Scans through an Amazon DynamoDB table and returns a single page of matching
      * results. The table to scan is determined by looking at the annotations on
@@ -2924,30 +2913,27 @@ public class DynamoDBMapper {
     private ItemConverter getConverter(DynamoDBMapperConfig config) {
         ConversionSchema schema = config.getConversionSchema();
 
+        boolean cacheable =
+                schema instanceof ConversionSchemas.StandardConversionSchema;
+        if (cacheable) {
+            ItemConverter converter = converters.get(schema);
+            if (converter != null) {
+                return converter;
+            }
+        }
+
         ConversionSchema.Dependencies params = new ConversionSchema.Dependencies()
                 .with(DynamoDBReflector.class, reflector)
                 .with(S3ClientCache.class, s3cc);
 
-        return schema.getConverter(params);
-    }
-
-    private void pauseExponentially(int retries) {
-        if (retries == 0) {
-            return;
-        }
-
-        Random random = new Random();
-        long delay = 0;
-        long scaleFactor = 500 + random.nextInt(100);
-        delay = (long) (Math.pow(2, retries) * scaleFactor);
-        delay = Math.min(delay, MAX_BACKOFF_IN_MILLISECONDS);
-
-        try {
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new AmazonClientException(e.getMessage(), e);
+        ItemConverter converter = schema.getConverter(params);
+        if (cacheable) {
+            ItemConverter existing = converters.putIfAbsent(schema, converter);
+            if (existing != null) {
+                return existing;
+            }
         }
+        return converter;
     }
 
     /**
@@ -3009,6 +2995,25 @@ public class DynamoDBMapper {
         return request;
     }
 
+    /**
+     * Receives the objects loaded by a batch load operation.
+     *
+     * @see DynamoDBMapper#batchLoad(Iterator, DynamoDBMapperConfig, BatchLoadConfig, BatchLoadListener)
+     */
+    public static interface BatchLoadListener {
+
+        /**
+         * Called with each object loaded.
+         *
+         * @param tableName
+         *            The name of the table the object was loaded from.
+         * @param item
+         *            The object, which can be cast to the user defined type
+         *            that is annotated as mapping that table.
+         */
+        void onItemLoaded(String tableName, Object item);
+    }
+
     /**
      * The return type of batchWrite, batchDelete and batchSave. It contains the information about the unprocessed items
      * and the exception causing the failure.
@@ -16,15 +16,12 @@ package com.amazonaws.services.dynamodbv2.datamodeling;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
-
-import org.apache.http.annotation.GuardedBy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Reflection assistant for {@link DynamoDBMapper}
@@ -33,40 +30,36 @@ class DynamoDBReflector {
 
     /*
      * Several caches for performance. Collectively, they can make this class
-     * over twice as fast.
+     * over twice as fast. They are read on every mapped item by every thread
+     * using the mapper, so they are concurrent maps rather than synchronized
+     * ones; computing an entry twice in a race is harmless.
      */
-    private final Map<Class<?>, Collection<Method>> getterCache = new HashMap<Class<?>, Collection<Method>>();
-    private final Map<Class<?>, Method> primaryHashKeyGetterCache = new HashMap<Class<?>, Method>();
-    private final Map<Class<?>, Method> primaryRangeKeyGetterCache = new HashMap<Class<?>, Method>();
+    private final Map<Class<?>, Collection<Method>> getterCache = new ConcurrentHashMap<Class<?>, Collection<Method>>();
+    private final Map<Class<?>, Method> primaryHashKeyGetterCache = new ConcurrentHashMap<Class<?>, Method>();
+    private final Map<Class<?>, Method> primaryRangeKeyGetterCache = new ConcurrentHashMap<Class<?>, Method>();
+    /** The classes known not to have a range key, which can't be cached as null values. */
+    private final Set<Class<?>> noPrimaryRangeKeyCache = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 
     /*
      * All caches keyed by a Method use the getter for a particular mapped
      * property
      */
-    private final Map<Method, Method> setterCache = new HashMap<Method, Method>();
-
-    @GuardedBy("readWriteLockAttrName")
-    private final Map<Method, String> attributeNameCache = new HashMap<Method, String>();
-
-    private final Map<Method, Boolean> versionAttributeGetterCache = new HashMap<Method, Boolean>();
-    private final Map<Method, Boolean> autoGeneratedKeyGetterCache = new HashMap<Method, Boolean>();
-
-    private final ReentrantReadWriteLock readWriteLockAttrName = new ReentrantReadWriteLock();
-    private final ReadLock readLockAttrName = readWriteLockAttrName.readLock();
-    private final WriteLock writeLockAttrName = readWriteLockAttrName.writeLock();
+    private final Map<Method, Method> setterCache = new ConcurrentHashMap<Method, Method>();
+    private final Map<Method, String> attributeNameCache = new ConcurrentHashMap<Method, String>();
+    private final Map<Method, Boolean> versionAttributeGetterCache = new ConcurrentHashMap<Method, Boolean>();
+    private final Map<Method, Boolean> autoGeneratedKeyGetterCache = new ConcurrentHashMap<Method, Boolean>();
 
     /**
      * Returns the set of getter methods which are relevant when marshalling or
      * unmarshalling an object.
      */
     Collection<Method> getRelevantGetters(Class<?> clazz) {
-        synchronized (getterCache) {
-            if ( !getterCache.containsKey(clazz) ) {
-                List<Method> relevantGetters = findRelevantGetters(clazz);
-                getterCache.put(clazz, relevantGetters);
-            }
-            return getterCache.get(clazz);
+        Collection<Method> relevantGetters = getterCache.get(clazz);
+        if ( relevantGetters == null ) {
+            relevantGetters = Collections.unmodifiableList(findRelevantGetters(clazz));
+            getterCache.put(clazz, relevantGetters);
         }
+        return relevantGetters;
     }
 
     static List<Method> findRelevantGetters(Class<?> clazz) {
@@ -103,20 +96,23 @@ class DynamoDBReflector {
      * given, or null if the class doesn't have one.
      */
     <T> Method getPrimaryRangeKeyGetter(Class<T> clazz) {
-        synchronized (primaryRangeKeyGetterCache) {
-            if ( !primaryRangeKeyGetterCache.containsKey(clazz) ) {
-                Method rangeKeyMethod = null;
-                for ( Method method : getRelevantGetters(clazz) ) {
-                    if ( method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method, DynamoDBRangeKey.class)) {
-                        rangeKeyMethod = method;
-                        break;
-                    }
-                }
-                primaryRangeKeyGetterCache.put(clazz, rangeKeyMethod);
+        Method rangeKeyMethod = primaryRangeKeyGetterCache.get(clazz);
+        if ( rangeKeyMethod != null || noPrimaryRangeKeyCache.contains(clazz) ) {
+            return rangeKeyMethod;
+        }
+        for ( Method method : getRelevantGetters(clazz) ) {
+            if ( method.getParameterTypes().length == 0
+                    && ReflectionUtils.getterOrFieldHasAnnotation(method, DynamoDBRangeKey.class)) {
+                rangeKeyMethod = method;
+                break;
             }
-            return primaryRangeKeyGetterCache.get(clazz);
         }
+        if ( rangeKeyMethod == null ) {
+            noPrimaryRangeKeyCache.add(clazz);
+        } else {
+            primaryRangeKeyGetterCache.put(clazz, rangeKeyMethod);
+        }
+        return rangeKeyMethod;
     }
 
     /**
@@ -144,18 +140,16 @@ class DynamoDBReflector {
      * throwing an exception if there isn't one.
      */
     <T> Method getPrimaryHashKeyGetter(Class<T> clazz) {
-        Method hashKeyMethod;
-        synchronized (primaryHashKeyGetterCache) {
-            if ( !primaryHashKeyGetterCache.containsKey(clazz) ) {
-                for ( Method method : getRelevantGetters(clazz) ) {
-                    if ( method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method, DynamoDBHashKey.class)) {
-                        primaryHashKeyGetterCache.put(clazz, method);
-                        break;
-                    }
+        Method hashKeyMethod = primaryHashKeyGetterCache.get(clazz);
+        if ( hashKeyMethod == null ) {
+            for ( Method method : getRelevantGetters(clazz) ) {
+                if ( method.getParameterTypes().length == 0
+                        && ReflectionUtils.getterOrFieldHasAnnotation(method, DynamoDBHashKey.class)) {
+                    hashKeyMethod = method;
+                    primaryHashKeyGetterCache.put(clazz, method);
+                    break;
                 }
             }
-            hashKeyMethod = primaryHashKeyGetterCache.get(clazz);
         }
 
         if ( hashKeyMethod == null ) {
@@ -180,13 +174,7 @@ class DynamoDBReflector {
      * Returns the attribute name corresponding to the given getter method.
      */
     String getAttributeName(Method getter) {
-        String attributeName;
-        readLockAttrName.lock();
-        try {
-            attributeName = attributeNameCache.get(getter);
-        } finally {
-            readLockAttrName.unlock();
-        }
+        String attributeName = attributeNameCache.get(getter);
         if ( attributeName != null )
             return attributeName;
         DynamoDBHashKey hashKeyAnnotation = ReflectionUtils.getAnnotationFromGetterOrField(getter, DynamoDBHashKey.class);
@@ -232,12 +220,7 @@ class DynamoDBReflector {
     }
 
     private String cacheAttributeName(Method getter, String attributeName) {
-        writeLockAttrName.lock();
-        try {
-            attributeNameCache.put(getter, attributeName);
-        } finally {
-            writeLockAttrName.unlock();
-        }
+        attributeNameCache.put(getter, attributeName);
         return attributeName;
     }
 
@@ -246,24 +229,22 @@ class DynamoDBReflector {
      * setter exists.
      */
     Method getSetter(Method getter) {
-        synchronized (setterCache) {
-            if ( !setterCache.containsKey(getter) ) {
-                String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
-                String setterName = "set" + fieldName;
-                Method setter = null;
-                try {
-                    setter = getter.getDeclaringClass().getMethod(setterName, getter.getReturnType());
-                } catch ( NoSuchMethodException e ) {
-                    throw new DynamoDBMappingException("Expected a public, one-argument method called " + setterName
-                            + " on class " + getter.getDeclaringClass(), e);
-                } catch ( SecurityException e ) {
-                    throw new DynamoDBMappingException("No access to public, one-argument method called " + setterName
-                            + " on class " + getter.getDeclaringClass(), e);
-                }
-                setterCache.put(getter, setter);
+        Method setter = setterCache.get(getter);
+        if ( setter == null ) {
+            String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
+            String setterName = "set" + fieldName;
+            try {
+                setter = getter.getDeclaringClass().getMethod(setterName, getter.getReturnType());
+            } catch ( NoSuchMethodException e ) {
+                throw new DynamoDBMappingException("Expected a public, one-argument method called " + setterName
+                        + " on class " + getter.getDeclaringClass(), e);
+            } catch ( SecurityException e ) {
+                throw new DynamoDBMappingException("No access to public, one-argument method called " + setterName
+                        + " on class " + getter.getDeclaringClass(), e);
             }
-            return setterCache.get(getter);
+            setterCache.put(getter, setter);
         }
+        return setter;
     }
 
     /**
@@ -271,31 +252,27 @@ class DynamoDBReflector {
      * version attribute.
      */
     boolean isVersionAttributeGetter(Method getter) {
-        synchronized (versionAttributeGetterCache) {
-            if ( !versionAttributeGetterCache.containsKey(getter) ) {
-                versionAttributeGetterCache.put(
-                        getter,
-                        getter.getName().startsWith("get") && getter.getParameterTypes().length == 0
-                                && ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBVersionAttribute.class));
-            }
-            return versionAttributeGetterCache.get(getter);
+        Boolean isVersionAttributeGetter = versionAttributeGetterCache.get(getter);
+        if ( isVersionAttributeGetter == null ) {
+            isVersionAttributeGetter = getter.getName().startsWith("get") && getter.getParameterTypes().length == 0
+                    && ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBVersionAttribute.class);
+            versionAttributeGetterCache.put(getter, isVersionAttributeGetter);
         }
+        return isVersionAttributeGetter;
     }
 
     /**
      * Returns whether the method given is an assignable key getter.
      */
     boolean isAssignableKey(Method getter) {
-        synchronized (autoGeneratedKeyGetterCache) {
-            if ( !autoGeneratedKeyGetterCache.containsKey(getter) ) {
-                autoGeneratedKeyGetterCache.put(
-                        getter,
-                        ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBAutoGeneratedKey.class)
-                                && ( ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBHashKey.class) ||
-                                     ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class)));
-            }
-            return autoGeneratedKeyGetterCache.get(getter);
+        Boolean isAssignableKey = autoGeneratedKeyGetterCache.get(getter);
+        if ( isAssignableKey == null ) {
+            isAssignableKey = ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBAutoGeneratedKey.class)
+                    && ( ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBHashKey.class) ||
+                         ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class));
+            autoGeneratedKeyGetterCache.put(getter, isAssignableKey);
         }
+        return isAssignableKey;
     }
 
     /**
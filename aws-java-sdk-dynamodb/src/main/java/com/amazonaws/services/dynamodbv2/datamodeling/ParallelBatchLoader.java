@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import static com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS;
+import static com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.applyBatchOperationUserAgent;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+/**
+ * Groups keys into batches as they are added, and loads up to
+ * {@link BatchLoadConfig#getMaxInFlightBatches()} of these batches at once.
+ * The unprocessed keys of a batch are not retried on their own, but added to
+ * the next batches sent, along with new keys. Keys still waiting to be loaded
+ * are ignored if added again, as a request can't contain the same key twice;
+ * a key is forgotten once loaded, so only the keys of the batch being built,
+ * of the batches in flight and left unprocessed are held in memory.
+ * <p>
+ * Used by a single batch load operation of the mapper, from a single thread.
+ */
+final class ParallelBatchLoader {
+
+    /** The maximum number of keys in a batch get request. */
+    static final int MAX_KEYS_PER_BATCH = 100;
+
+    /**
+     * Handles the items loaded, possibly from several threads at once.
+     */
+    interface ItemHandler {
+        void handle(String tableName, Map<String, AttributeValue> item);
+    }
+
+    private final AmazonDynamoDB db;
+    private final boolean consistentReads;
+    private final RequestMetricCollector requestMetricCollector;
+    private final ItemHandler handler;
+    private final int maxInFlightBatches;
+    private final BatchExecutor executor;
+
+    /** Guards pendingKeys, inFlightBatches and unprocessedKeys. */
+    private final Object lock = new Object();
+
+    /** The keys added but not loaded yet, by table name. */
+    private final Map<String, Set<Map<String, AttributeValue>>> pendingKeys =
+            new HashMap<String, Set<Map<String, AttributeValue>>>();
+    private int inFlightBatches;
+    private final Map<String, List<Map<String, AttributeValue>>> unprocessedKeys =
+            new HashMap<String, List<Map<String, AttributeValue>>>();
+
+    /** The number of batches in a row of which no key was processed. */
+    private final AtomicInteger batchesWithoutProgress = new AtomicInteger();
+
+    /** The first error of a thread loading a batch. */
+    private volatile Throwable failure;
+
+    private Map<String, List<Map<String, AttributeValue>>> batch;
+    private int batchSize;
+
+    ParallelBatchLoader(
+            AmazonDynamoDB db,
+            BatchLoadConfig config,
+            boolean consistentReads,
+            RequestMetricCollector requestMetricCollector,
+            ItemHandler handler) {
+
+        this.db = db;
+        this.consistentReads = consistentReads;
+        this.requestMetricCollector = requestMetricCollector;
+        this.handler = handler;
+        this.executor = new BatchExecutor(config);
+        this.maxInFlightBatches = executor.getMaxInFlightBatches();
+        newBatch();
+    }
+
+    /**
+     * Adds the key of an item to load, unless it is still waiting to be
+     * loaded.
+     */
+    void add(String tableName, Map<String, AttributeValue> key) {
+        checkFailure();
+
+        synchronized (lock) {
+            Set<Map<String, AttributeValue>> keys = pendingKeys.get(tableName);
+            if (keys == null) {
+                keys = new HashSet<Map<String, AttributeValue>>();
+                pendingKeys.put(tableName, keys);
+            }
+            if (!keys.add(key)) {
+                return;
+            }
+        }
+
+        addUnprocessedKeys();
+        addToBatch(tableName, key);
+    }
+
+    /**
+     * Loads the last keys added, along with any unprocessed key, and waits
+     * for all of them to be loaded.
+     */
+    void finish() {
+        while (true) {
+            addUnprocessedKeys();
+            flush();
+            synchronized (lock) {
+                while (inFlightBatches > 0 && unprocessedKeys.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new AmazonClientException(e.getMessage(), e);
+                    }
+                }
+                checkFailure();
+                if (inFlightBatches == 0 && unprocessedKeys.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the threads of this loader, if it created its own.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void newBatch() {
+        batch = new HashMap<String, List<Map<String, AttributeValue>>>();
+        batchSize = 0;
+    }
+
+    private void addToBatch(String tableName, Map<String, AttributeValue> key) {
+        List<Map<String, AttributeValue>> keys = batch.get(tableName);
+        if (keys == null) {
+            keys = new LinkedList<Map<String, AttributeValue>>();
+            batch.put(tableName, keys);
+        }
+        keys.add(key);
+
+        if (++batchSize == MAX_KEYS_PER_BATCH) {
+            flush();
+        }
+    }
+
+    /**
+     * Moves the keys left unprocessed by the batches loaded so far to the
+     * current batch.
+     */
+    private void addUnprocessedKeys() {
+        Map<String, List<Map<String, AttributeValue>>> keys;
+        synchronized (lock) {
+            if (unprocessedKeys.isEmpty()) {
+                return;
+            }
+            keys = new HashMap<String, List<Map<String, AttributeValue>>>(unprocessedKeys);
+            unprocessedKeys.clear();
+        }
+        for (Map.Entry<String, List<Map<String, AttributeValue>>> entry : keys.entrySet()) {
+            for (Map<String, AttributeValue> key : entry.getValue()) {
+                addToBatch(entry.getKey(), key);
+            }
+        }
+    }
+
+    private void flush() {
+        if (batchSize == 0) {
+            return;
+        }
+        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+        for (Map.Entry<String, List<Map<String, AttributeValue>>> entry : batch.entrySet()) {
+            requestItems.put(entry.getKey(), new KeysAndAttributes()
+                    .withConsistentRead(consistentReads)
+                    .withKeys(entry.getValue()));
+        }
+        final BatchTask task = new BatchTask(requestItems, batchSize);
+        newBatch();
+
+        synchronized (lock) {
+            while (inFlightBatches >= maxInFlightBatches) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AmazonClientException(e.getMessage(), e);
+                }
+            }
+            inFlightBatches++;
+        }
+
+        if (executor.isCallingThread()) {
+            task.run();
+            checkFailure();
+            return;
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                inFlightBatches--;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Loads one batch, and then hands back its unprocessed keys.
+     */
+    private final class BatchTask implements Runnable {
+        private final Map<String, KeysAndAttributes> requestItems;
+        private final int size;
+
+        BatchTask(Map<String, KeysAndAttributes> requestItems, int size) {
+            this.requestItems = requestItems;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            Map<String, KeysAndAttributes> unprocessed = null;
+            try {
+                BatchGetItemRequest request = new BatchGetItemRequest()
+                        .withRequestItems(requestItems)
+                        .withRequestMetricCollector(requestMetricCollector);
+                BatchGetItemResult result =
+                        db.batchGetItem(applyBatchOperationUserAgent(request));
+
+                Map<String, List<Map<String, AttributeValue>>> responses = result.getResponses();
+                if (responses != null) {
+                    for (Map.Entry<String, List<Map<String, AttributeValue>>> entry : responses.entrySet()) {
+                        for (Map<String, AttributeValue> item : entry.getValue()) {
+                            handler.handle(entry.getKey(), item);
+                        }
+                    }
+                }
+
+                unprocessed = result.getUnprocessedKeys();
+                if (unprocessed != null && countKeys(unprocessed) == size) {
+                    int retries = batchesWithoutProgress.incrementAndGet();
+                    if (retries > BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
+                        throw new AmazonClientException(
+                                "Batch Get Item request to server hasn't received any data. "
+                                + "Please try again later.");
+                    }
+                    BatchExecutor.pause(retries);
+                } else {
+                    batchesWithoutProgress.set(0);
+                }
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (Error e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                throw e;
+            } finally {
+                synchronized (lock) {
+                    inFlightBatches--;
+                    forgetLoadedKeys(requestItems, unprocessed);
+                    if (unprocessed != null && failure == null) {
+                        for (Map.Entry<String, KeysAndAttributes> entry : unprocessed.entrySet()) {
+                            List<Map<String, AttributeValue>> keys = unprocessedKeys.get(entry.getKey());
+                            if (keys == null) {
+                                keys = new LinkedList<Map<String, AttributeValue>>();
+                                unprocessedKeys.put(entry.getKey(), keys);
+                            }
+                            keys.addAll(entry.getValue().getKeys());
+                        }
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the keys of a batch from the pending keys, except those left
+     * unprocessed.
+     */
+    private void forgetLoadedKeys(
+            Map<String, KeysAndAttributes> requestItems,
+            Map<String, KeysAndAttributes> unprocessed) {
+
+        for (Map.Entry<String, KeysAndAttributes> entry : requestItems.entrySet()) {
+            Set<Map<String, AttributeValue>> keys = pendingKeys.get(entry.getKey());
+            for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                keys.remove(key);
+            }
+            KeysAndAttributes left = unprocessed == null ? null : unprocessed.get(entry.getKey());
+            if (left != null && left.getKeys() != null) {
+                keys.addAll(left.getKeys());
+            }
+        }
+    }
+
+    private static int countKeys(Map<String, KeysAndAttributes> requestItems) {
+        int count = 0;
+        for (KeysAndAttributes keysAndAttributes : requestItems.values()) {
+            if (keysAndAttributes.getKeys() != null) {
+                count += keysAndAttributes.getKeys().size();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import static com.amazonaws.services.dynamodbv2.datamodeling.BatchExecutor.pause;
+import static com.amazonaws.services.dynamodbv2.datamodeling.BatchExecutor.sleep;
+import static com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.MAX_ITEMS_PER_BATCH;
+import static com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.applyBatchOperationUserAgent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Groups write requests into batches as they are added, and writes up to
+ * {@link BatchWriteConfig#getMaxInFlightBatches()} of these batches at once.
+ * Adding a request blocks while that many batches are in flight, so the
+ * caller never gets far ahead of DynamoDB.
+ * <p>
+ * Used by a single batch write operation of the mapper, from a single thread.
+ */
+final class ParallelBatchWriter {
+
+    private final AmazonDynamoDB db;
+    private final int maxInFlightBatches;
+    private final int maxUnprocessedItemsRetries;
+    private final Map<String, CapacityLimiter> limiters;
+
+    private final BatchExecutor executor;
+    private final Semaphore inFlightBatches;
+
+    private final List<FailedBatch> failedBatches =
+            Collections.synchronizedList(new LinkedList<FailedBatch>());
+
+    /** The number of batches throttled in a row, across all the threads. */
+    private final AtomicInteger consecutiveThrottles = new AtomicInteger();
+
+    /** The first unexpected error of a thread writing a batch. */
+    private volatile Throwable failure;
+
+    private Map<String, List<WriteRequest>> batch;
+    private List<Runnable> onBatchWritten;
+    private int batchSize;
+
+    ParallelBatchWriter(AmazonDynamoDB db, BatchWriteConfig config) {
+        this.db = db;
+        this.executor = new BatchExecutor(config);
+        this.maxInFlightBatches = executor.getMaxInFlightBatches();
+        this.maxUnprocessedItemsRetries = config.getMaxUnprocessedItemsRetries();
+
+        Map<String, CapacityLimiter> limiters = new HashMap<String, CapacityLimiter>();
+        for (Map.Entry<String, Double> limit : config.getWriteCapacityLimits().entrySet()) {
+            limiters.put(limit.getKey(), new CapacityLimiter(limit.getValue()));
+        }
+        this.limiters = limiters;
+
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
+        newBatch();
+    }
+
+    /**
+     * Adds a write request to the current batch, which is sent once full.
+     *
+     * @param onWritten
+     *            Called once the batch of the request has been written,
+     *            whether successfully or not; or null.
+     */
+    void add(String tableName, WriteRequest request, Runnable onWritten) {
+        checkFailure();
+
+        List<WriteRequest> requests = batch.get(tableName);
+        if (requests == null) {
+            requests = new LinkedList<WriteRequest>();
+            batch.put(tableName, requests);
+        }
+        requests.add(request);
+        if (onWritten != null) {
+            onBatchWritten.add(onWritten);
+        }
+
+        if (++batchSize == MAX_ITEMS_PER_BATCH) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the last batch and waits for all the batches to be written.
+     *
+     * @return The batches that could not be written.
+     */
+    List<FailedBatch> finish() {
+        flush();
+        if (!executor.isCallingThread()) {
+            try {
+                inFlightBatches.acquire(maxInFlightBatches);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException(e.getMessage(), e);
+            }
+            inFlightBatches.release(maxInFlightBatches);
+        }
+        checkFailure();
+        return new ArrayList<FailedBatch>(failedBatches);
+    }
+
+    /**
+     * Releases the threads of this writer, if it created its own. Batches
+     * still in flight are written in the background.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void newBatch() {
+        batch = new HashMap<String, List<WriteRequest>>();
+        onBatchWritten = new ArrayList<Runnable>();
+        batchSize = 0;
+    }
+
+    private void flush() {
+        if (batchSize == 0) {
+            return;
+        }
+        final BatchTask task = new BatchTask(batch, onBatchWritten);
+        newBatch();
+
+        if (executor.isCallingThread()) {
+            task.run();
+            checkFailure();
+            return;
+        }
+
+        try {
+            inFlightBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        inFlightBatches.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightBatches.release();
+            throw e;
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Writes one batch, and then notifies its requests.
+     */
+    private final class BatchTask implements Runnable {
+        private final Map<String, List<WriteRequest>> batch;
+        private final List<Runnable> onWritten;
+
+        BatchTask(Map<String, List<WriteRequest>> batch, List<Runnable> onWritten) {
+            this.batch = batch;
+            this.onWritten = onWritten;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<FailedBatch> failed = writeOneBatch(batch);
+                if (!failed.isEmpty()) {
+                    failedBatches.addAll(failed);
+                    if (containsThrottlingException(failed)) {
+                        pause(consecutiveThrottles.incrementAndGet());
+                    }
+                } else {
+                    consecutiveThrottles.set(0);
+                }
+                for (Runnable callback : onWritten) {
+                    callback.run();
+                }
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (Error e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Process one batch of requests(max 25). It will divide the batch if
+     * receives request too large exception(the total size of the request is beyond 1M).
+     */
+    private List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch) {
+
+        List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
+        Map<String, List<WriteRequest>> firstHalfBatch = new HashMap<String, List<WriteRequest>>();
+        Map<String, List<WriteRequest>> secondHalfBatch = new HashMap<String, List<WriteRequest>>();
+        FailedBatch failedBatch = callUntilCompletion(batch);
+
+        if (failedBatch != null) {
+            // If the exception is request entity too large, we divide the batch
+            // into smaller parts.
+
+            if (failedBatch.getException() instanceof AmazonServiceException
+            && RetryUtils.isRequestEntityTooLargeException((AmazonServiceException) failedBatch.getException())) {
+
+                // If only one item left, the item size must beyond 64k, which
+                // exceedes the limit.
+
+                if (computeFailedBatchSize(failedBatch) == 1) {
+                    failedBatches.add(failedBatch);
+                } else {
+                    divideBatch(batch, firstHalfBatch, secondHalfBatch);
+                    failedBatches.addAll(writeOneBatch(firstHalfBatch));
+                    failedBatches.addAll(writeOneBatch(secondHalfBatch));
+                }
+
+            } else {
+                failedBatches.add(failedBatch);
+            }
+
+        }
+        return failedBatches;
+    }
+
+    /**
+     * Check whether there are throttling exception in the failed batches.
+     */
+    private static boolean containsThrottlingException(List<FailedBatch> failedBatches) {
+        for (FailedBatch failedBatch : failedBatches) {
+            Exception e = failedBatch.getException();
+            if (e instanceof AmazonServiceException
+                    && RetryUtils.isThrottlingException((AmazonServiceException) e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Divide the batch of objects to save into two smaller batches. Each contains half of the elements.
+     */
+    private static void divideBatch(Map<String, List<WriteRequest>> batch, Map<String, List<WriteRequest>> firstHalfBatch, Map<String, List<WriteRequest>> secondHalfBatch) {
+        for (String key : batch.keySet()) {
+            List<WriteRequest> requests = batch.get(key);
+            List<WriteRequest> firstHalfRequests = requests.subList(0, requests.size() / 2);
+            List<WriteRequest> secondHalfRequests = requests.subList(requests.size() / 2, requests.size());
+            firstHalfBatch.put(key, firstHalfRequests);
+            secondHalfBatch.put(key, secondHalfRequests);
+        }
+    }
+
+    /**
+     * Count the total number of unprocessed items in the failed batch.
+     */
+    private static int computeFailedBatchSize(FailedBatch failedBatch) {
+        int count = 0;
+        for (String tableName : failedBatch.getUnprocessedItems().keySet()) {
+            count += failedBatch.getUnprocessedItems().get(tableName).size();
+        }
+        return count;
+    }
+
+    /**
+     * Keeps retrying the unprocessed items of the batch until they are all
+     * processed, an exception occurs or the retries are exhausted.
+     */
+    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch) {
+        int retries = 0;
+        while (true) {
+            BatchWriteItemResult result;
+            try {
+                acquireCapacity(batch);
+                BatchWriteItemRequest request =
+                        new BatchWriteItemRequest().withRequestItems(batch);
+                if (!limiters.isEmpty()) {
+                    request.setReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+                }
+                result = db.batchWriteItem(applyBatchOperationUserAgent(request));
+            } catch (Exception e) {
+                FailedBatch failedBatch = new FailedBatch();
+                failedBatch.setUnprocessedItems(batch);
+                failedBatch.setException(e);
+                return failedBatch;
+            }
+            adjustCapacity(batch, result.getConsumedCapacity());
+
+            batch = result.getUnprocessedItems();
+            if (batch == null || batch.isEmpty()) {
+                return null;
+            }
+            if (retries >= maxUnprocessedItemsRetries) {
+                FailedBatch failedBatch = new FailedBatch();
+                failedBatch.setUnprocessedItems(batch);
+                return failedBatch;
+            }
+            pause(++retries);
+        }
+    }
+
+    /**
+     * Waits until the tables written by the batch have the capacity for it,
+     * counting one capacity unit per item until the actual consumption is
+     * known.
+     */
+    private void acquireCapacity(Map<String, List<WriteRequest>> batch) {
+        if (limiters.isEmpty()) {
+            return;
+        }
+        long delayNanos = 0;
+        for (Map.Entry<String, List<WriteRequest>> entry : batch.entrySet()) {
+            CapacityLimiter limiter = limiters.get(entry.getKey());
+            if (limiter != null) {
+                delayNanos = Math.max(delayNanos, limiter.reserve(entry.getValue().size()));
+            }
+        }
+        sleep(TimeUnit.NANOSECONDS.toMillis(delayNanos));
+    }
+
+    /**
+     * Replaces the estimated capacity of a batch by the capacity it consumed.
+     */
+    private void adjustCapacity(
+            Map<String, List<WriteRequest>> batch,
+            List<ConsumedCapacity> consumedCapacities) {
+
+        if (limiters.isEmpty() || consumedCapacities == null) {
+            return;
+        }
+        for (ConsumedCapacity consumed : consumedCapacities) {
+            CapacityLimiter limiter = limiters.get(consumed.getTableName());
+            List<WriteRequest> requests = batch.get(consumed.getTableName());
+            if (limiter != null && requests != null && consumed.getCapacityUnits() != null) {
+                limiter.consume(consumed.getCapacityUnits() - requests.size());
+            }
+        }
+    }
+
+    /**
+     * A token bucket of write capacity units, refilled at the rate allowed
+     * for a table and holding at most one second worth of capacity. Units may
+     * be consumed beyond what is available; later requests then wait for the
+     * bucket to refill.
+     */
+    static final class CapacityLimiter {
+        private final double unitsPerSecond;
+        private double availableUnits;
+        private long lastRefillNanos;
+
+        CapacityLimiter(double unitsPerSecond) {
+            this.unitsPerSecond = unitsPerSecond;
+            this.availableUnits = unitsPerSecond;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * Consumes the given units, and returns how long to wait before using
+         * them, in nanoseconds.
+         */
+        synchronized long reserve(double units) {
+            consume(units);
+            if (availableUnits >= 0) {
+                return 0;
+            }
+            return (long) (-availableUnits / unitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Consumes the given units, or gives them back if negative.
+         */
+        synchronized void consume(double units) {
+            long now = System.nanoTime();
+            double refill = (now - lastRefillNanos) * unitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            availableUnits = Math.min(unitsPerSecond, availableUnits + refill) - units;
+            lastRefillNanos = now;
+        }
+    }
+}
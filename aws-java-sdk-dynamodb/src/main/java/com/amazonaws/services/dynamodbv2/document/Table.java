@@ -56,6 +56,7 @@ import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.amazonaws.services.dynamodbv2.model.TableStatus;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
+import com.amazonaws.services.dynamodbv2.util.ParallelScanner;
 import com.amazonaws.services.dynamodbv2.xspec.DeleteItemExpressionSpec;
 import com.amazonaws.services.dynamodbv2.xspec.GetItemExpressionSpec;
 import com.amazonaws.services.dynamodbv2.xspec.QueryExpressionSpec;
@@ -285,6 +286,24 @@ public class Table implements PutItemApi, GetItemApi, QueryApi, ScanApi,
         return scanDelegate.scan(params);
     }
 
+    /**
+     * Scans the table on logically partitioned segments in parallel, and
+     * returns the pages of each segment as soon as they arrive. The scan
+     * starts when the returned scanner is first iterated, so that it can be
+     * configured first, for example to resume from a checkpoint.
+     *
+     * @param spec
+     *            The specification of the scan of each segment; its segment,
+     *            total segments, exclusive start key and max result size are
+     *            ignored.
+     * @param totalSegments
+     *            The number of segments to scan in parallel.
+     * @see ParallelScanner
+     */
+    public ParallelScanner<ScanOutcome> parallelScan(ScanSpec spec, int totalSegments) {
+        return scanDelegate.parallelScan(spec, totalSegments);
+    }
+
     @Beta
     public ItemCollection<ScanOutcome> scan(ScanExpressionSpec scanExpressions) {
         return scanDelegate.scan(new ScanSpec()
@@ -14,7 +14,9 @@
  */
 package com.amazonaws.services.dynamodbv2.document.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
@@ -27,6 +29,8 @@ import com.amazonaws.services.dynamodbv2.document.api.ScanApi;
 import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.util.ParallelScanner;
 
 /**
  * The implementation for <code>ScanApi</code>.
@@ -69,7 +73,37 @@ public class ScanImpl extends AbstractImpl implements ScanApi {
         return doScan(spec);
     }
 
+    /**
+     * Returns a scanner of the segments of the table, based on the given
+     * specification; the segment and total segments of which are ignored.
+     */
+    public ParallelScanner<ScanOutcome> parallelScan(ScanSpec spec, int totalSegments) {
+        if (totalSegments < 1)
+            throw new IllegalArgumentException("totalSegments must be at least 1");
+        ScanRequest req = prepareRequest(spec)
+            .withLimit(spec.getMaxPageSize());
+        List<ScanRequest> segmentRequests = new ArrayList<ScanRequest>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            segmentRequests.add(req.clone()
+                .withSegment(segment)
+                .withTotalSegments(totalSegments)
+                .withExclusiveStartKey(null));
+        }
+        return new ParallelScanner<ScanOutcome>(getClient(), segmentRequests,
+            new ParallelScanner.PageConverter<ScanOutcome>() {
+                @Override
+                public ScanOutcome convert(ScanResult result) {
+                    return new ScanOutcome(result);
+                }
+            });
+    }
+
     protected ItemCollection<ScanOutcome> doScan(ScanSpec spec) {
+        prepareRequest(spec);
+        return new ScanCollection(getClient(), spec);
+    }
+
+    private ScanRequest prepareRequest(ScanSpec spec) {
         // set the table name
         String tableName = getTable().getTableName();
         ScanRequest req = spec.getRequest().withTableName(tableName);
@@ -94,6 +128,6 @@ public class ScanImpl extends AbstractImpl implements ScanApi {
             .withExpressionAttributeNames(spec.getNameMap())
             .withExpressionAttributeValues(attrValMap)
             ;
-        return new ScanCollection(getClient(), spec);
+        return req;
     }
 }
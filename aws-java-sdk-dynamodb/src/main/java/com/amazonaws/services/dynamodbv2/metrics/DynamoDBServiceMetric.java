@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.metrics;
+
+import com.amazonaws.metrics.ServiceMetricType;
+
+/**
+ * DynamoDB specific non-request specific metric types.
+ */
+public enum DynamoDBServiceMetric implements ServiceMetricType {
+    /**
+     * Time taken to read an item found in the item cache of a
+     * {@link com.amazonaws.services.dynamodbv2.cache.CachingAmazonDynamoDBClient};
+     * the number of samples is the number of cache hits.
+     */
+    DynamoDBItemCacheHit,
+    /**
+     * Time taken to read an item not found in the item cache, from DynamoDB;
+     * the number of samples is the number of cache misses.
+     */
+    DynamoDBItemCacheMiss,
+    ;
+
+    @Override public String getServiceName() { return "DynamoDB"; }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.util;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * The progress of a {@link ParallelScanner}: for each segment, whether it has
+ * been scanned completely, or else the last evaluated key of the last page
+ * consumed, if any. A scan can be resumed from a checkpoint, even in another
+ * process, to only return the pages not consumed yet.
+ */
+public class ParallelScanCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int totalSegments;
+    private final Map<Integer, Map<String, AttributeValue>> lastEvaluatedKeys;
+    private final Set<Integer> completedSegments;
+
+    /**
+     * Returns a checkpoint of a scan that has not started yet.
+     */
+    public ParallelScanCheckpoint(int totalSegments) {
+        this(totalSegments,
+                Collections.<Integer, Map<String, AttributeValue>>emptyMap(),
+                Collections.<Integer>emptySet());
+    }
+
+    /**
+     * @param totalSegments
+     *            The number of segments of the scan.
+     * @param lastEvaluatedKeys
+     *            The last evaluated key of the last page consumed, by segment
+     *            number; segments with no page consumed yet may be omitted.
+     * @param completedSegments
+     *            The numbers of the segments scanned completely.
+     */
+    public ParallelScanCheckpoint(
+            int totalSegments,
+            Map<Integer, Map<String, AttributeValue>> lastEvaluatedKeys,
+            Set<Integer> completedSegments) {
+        if (totalSegments < 1)
+            throw new IllegalArgumentException("totalSegments must be at least 1");
+        this.totalSegments = totalSegments;
+        this.lastEvaluatedKeys = Collections.unmodifiableMap(
+                new HashMap<Integer, Map<String, AttributeValue>>(lastEvaluatedKeys));
+        this.completedSegments = Collections.unmodifiableSet(
+                new HashSet<Integer>(completedSegments));
+    }
+
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    /**
+     * Returns the key to start scanning the given segment from; or null if the
+     * segment is to be scanned from the start, or is complete.
+     */
+    public Map<String, AttributeValue> getLastEvaluatedKey(int segment) {
+        return lastEvaluatedKeys.get(segment);
+    }
+
+    /**
+     * Returns the last evaluated keys of the segments, by segment number.
+     */
+    public Map<Integer, Map<String, AttributeValue>> getLastEvaluatedKeys() {
+        return lastEvaluatedKeys;
+    }
+
+    /**
+     * Returns the numbers of the segments scanned completely.
+     */
+    public Set<Integer> getCompletedSegments() {
+        return completedSegments;
+    }
+
+    public boolean isSegmentComplete(int segment) {
+        return completedSegments.contains(segment);
+    }
+
+    /**
+     * Returns true if all the segments have been scanned completely.
+     */
+    public boolean isComplete() {
+        return completedSegments.size() == totalSegments;
+    }
+
+    @Override
+    public String toString() {
+        return "{totalSegments: " + totalSegments
+                + ", completedSegments: " + completedSegments
+                + ", lastEvaluatedKeys: " + lastEvaluatedKeys + "}";
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Scans the segments of a parallel scan concurrently, and returns their pages
+ * as soon as they arrive, in no particular order across segments. The pages
+ * of a segment are returned in order.
+ * <p>
+ * Pages are fetched ahead of the consumer, but no more than
+ * {@link #withMaxPagesAhead(int) maxPagesAhead} pages are ever waiting to be
+ * consumed or being fetched, so a slow consumer holds on to a bounded number
+ * of pages and no thread. The progress of the scan can be saved at any time with
+ * {@link #getCheckpoint()}, and the scan resumed later with
+ * {@link #withCheckpoint(ParallelScanCheckpoint)}.
+ * <p>
+ * For example, to export a table:
+ *
+ * <pre class="brush: java">
+ * ParallelScanner&lt;ScanOutcome&gt; scanner = table.parallelScan(new ScanSpec(), 16)
+ *         .withCheckpoint(savedCheckpoint);
+ * try {
+ *     while (scanner.hasNext()) {
+ *         export(scanner.next().getItems());
+ *         save(scanner.getCheckpoint());
+ *     }
+ * } finally {
+ *     scanner.close();
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe: it is meant to be consumed by a single
+ * thread.
+ *
+ * @param <P>
+ *            The type of the pages returned
+ */
+public class ParallelScanner<P> implements Iterator<P> {
+
+    /**
+     * Converts the results of scan requests into the pages returned by the
+     * scanner. Called by the threads fetching the pages, possibly
+     * concurrently.
+     */
+    public interface PageConverter<P> {
+        P convert(ScanResult result);
+    }
+
+    /** The default maximum number of threads of the shared executor. */
+    public static final int DEFAULT_MAX_SHARED_THREADS = 50;
+
+    private final AmazonDynamoDB db;
+    private final List<ScanRequest> segmentRequests;
+    private final PageConverter<P> converter;
+
+    private ExecutorService executor;
+    private int maxPagesAhead;
+    private ParallelScanCheckpoint startCheckpoint;
+
+    private boolean started;
+    private boolean closed;
+    private final LinkedList<Page<P>> pages = new LinkedList<Page<P>>();
+    /**
+     * The segments waiting to fetch their next page, as too many pages are
+     * waiting or being fetched.
+     */
+    private final LinkedList<Segment> pausedSegments = new LinkedList<Segment>();
+    /** The number of segments fetching a page. */
+    private int fetchingSegments;
+    /** The number of segments fetching or waiting to fetch a page. */
+    private int activeSegments;
+    private RuntimeException failure;
+    private int failedSegment;
+
+    /** The progress of the consumer. */
+    private final Map<Integer, Map<String, AttributeValue>> lastEvaluatedKeys =
+            new HashMap<Integer, Map<String, AttributeValue>>();
+    private final Set<Integer> completedSegments = new HashSet<Integer>();
+    private int lastSegment = -1;
+
+    /**
+     * @param db
+     *            The client to scan with.
+     * @param segmentRequests
+     *            The scan request of each segment, in segment order, with
+     *            their segment and total segments set. The requests are
+     *            modified as the segments are scanned.
+     * @param converter
+     *            Converts the scan results into pages.
+     */
+    public ParallelScanner(
+            AmazonDynamoDB db,
+            List<ScanRequest> segmentRequests,
+            PageConverter<P> converter) {
+        if (segmentRequests == null || segmentRequests.isEmpty())
+            throw new IllegalArgumentException("segmentRequests must not be empty");
+        this.db = db;
+        this.segmentRequests = new ArrayList<ScanRequest>(segmentRequests);
+        this.converter = converter;
+        this.maxPagesAhead = segmentRequests.size();
+    }
+
+    /**
+     * Sets the executor fetching the pages, and returns this object for
+     * method chaining. If not specified, the pages are fetched by a pool of
+     * up to {@link #DEFAULT_MAX_SHARED_THREADS} daemon threads, shared by all
+     * the scanners. Must be called before iterating.
+     */
+    public ParallelScanner<P> withExecutorService(ExecutorService executor) {
+        checkNotStarted();
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the number of pages that may be waiting to be consumed or being
+     * fetched at once, and returns this object for method chaining. Defaults
+     * to the number of segments. Must be called before iterating.
+     */
+    public ParallelScanner<P> withMaxPagesAhead(int maxPagesAhead) {
+        checkNotStarted();
+        if (maxPagesAhead < 1)
+            throw new IllegalArgumentException("maxPagesAhead must be at least 1");
+        this.maxPagesAhead = maxPagesAhead;
+        return this;
+    }
+
+    /**
+     * Sets the checkpoint to resume the scan from, and returns this object for
+     * method chaining. Complete segments are skipped, and the others are
+     * scanned from their last evaluated key. Must be called before iterating.
+     */
+    public ParallelScanner<P> withCheckpoint(ParallelScanCheckpoint checkpoint) {
+        checkNotStarted();
+        if (checkpoint != null && checkpoint.getTotalSegments() != segmentRequests.size())
+            throw new IllegalArgumentException("The checkpoint is of a scan with "
+                    + checkpoint.getTotalSegments() + " segments, not "
+                    + segmentRequests.size());
+        this.startCheckpoint = checkpoint;
+        return this;
+    }
+
+    /**
+     * Returns true if there are more pages; waiting for the next page to
+     * arrive if necessary.
+     *
+     * @throws AbortedException
+     *             if interrupted while waiting
+     */
+    @Override
+    public boolean hasNext() {
+        List<Segment> toStart = null;
+        synchronized (this) {
+            if (!started) {
+                started = true;
+                toStart = startSegments();
+            }
+        }
+        start(toStart);
+
+        synchronized (this) {
+            boolean interrupted = false;
+            while (pages.isEmpty() && failure == null && activeSegments > 0 && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException("Interrupted while waiting for the next page");
+            }
+            if (!pages.isEmpty())
+                return true;
+            if (failure != null)
+                throw consumerException();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the next page of any segment. Pages are returned even if they
+     * are empty, so that the progress of the scan can be saved.
+     */
+    @Override
+    public P next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Page<P> page;
+        List<Segment> toResume;
+        synchronized (this) {
+            page = pages.removeFirst();
+            toResume = segmentsToResume();
+        }
+        start(toResume);
+
+        lastSegment = page.segment;
+        if (page.lastEvaluatedKey == null) {
+            lastEvaluatedKeys.remove(page.segment);
+            completedSegments.add(page.segment);
+        } else {
+            lastEvaluatedKeys.put(page.segment, page.lastEvaluatedKey);
+        }
+        return page.page;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the segment of the last page returned by {@link #next()}; or -1
+     * if none.
+     */
+    public int getLastSegment() {
+        return lastSegment;
+    }
+
+    /**
+     * Returns the progress of the scan, covering the pages returned by
+     * {@link #next()} so far.
+     */
+    public ParallelScanCheckpoint getCheckpoint() {
+        Map<Integer, Map<String, AttributeValue>> keys =
+                new HashMap<Integer, Map<String, AttributeValue>>();
+        Set<Integer> completed = new HashSet<Integer>(completedSegments);
+        if (startCheckpoint != null) {
+            keys.putAll(startCheckpoint.getLastEvaluatedKeys());
+            completed.addAll(startCheckpoint.getCompletedSegments());
+        }
+        keys.putAll(lastEvaluatedKeys);
+        for (Integer segment : completed) {
+            keys.remove(segment);
+        }
+        return new ParallelScanCheckpoint(segmentRequests.size(), keys, completed);
+    }
+
+    /**
+     * Stops fetching pages. The pages being fetched are discarded as they
+     * arrive.
+     */
+    public synchronized void close() {
+        closed = true;
+        pages.clear();
+        activeSegments -= pausedSegments.size();
+        pausedSegments.clear();
+        notifyAll();
+    }
+
+    private void checkNotStarted() {
+        if (started)
+            throw new IllegalStateException("The scan has already started");
+    }
+
+    /**
+     * Returns the segments to start with, with the scanner's lock held. The
+     * others wait for the first pages to be consumed.
+     */
+    private List<Segment> startSegments() {
+        for (int segment = 0; segment < segmentRequests.size(); segment++) {
+            Map<String, AttributeValue> startKey = null;
+            if (startCheckpoint != null) {
+                if (startCheckpoint.isSegmentComplete(segment))
+                    continue;
+                startKey = startCheckpoint.getLastEvaluatedKey(segment);
+            }
+            pausedSegments.add(new Segment(segment, startKey));
+        }
+        activeSegments = pausedSegments.size();
+        return segmentsToResume();
+    }
+
+    /**
+     * Returns the paused segments that can resume fetching now, with the
+     * scanner's lock held.
+     */
+    private List<Segment> segmentsToResume() {
+        List<Segment> toResume = new ArrayList<Segment>();
+        while (pages.size() + fetchingSegments < maxPagesAhead
+                && !pausedSegments.isEmpty() && failure == null && !closed) {
+            toResume.add(pausedSegments.removeFirst());
+            fetchingSegments++;
+        }
+        return toResume;
+    }
+
+    /**
+     * Returns a new exception for the failure of a segment, to be thrown on
+     * the consumer's thread with its own stack trace. The details of a
+     * service exception are kept.
+     */
+    private RuntimeException consumerException() {
+        String message = "Unable to scan segment #" + failedSegment;
+        if (failure instanceof AmazonServiceException) {
+            AmazonServiceException cause = (AmazonServiceException) failure;
+            AmazonServiceException e = new AmazonServiceException(
+                    message + ": " + cause.getErrorMessage(), cause);
+            e.setErrorCode(cause.getErrorCode());
+            e.setErrorType(cause.getErrorType());
+            e.setRequestId(cause.getRequestId());
+            e.setServiceName(cause.getServiceName());
+            e.setStatusCode(cause.getStatusCode());
+            return e;
+        }
+        return new AmazonClientException(message, failure);
+    }
+
+    private void start(List<Segment> segments) {
+        if (segments == null)
+            return;
+        ExecutorService executor = this.executor == null
+                ? LazyHolder.executor
+                : this.executor;
+        for (Segment segment : segments) {
+            try {
+                executor.execute(segment);
+            } catch (RuntimeException e) {
+                segment.fail(e);
+            }
+        }
+    }
+
+    private static final class Page<P> {
+        private final int segment;
+        private final P page;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+
+        Page(int segment, P page, Map<String, AttributeValue> lastEvaluatedKey) {
+            this.segment = segment;
+            this.page = page;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+    }
+
+    /**
+     * Fetches the next page of a segment, and then the page after that as
+     * long as there are not too many pages waiting.
+     */
+    private final class Segment implements Runnable {
+        private final int segment;
+        private Map<String, AttributeValue> startKey;
+
+        Segment(int segment, Map<String, AttributeValue> startKey) {
+            this.segment = segment;
+            this.startKey = startKey;
+        }
+
+        @Override
+        public void run() {
+            ScanResult result;
+            P page;
+            try {
+                ScanRequest request = segmentRequests.get(segment);
+                request.setExclusiveStartKey(startKey);
+                result = db.scan(request);
+                page = converter.convert(result);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            } catch (Error e) {
+                fail(new AmazonClientException(
+                        "Unable to scan segment #" + segment, e));
+                throw e;
+            }
+
+            List<Segment> toStart;
+            synchronized (ParallelScanner.this) {
+                fetchingSegments--;
+                if (closed) {
+                    activeSegments--;
+                    return;
+                }
+                Map<String, AttributeValue> lastEvaluatedKey = result.getLastEvaluatedKey();
+                pages.add(new Page<P>(segment, page, lastEvaluatedKey));
+                if (lastEvaluatedKey == null || failure != null) {
+                    // done, or given up on along with the other segments
+                    activeSegments--;
+                } else {
+                    startKey = lastEvaluatedKey;
+                    pausedSegments.add(this);
+                }
+                toStart = segmentsToResume();
+                ParallelScanner.this.notifyAll();
+            }
+            start(toStart);
+        }
+
+        void fail(RuntimeException e) {
+            synchronized (ParallelScanner.this) {
+                fetchingSegments--;
+                activeSegments--;
+                if (failure == null) {
+                    failure = e;
+                    failedSegment = segment;
+                    // the paused segments are given up on
+                    activeSegments -= pausedSegments.size();
+                    pausedSegments.clear();
+                }
+                ParallelScanner.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Used to avoid creating the threads until absolutely necessary.
+     */
+    private static final class LazyHolder {
+        /**
+         * The threads used to fetch pages if no executor is specified. Pages
+         * are fetched by tasks that never wait for each other, so a bounded
+         * pool can't deadlock; it only limits how many segments are scanned
+         * at once across all the scanners.
+         */
+        private static final ExecutorService executor;
+        static {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    DEFAULT_MAX_SHARED_THREADS, DEFAULT_MAX_SHARED_THREADS,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger threadCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r);
+                            t.setName("java-sdk-dynamodb-scan-thread-" + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+}
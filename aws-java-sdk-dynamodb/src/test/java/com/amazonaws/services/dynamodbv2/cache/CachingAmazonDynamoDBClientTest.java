@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+public class CachingAmazonDynamoDBClientTest {
+
+    /**
+     * Stores items in memory, by table name and "id" key attribute, and
+     * counts the items read.
+     */
+    private static class FakeDynamoDB extends AmazonDynamoDBClient {
+        private final Map<String, Map<String, AttributeValue>> items =
+                Collections.synchronizedMap(new HashMap<String, Map<String, AttributeValue>>());
+        private final AtomicInteger reads = new AtomicInteger();
+
+        FakeDynamoDB() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public GetItemResult getItem(GetItemRequest request) {
+            if (!request.getKey().keySet().equals(Collections.singleton("id"))) {
+                throw new AmazonServiceException(
+                        "The provided key element does not match the schema");
+            }
+            reads.incrementAndGet();
+            return new GetItemResult().withItem(
+                    items.get(request.getTableName() + "/" + request.getKey().get("id").getS()));
+        }
+
+        @Override
+        public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+            Map<String, List<Map<String, AttributeValue>>> responses =
+                    new HashMap<String, List<Map<String, AttributeValue>>>();
+            for (Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems().entrySet()) {
+                List<Map<String, AttributeValue>> found = new ArrayList<Map<String, AttributeValue>>();
+                for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                    reads.incrementAndGet();
+                    Map<String, AttributeValue> item = items.get(entry.getKey() + "/" + key.get("id").getS());
+                    if (item != null) {
+                        found.add(item);
+                    }
+                }
+                responses.put(entry.getKey(), found);
+            }
+            return new BatchGetItemResult().withResponses(responses);
+        }
+
+        @Override
+        public PutItemResult putItem(PutItemRequest request) {
+            items.put(request.getTableName() + "/" + request.getItem().get("id").getS(),
+                    request.getItem());
+            return new PutItemResult();
+        }
+
+        @Override
+        public UpdateItemResult updateItem(UpdateItemRequest request) {
+            return new UpdateItemResult();
+        }
+    }
+
+    private static Map<String, AttributeValue> key(String id) {
+        return Collections.singletonMap("id", new AttributeValue(id));
+    }
+
+    private static Map<String, AttributeValue> item(String id, String value) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue(id));
+        item.put("value", new AttributeValue(value));
+        return item;
+    }
+
+    private static String valueOf(Map<String, AttributeValue> item) {
+        return item.get("value").getS();
+    }
+
+    @Test
+    public void testServesReadsFromTheCacheUntilWritten() {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake);
+        client.putItem("Table", item("a", "1"));
+
+        // The first read of the table only learns its key attributes
+        assertEquals("1", valueOf(client.getItem("Table", key("a")).getItem()));
+        assertEquals("1", valueOf(client.getItem("Table", key("a")).getItem()));
+        assertEquals("1", valueOf(client.getItem("Table", key("a")).getItem()));
+        assertEquals(2, fake.reads.get());
+        assertEquals(1, client.getCacheHitCount());
+        assertEquals(2, client.getCacheMissCount());
+
+        // A write through the client invalidates the cached item
+        client.putItem("Table", item("a", "2"));
+        assertEquals("2", valueOf(client.getItem("Table", key("a")).getItem()));
+        assertEquals(3, fake.reads.get());
+
+        client.updateItem("Table", key("a"), new HashMap<String, AttributeValueUpdate>());
+        client.getItem("Table", key("a"));
+        assertEquals(4, fake.reads.get());
+
+        // Consistent reads and projections go to DynamoDB
+        client.getItem("Table", key("a"), true);
+        client.getItem(new GetItemRequest("Table", key("a")).withProjectionExpression("id"));
+        assertEquals(6, fake.reads.get());
+    }
+
+    @Test
+    public void testKeyAttributesAreLearnedFromValidKeysOnly() {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake);
+        fake.items.put("Table/a", item("a", "1"));
+
+        Map<String, AttributeValue> malformedKey = new HashMap<String, AttributeValue>(key("a"));
+        malformedKey.put("value", new AttributeValue("1"));
+        try {
+            client.getItem("Table", malformedKey);
+        } catch (AmazonServiceException expected) {
+        }
+        client.getItem("Table", key("a"));
+        client.getItem("Table", key("a"));
+
+        // Writes still invalidate the cached item
+        client.putItem("Table", item("a", "2"));
+        assertEquals("2", valueOf(client.getItem("Table", key("a")).getItem()));
+    }
+
+    @Test
+    public void testMissingItemsAreNotCached() {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake);
+
+        assertNull(client.getItem("Table", key("a")).getItem());
+        assertNull(client.getItem("Table", key("a")).getItem());
+        assertEquals(2, fake.reads.get());
+    }
+
+    @Test
+    public void testItemsExpire() throws InterruptedException {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake,
+                new ItemCacheConfig().withTimeToLiveMillis(50));
+        fake.items.put("Table/a", item("a", "1"));
+
+        client.getItem("Table", key("a"));
+        client.getItem("Table", key("a"));
+        client.getItem("Table", key("a"));
+        assertEquals(2, fake.reads.get());
+        Thread.sleep(100);
+        client.getItem("Table", key("a"));
+        assertEquals(3, fake.reads.get());
+    }
+
+    @Test
+    public void testTableConfig() {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake,
+                new ItemCacheConfig().withTableConfig("Uncached", new ItemCacheConfig().withMaxItems(0)));
+        fake.items.put("Uncached/a", item("a", "1"));
+
+        client.getItem("Uncached", key("a"));
+        client.getItem("Uncached", key("a"));
+        assertEquals(2, fake.reads.get());
+        assertEquals(0, client.getCacheMissCount());
+    }
+
+    @Test
+    public void testBatchGetReadsOnlyTheItemsNotCached() {
+        FakeDynamoDB fake = new FakeDynamoDB();
+        CachingAmazonDynamoDBClient client = new CachingAmazonDynamoDBClient(fake);
+        for (String id : Arrays.asList("a", "b", "c")) {
+            fake.items.put("Table/" + id, item(id, id));
+        }
+        client.getItem("Table", key("a"));
+        client.getItem("Table", key("a"));
+
+        BatchGetItemResult result = client.batchGetItem(Collections.singletonMap("Table",
+                new KeysAndAttributes().withKeys(key("a"), key("b"), key("c"))));
+        assertEquals(3, result.getResponses().get("Table").size());
+        assertEquals(4, fake.reads.get());
+
+        // All the items are now cached
+        result = client.batchGetItem(Collections.singletonMap("Table",
+                new KeysAndAttributes().withKeys(key("a"), key("b"), key("c"))));
+        assertEquals(3, result.getResponses().get("Table").size());
+        assertNotNull(result.getUnprocessedKeys());
+        assertEquals(4, fake.reads.get());
+    }
+
+    @Test
+    public void testFrequentlyReadItemsSurviveAScan() {
+        TinyLfuCache<String, String> cache =
+                new TinyLfuCache<String, String>(100, TimeUnit.MINUTES.toNanos(1));
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot" + i, "value", cache.getLoadToken("hot" + i));
+            for (int j = 0; j < 5; j++) {
+                cache.get("hot" + i);
+            }
+        }
+        // Keys read once, many more than the cache holds, while the hot keys
+        // keep being read less recently than a plain LRU cache would need
+        for (int i = 0; i < 10000; i++) {
+            String key = "cold" + i;
+            cache.get(key);
+            cache.put(key, "value", cache.getLoadToken(key));
+            if (i % 4 == 0) {
+                cache.get("hot" + (i / 4) % 50);
+            }
+        }
+
+        int hotCached = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                hotCached++;
+            }
+        }
+        // A plain LRU cache would keep none of them; the approximate counts
+        // may let a few go
+        assertTrue("Hot keys cached: " + hotCached, hotCached >= 45);
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testInvalidatedLoadsAreNotCached() {
+        TinyLfuCache<String, String> cache =
+                new TinyLfuCache<String, String>(100, TimeUnit.MINUTES.toNanos(1));
+        long loadToken = cache.getLoadToken("a");
+        cache.invalidate("a");
+        cache.put("a", "stale", loadToken);
+        assertNull(cache.get("a"));
+    }
+}
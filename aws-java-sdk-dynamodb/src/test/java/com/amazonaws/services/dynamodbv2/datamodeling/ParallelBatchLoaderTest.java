@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+public class ParallelBatchLoaderTest {
+
+    /**
+     * Answers batch get requests with the keys themselves as items, leaving
+     * the first key of each request unprocessed once.
+     */
+    private static class FakeDynamoDB extends AmazonDynamoDBClient {
+        private final Set<String> leftOnce = Collections.synchronizedSet(new HashSet<String>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger maxBatchSize = new AtomicInteger();
+        private final boolean neverProcess;
+
+        FakeDynamoDB(boolean neverProcess) {
+            super(new BasicAWSCredentials("mock", "mock"));
+            this.neverProcess = neverProcess;
+        }
+
+        @Override
+        public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+            int current = inFlight.incrementAndGet();
+            try {
+                updateMax(maxInFlight, current);
+                pause();
+
+                if (neverProcess) {
+                    return new BatchGetItemResult().withUnprocessedKeys(request.getRequestItems());
+                }
+
+                Map<String, List<Map<String, AttributeValue>>> responses =
+                        new HashMap<String, List<Map<String, AttributeValue>>>();
+                Map<String, KeysAndAttributes> unprocessed = new HashMap<String, KeysAndAttributes>();
+                int size = 0;
+                for (Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems().entrySet()) {
+                    List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+                    Set<Map<String, AttributeValue>> keys = new HashSet<Map<String, AttributeValue>>();
+                    for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                        size++;
+                        assertTrue("Duplicate key " + key, keys.add(key));
+                        if (unprocessed.isEmpty() && leftOnce.add(key.get("id").getS())) {
+                            unprocessed.put(entry.getKey(), new KeysAndAttributes()
+                                    .withKeys(Collections.singletonList(key)));
+                        } else {
+                            items.add(key);
+                        }
+                    }
+                    responses.put(entry.getKey(), items);
+                }
+                updateMax(maxBatchSize, size);
+                return new BatchGetItemResult()
+                        .withResponses(responses)
+                        .withUnprocessedKeys(unprocessed);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void updateMax(AtomicInteger max, int value) {
+            while (true) {
+                int previous = max.get();
+                if (value <= previous || max.compareAndSet(previous, value)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Collects the items loaded, checking they are loaded only once. */
+    private static class Collector implements ParallelBatchLoader.ItemHandler {
+        private final Set<String> loaded = Collections.synchronizedSet(new HashSet<String>());
+        private final AtomicInteger duplicates = new AtomicInteger();
+
+        @Override
+        public void handle(String tableName, Map<String, AttributeValue> item) {
+            if (!loaded.add(tableName + "/" + item.get("id").getS())) {
+                duplicates.incrementAndGet();
+            }
+        }
+    }
+
+    private static Map<String, AttributeValue> key(int id) {
+        return Collections.singletonMap("id", new AttributeValue(String.valueOf(id)));
+    }
+
+    @Test
+    public void testConcurrentBatchesWithUnprocessedAndDuplicateKeys() {
+        FakeDynamoDB fake = new FakeDynamoDB(false);
+        Collector collector = new Collector();
+        ParallelBatchLoader loader = new ParallelBatchLoader(fake,
+                new BatchLoadConfig().withMaxInFlightBatches(4), false, null, collector);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                loader.add(i % 2 == 0 ? "TableA" : "TableB", key(i));
+                // Every key a second time
+                loader.add(i % 2 == 0 ? "TableA" : "TableB", key(i));
+            }
+            loader.finish();
+        } finally {
+            loader.shutdown();
+        }
+
+        assertEquals(1000, collector.loaded.size());
+        assertEquals(0, collector.duplicates.get());
+        assertEquals(ParallelBatchLoader.MAX_KEYS_PER_BATCH, fake.maxBatchSize.get());
+        assertTrue(fake.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testSequentialBatches() {
+        FakeDynamoDB fake = new FakeDynamoDB(false);
+        Collector collector = new Collector();
+        ParallelBatchLoader loader = new ParallelBatchLoader(fake,
+                new BatchLoadConfig(), true, null, collector);
+        for (int i = 0; i < 250; i++) {
+            loader.add("Table", key(i));
+        }
+        loader.finish();
+
+        assertEquals(250, collector.loaded.size());
+        assertEquals(1, fake.maxInFlight.get());
+    }
+
+    @Test
+    public void testKeysAreForgottenOnceLoaded() {
+        FakeDynamoDB fake = new FakeDynamoDB(false);
+        Collector collector = new Collector();
+        ParallelBatchLoader loader = new ParallelBatchLoader(fake,
+                new BatchLoadConfig(), false, null, collector);
+        for (int i = 0; i <= ParallelBatchLoader.MAX_KEYS_PER_BATCH; i++) {
+            loader.add("Table", key(i));
+        }
+        // Still waiting in the current batch
+        loader.add("Table", key(ParallelBatchLoader.MAX_KEYS_PER_BATCH));
+        // Loaded with the first batch
+        loader.add("Table", key(1));
+        loader.finish();
+
+        assertEquals(ParallelBatchLoader.MAX_KEYS_PER_BATCH + 1, collector.loaded.size());
+        assertEquals(1, collector.duplicates.get());
+    }
+
+    @Test
+    public void testGivesUpWhenNoKeyIsEverProcessed() {
+        FakeDynamoDB fake = new FakeDynamoDB(true);
+        ParallelBatchLoader loader = new ParallelBatchLoader(fake,
+                new BatchLoadConfig(), false, null, new Collector());
+        loader.add("Table", key(1));
+        try {
+            loader.finish();
+            fail("AmazonClientException is expected.");
+        } catch (AmazonClientException expected) {
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.datamodeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+public class ParallelBatchWriterTest {
+
+    /**
+     * Answers batch write requests, leaving the first item of each request
+     * unprocessed once.
+     */
+    private static class FakeDynamoDB extends AmazonDynamoDBClient {
+        private final Set<String> written = Collections.synchronizedSet(new HashSet<String>());
+        private final Set<String> leftOnce = Collections.synchronizedSet(new HashSet<String>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger maxBatchSize = new AtomicInteger();
+        private final boolean alwaysLeaveUnprocessed;
+
+        FakeDynamoDB(boolean alwaysLeaveUnprocessed) {
+            super(new BasicAWSCredentials("mock", "mock"));
+            this.alwaysLeaveUnprocessed = alwaysLeaveUnprocessed;
+        }
+
+        @Override
+        public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+            int current = inFlight.incrementAndGet();
+            try {
+                updateMax(maxInFlight, current);
+                pause();
+
+                Map<String, List<WriteRequest>> unprocessed =
+                        new HashMap<String, List<WriteRequest>>();
+                int size = 0;
+                for (Map.Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+                    for (WriteRequest writeRequest : entry.getValue()) {
+                        size++;
+                        String id = writeRequest.getPutRequest().getItem().get("id").getS();
+                        if ((alwaysLeaveUnprocessed || leftOnce.add(id)) && unprocessed.isEmpty()) {
+                            unprocessed.put(entry.getKey(), new LinkedList<WriteRequest>(
+                                    Collections.singletonList(writeRequest)));
+                        } else {
+                            assertTrue("Written twice: " + id, written.add(id));
+                        }
+                    }
+                }
+                updateMax(maxBatchSize, size);
+                return new BatchWriteItemResult().withUnprocessedItems(unprocessed);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void updateMax(AtomicInteger max, int value) {
+            while (true) {
+                int previous = max.get();
+                if (value <= previous || max.compareAndSet(previous, value)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static WriteRequest putRequest(int id) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue(String.valueOf(id)));
+        return new WriteRequest().withPutRequest(new PutRequest().withItem(item));
+    }
+
+    @Test
+    public void testConcurrentBatchesWithUnprocessedItems() {
+        FakeDynamoDB fake = new FakeDynamoDB(false);
+        ParallelBatchWriter writer = new ParallelBatchWriter(fake,
+                new BatchWriteConfig().withMaxInFlightBatches(4));
+
+        final AtomicInteger notified = new AtomicInteger();
+        Runnable onWritten = new Runnable() {
+            @Override
+            public void run() {
+                notified.incrementAndGet();
+            }
+        };
+
+        List<FailedBatch> failedBatches;
+        try {
+            for (int i = 0; i < 1000; i++) {
+                writer.add(i % 2 == 0 ? "TableA" : "TableB", putRequest(i), onWritten);
+            }
+            failedBatches = writer.finish();
+        } finally {
+            writer.shutdown();
+        }
+
+        assertTrue(failedBatches.isEmpty());
+        assertEquals(1000, fake.written.size());
+        assertEquals(1000, notified.get());
+        assertEquals(DynamoDBMapper.MAX_ITEMS_PER_BATCH, fake.maxBatchSize.get());
+        assertTrue(fake.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testUnprocessedItemsAreReportedOnceRetriesAreExhausted() {
+        FakeDynamoDB fake = new FakeDynamoDB(true);
+        ParallelBatchWriter writer = new ParallelBatchWriter(fake,
+                new BatchWriteConfig().withMaxUnprocessedItemsRetries(2));
+
+        List<FailedBatch> failedBatches;
+        try {
+            for (int i = 0; i < 30; i++) {
+                writer.add("Table", putRequest(i), null);
+            }
+            failedBatches = writer.finish();
+        } finally {
+            writer.shutdown();
+        }
+
+        // One item of each of the two batches is never processed
+        assertEquals(2, failedBatches.size());
+        for (FailedBatch failedBatch : failedBatches) {
+            assertNull(failedBatch.getException());
+            assertEquals(1, failedBatch.getUnprocessedItems().get("Table").size());
+        }
+        assertEquals(28, fake.written.size());
+    }
+
+    @Test
+    public void testCapacityLimiter() {
+        ParallelBatchWriter.CapacityLimiter limiter =
+                new ParallelBatchWriter.CapacityLimiter(100);
+
+        // A full second worth of capacity is available right away
+        assertEquals(0, limiter.reserve(100));
+        // Then requests have to wait for the bucket to refill
+        long delayNanos = limiter.reserve(50);
+        assertTrue(delayNanos > 400000000L && delayNanos <= 500000000L);
+        // Unless capacity is given back
+        limiter.consume(-100);
+        assertEquals(0, limiter.reserve(10));
+    }
+}
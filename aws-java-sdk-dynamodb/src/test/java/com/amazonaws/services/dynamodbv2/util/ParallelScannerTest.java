@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.dynamodbv2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+public class ParallelScannerTest {
+
+    private static final int TOTAL_SEGMENTS = 4;
+    private static final int PAGES_PER_SEGMENT = 5;
+
+    /**
+     * Answers scan requests with pages holding a single item named after its
+     * segment and page number.
+     */
+    private static class FakeDynamoDB extends AmazonDynamoDBClient {
+        private final AtomicInteger scans = new AtomicInteger();
+        private final int failingSegment;
+
+        FakeDynamoDB(int failingSegment) {
+            super(new BasicAWSCredentials("mock", "mock"));
+            this.failingSegment = failingSegment;
+        }
+
+        @Override
+        public ScanResult scan(ScanRequest request) {
+            scans.incrementAndGet();
+            int segment = request.getSegment();
+            if (segment == failingSegment) {
+                throw new AmazonServiceException("Segment " + segment + " failed");
+            }
+            int page = request.getExclusiveStartKey() == null
+                    ? 0
+                    : Integer.parseInt(request.getExclusiveStartKey().get("page").getN()) + 1;
+
+            ScanResult result = new ScanResult().withItems(
+                    Collections.singletonMap("id", new AttributeValue(segment + "/" + page)));
+            if (page < PAGES_PER_SEGMENT - 1) {
+                Map<String, AttributeValue> lastEvaluatedKey = new HashMap<String, AttributeValue>();
+                lastEvaluatedKey.put("page", new AttributeValue().withN(String.valueOf(page)));
+                result.setLastEvaluatedKey(lastEvaluatedKey);
+            }
+            return result;
+        }
+    }
+
+    private static final ParallelScanner.PageConverter<String> FIRST_ID =
+            new ParallelScanner.PageConverter<String>() {
+                @Override
+                public String convert(ScanResult result) {
+                    return result.getItems().get(0).get("id").getS();
+                }
+            };
+
+    private static ParallelScanner<String> newScanner(FakeDynamoDB fake) {
+        List<ScanRequest> requests = new ArrayList<ScanRequest>();
+        for (int segment = 0; segment < TOTAL_SEGMENTS; segment++) {
+            requests.add(new ScanRequest("Table")
+                    .withSegment(segment)
+                    .withTotalSegments(TOTAL_SEGMENTS));
+        }
+        return new ParallelScanner<String>(fake, requests, FIRST_ID);
+    }
+
+    @Test
+    public void testReturnsThePagesOfEachSegmentInOrder() {
+        ParallelScanner<String> scanner = newScanner(new FakeDynamoDB(-1));
+
+        int[] nextPage = new int[TOTAL_SEGMENTS];
+        int count = 0;
+        while (scanner.hasNext()) {
+            String id = scanner.next();
+            int segment = scanner.getLastSegment();
+            assertEquals(segment + "/" + nextPage[segment], id);
+            nextPage[segment]++;
+            count++;
+        }
+        assertEquals(TOTAL_SEGMENTS * PAGES_PER_SEGMENT, count);
+        assertTrue(scanner.getCheckpoint().isComplete());
+    }
+
+    @Test
+    public void testStopsFetchingWhilePagesAreWaiting() throws InterruptedException {
+        FakeDynamoDB fake = new FakeDynamoDB(-1);
+        ParallelScanner<String> scanner = newScanner(fake).withMaxPagesAhead(2);
+
+        assertTrue(scanner.hasNext());
+        Thread.sleep(200);
+        // No more than 2 pages are waiting or being fetched, the first of
+        // which is waiting to be returned by next()
+        assertEquals(2, fake.scans.get());
+        Thread.sleep(100);
+        assertEquals(2, fake.scans.get());
+
+        // Consuming the pages resumes the fetching
+        int count = 0;
+        while (scanner.hasNext()) {
+            scanner.next();
+            count++;
+        }
+        assertEquals(TOTAL_SEGMENTS * PAGES_PER_SEGMENT, count);
+        scanner.close();
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() {
+        ParallelScanner<String> scanner = newScanner(new FakeDynamoDB(-1));
+        List<String> consumed = new ArrayList<String>();
+        for (int i = 0; i < 7; i++) {
+            consumed.add(scanner.next());
+        }
+        ParallelScanCheckpoint checkpoint = scanner.getCheckpoint();
+        scanner.close();
+
+        ParallelScanner<String> resumed = newScanner(new FakeDynamoDB(-1))
+                .withCheckpoint(checkpoint);
+        while (resumed.hasNext()) {
+            String id = resumed.next();
+            assertFalse("Returned again: " + id, consumed.contains(id));
+            consumed.add(id);
+        }
+        assertEquals(TOTAL_SEGMENTS * PAGES_PER_SEGMENT, consumed.size());
+        assertTrue(resumed.getCheckpoint().isComplete());
+    }
+
+    @Test
+    public void testGivesUpOnTheOtherSegmentsOfAFailedScan() {
+        ParallelScanner<String> scanner = newScanner(new FakeDynamoDB(3)).withMaxPagesAhead(1);
+        int returned = 0;
+        try {
+            while (scanner.hasNext()) {
+                scanner.next();
+                returned++;
+            }
+            fail("AmazonServiceException is expected.");
+        } catch (AmazonServiceException expected) {
+            // the segments paused behind the failed one are never resumed
+            assertTrue(returned < TOTAL_SEGMENTS * PAGES_PER_SEGMENT);
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void testThrowsTheErrorOfAFailedSegment() {
+        ParallelScanner<String> scanner = newScanner(new FakeDynamoDB(2));
+        try {
+            while (scanner.hasNext()) {
+                scanner.next();
+            }
+            fail("AmazonServiceException is expected.");
+        } catch (AmazonServiceException expected) {
+            // thrown anew on this thread, with the error of the segment
+            assertTrue(expected.getCause() instanceof AmazonServiceException);
+            assertTrue(expected.getErrorMessage().endsWith("Segment 2 failed"));
+        } finally {
+            scanner.close();
+        }
+    }
+}
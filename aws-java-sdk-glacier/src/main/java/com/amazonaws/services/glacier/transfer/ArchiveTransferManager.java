@@ -27,9 +27,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -98,6 +108,9 @@ public class ArchiveTransferManager {
 
     private final AmazonSNSClient sns;
 
+    /** Configuration for how parts of archives are transferred. */
+    private ArchiveTransferManagerConfiguration configuration = new ArchiveTransferManagerConfiguration();
+
     private static final Log log = LogFactory.getLog(ArchiveTransferManager.class);
 
     /**
@@ -197,6 +210,30 @@ public class ArchiveTransferManager {
         this.sns = sns;
     }
 
+    /**
+     * Sets the configuration which specifies how this
+     * <code>ArchiveTransferManager</code> transfers the parts of archives.
+     *
+     * @param configuration
+     *            The new configuration specifying how this
+     *            <code>ArchiveTransferManager</code> transfers the parts of
+     *            archives.
+     */
+    public void setConfiguration(ArchiveTransferManagerConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the configuration which specifies how this
+     * <code>ArchiveTransferManager</code> transfers the parts of archives.
+     *
+     * @return The configuration settings for this
+     *         <code>ArchiveTransferManager</code>.
+     */
+    public ArchiveTransferManagerConfiguration getConfiguration() {
+        return configuration;
+    }
+
     /**
      * Uploads the specified file to Amazon Glacier for archival storage in the
      * specified vault for the user's current account. For small archives, this
@@ -460,8 +497,9 @@ public class ArchiveTransferManager {
      * Downloads the job output for the specified job (which must be ready to
      * download already, and must be a complete archive retrieval, not a partial
      * range retrieval), into the specified file. This method will request
-     * individual chunks of the data, one at a time, in order to handle any
-     * transient errors along the way.
+     * individual chunks of the data, up to
+     * {@link ArchiveTransferManagerConfiguration#getMaxConcurrentParts()} at a
+     * time, in order to handle any transient errors along the way.
      *
      * @param accountId
      *            The account ID containing the job output to download (or null
@@ -482,8 +520,11 @@ public class ArchiveTransferManager {
      * Downloads the job output for the specified job (which must be ready to
      * download already, and must be a complete archive retrieval, not a partial
      * range retrieval), into the specified file. This method will request
-     * individual chunks of the data, one at a time, in order to handle any
-     * transient errors along the way. You can also add an optional progress
+     * individual chunks of the data, up to
+     * {@link ArchiveTransferManagerConfiguration#getMaxConcurrentParts()} at a
+     * time, in order to handle any transient errors along the way. Each chunk
+     * is written at its position in the file as it arrives. You can also add
+     * an optional progress
      * listener for receiving updates about the download status.
      *
      * @param accountId
@@ -500,12 +541,10 @@ public class ArchiveTransferManager {
      *            The optional progress listener for receiving updates about the
      *            download status.
      */
-    public void downloadJobOutput(String accountId, String vaultName,
-            String jobId, File file, ProgressListener progressListener) {
+    public void downloadJobOutput(final String accountId, final String vaultName,
+            final String jobId, File file, final ProgressListener progressListener) {
         long archiveSize = 0;
         long chunkSize = DEFAULT_DOWNLOAD_CHUNK_SIZE;
-        long currentPosition = 0;
-        long endPosition = 0;
 
         RandomAccessFile output = null;
         String customizedChunkSize = null;
@@ -526,29 +565,33 @@ public class ArchiveTransferManager {
 
         try {
             output = new RandomAccessFile(file, "rw");
-        } catch (FileNotFoundException e) {
+            // Preallocated, so that the chunks can be written in any order
+            output.setLength(archiveSize);
+        } catch (IOException e) {
+            closeQuietly(output, log);
             publishProgress(progressListener, ProgressEventType.TRANSFER_FAILED_EVENT);
             throw new AmazonClientException("Unable to open the output file " + file.getPath(), e);
         }
 
         try {
             publishProgress(progressListener, ProgressEventType.TRANSFER_STARTED_EVENT);
-            while (currentPosition < archiveSize) {
-                if (currentPosition + chunkSize > archiveSize) {
-                    endPosition = archiveSize - 1;
-                } else {
-                    endPosition = currentPosition + chunkSize - 1;
-                }
-    
-                // Download the chunk
-                try {
-                    downloadOneChunk(accountId, vaultName, jobId, output,
-                            currentPosition, endPosition, progressListener);
-                } catch (Throwable t) {
-                    publishProgress(progressListener, ProgressEventType.TRANSFER_FAILED_EVENT);
-                    throw failure(t);
-                }
-                currentPosition += chunkSize;
+            final FileChannel channel = output.getChannel();
+            final long size = archiveSize;
+            final long step = chunkSize;
+            int chunkCount = (int) ((archiveSize + chunkSize - 1) / chunkSize);
+            try {
+                transferParts(chunkCount, new PartTransfer() {
+                    @Override
+                    public void transfer(int index) {
+                        long currentPosition = index * step;
+                        long endPosition = Math.min(currentPosition + step, size) - 1;
+                        downloadOneChunk(accountId, vaultName, jobId, channel,
+                                currentPosition, endPosition, progressListener);
+                    }
+                });
+            } catch (Throwable t) {
+                publishProgress(progressListener, ProgressEventType.TRANSFER_FAILED_EVENT);
+                throw failure(t);
             }
             publishProgress(progressListener, ProgressEventType.TRANSFER_COMPLETED_EVENT);
         } finally {
@@ -568,11 +611,12 @@ public class ArchiveTransferManager {
     }
 
     /**
-     * Download one chunk from Amazon Glacier. It will do the retry if any
-     * errors are encountered while streaming the data from Amazon Glacier.
+     * Download one chunk from Amazon Glacier, and writes it at its position in
+     * the output file. It will do the retry if any errors are encountered
+     * while streaming the data from Amazon Glacier.
      */
     private void downloadOneChunk(String accountId, String vaultName,
-            String jobId, RandomAccessFile output, long currentPosition,
+            String jobId, FileChannel output, long currentPosition,
             long endPosition, ProgressListener progressListener) {
         final long chunkSize = endPosition - currentPosition + 1;
         TreeHashInputStream input = null;
@@ -589,7 +633,7 @@ public class ArchiveTransferManager {
                 GetJobOutputResult jobOutputResult = glacier.getJobOutput(req);
                 try {
                     input = new TreeHashInputStream(new BufferedInputStream(jobOutputResult.getBody()));
-                    appendToFile(output, input);
+                    writeToFile(output, currentPosition, input);
                 } catch (NoSuchAlgorithmException e) {
                     throw failure(e, "Unable to compute hash for data integrity");
                 } finally {
@@ -624,11 +668,6 @@ public class ArchiveTransferManager {
                                 + currentPosition + " endPosition="
                                 + endPosition);
                     }
-                    try {
-                        output.seek(currentPosition);
-                    } catch (IOException e) {
-                        throw new AmazonClientException("Unable to download the archive: " + ioe.getMessage(), e);
-                    }
                 } else {
                     throw new AmazonClientException("Unable to download the archive: " + ioe.getMessage(), ioe);
                 }
@@ -637,9 +676,10 @@ public class ArchiveTransferManager {
     }
 
     /**
-     * Writes the data from the given input stream to the given output stream.
+     * Writes the data from the given input stream to the given file, starting
+     * at the given position.
      */
-    private void appendToFile(RandomAccessFile output, InputStream input)
+    private void writeToFile(FileChannel output, long position, InputStream input)
             throws IOException {
         byte[] buffer = new byte[1024 * 1024];
         int bytesRead = 0;
@@ -647,11 +687,109 @@ public class ArchiveTransferManager {
             bytesRead = input.read(buffer);
             if (bytesRead < 0)
                 break;
-            output.write(buffer, 0, bytesRead);
+            ByteBuffer src = ByteBuffer.wrap(buffer, 0, bytesRead);
+            while (src.hasRemaining()) {
+                position += output.write(src, position);
+            }
         } while (bytesRead > 0);
         return;
     }
 
+    /**
+     * Transfers one part of an archive.
+     */
+    private interface PartTransfer {
+        void transfer(int index) throws Exception;
+    }
+
+    /**
+     * Transfers the given number of parts, handing them out from a shared
+     * counter to the calling thread and to the helper tasks it submits, up
+     * to the configured number of parts at once. The calling thread keeps
+     * transferring parts itself, so that the transfer makes progress even
+     * when no thread is free to help. The first failure stops handing out
+     * parts, and is thrown once the parts in flight are done.
+     */
+    private void transferParts(final int partCount, final PartTransfer transfer) throws Exception {
+        final AtomicInteger nextPart = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int index;
+                while (!failed.get() && (index = nextPart.getAndIncrement()) < partCount) {
+                    try {
+                        transfer.transfer(index);
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    } catch (Error e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+                return null;
+            }
+        };
+
+        final ArchiveTransferManagerConfiguration config = configuration;
+        int helperCount = Math.min(partCount, config.getMaxConcurrentParts()) - 1;
+        if (helperCount <= 0) {
+            worker.call();
+            return;
+        }
+        ExecutorService executor = config.getExecutorService();
+        final boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            executor = Executors.newFixedThreadPool(helperCount);
+        }
+
+        Throwable failure = null;
+        try {
+            List<AtomicBoolean> helperStarts = new ArrayList<AtomicBoolean>(helperCount);
+            List<Future<Void>> helpers = new ArrayList<Future<Void>>(helperCount);
+            for (int i = 0; i < helperCount; i++) {
+                final AtomicBoolean started = new AtomicBoolean();
+                helperStarts.add(started);
+                helpers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        return started.compareAndSet(false, true) ? worker.call() : null;
+                    }
+                }));
+            }
+            try {
+                worker.call();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            for (int i = 0; i < helperCount; i++) {
+                // A helper still queued behind other work in the pool has
+                // nothing left to do; waiting for it could deadlock the pool
+                if (helperStarts.get(i).compareAndSet(false, true))
+                    continue;
+                try {
+                    helpers.get(i).get();
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new AmazonClientException("Interrupted while transferring the archive", e);
+                }
+            }
+        } finally {
+            if (ownExecutor) {
+                executor.shutdown();
+            }
+        }
+        if (failure instanceof Exception)
+            throw (Exception) failure;
+        if (failure != null)
+            throw (Error) failure;
+    }
+
     /**
      * Calculates the part size to use when uploading an archive of the
      * specified size using Glacier's multipart upload APIs. Because of the tree
@@ -676,7 +814,7 @@ public class ArchiveTransferManager {
 
     private UploadResult uploadInMultipleParts(final String accountId,
             final String vaultName, final String archiveDescription,
-            final File file, ProgressListener progressListener) {
+            final File file, final ProgressListener progressListener) {
         final long partSize = calculatePartSize(file.length());
         String partSizeString = Long.toString(partSize);
 
@@ -694,58 +832,23 @@ public class ArchiveTransferManager {
             throw failure(t);
         }
         publishProgress(progressListener, ProgressEventType.TRANSFER_STARTED_EVENT);
-        final String fileNotFoundMsg = "Unable to find file '"
-                + file.getAbsolutePath() + "'";
+        final String uploadIdToUse = uploadId;
         try {
-            List<byte[]> binaryChecksums = new LinkedList<byte[]>();
-
-            long currentPosition = 0;
-            while (currentPosition < file.length()) {
-                long length = partSize;
-                if (currentPosition + partSize > file.length()) {
-                    length = file.length() - currentPosition;
+            final long fileLength = file.length();
+            int partCount = (int) ((fileLength + partSize - 1) / partSize);
+            final byte[][] binaryChecksums = new byte[partCount][];
+
+            transferParts(partCount, new PartTransfer() {
+                @Override
+                public void transfer(int index) throws Exception {
+                    long currentPosition = index * partSize;
+                    long length = Math.min(partSize, fileLength - currentPosition);
+                    binaryChecksums[index] = uploadOnePart(accountId, vaultName,
+                            uploadIdToUse, file, currentPosition, length, progressListener);
                 }
+            });
 
-                Exception failedException = null;
-                boolean completed = false;
-                int tries = 0;
-                    while (!completed && tries < 5){
-                        tries++;
-                        InputSubstream inputSubStream = null;
-                        try {
-                            inputSubStream = new InputSubstream(
-                                    newResettableInputStream(file, fileNotFoundMsg)
-                                        .disableClose(), // requires explicit release
-                                    currentPosition, length, true);
-                            String checksum = TreeHashGenerator.calculateTreeHash(inputSubStream);
-                            byte[] binaryChecksum = BinaryUtils.fromHex(checksum);
-                            inputSubStream.reset();
-                            UploadMultipartPartRequest req = new UploadMultipartPartRequest()
-                                .withAccountId(accountId)
-                                .withChecksum(checksum)
-                                .withBody(inputSubStream)
-                                .withRange("bytes " + currentPosition + "-" + (currentPosition + length - 1) + "/*")
-                                .withUploadId(uploadId)
-                                .withVaultName(vaultName)
-                                .withGeneralProgressListener(progressListener)
-                                ;
-                            
-                            glacier.uploadMultipartPart(req);
-                            completed = true;
-                            binaryChecksums.add(binaryChecksum);
-                        } catch (Exception e){
-                            failedException = e;
-                        } finally {
-                            // We opened the file underneath; so need to release it
-                            release(inputSubStream, log);
-                        }
-                    } // end inner while
-                if (!completed && failedException!=null)
-                    throw failedException;
-                currentPosition += partSize;
-            } // end outer while
-
-            String checksum = TreeHashGenerator.calculateTreeHash(binaryChecksums);
+            String checksum = TreeHashGenerator.calculateTreeHash(Arrays.asList(binaryChecksums));
 
             String archiveSize = Long.toString(file.length());
             CompleteMultipartUploadResult completeMultipartUploadResult =
@@ -766,6 +869,50 @@ public class ArchiveTransferManager {
         }
     }
 
+    /**
+     * Uploads one part of a multipart upload, computing its tree hash first,
+     * and returns the binary tree hash. Any failure is retried a few times.
+     */
+    private byte[] uploadOnePart(String accountId, String vaultName,
+            String uploadId, File file, long currentPosition, long length,
+            ProgressListener progressListener) throws Exception {
+        final String fileNotFoundMsg = "Unable to find file '"
+                + file.getAbsolutePath() + "'";
+        Exception failedException = null;
+        int tries = 0;
+        while (tries < 5) {
+            tries++;
+            InputSubstream inputSubStream = null;
+            try {
+                inputSubStream = new InputSubstream(
+                        newResettableInputStream(file, fileNotFoundMsg)
+                            .disableClose(), // requires explicit release
+                        currentPosition, length, true);
+                String checksum = TreeHashGenerator.calculateTreeHash(inputSubStream);
+                byte[] binaryChecksum = BinaryUtils.fromHex(checksum);
+                inputSubStream.reset();
+                UploadMultipartPartRequest req = new UploadMultipartPartRequest()
+                    .withAccountId(accountId)
+                    .withChecksum(checksum)
+                    .withBody(inputSubStream)
+                    .withRange("bytes " + currentPosition + "-" + (currentPosition + length - 1) + "/*")
+                    .withUploadId(uploadId)
+                    .withVaultName(vaultName)
+                    .withGeneralProgressListener(progressListener)
+                    ;
+
+                glacier.uploadMultipartPart(req);
+                return binaryChecksum;
+            } catch (Exception e){
+                failedException = e;
+            } finally {
+                // We opened the file underneath; so need to release it
+                release(inputSubStream, log);
+            }
+        }
+        throw failedException;
+    }
+
     private UploadResult uploadInSinglePart(final String accountId,
             final String vaultName, final String archiveDescription,
             final File file, ProgressListener progressListener) {
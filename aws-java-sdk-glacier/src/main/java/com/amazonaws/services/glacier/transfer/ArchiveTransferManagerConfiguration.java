@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.glacier.transfer;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration options for how {@link ArchiveTransferManager} transfers the
+ * parts of an archive.
+ * <p>
+ * By default, the parts of a multipart upload and the chunks of a download are
+ * transferred one at a time by the calling thread. Transferring several of
+ * them at once, each over its own connection, usually makes better use of the
+ * available bandwidth for large archives.
+ */
+public class ArchiveTransferManagerConfiguration {
+
+    /** Default maximum number of parts transferred at once. */
+    private static final int DEFAULT_MAX_CONCURRENT_PARTS = 1;
+
+    /**
+     * The maximum number of parts of a multipart upload, or chunks of a
+     * download, transferred at once.
+     */
+    private int maxConcurrentParts = DEFAULT_MAX_CONCURRENT_PARTS;
+
+    /**
+     * The threads helping the calling thread to transfer the parts; or null to
+     * use threads of each transfer's own.
+     */
+    private ExecutorService executorService;
+
+    /**
+     * Returns the maximum number of parts of a multipart upload, or chunks of
+     * a download, transferred at once.
+     *
+     * @return The maximum number of parts transferred at once.
+     */
+    public int getMaxConcurrentParts() {
+        return maxConcurrentParts;
+    }
+
+    /**
+     * Sets the maximum number of parts of a multipart upload, or chunks of a
+     * download, transferred at once. The parts of an upload are also tree
+     * hashed in parallel, and the chunks of a download are written at their
+     * position in the destination file as they arrive. Defaults to 1, meaning
+     * the parts are transferred one after another by the calling thread.
+     *
+     * @param maxConcurrentParts
+     *            The maximum number of parts transferred at once.
+     */
+    public void setMaxConcurrentParts(int maxConcurrentParts) {
+        if (maxConcurrentParts < 1) {
+            throw new IllegalArgumentException("maxConcurrentParts must be at least 1");
+        }
+        this.maxConcurrentParts = maxConcurrentParts;
+    }
+
+    /**
+     * Returns the executor helping to transfer the parts, or null if not
+     * specified.
+     *
+     * @return The executor helping to transfer the parts.
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Sets the executor helping the calling thread to transfer the parts when
+     * more than one part may be transferred at once. The executor is not shut
+     * down by the transfers. The calling thread keeps transferring parts
+     * itself, so that a transfer makes progress even when no thread of the
+     * executor is free. If not specified, each transfer uses threads of its
+     * own, which are released when it completes.
+     *
+     * @param executorService
+     *            The executor helping to transfer the parts.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+}
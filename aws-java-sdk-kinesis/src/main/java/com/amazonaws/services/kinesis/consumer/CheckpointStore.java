@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+/**
+ * Stores the position a {@link KinesisConsumer} reached in each shard of a stream, so that it
+ * resumes from there when restarted.
+ * <p>
+ * Implementations must be thread-safe.
+ */
+public interface CheckpointStore {
+
+    /**
+     * The checkpoint of a shard whose records were all processed, after the shard was closed by a
+     * split or merge.
+     */
+    String SHARD_END = "SHARD_END";
+
+    /**
+     * Returns the checkpoint of the given shard: the sequence number of the last record
+     * processed, {@link #SHARD_END}, or null if no record was processed yet.
+     *
+     * @param shardId
+     *            The ID of the shard.
+     */
+    String getCheckpoint(String shardId);
+
+    /**
+     * Sets the checkpoint of the given shard.
+     *
+     * @param shardId
+     *            The ID of the shard.
+     * @param checkpoint
+     *            The sequence number of the last record processed, or {@link #SHARD_END}.
+     */
+    void setCheckpoint(String shardId, String checkpoint);
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.IOUtils;
+
+/**
+ * A {@link CheckpointStore} keeping the checkpoints in a properties file, by shard ID, for tests
+ * and consumers running on a single host.
+ * <p>
+ * The file is rewritten whole on each checkpoint, into a temporary file renamed over it, so that
+ * it is not left half written if the process dies.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private static final Log log = LogFactory.getLog(FileCheckpointStore.class);
+
+    private final File file;
+    private final Properties checkpoints = new Properties();
+
+    /**
+     * Constructs a store keeping the checkpoints in the given file, loading the checkpoints it
+     * already holds, if it exists.
+     *
+     * @throws AmazonClientException
+     *             If the file exists but cannot be read.
+     */
+    public FileCheckpointStore(File file) {
+        this.file = file;
+        if (file.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                checkpoints.load(in);
+            } catch (IOException e) {
+                throw new AmazonClientException("Unable to read the checkpoints from " + file, e);
+            } finally {
+                IOUtils.closeQuietly(in, log);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String getCheckpoint(String shardId) {
+        return checkpoints.getProperty(shardId);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws AmazonClientException
+     *             If the file cannot be written.
+     */
+    @Override
+    public synchronized void setCheckpoint(String shardId, String checkpoint) {
+        checkpoints.setProperty(shardId, checkpoint);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            checkpoints.store(out, null);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new AmazonClientException("Unable to write the checkpoints to " + tempFile, e);
+        } finally {
+            IOUtils.closeQuietly(out, log);
+        }
+
+        // renaming over an existing file fails on some platforms
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            throw new AmazonClientException("Unable to rename " + tempFile + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CheckpointStore} keeping the checkpoints in memory, for tests and consumers which do
+ * not need to resume where they stopped.
+ */
+public class InMemoryCheckpointStore implements CheckpointStore {
+
+    private final ConcurrentMap<String, String> checkpoints = new ConcurrentHashMap<String, String>();
+
+    @Override
+    public String getCheckpoint(String shardId) {
+        return checkpoints.get(shardId);
+    }
+
+    @Override
+    public void setCheckpoint(String shardId, String checkpoint) {
+        checkpoints.put(shardId, checkpoint);
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+
+/**
+ * Reads the records of all the shards of a Kinesis stream, and hands them to a
+ * {@link RecordProcessor}.
+ * <p>
+ * Each shard is read by its own sequence of {@code GetRecords} calls, which reads ahead of the
+ * processing of the records, up to
+ * {@link KinesisConsumerConfig#getMaxBufferedRecordsPerShard()} records, so that the next
+ * records are fetched while the previous ones are processed. The batches of records read are
+ * processed on a pool of threads, one batch of a shard at a time, and the sequence number of the
+ * last record of each batch processed is checkpointed to a {@link CheckpointStore}, from which
+ * the shard is read again when the consumer restarts.
+ * <p>
+ * The stream is described periodically to find the shards to read. The shards created by a split
+ * or merge are read once their parent shards have been read to their end, so that the records
+ * of a partition key are processed in order.
+ * <p>
+ * A consumer reads all the shards of the stream: it does not share them with other consumers of
+ * the same stream and checkpoint store.
+ */
+public class KinesisConsumer {
+
+    private static final Log log = LogFactory.getLog(KinesisConsumer.class);
+
+    private final AmazonKinesis kinesis;
+    private final String streamName;
+    private final RecordProcessor processor;
+    private final CheckpointStore checkpointStore;
+    private final KinesisConsumerConfig config;
+
+    /** Runs the GetRecords calls and the descriptions of the stream */
+    private final ScheduledThreadPoolExecutor fetchExecutor;
+
+    /** Runs the processing of the records */
+    private final ScheduledThreadPoolExecutor processingExecutor;
+
+    /** The shards being read, by shard ID */
+    private final ConcurrentMap<String, ShardConsumer> shardConsumers = new ConcurrentHashMap<String, ShardConsumer>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean shutdown;
+
+    private final Runnable syncShardsTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                syncShards();
+            } catch (RuntimeException e) {
+                log.warn("Failed to find the shards to read of stream " + streamName, e);
+            }
+        }
+    };
+
+    /**
+     * Constructs a consumer of the given stream with the default configuration.
+     *
+     * @see #KinesisConsumer(AmazonKinesis, String, RecordProcessor, CheckpointStore,
+     *      KinesisConsumerConfig)
+     */
+    public KinesisConsumer(AmazonKinesis kinesis, String streamName, RecordProcessor processor,
+                           CheckpointStore checkpointStore) {
+        this(kinesis, streamName, processor, checkpointStore, new KinesisConsumerConfig());
+    }
+
+    /**
+     * Constructs a consumer of the given stream. It does not read the stream until started.
+     *
+     * @param kinesis
+     *            The client to read the stream with.
+     * @param streamName
+     *            The name of the stream.
+     * @param processor
+     *            The processor of the records.
+     * @param checkpointStore
+     *            The store of the positions reached in the shards.
+     * @param config
+     *            The configuration of the consumer.
+     */
+    public KinesisConsumer(AmazonKinesis kinesis, String streamName, RecordProcessor processor,
+                           CheckpointStore checkpointStore, KinesisConsumerConfig config) {
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.processor = processor;
+        this.checkpointStore = checkpointStore;
+        this.config = new KinesisConsumerConfig(config);
+
+        this.fetchExecutor = new ScheduledThreadPoolExecutor(this.config.getFetchThreads(), new DaemonThreadFactory(
+                "KinesisConsumerFetchThread-"));
+        this.processingExecutor = new ScheduledThreadPoolExecutor(this.config.getProcessingThreads(),
+                new DaemonThreadFactory("KinesisConsumerProcessingThread-"));
+        // the retries scheduled are dropped on shutdown
+        this.processingExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Starts reading the stream.
+     *
+     * @throws IllegalStateException
+     *             If the consumer has already been started.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The consumer has already been started");
+        }
+        fetchExecutor.scheduleWithFixedDelay(syncShardsTask, 0, config.getShardSyncIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reading the stream, and waits for the batches of records being processed to be
+     * processed and checkpointed, up to the given time. The records read but not processed yet are
+     * dropped; they are read again from the checkpoints when the stream is consumed again.
+     *
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The unit of the timeout.
+     * @return True if the processing stopped in time.
+     * @throws AmazonClientException
+     *             If the calling thread is interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        shutdown = true;
+        fetchExecutor.shutdownNow();
+        processingExecutor.shutdown();
+        try {
+            return processingExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    && fetchExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the records to be processed", e);
+        }
+    }
+
+    /**
+     * Returns the IDs of the shards being read.
+     */
+    public Set<String> getShardIds() {
+        return Collections.unmodifiableSet(new HashSet<String>(shardConsumers.keySet()));
+    }
+
+    /**
+     * Starts reading the shards of the stream which are not read yet, not read to their end, and
+     * whose parent shards were read to their end.
+     */
+    private synchronized void syncShards() {
+        if (shutdown) {
+            return;
+        }
+        List<Shard> shards = describeShards();
+        Set<String> shardIds = new HashSet<String>();
+        for (Shard shard : shards) {
+            shardIds.add(shard.getShardId());
+        }
+
+        for (Shard shard : shards) {
+            String shardId = shard.getShardId();
+            if (shardConsumers.containsKey(shardId)) {
+                continue;
+            }
+            String checkpoint = checkpointStore.getCheckpoint(shardId);
+            if (CheckpointStore.SHARD_END.equals(checkpoint) || !isReadToEnd(shard.getParentShardId(), shardIds)
+                    || !isReadToEnd(shard.getAdjacentParentShardId(), shardIds)) {
+                continue;
+            }
+
+            // the children of the shards read start from their first record, not to miss any
+            ShardIteratorType initialPosition = config.getInitialPosition();
+            if (shardIds.contains(shard.getParentShardId()) || shardIds.contains(shard.getAdjacentParentShardId())) {
+                initialPosition = ShardIteratorType.TRIM_HORIZON;
+            }
+            ShardConsumer shardConsumer = new ShardConsumer(shardId, checkpoint, initialPosition);
+            shardConsumers.put(shardId, shardConsumer);
+            log.debug("Starting to read shard " + shardId + " of stream " + streamName + " from "
+                    + (checkpoint != null ? checkpoint : initialPosition.toString()));
+            shardConsumer.scheduleFetch(0);
+        }
+    }
+
+    /**
+     * Returns whether the given parent shard was read to its end, or expired.
+     */
+    private boolean isReadToEnd(String parentShardId, Set<String> shardIds) {
+        return parentShardId == null || !shardIds.contains(parentShardId)
+                || CheckpointStore.SHARD_END.equals(checkpointStore.getCheckpoint(parentShardId));
+    }
+
+    private List<Shard> describeShards() {
+        List<Shard> shards = new ArrayList<Shard>();
+        String exclusiveStartShardId = null;
+        StreamDescription description;
+        do {
+            DescribeStreamRequest request = new DescribeStreamRequest().withStreamName(streamName)
+                    .withExclusiveStartShardId(exclusiveStartShardId);
+            description = kinesis.describeStream(request).getStreamDescription();
+            shards.addAll(description.getShards());
+            if (!shards.isEmpty()) {
+                exclusiveStartShardId = shards.get(shards.size() - 1).getShardId();
+            }
+        } while (Boolean.TRUE.equals(description.getHasMoreShards()) && !description.getShards().isEmpty());
+        return shards;
+    }
+
+    /**
+     * Checkpoints the given shard, logging any failure.
+     *
+     * @return True if the checkpoint was stored.
+     */
+    private boolean checkpoint(String shardId, String checkpoint) {
+        try {
+            checkpointStore.setCheckpoint(shardId, checkpoint);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to checkpoint shard " + shardId + " of stream " + streamName + " at " + checkpoint, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads a shard ahead of the processing of its records, and processes them in order.
+     */
+    private class ShardConsumer {
+        private final String shardId;
+        private final ShardIteratorType initialPosition;
+        private final String checkpoint;
+
+        /** The iterator of the next GetRecords call, null until obtained or once expired */
+        private String shardIterator;
+        /** The sequence number of the last Kinesis record read, to get a new iterator from */
+        private String lastSequenceNumberRead;
+
+        /** The batches of records read, not processed yet */
+        private final ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+        private final AtomicInteger bufferedRecords = new AtomicInteger();
+        /** Whether the shard is no longer read, as too many records are buffered */
+        private final AtomicBoolean fetchPaused = new AtomicBoolean();
+        /** Whether a task processing the batches is scheduled or running */
+        private final AtomicBoolean processing = new AtomicBoolean();
+
+        private final Runnable fetchTask = new Runnable() {
+            @Override
+            public void run() {
+                fetch();
+            }
+        };
+
+        private final Runnable processTask = new Runnable() {
+            @Override
+            public void run() {
+                process();
+            }
+        };
+
+        ShardConsumer(String shardId, String checkpoint, ShardIteratorType initialPosition) {
+            this.shardId = shardId;
+            this.checkpoint = checkpoint;
+            this.initialPosition = initialPosition;
+        }
+
+        void scheduleFetch(long delayMs) {
+            try {
+                fetchExecutor.schedule(fetchTask, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shut down
+            }
+        }
+
+        private void scheduleProcessing(long delayMs) {
+            try {
+                processingExecutor.schedule(processTask, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shut down
+            }
+        }
+
+        /**
+         * Makes a GetRecords call, and schedules the next one, unless too many records are
+         * buffered or the end of the shard was reached.
+         */
+        private void fetch() {
+            if (shutdown) {
+                return;
+            }
+            if (bufferedRecords.get() >= config.getMaxBufferedRecordsPerShard()) {
+                fetchPaused.set(true);
+                // unless the records were processed in the meantime, processing resumes the fetch
+                if (bufferedRecords.get() >= config.getMaxBufferedRecordsPerShard()
+                        || !fetchPaused.compareAndSet(true, false)) {
+                    return;
+                }
+            }
+
+            try {
+                if (shardIterator == null) {
+                    shardIterator = getShardIterator();
+                }
+                GetRecordsResult result = kinesis.getRecords(new GetRecordsRequest().withShardIterator(shardIterator)
+                        .withLimit(config.getMaxRecordsPerGetRecords()));
+
+                List<Record> records = result.getRecords();
+                if (!records.isEmpty()) {
+                    lastSequenceNumberRead = records.get(records.size() - 1).getSequenceNumber();
+                    addBatch(new Batch(config.isDeaggregationEnabled() ? RecordDeaggregator.deaggregate(records)
+                            : records, lastSequenceNumberRead));
+                }
+
+                shardIterator = result.getNextShardIterator();
+                if (shardIterator == null) {
+                    // the shard was closed by a split or merge, and all its records read
+                    addBatch(Batch.SHARD_END);
+                    return;
+                }
+                scheduleFetch(records.isEmpty() ? config.getIdleTimeBetweenGetRecordsMs() : 0);
+
+            } catch (ExpiredIteratorException e) {
+                shardIterator = null;
+                scheduleFetch(0);
+            } catch (AmazonClientException e) {
+                log.warn("Failed to read shard " + shardId + " of stream " + streamName, e);
+                scheduleFetch(config.getRetryDelayMs());
+            }
+        }
+
+        private String getShardIterator() {
+            GetShardIteratorRequest request = new GetShardIteratorRequest().withStreamName(streamName)
+                    .withShardId(shardId);
+            String startingSequenceNumber = lastSequenceNumberRead != null ? lastSequenceNumberRead : checkpoint;
+            if (startingSequenceNumber != null) {
+                request.withShardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER).withStartingSequenceNumber(
+                        startingSequenceNumber);
+            } else {
+                request.withShardIteratorType(initialPosition);
+            }
+            return kinesis.getShardIterator(request).getShardIterator();
+        }
+
+        private void addBatch(Batch batch) {
+            batches.offer(batch);
+            bufferedRecords.addAndGet(batch.records.size());
+            if (processing.compareAndSet(false, true)) {
+                scheduleProcessing(0);
+            }
+        }
+
+        /**
+         * Processes the first batch buffered, and schedules the processing of the next one.
+         */
+        private void process() {
+            Batch batch = batches.peek();
+            if (batch == null || shutdown) {
+                processing.set(false);
+                // a batch may have been added before the flag was cleared
+                if (!shutdown && !batches.isEmpty() && processing.compareAndSet(false, true)) {
+                    scheduleProcessing(0);
+                }
+                return;
+            }
+
+            if (batch == Batch.SHARD_END) {
+                // the children of the shard are only read once its end is checkpointed
+                if (!checkpoint(shardId, CheckpointStore.SHARD_END)) {
+                    scheduleProcessing(config.getRetryDelayMs());
+                    return;
+                }
+                shardConsumers.remove(shardId);
+                log.debug("Read shard " + shardId + " of stream " + streamName + " to its end");
+                // start reading the children of the shard
+                try {
+                    fetchExecutor.execute(syncShardsTask);
+                } catch (RejectedExecutionException e) {
+                    // shut down
+                }
+                return;
+            }
+
+            try {
+                processor.processRecords(shardId, Collections.unmodifiableList(batch.records));
+            } catch (Exception e) {
+                log.warn("Failed to process records of shard " + shardId + " of stream " + streamName
+                        + ", retrying", e);
+                scheduleProcessing(config.getRetryDelayMs());
+                return;
+            }
+            checkpoint(shardId, batch.sequenceNumber);
+
+            batches.poll();
+            if (bufferedRecords.addAndGet(-batch.records.size()) < config.getMaxBufferedRecordsPerShard()
+                    && fetchPaused.compareAndSet(true, false)) {
+                scheduleFetch(0);
+            }
+            // process the next batch in another task, for the other shards to get their turn
+            scheduleProcessing(0);
+        }
+    }
+
+    /**
+     * Records read from a shard, to process at once.
+     */
+    private static class Batch {
+        /** The marker of the end of a shard */
+        static final Batch SHARD_END = new Batch(Collections.<Record> emptyList(), null);
+
+        final List<Record> records;
+        /** The sequence number to checkpoint once the records are processed */
+        final String sequenceNumber;
+
+        Batch(List<Record> records, String sequenceNumber) {
+            this.records = records;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+        private final String namePrefix;
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName(namePrefix + threadCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
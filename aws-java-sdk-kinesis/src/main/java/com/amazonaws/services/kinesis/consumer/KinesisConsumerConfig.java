@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+
+/**
+ * Configuration options for a {@link KinesisConsumer}.
+ */
+public class KinesisConsumerConfig {
+
+    /** LATEST */
+    public static final ShardIteratorType INITIAL_POSITION_DEFAULT = ShardIteratorType.LATEST;
+
+    /** 10000 records, the most a GetRecords call returns */
+    public static final int MAX_RECORDS_PER_GET_RECORDS_DEFAULT = 10000;
+
+    /** 10000 records */
+    public static final int MAX_BUFFERED_RECORDS_PER_SHARD_DEFAULT = 10000;
+
+    /** 1 second */
+    public static final long IDLE_TIME_BETWEEN_GET_RECORDS_MS_DEFAULT = 1000;
+
+    /** 60 seconds */
+    public static final long SHARD_SYNC_INTERVAL_MS_DEFAULT = 60000;
+
+    /** 4 threads */
+    public static final int FETCH_THREADS_DEFAULT = 4;
+
+    /** 8 threads */
+    public static final int PROCESSING_THREADS_DEFAULT = 8;
+
+    /** 1 second */
+    public static final long RETRY_DELAY_MS_DEFAULT = 1000;
+
+    /** true */
+    public static final boolean DEAGGREGATION_ENABLED_DEFAULT = true;
+
+    /** Where to start reading the shards which have no checkpoint. */
+    private ShardIteratorType initialPosition = INITIAL_POSITION_DEFAULT;
+
+    /** The maximum number of records a GetRecords call returns. */
+    private int maxRecordsPerGetRecords = MAX_RECORDS_PER_GET_RECORDS_DEFAULT;
+
+    /** The number of records read ahead of processing, past which a shard is no longer read. */
+    private int maxBufferedRecordsPerShard = MAX_BUFFERED_RECORDS_PER_SHARD_DEFAULT;
+
+    /** The time to wait before reading a shard again once all its records were read. */
+    private long idleTimeBetweenGetRecordsMs = IDLE_TIME_BETWEEN_GET_RECORDS_MS_DEFAULT;
+
+    /** The time between two checks for new shards. */
+    private long shardSyncIntervalMs = SHARD_SYNC_INTERVAL_MS_DEFAULT;
+
+    /** The number of threads reading the shards. */
+    private int fetchThreads = FETCH_THREADS_DEFAULT;
+
+    /** The number of threads processing the records. */
+    private int processingThreads = PROCESSING_THREADS_DEFAULT;
+
+    /** The time to wait before retrying a failed call or processing. */
+    private long retryDelayMs = RETRY_DELAY_MS_DEFAULT;
+
+    /** Whether to de-aggregate the records aggregated by a KinesisProducer. */
+    private boolean deaggregationEnabled = DEAGGREGATION_ENABLED_DEFAULT;
+
+    public KinesisConsumerConfig() {
+    }
+
+    /** copy constructor */
+    public KinesisConsumerConfig(KinesisConsumerConfig other) {
+        initialPosition = other.initialPosition;
+        maxRecordsPerGetRecords = other.maxRecordsPerGetRecords;
+        maxBufferedRecordsPerShard = other.maxBufferedRecordsPerShard;
+        idleTimeBetweenGetRecordsMs = other.idleTimeBetweenGetRecordsMs;
+        shardSyncIntervalMs = other.shardSyncIntervalMs;
+        fetchThreads = other.fetchThreads;
+        processingThreads = other.processingThreads;
+        retryDelayMs = other.retryDelayMs;
+        deaggregationEnabled = other.deaggregationEnabled;
+    }
+
+    @Override
+    public String toString() {
+        return "KinesisConsumerConfig [initialPosition=" + initialPosition + ", maxRecordsPerGetRecords="
+                + maxRecordsPerGetRecords + ", maxBufferedRecordsPerShard=" + maxBufferedRecordsPerShard
+                + ", idleTimeBetweenGetRecordsMs=" + idleTimeBetweenGetRecordsMs + ", shardSyncIntervalMs="
+                + shardSyncIntervalMs + ", fetchThreads=" + fetchThreads + ", processingThreads="
+                + processingThreads + ", retryDelayMs=" + retryDelayMs + ", deaggregationEnabled="
+                + deaggregationEnabled + "]";
+    }
+
+    /**
+     * Where to start reading the shards which have no checkpoint: {@code LATEST} to read only the
+     * records put from now on, or {@code TRIM_HORIZON} to read all the records the stream holds.
+     * The shards created by splits and merges are always read from their start, for no record to
+     * be missed.
+     */
+    public ShardIteratorType getInitialPosition() {
+        return initialPosition;
+    }
+
+    /**
+     * Where to start reading the shards which have no checkpoint: {@code LATEST} to read only the
+     * records put from now on, or {@code TRIM_HORIZON} to read all the records the stream holds.
+     * The shards created by splits and merges are always read from their start, for no record to
+     * be missed.
+     */
+    public void setInitialPosition(ShardIteratorType initialPosition) {
+        if (initialPosition != ShardIteratorType.LATEST && initialPosition != ShardIteratorType.TRIM_HORIZON) {
+            throw new IllegalArgumentException("The initial position must be LATEST or TRIM_HORIZON");
+        }
+        this.initialPosition = initialPosition;
+    }
+
+    public KinesisConsumerConfig withInitialPosition(ShardIteratorType initialPosition) {
+        setInitialPosition(initialPosition);
+        return this;
+    }
+
+    /**
+     * The maximum number of records a GetRecords call returns, which is also the maximum size of
+     * the batches of records processed.
+     */
+    public int getMaxRecordsPerGetRecords() {
+        return maxRecordsPerGetRecords;
+    }
+
+    /**
+     * The maximum number of records a GetRecords call returns, which is also the maximum size of
+     * the batches of records processed.
+     */
+    public void setMaxRecordsPerGetRecords(int maxRecordsPerGetRecords) {
+        if (maxRecordsPerGetRecords < 1 || maxRecordsPerGetRecords > MAX_RECORDS_PER_GET_RECORDS_DEFAULT) {
+            throw new IllegalArgumentException("maxRecordsPerGetRecords must be between 1 and "
+                    + MAX_RECORDS_PER_GET_RECORDS_DEFAULT);
+        }
+        this.maxRecordsPerGetRecords = maxRecordsPerGetRecords;
+    }
+
+    public KinesisConsumerConfig withMaxRecordsPerGetRecords(int maxRecordsPerGetRecords) {
+        setMaxRecordsPerGetRecords(maxRecordsPerGetRecords);
+        return this;
+    }
+
+    /**
+     * The number of records read from a shard ahead of their processing, past which the shard is
+     * no longer read until some are processed. Reading ahead lets the next records be fetched
+     * while the previous ones are processed.
+     */
+    public int getMaxBufferedRecordsPerShard() {
+        return maxBufferedRecordsPerShard;
+    }
+
+    /**
+     * The number of records read from a shard ahead of their processing, past which the shard is
+     * no longer read until some are processed. Reading ahead lets the next records be fetched
+     * while the previous ones are processed.
+     */
+    public void setMaxBufferedRecordsPerShard(int maxBufferedRecordsPerShard) {
+        if (maxBufferedRecordsPerShard < 1) {
+            throw new IllegalArgumentException("maxBufferedRecordsPerShard must be at least 1");
+        }
+        this.maxBufferedRecordsPerShard = maxBufferedRecordsPerShard;
+    }
+
+    public KinesisConsumerConfig withMaxBufferedRecordsPerShard(int maxBufferedRecordsPerShard) {
+        setMaxBufferedRecordsPerShard(maxBufferedRecordsPerShard);
+        return this;
+    }
+
+    /**
+     * The time to wait before reading a shard again once a GetRecords call returned no records.
+     * A shard is read again right away while it returns records.
+     */
+    public long getIdleTimeBetweenGetRecordsMs() {
+        return idleTimeBetweenGetRecordsMs;
+    }
+
+    /**
+     * The time to wait before reading a shard again once a GetRecords call returned no records.
+     * A shard is read again right away while it returns records.
+     */
+    public void setIdleTimeBetweenGetRecordsMs(long idleTimeBetweenGetRecordsMs) {
+        if (idleTimeBetweenGetRecordsMs < 0) {
+            throw new IllegalArgumentException("idleTimeBetweenGetRecordsMs cannot be negative");
+        }
+        this.idleTimeBetweenGetRecordsMs = idleTimeBetweenGetRecordsMs;
+    }
+
+    public KinesisConsumerConfig withIdleTimeBetweenGetRecordsMs(long idleTimeBetweenGetRecordsMs) {
+        setIdleTimeBetweenGetRecordsMs(idleTimeBetweenGetRecordsMs);
+        return this;
+    }
+
+    /**
+     * The time between two descriptions of the stream, to find the shards to read. The stream is
+     * also described whenever a shard is read to its end.
+     */
+    public long getShardSyncIntervalMs() {
+        return shardSyncIntervalMs;
+    }
+
+    /**
+     * The time between two descriptions of the stream, to find the shards to read. The stream is
+     * also described whenever a shard is read to its end.
+     */
+    public void setShardSyncIntervalMs(long shardSyncIntervalMs) {
+        if (shardSyncIntervalMs < 1) {
+            throw new IllegalArgumentException("shardSyncIntervalMs must be at least 1");
+        }
+        this.shardSyncIntervalMs = shardSyncIntervalMs;
+    }
+
+    public KinesisConsumerConfig withShardSyncIntervalMs(long shardSyncIntervalMs) {
+        setShardSyncIntervalMs(shardSyncIntervalMs);
+        return this;
+    }
+
+    /**
+     * The number of threads making the GetRecords calls of all the shards.
+     */
+    public int getFetchThreads() {
+        return fetchThreads;
+    }
+
+    /**
+     * The number of threads making the GetRecords calls of all the shards.
+     */
+    public void setFetchThreads(int fetchThreads) {
+        if (fetchThreads < 1) {
+            throw new IllegalArgumentException("fetchThreads must be at least 1");
+        }
+        this.fetchThreads = fetchThreads;
+    }
+
+    public KinesisConsumerConfig withFetchThreads(int fetchThreads) {
+        setFetchThreads(fetchThreads);
+        return this;
+    }
+
+    /**
+     * The number of threads processing the records, which is the maximum number of shards whose
+     * records are processed at once.
+     */
+    public int getProcessingThreads() {
+        return processingThreads;
+    }
+
+    /**
+     * The number of threads processing the records, which is the maximum number of shards whose
+     * records are processed at once.
+     */
+    public void setProcessingThreads(int processingThreads) {
+        if (processingThreads < 1) {
+            throw new IllegalArgumentException("processingThreads must be at least 1");
+        }
+        this.processingThreads = processingThreads;
+    }
+
+    public KinesisConsumerConfig withProcessingThreads(int processingThreads) {
+        setProcessingThreads(processingThreads);
+        return this;
+    }
+
+    /**
+     * The time to wait before retrying a call to Kinesis which failed, or the processing of a
+     * batch of records which failed.
+     */
+    public long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    /**
+     * The time to wait before retrying a call to Kinesis which failed, or the processing of a
+     * batch of records which failed.
+     */
+    public void setRetryDelayMs(long retryDelayMs) {
+        if (retryDelayMs < 0) {
+            throw new IllegalArgumentException("retryDelayMs cannot be negative");
+        }
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public KinesisConsumerConfig withRetryDelayMs(long retryDelayMs) {
+        setRetryDelayMs(retryDelayMs);
+        return this;
+    }
+
+    /**
+     * Whether to de-aggregate the records aggregated by a
+     * {@link com.amazonaws.services.kinesis.producer.KinesisProducer}, handing each of them to the
+     * processor, rather than the Kinesis records holding them.
+     */
+    public boolean isDeaggregationEnabled() {
+        return deaggregationEnabled;
+    }
+
+    /**
+     * Whether to de-aggregate the records aggregated by a
+     * {@link com.amazonaws.services.kinesis.producer.KinesisProducer}, handing each of them to the
+     * processor, rather than the Kinesis records holding them.
+     */
+    public void setDeaggregationEnabled(boolean deaggregationEnabled) {
+        this.deaggregationEnabled = deaggregationEnabled;
+    }
+
+    public KinesisConsumerConfig withDeaggregationEnabled(boolean deaggregationEnabled) {
+        setDeaggregationEnabled(deaggregationEnabled);
+        return this;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Unpacks the user records of the Kinesis records aggregated in the format of the Kinesis
+ * Producer Library, as written by
+ * {@link com.amazonaws.services.kinesis.producer.KinesisProducer}. Records not in that format,
+ * or whose digest does not match, are left as they are.
+ */
+class RecordDeaggregator {
+
+    private static final byte[] MAGIC = new byte[] { (byte) 0xf3, (byte) 0x89, (byte) 0x9a, (byte) 0xc2 };
+    private static final int DIGEST_SIZE_IN_BYTES = 16;
+
+    private static final int PARTITION_KEY_TABLE_FIELD = 1;
+    private static final int RECORDS_FIELD = 3;
+    private static final int PARTITION_KEY_INDEX_FIELD = 1;
+    private static final int DATA_FIELD = 3;
+
+    private static final int VARINT_WIRE_TYPE = 0;
+    private static final int FIXED64_WIRE_TYPE = 1;
+    private static final int LENGTH_DELIMITED_WIRE_TYPE = 2;
+    private static final int FIXED32_WIRE_TYPE = 5;
+
+    /**
+     * Returns the user records of the given Kinesis records, in order. The user records of an
+     * aggregated record get its sequence number.
+     */
+    static List<Record> deaggregate(List<Record> records) {
+        List<Record> userRecords = new ArrayList<Record>(records.size());
+        for (Record record : records) {
+            if (!isAggregated(record.getData()) || !deaggregate(record, userRecords)) {
+                userRecords.add(record);
+            }
+        }
+        return userRecords;
+    }
+
+    private static boolean isAggregated(ByteBuffer data) {
+        if (data.remaining() < MAGIC.length + DIGEST_SIZE_IN_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(data.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the user records of the given aggregated record to the given list.
+     *
+     * @return False, leaving the list untouched, if the record could not be de-aggregated.
+     */
+    private static boolean deaggregate(Record record, List<Record> userRecords) {
+        ByteBuffer data = record.getData().duplicate();
+        ByteBuffer message = data.duplicate();
+        message.position(data.position() + MAGIC.length);
+        message.limit(data.limit() - DIGEST_SIZE_IN_BYTES);
+        ByteBuffer digest = data.duplicate();
+        digest.position(data.limit() - DIGEST_SIZE_IN_BYTES);
+
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AmazonClientException("Unable to check the MD5 hash of an aggregated record", e);
+        }
+        md5.update(message.duplicate());
+        byte[] expectedDigest = new byte[DIGEST_SIZE_IN_BYTES];
+        digest.get(expectedDigest);
+        if (!Arrays.equals(md5.digest(), expectedDigest)) {
+            return false;
+        }
+
+        try {
+            List<String> partitionKeys = new ArrayList<String>();
+            List<Record> aggregated = new ArrayList<Record>();
+            List<Long> partitionKeyIndexes = new ArrayList<Long>();
+            while (message.hasRemaining()) {
+                int tag = (int) readVarint(message);
+                int field = tag >>> 3;
+                if (field == PARTITION_KEY_TABLE_FIELD && (tag & 7) == LENGTH_DELIMITED_WIRE_TYPE) {
+                    partitionKeys.add(new String(readBytes(message), UTF8));
+                } else if (field == RECORDS_FIELD && (tag & 7) == LENGTH_DELIMITED_WIRE_TYPE) {
+                    ByteBuffer userRecord = ByteBuffer.wrap(readBytes(message));
+                    long partitionKeyIndex = -1;
+                    ByteBuffer userData = null;
+                    while (userRecord.hasRemaining()) {
+                        int recordTag = (int) readVarint(userRecord);
+                        int recordField = recordTag >>> 3;
+                        if (recordField == PARTITION_KEY_INDEX_FIELD && (recordTag & 7) == VARINT_WIRE_TYPE) {
+                            partitionKeyIndex = readVarint(userRecord);
+                        } else if (recordField == DATA_FIELD && (recordTag & 7) == LENGTH_DELIMITED_WIRE_TYPE) {
+                            userData = ByteBuffer.wrap(readBytes(userRecord));
+                        } else {
+                            skipField(userRecord, recordTag & 7);
+                        }
+                    }
+                    if (partitionKeyIndex < 0 || userData == null) {
+                        return false;
+                    }
+                    partitionKeyIndexes.add(partitionKeyIndex);
+                    aggregated.add(new Record().withSequenceNumber(record.getSequenceNumber()).withData(userData));
+                } else {
+                    skipField(message, tag & 7);
+                }
+            }
+
+            for (int i = 0; i < aggregated.size(); i++) {
+                long partitionKeyIndex = partitionKeyIndexes.get(i);
+                if (partitionKeyIndex >= partitionKeys.size()) {
+                    return false;
+                }
+                aggregated.get(i).setPartitionKey(partitionKeys.get((int) partitionKeyIndex));
+            }
+            userRecords.addAll(aggregated);
+            return true;
+        } catch (RuntimeException e) {
+            // truncated or malformed message
+            return false;
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        long length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated field");
+        }
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void skipField(ByteBuffer buffer, int wireType) {
+        switch (wireType) {
+        case VARINT_WIRE_TYPE:
+            readVarint(buffer);
+            break;
+        case FIXED64_WIRE_TYPE:
+            buffer.position(buffer.position() + 8);
+            break;
+        case LENGTH_DELIMITED_WIRE_TYPE:
+            readBytes(buffer);
+            break;
+        case FIXED32_WIRE_TYPE:
+            buffer.position(buffer.position() + 4);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported wire type " + wireType);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import java.util.List;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Processes the records a {@link KinesisConsumer} reads from the shards of a stream.
+ * <p>
+ * The batches of records of a shard are processed one at a time, in the order of the shard, but
+ * the batches of different shards are processed concurrently, so implementations must be
+ * thread-safe.
+ */
+public interface RecordProcessor {
+
+    /**
+     * Processes a batch of records read from a shard. Once this method returns, the sequence
+     * number of the last record of the batch is checkpointed for the shard; if it throws, the
+     * same batch is processed again after a delay.
+     *
+     * @param shardId
+     *            The ID of the shard the records were read from.
+     * @param records
+     *            The records, in the order of the shard. The records aggregated by a
+     *            {@link com.amazonaws.services.kinesis.producer.KinesisProducer} into a single
+     *            Kinesis record are de-aggregated, and share its sequence number.
+     * @throws Exception
+     *             If the records could not be processed.
+     */
+    void processRecords(String shardId, List<Record> records) throws Exception;
+}
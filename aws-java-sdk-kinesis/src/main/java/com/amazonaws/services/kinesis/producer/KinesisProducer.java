@@ -0,0 +1,708 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+
+/**
+ * Puts records to a Kinesis stream in the background, buffering them so that many are sent per
+ * call.
+ * <p>
+ * The records added are grouped by the shard they are expected to go to, according to the hash
+ * key ranges of the shards of the stream, and the records of a shard are packed into aggregated
+ * Kinesis records (see {@link KinesisProducerConfig#setAggregationEnabled(boolean)}). The Kinesis
+ * records are then sent by {@code PutRecords} calls of up to 500 records, once there are enough of
+ * them to fill a call, or once they have been buffered for about
+ * {@link KinesisProducerConfig#getMaxBufferedTimeMs()}. The records a {@code PutRecords} call
+ * failed to put, for instance because the throughput of their shard was exceeded, are put again
+ * until they expire.
+ * <p>
+ * The counts of the records put to each shard are available from {@link #getShardMetrics()}.
+ * <p>
+ * Instances of {@code KinesisProducer} are thread-safe. They must be started before records are
+ * added, and should be shut down once no longer needed, for the records buffered to be put.
+ */
+public class KinesisProducer {
+
+    private static final Log log = LogFactory.getLog(KinesisProducer.class);
+
+    /** The maximum size of the data of a Kinesis record. */
+    static final int MAX_RECORD_SIZE_BYTES = 1024 * 1024;
+
+    /** The maximum number of records of a PutRecords call. */
+    static final int MAX_RECORDS_PER_PUT_RECORDS = 500;
+
+    /** The maximum size of a PutRecords call, counting the data and partition keys of the records. */
+    static final int MAX_PUT_RECORDS_SIZE_BYTES = 5 * 1024 * 1024;
+
+    /** The maximum length of a partition key. */
+    static final int MAX_PARTITION_KEY_LENGTH = 256;
+
+    private static final BigInteger MAX_HASH_KEY = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    /** The minimum time between two updates of the shard map. */
+    private static final long SHARD_MAP_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final String THROUGHPUT_EXCEEDED_ERROR_CODE = "ProvisionedThroughputExceededException";
+
+    private static final ThreadLocal<MessageDigest> md5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AmazonClientException("Unable to calculate the hash keys of partition keys", e);
+            }
+        }
+    };
+
+    private final AmazonKinesis kinesis;
+    private final String streamName;
+    private final KinesisProducerConfig config;
+    private final long maxBufferedTimeNanos;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+
+    /** The hash key ranges of the shards of the stream, null until described */
+    private volatile ShardMap shardMap;
+    private final AtomicBoolean shardMapUpdating = new AtomicBoolean();
+    private volatile long nextShardMapUpdateNanos = System.nanoTime();
+
+    /** The user records being aggregated, by shard */
+    private final ConcurrentMap<String, ShardBuffer> shardBuffers = new ConcurrentHashMap<String, ShardBuffer>();
+    private final ConcurrentMap<String, ShardMetrics> shardMetrics = new ConcurrentHashMap<String, ShardMetrics>();
+
+    /** The Kinesis records waiting for a PutRecords call, in the order they became ready */
+    private final ConcurrentLinkedQueue<ReadyRecord> readyRecords = new ConcurrentLinkedQueue<ReadyRecord>();
+    private final AtomicInteger readyRecordsCount = new AtomicInteger();
+    private final AtomicLong readyRecordsBytes = new AtomicLong();
+    /** Guards the taking of records off {@link #readyRecords} */
+    private final Object sendLock = new Object();
+    private volatile boolean flushRequested;
+
+    private final AtomicInteger inflightPutRecords = new AtomicInteger();
+
+    /**
+     * The Kinesis records waiting for the retry delay to elapse. A record is put again, or failed
+     * on shutdown, by whichever removes it first.
+     */
+    private final Set<KinesisRecord> retryingRecords =
+            Collections.newSetFromMap(new ConcurrentHashMap<KinesisRecord, Boolean>());
+
+    /** The user records added, not put or failed yet */
+    private final AtomicLong outstandingRecords = new AtomicLong();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a producer putting records to the given stream with the default configuration.
+     *
+     * @see #KinesisProducer(AmazonKinesis, String, KinesisProducerConfig)
+     */
+    public KinesisProducer(AmazonKinesis kinesis, String streamName) {
+        this(kinesis, streamName, new KinesisProducerConfig());
+    }
+
+    /**
+     * Constructs a producer putting records to the given stream. It does not accept records until
+     * started.
+     *
+     * @param kinesis
+     *            The client to put the records with.
+     * @param streamName
+     *            The name of the stream.
+     * @param config
+     *            The configuration of the producer.
+     */
+    public KinesisProducer(AmazonKinesis kinesis, String streamName, KinesisProducerConfig config) {
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.config = new KinesisProducerConfig(config);
+        this.maxBufferedTimeNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getMaxBufferedTimeMs());
+
+        // one more thread than PutRecords calls, for the shard map updates
+        this.executor = Executors.newFixedThreadPool(this.config.getMaxInflightPutRecords() + 1,
+                new DaemonThreadFactory("KinesisProducerThread-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("KinesisProducerTimer-"));
+    }
+
+    /**
+     * Starts putting the records added. The shards of the stream are described in the background;
+     * the records added until then are put without being aggregated.
+     *
+     * @throws IllegalStateException
+     *             If the producer has already been started.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The producer has already been started");
+        }
+        updateShardMap();
+        long checkPeriodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), maxBufferedTimeNanos / 4);
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drainShardBuffers(System.nanoTime() - maxBufferedTimeNanos);
+                    sendReadyRecords();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to send the records buffered for stream " + KinesisProducer.this.streamName, e);
+                }
+            }
+        }, checkPeriodNanos, checkPeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds a record to put to the stream, to the shard the hash of its partition key maps to.
+     *
+     * @see #addRecord(String, String, ByteBuffer)
+     */
+    public Future<PutRecordsResultEntry> addRecord(String partitionKey, ByteBuffer data) {
+        return addRecord(partitionKey, null, data);
+    }
+
+    /**
+     * Adds a record to put to the stream.
+     *
+     * @param partitionKey
+     *            The partition key of the record, of 1 to 256 characters.
+     * @param explicitHashKey
+     *            The hash key deciding the shard the record goes to, as a decimal number, or null
+     *            to use the MD5 hash of the partition key.
+     * @param data
+     *            The data of the record, from its position to its limit. It must not be modified
+     *            until the record is put.
+     * @return The result of putting the record, giving the shard the record was put to and its
+     *         sequence number. Records aggregated together share the same sequence number. If the
+     *         record could not be put before it expired, the future fails with an
+     *         {@link AmazonServiceException} carrying the error code returned by Kinesis, or with
+     *         the {@link AmazonClientException} of the last PutRecords call.
+     * @throws IllegalStateException
+     *             If the producer has not been started, or has been shut down.
+     */
+    public Future<PutRecordsResultEntry> addRecord(String partitionKey, String explicitHashKey, ByteBuffer data) {
+        if (!started.get()) {
+            throw new IllegalStateException("The producer has not been started");
+        }
+        if (shutdown) {
+            throw new IllegalStateException("The producer has been shut down");
+        }
+        if (partitionKey == null || partitionKey.length() == 0 || partitionKey.length() > MAX_PARTITION_KEY_LENGTH) {
+            throw new IllegalArgumentException("The partition key must have 1 to " + MAX_PARTITION_KEY_LENGTH
+                    + " characters");
+        }
+        if (data == null || data.remaining() > MAX_RECORD_SIZE_BYTES) {
+            throw new IllegalArgumentException("The data must be set, and of at most " + MAX_RECORD_SIZE_BYTES
+                    + " bytes");
+        }
+        BigInteger hashKey;
+        if (explicitHashKey != null) {
+            try {
+                hashKey = new BigInteger(explicitHashKey);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid explicit hash key: " + explicitHashKey, e);
+            }
+            if (hashKey.signum() < 0 || hashKey.compareTo(MAX_HASH_KEY) > 0) {
+                throw new IllegalArgumentException("The explicit hash key must be between 0 and " + MAX_HASH_KEY);
+            }
+        } else {
+            hashKey = new BigInteger(1, md5.get().digest(partitionKey.getBytes(UTF8)));
+        }
+
+        UserRecord userRecord = new UserRecord(partitionKey, explicitHashKey, hashKey, data.duplicate(),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getRecordTtlMs()));
+        outstandingRecords.incrementAndGet();
+
+        ShardMap currentShardMap = shardMap;
+        String shardId = currentShardMap == null ? null : currentShardMap.shardIdOf(hashKey);
+        if (shardId == null) {
+            updateShardMap();
+        }
+        if (!config.isAggregationEnabled() || shardId == null
+                || userRecord.sizeInBytes() >= config.getAggregationMaxSizeBytes()) {
+            addReadyRecord(new KinesisRecord(userRecord, shardId), System.nanoTime() + maxBufferedTimeNanos);
+        } else {
+            KinesisRecord full = shardBufferOf(shardId).add(userRecord);
+            if (full != null) {
+                addReadyRecord(full, System.nanoTime());
+            }
+        }
+        return userRecord.future;
+    }
+
+    /**
+     * Puts the records added so far without waiting for more records to batch them with. Does not
+     * wait for them to be put.
+     */
+    public void flush() {
+        drainShardBuffers(Long.MAX_VALUE);
+        flushRequested = true;
+        sendReadyRecords();
+    }
+
+    /**
+     * Stops accepting records, and waits for the records added to be put or to fail, up to the
+     * given time. The records still buffered or waiting to be retried when the time is up are
+     * failed, and those being put are failed if the PutRecords call does not put them.
+     *
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The unit of the timeout.
+     * @return True if all the records were put or failed in time.
+     * @throws AmazonClientException
+     *             If the calling thread is interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        shutdown = true;
+        flush();
+        try {
+            synchronized (outstandingRecords) {
+                while (outstandingRecords.get() > 0) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(outstandingRecords, remainingNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the records to be put", e);
+        } finally {
+            timer.shutdownNow();
+            executor.shutdown();
+        }
+        awaitTimerTermination();
+
+        // fail the records buffered or waiting to be retried, now that the timer no longer runs
+        AmazonClientException shutdownException = new AmazonClientException(
+                "The producer was shut down before the record could be put");
+        for (KinesisRecord record : retryingRecords) {
+            if (retryingRecords.remove(record)) {
+                fail(record, shutdownException);
+            }
+        }
+        drainShardBuffers(Long.MAX_VALUE);
+        synchronized (sendLock) {
+            ReadyRecord ready;
+            while ((ready = readyRecords.poll()) != null) {
+                fail(ready.record, shutdownException);
+            }
+        }
+        return outstandingRecords.get() == 0;
+    }
+
+    /**
+     * Waits for a task the timer may be running to complete, for the records it makes ready to be
+     * failed along with the others.
+     */
+    private void awaitTimerTermination() {
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of records added which were not put or failed yet.
+     */
+    public long getOutstandingRecordsCount() {
+        return outstandingRecords.get();
+    }
+
+    /**
+     * Returns the counts of the records put to each shard, by shard ID. The counts of a shard keep
+     * increasing as records are put to it.
+     */
+    public Map<String, ShardMetrics> getShardMetrics() {
+        return Collections.unmodifiableMap(new HashMap<String, ShardMetrics>(shardMetrics));
+    }
+
+    private ShardBuffer shardBufferOf(String shardId) {
+        ShardBuffer buffer = shardBuffers.get(shardId);
+        if (buffer == null) {
+            ShardBuffer newBuffer = new ShardBuffer(shardId);
+            buffer = shardBuffers.putIfAbsent(shardId, newBuffer);
+            if (buffer == null) {
+                buffer = newBuffer;
+            }
+        }
+        return buffer;
+    }
+
+    private ShardMetrics shardMetricsOf(String shardId) {
+        ShardMetrics metrics = shardMetrics.get(shardId);
+        if (metrics == null) {
+            ShardMetrics newMetrics = new ShardMetrics(shardId);
+            metrics = shardMetrics.putIfAbsent(shardId, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Makes ready the aggregated records whose first user record was added before the given time,
+     * as of {@link System#nanoTime()}.
+     */
+    private void drainShardBuffers(long addedBeforeNanos) {
+        for (ShardBuffer buffer : shardBuffers.values()) {
+            KinesisRecord record = buffer.drain(addedBeforeNanos);
+            if (record != null) {
+                addReadyRecord(record, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Queues a Kinesis record for a PutRecords call, to be made by the given time at the latest,
+     * or as soon as there are enough records to fill a call.
+     */
+    private void addReadyRecord(KinesisRecord record, long dueNanos) {
+        readyRecords.offer(new ReadyRecord(record, dueNanos));
+        int count = readyRecordsCount.incrementAndGet();
+        long bytes = readyRecordsBytes.addAndGet(record.sizeInBytes());
+        if (count >= MAX_RECORDS_PER_PUT_RECORDS || bytes >= MAX_PUT_RECORDS_SIZE_BYTES) {
+            sendReadyRecords();
+        }
+    }
+
+    /**
+     * Makes PutRecords calls of the ready records, for as long as there are full calls to make, or
+     * records due, and fewer calls in flight than allowed.
+     */
+    private void sendReadyRecords() {
+        synchronized (sendLock) {
+            while (inflightPutRecords.get() < config.getMaxInflightPutRecords()) {
+                ReadyRecord first = readyRecords.peek();
+                if (first == null) {
+                    flushRequested = false;
+                    return;
+                }
+                boolean full = readyRecordsCount.get() >= MAX_RECORDS_PER_PUT_RECORDS
+                        || readyRecordsBytes.get() >= MAX_PUT_RECORDS_SIZE_BYTES;
+                if (!full && !flushRequested && first.dueNanos - System.nanoTime() > 0) {
+                    return;
+                }
+
+                List<KinesisRecord> batch = new ArrayList<KinesisRecord>();
+                long batchBytes = 0;
+                ReadyRecord ready;
+                while (batch.size() < MAX_RECORDS_PER_PUT_RECORDS && (ready = readyRecords.peek()) != null) {
+                    int size = ready.record.sizeInBytes();
+                    if (batchBytes + size > MAX_PUT_RECORDS_SIZE_BYTES) {
+                        break;
+                    }
+                    readyRecords.poll();
+                    batch.add(ready.record);
+                    batchBytes += size;
+                }
+                readyRecordsCount.addAndGet(-batch.size());
+                readyRecordsBytes.addAndGet(-batchBytes);
+
+                inflightPutRecords.incrementAndGet();
+                try {
+                    executor.execute(new PutRecordsTask(batch));
+                } catch (RejectedExecutionException e) {
+                    inflightPutRecords.decrementAndGet();
+                    for (KinesisRecord record : batch) {
+                        fail(record, new AmazonClientException("The producer was shut down", e));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the result of a PutRecords call, putting again the records it failed to put.
+     */
+    private void handleResult(List<KinesisRecord> batch, PutRecordsResult result) {
+        boolean shardMapOutdated = false;
+        List<PutRecordsResultEntry> entries = result.getRecords();
+        for (int i = 0; i < batch.size(); i++) {
+            KinesisRecord record = batch.get(i);
+            PutRecordsResultEntry entry = entries.get(i);
+            if (entry.getErrorCode() == null) {
+                shardMetricsOf(entry.getShardId()).recordPut(record);
+                if (record.predictedShardId != null && !record.predictedShardId.equals(entry.getShardId())) {
+                    shardMapOutdated = true;
+                }
+                succeed(record, entry);
+            } else {
+                if (record.predictedShardId != null) {
+                    if (THROUGHPUT_EXCEEDED_ERROR_CODE.equals(entry.getErrorCode())) {
+                        shardMetricsOf(record.predictedShardId).recordThrottled();
+                    } else {
+                        shardMetricsOf(record.predictedShardId).recordFailed();
+                    }
+                }
+                AmazonServiceException e = new AmazonServiceException(entry.getErrorMessage());
+                e.setErrorCode(entry.getErrorCode());
+                e.setServiceName("AmazonKinesis");
+                retryOrFail(record, e);
+            }
+        }
+        if (shardMapOutdated) {
+            updateShardMap();
+        }
+    }
+
+    /**
+     * Puts the given record again after the retry delay, unless it expired.
+     */
+    private void retryOrFail(final KinesisRecord record, AmazonClientException e) {
+        if (timer.isShutdown() || System.nanoTime() - record.deadlineNanos() >= 0) {
+            fail(record, e);
+            return;
+        }
+        retryingRecords.add(record);
+        try {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (retryingRecords.remove(record)) {
+                        addReadyRecord(record, System.nanoTime());
+                    }
+                }
+            }, config.getRetryDelayMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException re) {
+            if (retryingRecords.remove(record)) {
+                fail(record, e);
+            }
+        }
+    }
+
+    private void succeed(KinesisRecord record, PutRecordsResultEntry entry) {
+        record.setSuccess(entry);
+        recordsDone(record.userRecords.size());
+    }
+
+    private void fail(KinesisRecord record, AmazonClientException e) {
+        record.setFailure(e);
+        recordsDone(record.userRecords.size());
+    }
+
+    private void recordsDone(int count) {
+        if (outstandingRecords.addAndGet(-count) == 0 && shutdown) {
+            synchronized (outstandingRecords) {
+                outstandingRecords.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Describes the shards of the stream in the background, unless they were described recently.
+     */
+    private void updateShardMap() {
+        if (System.nanoTime() - nextShardMapUpdateNanos < 0 || !shardMapUpdating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        shardMap = new ShardMap(describeShards());
+                    } catch (AmazonClientException e) {
+                        log.warn("Failed to describe the shards of stream " + streamName, e);
+                    } finally {
+                        nextShardMapUpdateNanos = System.nanoTime() + SHARD_MAP_UPDATE_INTERVAL_NANOS;
+                        shardMapUpdating.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            shardMapUpdating.set(false);
+        }
+    }
+
+    private List<Shard> describeShards() {
+        List<Shard> shards = new ArrayList<Shard>();
+        String exclusiveStartShardId = null;
+        StreamDescription description;
+        do {
+            DescribeStreamRequest request = new DescribeStreamRequest().withStreamName(streamName)
+                    .withExclusiveStartShardId(exclusiveStartShardId);
+            description = kinesis.describeStream(request).getStreamDescription();
+            shards.addAll(description.getShards());
+            if (!shards.isEmpty()) {
+                exclusiveStartShardId = shards.get(shards.size() - 1).getShardId();
+            }
+        } while (Boolean.TRUE.equals(description.getHasMoreShards()) && !description.getShards().isEmpty());
+        return shards;
+    }
+
+    /**
+     * Makes a PutRecords call of a batch of records.
+     */
+    private class PutRecordsTask implements Runnable {
+        private final List<KinesisRecord> batch;
+
+        PutRecordsTask(List<KinesisRecord> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<PutRecordsRequestEntry> entries = new ArrayList<PutRecordsRequestEntry>(batch.size());
+                for (KinesisRecord record : batch) {
+                    entries.add(record.toRequestEntry());
+                }
+                PutRecordsResult result;
+                try {
+                    result = kinesis.putRecords(new PutRecordsRequest().withStreamName(streamName).withRecords(
+                            entries));
+                } catch (AmazonServiceException e) {
+                    boolean retryable = e.getErrorType() != ErrorType.Client
+                            || THROUGHPUT_EXCEEDED_ERROR_CODE.equals(e.getErrorCode())
+                            || "ThrottlingException".equals(e.getErrorCode());
+                    for (KinesisRecord record : batch) {
+                        if (retryable) {
+                            retryOrFail(record, e);
+                        } else {
+                            fail(record, e);
+                        }
+                    }
+                    return;
+                } catch (AmazonClientException e) {
+                    for (KinesisRecord record : batch) {
+                        retryOrFail(record, e);
+                    }
+                    return;
+                }
+                handleResult(batch, result);
+            } finally {
+                inflightPutRecords.decrementAndGet();
+                sendReadyRecords();
+            }
+        }
+    }
+
+    /**
+     * The user records being aggregated for a shard.
+     */
+    private class ShardBuffer {
+        private final String shardId;
+        private final RecordAggregator aggregator = new RecordAggregator();
+
+        ShardBuffer(String shardId) {
+            this.shardId = shardId;
+        }
+
+        /**
+         * Adds the given user record to the aggregated record of the shard.
+         *
+         * @return The aggregated record, if it was full and the user record was added to a new
+         *         one, or null.
+         */
+        synchronized KinesisRecord add(UserRecord userRecord) {
+            if (aggregator.add(userRecord, config.getAggregationMaxSizeBytes())) {
+                return null;
+            }
+            KinesisRecord full = aggregator.drain(shardId);
+            aggregator.add(userRecord, config.getAggregationMaxSizeBytes());
+            return full;
+        }
+
+        /**
+         * Returns the aggregated record of the shard if its first user record was added before the
+         * given time, or null.
+         */
+        synchronized KinesisRecord drain(long addedBeforeNanos) {
+            if (aggregator.isEmpty()
+                    || (addedBeforeNanos != Long.MAX_VALUE && aggregator.getFirstAddedNanos() - addedBeforeNanos > 0)) {
+                return null;
+            }
+            return aggregator.drain(shardId);
+        }
+    }
+
+    /**
+     * A Kinesis record waiting for a PutRecords call.
+     */
+    private static class ReadyRecord {
+        final KinesisRecord record;
+        /** The time by which to put the record, as of System.nanoTime() */
+        final long dueNanos;
+
+        ReadyRecord(KinesisRecord record, long dueNanos) {
+            this.record = record;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+        private final String namePrefix;
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName(namePrefix + threadCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
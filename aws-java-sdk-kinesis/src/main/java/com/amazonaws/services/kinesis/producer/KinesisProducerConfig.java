@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+/**
+ * Configuration options for a {@link KinesisProducer}.
+ */
+public class KinesisProducerConfig {
+
+    /** 100 milliseconds */
+    public static final long MAX_BUFFERED_TIME_MS_DEFAULT = 100;
+
+    /** true */
+    public static final boolean AGGREGATION_ENABLED_DEFAULT = true;
+
+    /** 50 KiB */
+    public static final int AGGREGATION_MAX_SIZE_BYTES_DEFAULT = 50 * 1024;
+
+    /** 16 requests */
+    public static final int MAX_INFLIGHT_PUT_RECORDS_DEFAULT = 16;
+
+    /** 30 seconds */
+    public static final long RECORD_TTL_MS_DEFAULT = 30000;
+
+    /** 100 milliseconds */
+    public static final long RETRY_DELAY_MS_DEFAULT = 100;
+
+    /**
+     * The maximum time a record is buffered before being put, to be aggregated with other records
+     * and batched in a PutRecords call.
+     */
+    private long maxBufferedTimeMs = MAX_BUFFERED_TIME_MS_DEFAULT;
+
+    /**
+     * Whether to pack the records bound for the same shard into aggregated Kinesis records.
+     */
+    private boolean aggregationEnabled = AGGREGATION_ENABLED_DEFAULT;
+
+    /** The maximum size of an aggregated Kinesis record. */
+    private int aggregationMaxSizeBytes = AGGREGATION_MAX_SIZE_BYTES_DEFAULT;
+
+    /** The maximum number of PutRecords calls made at once. */
+    private int maxInflightPutRecords = MAX_INFLIGHT_PUT_RECORDS_DEFAULT;
+
+    /** The time after which a record which could not be put is failed rather than retried. */
+    private long recordTtlMs = RECORD_TTL_MS_DEFAULT;
+
+    /** The time to wait before putting again a record which could not be put. */
+    private long retryDelayMs = RETRY_DELAY_MS_DEFAULT;
+
+    public KinesisProducerConfig() {
+    }
+
+    /** copy constructor */
+    public KinesisProducerConfig(KinesisProducerConfig other) {
+        maxBufferedTimeMs = other.maxBufferedTimeMs;
+        aggregationEnabled = other.aggregationEnabled;
+        aggregationMaxSizeBytes = other.aggregationMaxSizeBytes;
+        maxInflightPutRecords = other.maxInflightPutRecords;
+        recordTtlMs = other.recordTtlMs;
+        retryDelayMs = other.retryDelayMs;
+    }
+
+    @Override
+    public String toString() {
+        return "KinesisProducerConfig [maxBufferedTimeMs=" + maxBufferedTimeMs + ", aggregationEnabled="
+                + aggregationEnabled + ", aggregationMaxSizeBytes=" + aggregationMaxSizeBytes
+                + ", maxInflightPutRecords=" + maxInflightPutRecords + ", recordTtlMs=" + recordTtlMs
+                + ", retryDelayMs=" + retryDelayMs + "]";
+    }
+
+    /**
+     * The maximum time a record is buffered before being put, to be aggregated with other records
+     * and batched in a PutRecords call. Records are put sooner when there are enough of them to
+     * fill a PutRecords call. Lower values reduce the latency of the records, higher values let
+     * more records be sent per call.
+     */
+    public long getMaxBufferedTimeMs() {
+        return maxBufferedTimeMs;
+    }
+
+    /**
+     * The maximum time a record is buffered before being put, to be aggregated with other records
+     * and batched in a PutRecords call. Records are put sooner when there are enough of them to
+     * fill a PutRecords call. Lower values reduce the latency of the records, higher values let
+     * more records be sent per call.
+     */
+    public void setMaxBufferedTimeMs(long maxBufferedTimeMs) {
+        if (maxBufferedTimeMs < 1) {
+            throw new IllegalArgumentException("maxBufferedTimeMs must be at least 1");
+        }
+        this.maxBufferedTimeMs = maxBufferedTimeMs;
+    }
+
+    public KinesisProducerConfig withMaxBufferedTimeMs(long maxBufferedTimeMs) {
+        setMaxBufferedTimeMs(maxBufferedTimeMs);
+        return this;
+    }
+
+    /**
+     * Whether to pack the records bound for the same shard into aggregated Kinesis records, in the
+     * format of the Kinesis Producer Library, so that a shard takes more records per second than
+     * its limit of Kinesis records. The consumers must de-aggregate them, as the Kinesis Client
+     * Library does.
+     */
+    public boolean isAggregationEnabled() {
+        return aggregationEnabled;
+    }
+
+    /**
+     * Whether to pack the records bound for the same shard into aggregated Kinesis records, in the
+     * format of the Kinesis Producer Library, so that a shard takes more records per second than
+     * its limit of Kinesis records. The consumers must de-aggregate them, as the Kinesis Client
+     * Library does.
+     */
+    public void setAggregationEnabled(boolean aggregationEnabled) {
+        this.aggregationEnabled = aggregationEnabled;
+    }
+
+    public KinesisProducerConfig withAggregationEnabled(boolean aggregationEnabled) {
+        setAggregationEnabled(aggregationEnabled);
+        return this;
+    }
+
+    /**
+     * The maximum size of an aggregated Kinesis record. Records larger than this are put on their
+     * own.
+     */
+    public int getAggregationMaxSizeBytes() {
+        return aggregationMaxSizeBytes;
+    }
+
+    /**
+     * The maximum size of an aggregated Kinesis record. Records larger than this are put on their
+     * own.
+     */
+    public void setAggregationMaxSizeBytes(int aggregationMaxSizeBytes) {
+        if (aggregationMaxSizeBytes < 64 || aggregationMaxSizeBytes > KinesisProducer.MAX_RECORD_SIZE_BYTES) {
+            throw new IllegalArgumentException("aggregationMaxSizeBytes must be between 64 and "
+                    + KinesisProducer.MAX_RECORD_SIZE_BYTES);
+        }
+        this.aggregationMaxSizeBytes = aggregationMaxSizeBytes;
+    }
+
+    public KinesisProducerConfig withAggregationMaxSizeBytes(int aggregationMaxSizeBytes) {
+        setAggregationMaxSizeBytes(aggregationMaxSizeBytes);
+        return this;
+    }
+
+    /**
+     * The maximum number of PutRecords calls made at once, which is also the number of threads
+     * making them.
+     */
+    public int getMaxInflightPutRecords() {
+        return maxInflightPutRecords;
+    }
+
+    /**
+     * The maximum number of PutRecords calls made at once, which is also the number of threads
+     * making them.
+     */
+    public void setMaxInflightPutRecords(int maxInflightPutRecords) {
+        if (maxInflightPutRecords < 1) {
+            throw new IllegalArgumentException("maxInflightPutRecords must be at least 1");
+        }
+        this.maxInflightPutRecords = maxInflightPutRecords;
+    }
+
+    public KinesisProducerConfig withMaxInflightPutRecords(int maxInflightPutRecords) {
+        setMaxInflightPutRecords(maxInflightPutRecords);
+        return this;
+    }
+
+    /**
+     * The time after which a record which could not be put, for instance because the throughput
+     * of its shard was exceeded, is failed rather than retried.
+     */
+    public long getRecordTtlMs() {
+        return recordTtlMs;
+    }
+
+    /**
+     * The time after which a record which could not be put, for instance because the throughput
+     * of its shard was exceeded, is failed rather than retried.
+     */
+    public void setRecordTtlMs(long recordTtlMs) {
+        if (recordTtlMs < 0) {
+            throw new IllegalArgumentException("recordTtlMs cannot be negative");
+        }
+        this.recordTtlMs = recordTtlMs;
+    }
+
+    public KinesisProducerConfig withRecordTtlMs(long recordTtlMs) {
+        setRecordTtlMs(recordTtlMs);
+        return this;
+    }
+
+    /**
+     * The time to wait before putting again a record which could not be put.
+     */
+    public long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    /**
+     * The time to wait before putting again a record which could not be put.
+     */
+    public void setRetryDelayMs(long retryDelayMs) {
+        if (retryDelayMs < 0) {
+            throw new IllegalArgumentException("retryDelayMs cannot be negative");
+        }
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public KinesisProducerConfig withRetryDelayMs(long retryDelayMs) {
+        setRetryDelayMs(retryDelayMs);
+        return this;
+    }
+}
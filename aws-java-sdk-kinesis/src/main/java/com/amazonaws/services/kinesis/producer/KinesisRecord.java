@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+
+/**
+ * A record to put to Kinesis, holding either a single user record or an aggregation of them.
+ */
+class KinesisRecord {
+    final List<UserRecord> userRecords;
+    final String partitionKey;
+    final String explicitHashKey;
+    final ByteBuffer data;
+    /** The shard the record is expected to be put to, or null if not known */
+    final String predictedShardId;
+    private final int sizeInBytes;
+
+    /**
+     * A record holding the given user record only.
+     */
+    KinesisRecord(UserRecord userRecord, String predictedShardId) {
+        this.userRecords = Collections.singletonList(userRecord);
+        this.partitionKey = userRecord.partitionKey;
+        this.explicitHashKey = userRecord.explicitHashKey;
+        this.data = userRecord.data;
+        this.predictedShardId = predictedShardId;
+        this.sizeInBytes = userRecord.sizeInBytes();
+    }
+
+    /**
+     * A record holding the given user records, aggregated into the given data. It is put to the
+     * shard of the first user record, with its partition key.
+     */
+    KinesisRecord(List<UserRecord> userRecords, ByteBuffer aggregatedData, String predictedShardId) {
+        UserRecord first = userRecords.get(0);
+        this.userRecords = userRecords;
+        this.partitionKey = first.partitionKey;
+        this.explicitHashKey = first.hashKey.toString();
+        this.data = aggregatedData;
+        this.predictedShardId = predictedShardId;
+        this.sizeInBytes = aggregatedData.remaining() + first.partitionKeyBytes.length;
+    }
+
+    /**
+     * The size the record counts for against the limits of Kinesis: its data and partition key.
+     */
+    int sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * The time after which the record is failed rather than retried, which is that of the user
+     * record added first.
+     */
+    long deadlineNanos() {
+        return userRecords.get(0).deadlineNanos;
+    }
+
+    PutRecordsRequestEntry toRequestEntry() {
+        // the request marshaller marks and resets the buffer, so each request gets its own
+        return new PutRecordsRequestEntry().withPartitionKey(partitionKey).withExplicitHashKey(explicitHashKey)
+                .withData(data.duplicate());
+    }
+
+    void setSuccess(PutRecordsResultEntry result) {
+        for (UserRecord userRecord : userRecords) {
+            userRecord.future.setSuccess(result);
+        }
+    }
+
+    void setFailure(Exception e) {
+        for (UserRecord userRecord : userRecords) {
+            userRecord.future.setFailure(e);
+        }
+    }
+}
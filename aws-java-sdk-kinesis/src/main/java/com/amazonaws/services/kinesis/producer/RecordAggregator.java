@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Packs user records into a single Kinesis record, in the aggregated record format of the Kinesis
+ * Producer Library, which the Kinesis Client Library de-aggregates: a magic number, an
+ * {@code AggregatedRecord} protocol buffers message, and the MD5 digest of that message.
+ *
+ * <pre>
+ * message AggregatedRecord {
+ *   repeated string partition_key_table     = 1;
+ *   repeated string explicit_hash_key_table = 2;
+ *   repeated Record records                 = 3;
+ * }
+ * message Record {
+ *   required uint64 partition_key_index     = 1;
+ *   optional uint64 explicit_hash_key_index = 2;
+ *   required bytes  data                    = 3;
+ * }
+ * </pre>
+ *
+ * Not thread-safe.
+ */
+class RecordAggregator {
+
+    static final byte[] MAGIC = new byte[] { (byte) 0xf3, (byte) 0x89, (byte) 0x9a, (byte) 0xc2 };
+    static final int DIGEST_SIZE_IN_BYTES = 16;
+
+    private static final int PARTITION_KEY_TABLE_TAG = (1 << 3) | 2;
+    private static final int EXPLICIT_HASH_KEY_TABLE_TAG = (2 << 3) | 2;
+    private static final int RECORDS_TAG = (3 << 3) | 2;
+    private static final int PARTITION_KEY_INDEX_TAG = 1 << 3;
+    private static final int EXPLICIT_HASH_KEY_INDEX_TAG = 2 << 3;
+    private static final int DATA_TAG = (3 << 3) | 2;
+
+    private final List<UserRecord> userRecords = new ArrayList<UserRecord>();
+    private final Map<String, Integer> partitionKeys = new LinkedHashMap<String, Integer>();
+    private final Map<String, Integer> explicitHashKeys = new LinkedHashMap<String, Integer>();
+
+    /** The size of the protocol buffers message */
+    private int messageSize;
+
+    /** When the first user record was added, as of System.nanoTime() */
+    private long firstAddedNanos;
+
+    boolean isEmpty() {
+        return userRecords.isEmpty();
+    }
+
+    long getFirstAddedNanos() {
+        return firstAddedNanos;
+    }
+
+    /**
+     * Adds the given user record, unless the aggregated record would then be larger than the given
+     * size. A user record is always added to an empty aggregator.
+     *
+     * @return Whether the record was added.
+     */
+    boolean add(UserRecord userRecord, int maxSizeInBytes) {
+        int addedSize = 0;
+
+        Integer partitionKeyIndex = partitionKeys.get(userRecord.partitionKey);
+        if (partitionKeyIndex == null) {
+            addedSize += fieldSize(userRecord.partitionKeyBytes.length);
+        }
+        Integer explicitHashKeyIndex = null;
+        if (userRecord.explicitHashKey != null) {
+            explicitHashKeyIndex = explicitHashKeys.get(userRecord.explicitHashKey);
+            if (explicitHashKeyIndex == null) {
+                addedSize += fieldSize(userRecord.explicitHashKey.length());
+            }
+        }
+        int recordSize = recordSize(userRecord,
+                partitionKeyIndex == null ? partitionKeys.size() : partitionKeyIndex,
+                explicitHashKeyIndex == null ? explicitHashKeys.size() : explicitHashKeyIndex);
+        addedSize += fieldSize(recordSize);
+
+        if (!userRecords.isEmpty()
+                && MAGIC.length + messageSize + addedSize + DIGEST_SIZE_IN_BYTES
+                        + userRecords.get(0).partitionKeyBytes.length > maxSizeInBytes) {
+            return false;
+        }
+
+        if (userRecords.isEmpty()) {
+            firstAddedNanos = System.nanoTime();
+        }
+        if (partitionKeyIndex == null) {
+            partitionKeys.put(userRecord.partitionKey, partitionKeys.size());
+        }
+        if (userRecord.explicitHashKey != null && explicitHashKeyIndex == null) {
+            explicitHashKeys.put(userRecord.explicitHashKey, explicitHashKeys.size());
+        }
+        userRecords.add(userRecord);
+        messageSize += addedSize;
+        return true;
+    }
+
+    /**
+     * Returns the Kinesis record holding the user records added, and empties the aggregator. A
+     * single user record is put as it is.
+     */
+    KinesisRecord drain(String predictedShardId) {
+        KinesisRecord record;
+        if (userRecords.size() == 1) {
+            record = new KinesisRecord(userRecords.get(0), predictedShardId);
+        } else {
+            record = new KinesisRecord(new ArrayList<UserRecord>(userRecords), serialize(), predictedShardId);
+        }
+        userRecords.clear();
+        partitionKeys.clear();
+        explicitHashKeys.clear();
+        messageSize = 0;
+        return record;
+    }
+
+    private ByteBuffer serialize() {
+        byte[] bytes = new byte[MAGIC.length + messageSize + DIGEST_SIZE_IN_BYTES];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.put(MAGIC);
+
+        for (String partitionKey : partitionKeys.keySet()) {
+            writeField(buffer, PARTITION_KEY_TABLE_TAG, partitionKey.getBytes(UTF8));
+        }
+        for (String explicitHashKey : explicitHashKeys.keySet()) {
+            writeField(buffer, EXPLICIT_HASH_KEY_TABLE_TAG, explicitHashKey.getBytes(UTF8));
+        }
+        for (UserRecord userRecord : userRecords) {
+            int partitionKeyIndex = partitionKeys.get(userRecord.partitionKey);
+            int explicitHashKeyIndex = userRecord.explicitHashKey == null ? -1 : explicitHashKeys
+                    .get(userRecord.explicitHashKey);
+
+            writeVarint(buffer, RECORDS_TAG);
+            writeVarint(buffer, recordSize(userRecord, partitionKeyIndex, explicitHashKeyIndex));
+            writeVarint(buffer, PARTITION_KEY_INDEX_TAG);
+            writeVarint(buffer, partitionKeyIndex);
+            if (explicitHashKeyIndex >= 0) {
+                writeVarint(buffer, EXPLICIT_HASH_KEY_INDEX_TAG);
+                writeVarint(buffer, explicitHashKeyIndex);
+            }
+            writeVarint(buffer, DATA_TAG);
+            writeVarint(buffer, userRecord.data.remaining());
+            buffer.put(userRecord.data.duplicate());
+        }
+
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AmazonClientException("Unable to calculate the MD5 hash of an aggregated record", e);
+        }
+        md5.update(bytes, MAGIC.length, messageSize);
+        buffer.put(md5.digest());
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The size of the {@code Record} message of the given user record, with the given table
+     * indexes.
+     */
+    private static int recordSize(UserRecord userRecord, int partitionKeyIndex, int explicitHashKeyIndex) {
+        int size = 1 + varintSize(partitionKeyIndex) + fieldSize(userRecord.data.remaining());
+        if (userRecord.explicitHashKey != null) {
+            size += 1 + varintSize(explicitHashKeyIndex);
+        }
+        return size;
+    }
+
+    /**
+     * The size of a length-delimited field of the given length, with its one byte tag.
+     */
+    private static int fieldSize(int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeField(ByteBuffer buffer, int tag, byte[] value) {
+        writeVarint(buffer, tag);
+        writeVarint(buffer, value.length);
+        buffer.put(value);
+    }
+
+    private static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.amazonaws.services.kinesis.model.Shard;
+
+/**
+ * The hash key ranges of the open shards of a stream, to predict the shard a record is put to.
+ */
+class ShardMap {
+    private final BigInteger[] startingHashKeys;
+    private final BigInteger[] endingHashKeys;
+    private final String[] shardIds;
+
+    /**
+     * Builds the map of the given shards, leaving out those closed by a split or merge.
+     */
+    ShardMap(List<Shard> shards) {
+        List<Shard> openShards = new ArrayList<Shard>();
+        for (Shard shard : shards) {
+            if (shard.getSequenceNumberRange() == null
+                    || shard.getSequenceNumberRange().getEndingSequenceNumber() == null) {
+                openShards.add(shard);
+            }
+        }
+        Collections.sort(openShards, new Comparator<Shard>() {
+            @Override
+            public int compare(Shard s1, Shard s2) {
+                return endingHashKeyOf(s1).compareTo(endingHashKeyOf(s2));
+            }
+        });
+
+        int count = openShards.size();
+        startingHashKeys = new BigInteger[count];
+        endingHashKeys = new BigInteger[count];
+        shardIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            Shard shard = openShards.get(i);
+            startingHashKeys[i] = new BigInteger(shard.getHashKeyRange().getStartingHashKey());
+            endingHashKeys[i] = endingHashKeyOf(shard);
+            shardIds[i] = shard.getShardId();
+        }
+    }
+
+    private static BigInteger endingHashKeyOf(Shard shard) {
+        return new BigInteger(shard.getHashKeyRange().getEndingHashKey());
+    }
+
+    /**
+     * Returns the ID of the shard whose hash key range holds the given hash key, or null if there
+     * is none.
+     */
+    String shardIdOf(BigInteger hashKey) {
+        int low = 0;
+        int high = endingHashKeys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (endingHashKeys[mid].compareTo(hashKey) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low < endingHashKeys.length && startingHashKeys[low].compareTo(hashKey) <= 0) {
+            return shardIds[low];
+        }
+        return null;
+    }
+
+    /** The number of open shards. */
+    int size() {
+        return shardIds.length;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counts of the records a {@link KinesisProducer} put to a shard, since it was created. The
+ * counts are live: they keep increasing as records are put, so the throughput of a shard is the
+ * difference between two readings divided by the time between them.
+ */
+public class ShardMetrics {
+    private final String shardId;
+    private final AtomicLong userRecordsPut = new AtomicLong();
+    private final AtomicLong kinesisRecordsPut = new AtomicLong();
+    private final AtomicLong bytesPut = new AtomicLong();
+    private final AtomicLong kinesisRecordsThrottled = new AtomicLong();
+    private final AtomicLong kinesisRecordsFailed = new AtomicLong();
+
+    ShardMetrics(String shardId) {
+        this.shardId = shardId;
+    }
+
+    void recordPut(KinesisRecord record) {
+        userRecordsPut.addAndGet(record.userRecords.size());
+        kinesisRecordsPut.incrementAndGet();
+        bytesPut.addAndGet(record.sizeInBytes());
+    }
+
+    void recordThrottled() {
+        kinesisRecordsThrottled.incrementAndGet();
+    }
+
+    void recordFailed() {
+        kinesisRecordsFailed.incrementAndGet();
+    }
+
+    /** The ID of the shard. */
+    public String getShardId() {
+        return shardId;
+    }
+
+    /** The number of records added to the producer which were put to the shard. */
+    public long getUserRecordsPut() {
+        return userRecordsPut.get();
+    }
+
+    /**
+     * The number of Kinesis records put to the shard, each holding one or more aggregated user
+     * records.
+     */
+    public long getKinesisRecordsPut() {
+        return kinesisRecordsPut.get();
+    }
+
+    /** The number of bytes put to the shard, counting the data and partition keys of the records. */
+    public long getBytesPut() {
+        return bytesPut.get();
+    }
+
+    /**
+     * The number of times a Kinesis record expected to go to the shard was rejected because the
+     * throughput of the shard was exceeded.
+     */
+    public long getKinesisRecordsThrottled() {
+        return kinesisRecordsThrottled.get();
+    }
+
+    /**
+     * The number of times a Kinesis record expected to go to the shard was rejected for another
+     * reason than its throughput being exceeded.
+     */
+    public long getKinesisRecordsFailed() {
+        return kinesisRecordsFailed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMetrics [shardId=" + shardId + ", userRecordsPut=" + userRecordsPut + ", kinesisRecordsPut="
+                + kinesisRecordsPut + ", bytesPut=" + bytesPut + ", kinesisRecordsThrottled="
+                + kinesisRecordsThrottled + ", kinesisRecordsFailed=" + kinesisRecordsFailed + "]";
+    }
+}
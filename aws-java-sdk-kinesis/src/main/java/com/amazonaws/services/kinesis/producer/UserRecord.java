@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * A record added to a {@link KinesisProducer}, waiting to be put on its own or aggregated with
+ * others.
+ */
+class UserRecord {
+    final String partitionKey;
+    final byte[] partitionKeyBytes;
+    /** The explicit hash key set by the user, or null */
+    final String explicitHashKey;
+    /** The hash key deciding the shard of the record */
+    final BigInteger hashKey;
+    final ByteBuffer data;
+    final RecordFuture future = new RecordFuture();
+    /** The time after which the record is failed rather than retried, as of System.nanoTime() */
+    final long deadlineNanos;
+
+    UserRecord(String partitionKey, String explicitHashKey, BigInteger hashKey, ByteBuffer data, long deadlineNanos) {
+        this.partitionKey = partitionKey;
+        this.partitionKeyBytes = partitionKey.getBytes(UTF8);
+        this.explicitHashKey = explicitHashKey;
+        this.hashKey = hashKey;
+        this.data = data;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * The size the record counts for against the limits of Kinesis: its data and partition key.
+     */
+    int sizeInBytes() {
+        return data.remaining() + partitionKeyBytes.length;
+    }
+}
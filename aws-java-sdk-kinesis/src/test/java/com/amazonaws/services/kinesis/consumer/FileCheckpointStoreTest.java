@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class FileCheckpointStoreTest {
+
+    @Test
+    public void testCheckpointsAreReloaded() throws Exception {
+        File file = File.createTempFile("FileCheckpointStoreTest-", ".properties");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        FileCheckpointStore store = new FileCheckpointStore(file);
+        assertNull(store.getCheckpoint("shard-0"));
+        store.setCheckpoint("shard-0", "1");
+        // replaces the file written by the first checkpoint
+        store.setCheckpoint("shard-0", "2");
+        store.setCheckpoint("shard-1", CheckpointStore.SHARD_END);
+        assertEquals("2", store.getCheckpoint("shard-0"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        FileCheckpointStore reloaded = new FileCheckpointStore(file);
+        assertEquals("2", reloaded.getCheckpoint("shard-0"));
+        assertEquals(CheckpointStore.SHARD_END, reloaded.getCheckpoint("shard-1"));
+        assertNull(reloaded.getCheckpoint("shard-2"));
+    }
+}
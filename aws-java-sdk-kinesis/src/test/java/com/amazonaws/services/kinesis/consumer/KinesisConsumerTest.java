@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+
+public class KinesisConsumerTest {
+
+    private static final String STREAM_NAME = "test";
+
+    /**
+     * Describes a stream whose shard "shard-0" holding the records 1 and 2 was split into the
+     * shard "shard-1" holding the record 3, and records the shard iterators requested.
+     */
+    private static class FakeKinesis extends AmazonKinesisClient {
+        private final List<GetShardIteratorRequest> iteratorRequests =
+                Collections.synchronizedList(new ArrayList<GetShardIteratorRequest>());
+
+        FakeKinesis() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public DescribeStreamResult describeStream(DescribeStreamRequest request) {
+            HashKeyRange hashKeyRange = new HashKeyRange().withStartingHashKey("0").withEndingHashKey("100");
+            StreamDescription description = new StreamDescription().withStreamName(STREAM_NAME)
+                    .withHasMoreShards(false).withShards(
+                            new Shard().withShardId("shard-0").withHashKeyRange(hashKeyRange)
+                                    .withSequenceNumberRange(new SequenceNumberRange()
+                                            .withStartingSequenceNumber("1").withEndingSequenceNumber("2")),
+                            new Shard().withShardId("shard-1").withParentShardId("shard-0")
+                                    .withHashKeyRange(hashKeyRange)
+                                    .withSequenceNumberRange(new SequenceNumberRange()
+                                            .withStartingSequenceNumber("3")));
+            return new DescribeStreamResult().withStreamDescription(description);
+        }
+
+        @Override
+        public GetShardIteratorResult getShardIterator(GetShardIteratorRequest request) {
+            iteratorRequests.add(request);
+            return new GetShardIteratorResult().withShardIterator(request.getShardId());
+        }
+
+        @Override
+        public GetRecordsResult getRecords(GetRecordsRequest request) {
+            String iterator = request.getShardIterator();
+            if (iterator.equals("shard-0")) {
+                // the end of the closed shard
+                return new GetRecordsResult().withRecords(record("1"), record("2"));
+            } else if (iterator.equals("shard-1")) {
+                return new GetRecordsResult().withRecords(record("3")).withNextShardIterator("shard-1-next");
+            }
+            return new GetRecordsResult().withNextShardIterator(iterator);
+        }
+
+        private static Record record(String sequenceNumber) {
+            return new Record().withSequenceNumber(sequenceNumber).withPartitionKey("key")
+                    .withData(ByteBuffer.wrap(new byte[0]));
+        }
+    }
+
+    /**
+     * Fails to store the first checkpoints of the end of a shard.
+     */
+    private static class FlakyCheckpointStore extends InMemoryCheckpointStore {
+        private final AtomicInteger shardEndFailuresLeft;
+        private final AtomicInteger shardEndAttempts = new AtomicInteger();
+
+        FlakyCheckpointStore(int shardEndFailures) {
+            this.shardEndFailuresLeft = new AtomicInteger(shardEndFailures);
+        }
+
+        @Override
+        public void setCheckpoint(String shardId, String checkpoint) {
+            if (SHARD_END.equals(checkpoint)) {
+                shardEndAttempts.incrementAndGet();
+                if (shardEndFailuresLeft.getAndDecrement() > 0) {
+                    throw new AmazonClientException("Unable to store the checkpoint");
+                }
+            }
+            super.setCheckpoint(shardId, checkpoint);
+        }
+    }
+
+    /**
+     * Records the records processed, as shard ID and sequence number.
+     */
+    private static class RecordingProcessor implements RecordProcessor {
+        private final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch childProcessed = new CountDownLatch(1);
+
+        @Override
+        public void processRecords(String shardId, List<Record> records) {
+            for (Record record : records) {
+                processed.add(shardId + ":" + record.getSequenceNumber());
+            }
+            if (shardId.equals("shard-1")) {
+                childProcessed.countDown();
+            }
+        }
+    }
+
+    private final FakeKinesis kinesis = new FakeKinesis();
+    private final RecordingProcessor processor = new RecordingProcessor();
+
+    private KinesisConsumer newConsumer(CheckpointStore checkpointStore) {
+        KinesisConsumerConfig config = new KinesisConsumerConfig().withRetryDelayMs(10)
+                .withIdleTimeBetweenGetRecordsMs(10).withShardSyncIntervalMs(TimeUnit.MINUTES.toMillis(1));
+        return new KinesisConsumer(kinesis, STREAM_NAME, processor, checkpointStore, config);
+    }
+
+    @Test
+    public void testChildShardIsReadOnceTheParentEndIsCheckpointed() throws Exception {
+        FlakyCheckpointStore checkpointStore = new FlakyCheckpointStore(2);
+        KinesisConsumer consumer = newConsumer(checkpointStore);
+        consumer.start();
+
+        assertTrue(processor.childProcessed.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton("shard-1"), consumer.getShardIds());
+        assertTrue(consumer.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("shard-0:1", "shard-0:2", "shard-1:3"), processor.processed);
+        // the failed checkpoints of the end of the parent were retried
+        assertEquals(3, checkpointStore.shardEndAttempts.get());
+        assertEquals(CheckpointStore.SHARD_END, checkpointStore.getCheckpoint("shard-0"));
+        assertEquals("3", checkpointStore.getCheckpoint("shard-1"));
+
+        // the child is read from its first record
+        GetShardIteratorRequest childRequest = kinesis.iteratorRequests.get(kinesis.iteratorRequests.size() - 1);
+        assertEquals("shard-1", childRequest.getShardId());
+        assertEquals(ShardIteratorType.TRIM_HORIZON.toString(), childRequest.getShardIteratorType());
+    }
+
+    @Test
+    public void testShardReadToItsEndIsNotReadAgain() throws Exception {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        checkpointStore.setCheckpoint("shard-0", CheckpointStore.SHARD_END);
+        KinesisConsumer consumer = newConsumer(checkpointStore);
+        consumer.start();
+
+        assertTrue(processor.childProcessed.await(5, TimeUnit.SECONDS));
+        assertTrue(consumer.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("shard-1:3"), processor.processed);
+        assertEquals(1, kinesis.iteratorRequests.size());
+        assertEquals("shard-1", kinesis.iteratorRequests.get(0).getShardId());
+    }
+
+    @Test
+    public void testShardIsReadFromItsCheckpoint() throws Exception {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        checkpointStore.setCheckpoint("shard-0", CheckpointStore.SHARD_END);
+        checkpointStore.setCheckpoint("shard-1", "2");
+        KinesisConsumer consumer = newConsumer(checkpointStore);
+        consumer.start();
+
+        assertTrue(processor.childProcessed.await(5, TimeUnit.SECONDS));
+        assertTrue(consumer.shutdown(5, TimeUnit.SECONDS));
+
+        GetShardIteratorRequest request = kinesis.iteratorRequests.get(0);
+        assertEquals(ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString(), request.getShardIteratorType());
+        assertEquals("2", request.getStartingSequenceNumber());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+public class RecordDeaggregatorTest {
+
+    private static final byte[] MAGIC = new byte[] { (byte) 0xf3, (byte) 0x89, (byte) 0x9a, (byte) 0xc2 };
+
+    /**
+     * The message the producer aggregates the records ("a", 1), ("b", explicit hash key "7", 2) and
+     * ("a", 3) into.
+     */
+    private static final byte[] MESSAGE = new byte[] {
+            0x0a, 1, 'a', 0x0a, 1, 'b',
+            0x12, 1, '7',
+            0x1a, 5, 0x08, 0, 0x1a, 1, 1,
+            0x1a, 7, 0x08, 1, 0x10, 0, 0x1a, 1, 2,
+            0x1a, 5, 0x08, 0, 0x1a, 1, 3 };
+
+    private static Record aggregatedRecord(byte[] message) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(message);
+        ByteBuffer data = ByteBuffer.allocate(MAGIC.length + message.length + digest.length);
+        data.put(MAGIC).put(message).put(digest);
+        data.flip();
+        return new Record().withSequenceNumber("42").withPartitionKey("a").withData(data);
+    }
+
+    private static void assertUserRecord(String partitionKey, int data, Record userRecord) {
+        assertEquals(partitionKey, userRecord.getPartitionKey());
+        assertEquals("42", userRecord.getSequenceNumber());
+        assertEquals(1, userRecord.getData().remaining());
+        assertEquals(data, userRecord.getData().get(userRecord.getData().position()));
+    }
+
+    @Test
+    public void testAggregatedRecordIsDeaggregated() throws Exception {
+        Record plain = new Record().withSequenceNumber("43").withPartitionKey("c")
+                .withData(ByteBuffer.wrap(new byte[] { 4 }));
+        List<Record> userRecords = RecordDeaggregator.deaggregate(Arrays.asList(aggregatedRecord(MESSAGE), plain));
+
+        assertEquals(4, userRecords.size());
+        assertUserRecord("a", 1, userRecords.get(0));
+        assertUserRecord("b", 2, userRecords.get(1));
+        assertUserRecord("a", 3, userRecords.get(2));
+        assertSame(plain, userRecords.get(3));
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws Exception {
+        byte[] message = new byte[] {
+                0x0a, 1, 'a',
+                // an unknown varint field
+                0x20, (byte) 0x96, 0x01,
+                // a record with an unknown fixed32 field
+                0x1a, 10, 0x08, 0, 0x2d, 1, 2, 3, 4, 0x1a, 1, 1 };
+        List<Record> userRecords = RecordDeaggregator.deaggregate(Collections.singletonList(aggregatedRecord(message)));
+
+        assertEquals(1, userRecords.size());
+        assertUserRecord("a", 1, userRecords.get(0));
+    }
+
+    @Test
+    public void testRecordWithBadDigestIsLeftAsItIs() throws Exception {
+        Record record = aggregatedRecord(MESSAGE);
+        byte[] data = record.getData().array();
+        data[data.length - 1]++;
+        List<Record> userRecords = RecordDeaggregator.deaggregate(Collections.singletonList(record));
+
+        assertEquals(1, userRecords.size());
+        assertSame(record, userRecords.get(0));
+    }
+
+    @Test
+    public void testMalformedRecordIsLeftAsItIs() throws Exception {
+        // a partition key field longer than the message
+        Record truncated = aggregatedRecord(new byte[] { 0x0a, 5, 'a' });
+        // a record referring to a partition key not in the table
+        Record badIndex = aggregatedRecord(new byte[] { 0x0a, 1, 'a', 0x1a, 5, 0x08, 1, 0x1a, 1, 1 });
+        List<Record> userRecords = RecordDeaggregator.deaggregate(Arrays.asList(truncated, badIndex));
+
+        assertEquals(2, userRecords.size());
+        assertSame(truncated, userRecords.get(0));
+        assertSame(badIndex, userRecords.get(1));
+    }
+}
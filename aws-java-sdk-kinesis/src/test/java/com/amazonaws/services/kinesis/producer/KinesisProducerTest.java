@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+
+public class KinesisProducerTest {
+
+    private static final String STREAM_NAME = "test";
+
+    /** The first hash key of the second shard. */
+    private static final BigInteger SHARD_1_START = BigInteger.ONE.shiftLeft(127);
+
+    /**
+     * Describes a stream of two shards splitting the hash key space in halves, and puts records to
+     * the shard of their explicit hash key, recording the entries put. Entries can be throttled.
+     */
+    private static class FakeKinesis extends AmazonKinesisClient {
+        private final AtomicInteger describeCalls = new AtomicInteger();
+        private final CountDownLatch described = new CountDownLatch(1);
+        private final List<PutRecordsRequestEntry> entriesPut =
+                Collections.synchronizedList(new ArrayList<PutRecordsRequestEntry>());
+        private final AtomicInteger entriesToThrottle = new AtomicInteger();
+        private final AtomicLong sequenceNumber = new AtomicLong();
+
+        FakeKinesis() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public DescribeStreamResult describeStream(DescribeStreamRequest request) {
+            describeCalls.incrementAndGet();
+            StreamDescription description = new StreamDescription().withStreamName(STREAM_NAME)
+                    .withHasMoreShards(false).withShards(
+                            new Shard().withShardId("shard-0").withHashKeyRange(new HashKeyRange()
+                                    .withStartingHashKey("0")
+                                    .withEndingHashKey(SHARD_1_START.subtract(BigInteger.ONE).toString())),
+                            new Shard().withShardId("shard-1").withHashKeyRange(new HashKeyRange()
+                                    .withStartingHashKey(SHARD_1_START.toString())
+                                    .withEndingHashKey(BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE)
+                                            .toString())));
+            described.countDown();
+            return new DescribeStreamResult().withStreamDescription(description);
+        }
+
+        @Override
+        public PutRecordsResult putRecords(PutRecordsRequest request) {
+            PutRecordsResult result = new PutRecordsResult().withFailedRecordCount(0);
+            for (PutRecordsRequestEntry entry : request.getRecords()) {
+                entriesPut.add(entry);
+                if (entriesToThrottle.getAndDecrement() > 0) {
+                    result.getRecords().add(new PutRecordsResultEntry()
+                            .withErrorCode("ProvisionedThroughputExceededException")
+                            .withErrorMessage("Rate exceeded for shard"));
+                    result.setFailedRecordCount(result.getFailedRecordCount() + 1);
+                } else {
+                    boolean secondShard = new BigInteger(entry.getExplicitHashKey()).compareTo(SHARD_1_START) >= 0;
+                    result.getRecords().add(new PutRecordsResultEntry()
+                            .withShardId(secondShard ? "shard-1" : "shard-0")
+                            .withSequenceNumber(String.valueOf(sequenceNumber.incrementAndGet())));
+                }
+            }
+            return result;
+        }
+    }
+
+    private final FakeKinesis kinesis = new FakeKinesis();
+
+    private static ByteBuffer data(int value) {
+        return ByteBuffer.wrap(new byte[] { (byte) value });
+    }
+
+    @Test
+    public void testAddRecordBeforeStartFails() {
+        KinesisProducer producer = new KinesisProducer(kinesis, STREAM_NAME);
+        try {
+            producer.addRecord("a", "1", data(1));
+            fail("Expected adding a record before the producer is started to fail");
+        } catch (IllegalStateException expected) {
+        }
+        // constructing the producer does not call Kinesis
+        assertEquals(0, kinesis.describeCalls.get());
+
+        producer.start();
+        try {
+            producer.start();
+            fail("Expected starting the producer twice to fail");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(producer.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRecordsArePutAndMatchedToTheirResults() throws Exception {
+        KinesisProducer producer = new KinesisProducer(kinesis, STREAM_NAME, new KinesisProducerConfig()
+                .withAggregationEnabled(false).withMaxBufferedTimeMs(TimeUnit.MINUTES.toMillis(1)));
+        producer.start();
+        Future<PutRecordsResultEntry> first = producer.addRecord("a", "1", data(1));
+        Future<PutRecordsResultEntry> second = producer.addRecord("b", SHARD_1_START.toString(), data(2));
+        producer.flush();
+
+        assertEquals("shard-0", first.get(5, TimeUnit.SECONDS).getShardId());
+        assertEquals("shard-1", second.get(5, TimeUnit.SECONDS).getShardId());
+        assertFalse(first.get().getSequenceNumber().equals(second.get().getSequenceNumber()));
+        assertEquals(2, kinesis.entriesPut.size());
+        assertTrue(producer.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testThrottledRecordsArePutAgain() throws Exception {
+        KinesisProducer producer = new KinesisProducer(kinesis, STREAM_NAME, new KinesisProducerConfig()
+                .withAggregationEnabled(false).withRetryDelayMs(10));
+        kinesis.entriesToThrottle.set(2);
+        producer.start();
+        Future<PutRecordsResultEntry> future = producer.addRecord("a", "1", data(1));
+        producer.flush();
+
+        assertEquals("shard-0", future.get(5, TimeUnit.SECONDS).getShardId());
+        assertEquals(3, kinesis.entriesPut.size());
+        assertTrue(producer.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownPutsTheBufferedRecords() throws Exception {
+        KinesisProducer producer = new KinesisProducer(kinesis, STREAM_NAME, new KinesisProducerConfig()
+                .withMaxBufferedTimeMs(TimeUnit.MINUTES.toMillis(1)));
+        producer.start();
+        List<Future<PutRecordsResultEntry>> futures = new ArrayList<Future<PutRecordsResultEntry>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(producer.addRecord("key" + i, String.valueOf(i), data(i)));
+        }
+
+        assertTrue(producer.shutdown(5, TimeUnit.SECONDS));
+        for (Future<PutRecordsResultEntry> future : futures) {
+            assertTrue(future.isDone());
+            assertEquals("shard-0", future.get().getShardId());
+        }
+        try {
+            producer.addRecord("a", "1", data(1));
+            fail("Expected adding a record after shutdown to fail");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testRecordsOfAShardAreAggregated() throws Exception {
+        KinesisProducer producer = new KinesisProducer(kinesis, STREAM_NAME, new KinesisProducerConfig()
+                .withMaxBufferedTimeMs(TimeUnit.MINUTES.toMillis(1)));
+        producer.start();
+        assertTrue(kinesis.described.await(5, TimeUnit.SECONDS));
+
+        // records added before the shard map is known are put on their own
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        PutRecordsResultEntry first;
+        PutRecordsResultEntry second;
+        do {
+            kinesis.entriesPut.clear();
+            Future<PutRecordsResultEntry> firstFuture = producer.addRecord("a", "1", data(1));
+            Future<PutRecordsResultEntry> secondFuture = producer.addRecord("b", "2", data(2));
+            producer.flush();
+            first = firstFuture.get(5, TimeUnit.SECONDS);
+            second = secondFuture.get(5, TimeUnit.SECONDS);
+        } while (kinesis.entriesPut.size() != 1 && System.nanoTime() - deadline < 0);
+
+        assertEquals(1, kinesis.entriesPut.size());
+        assertEquals(first.getSequenceNumber(), second.getSequenceNumber());
+        PutRecordsRequestEntry entry = kinesis.entriesPut.get(0);
+        assertEquals("a", entry.getPartitionKey());
+        assertEquals("1", entry.getExplicitHashKey());
+        for (int i = 0; i < RecordAggregator.MAGIC.length; i++) {
+            assertEquals(RecordAggregator.MAGIC[i], entry.getData().get(entry.getData().position() + i));
+        }
+        assertEquals(1, producer.getShardMetrics().size());
+        assertTrue(producer.shutdown(5, TimeUnit.SECONDS));
+    }
+}
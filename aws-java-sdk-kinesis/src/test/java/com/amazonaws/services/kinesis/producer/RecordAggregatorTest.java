@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.kinesis.producer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RecordAggregatorTest {
+
+    private static UserRecord userRecord(String partitionKey, String explicitHashKey, byte... data) {
+        BigInteger hashKey = explicitHashKey == null ? BigInteger.ONE : new BigInteger(explicitHashKey);
+        return new UserRecord(partitionKey, explicitHashKey, hashKey, ByteBuffer.wrap(data), Long.MAX_VALUE);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testSingleRecordIsPutAsItIs() {
+        RecordAggregator aggregator = new RecordAggregator();
+        UserRecord userRecord = userRecord("a", null, (byte) 1, (byte) 2);
+        assertTrue(aggregator.add(userRecord, 1024));
+
+        KinesisRecord record = aggregator.drain("shard-0");
+        assertSame(userRecord.data, record.data);
+        assertEquals("a", record.partitionKey);
+        assertEquals(null, record.explicitHashKey);
+        assertEquals("shard-0", record.predictedShardId);
+        assertTrue(aggregator.isEmpty());
+    }
+
+    @Test
+    public void testAggregatedRecordFormat() throws Exception {
+        RecordAggregator aggregator = new RecordAggregator();
+        assertTrue(aggregator.add(userRecord("a", null, (byte) 1), 1024));
+        assertTrue(aggregator.add(userRecord("b", "7", (byte) 2), 1024));
+        assertTrue(aggregator.add(userRecord("a", null, (byte) 3), 1024));
+
+        KinesisRecord record = aggregator.drain("shard-0");
+        assertTrue(aggregator.isEmpty());
+        assertEquals(3, record.userRecords.size());
+        // put with the partition key and hash key of the first user record
+        assertEquals("a", record.partitionKey);
+        assertEquals("1", record.explicitHashKey);
+
+        byte[] message = new byte[] {
+                // partition_key_table: "a", "b"
+                0x0a, 1, 'a', 0x0a, 1, 'b',
+                // explicit_hash_key_table: "7"
+                0x12, 1, '7',
+                // records: {partition_key_index, explicit_hash_key_index, data}
+                0x1a, 5, 0x08, 0, 0x1a, 1, 1,
+                0x1a, 7, 0x08, 1, 0x10, 0, 0x1a, 1, 2,
+                0x1a, 5, 0x08, 0, 0x1a, 1, 3 };
+        byte[] digest = MessageDigest.getInstance("MD5").digest(message);
+        ByteBuffer expected = ByteBuffer.allocate(RecordAggregator.MAGIC.length + message.length + digest.length);
+        expected.put(RecordAggregator.MAGIC).put(message).put(digest);
+
+        assertArrayEquals(expected.array(), toArray(record.data));
+        assertEquals(expected.capacity() + 1, record.sizeInBytes());
+    }
+
+    @Test
+    public void testAggregatedRecordsStayWithinTheMaximumSize() {
+        int maxSizeInBytes = 200;
+        RecordAggregator aggregator = new RecordAggregator();
+        int added = 0;
+        while (aggregator.add(userRecord("key" + added, null, new byte[30]), maxSizeInBytes)) {
+            added++;
+        }
+        assertTrue(added > 1);
+
+        KinesisRecord record = aggregator.drain("shard-0");
+        assertEquals(added, record.userRecords.size());
+        assertTrue(record.sizeInBytes() <= maxSizeInBytes);
+        // the record not added would have gone over
+        assertTrue(record.sizeInBytes() + 30 > maxSizeInBytes);
+    }
+
+    @Test
+    public void testRecordIsAlwaysAddedToAnEmptyAggregator() {
+        RecordAggregator aggregator = new RecordAggregator();
+        assertTrue(aggregator.add(userRecord("a", null, new byte[100]), 10));
+        assertFalse(aggregator.add(userRecord("b", null, (byte) 1), 10));
+
+        KinesisRecord record = aggregator.drain("shard-0");
+        assertEquals(1, record.userRecords.size());
+        assertTrue(Arrays.equals(new byte[100], toArray(record.data)));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.logs.shipper;
+
+import java.util.Comparator;
+
+import com.amazonaws.services.logs.model.InputLogEvent;
+
+/**
+ * A log event waiting to be sent.
+ */
+class BufferedLogEvent {
+
+    /** Orders events by timestamp, as the events of a PutLogEvents call must be. */
+    static final Comparator<BufferedLogEvent> BY_TIMESTAMP = new Comparator<BufferedLogEvent>() {
+        @Override
+        public int compare(BufferedLogEvent a, BufferedLogEvent b) {
+            return a.timestamp < b.timestamp ? -1 : a.timestamp == b.timestamp ? 0 : 1;
+        }
+    };
+
+    final long timestamp;
+    final String message;
+
+    /** The size the event counts for in a PutLogEvents call */
+    final int sizeInBytes;
+
+    /** When the event was added, as of {@link System#nanoTime()} */
+    final long addedNanos;
+
+    BufferedLogEvent(long timestamp, String message, int sizeInBytes, long addedNanos) {
+        this.timestamp = timestamp;
+        this.message = message;
+        this.sizeInBytes = sizeInBytes;
+        this.addedNanos = addedNanos;
+    }
+
+    InputLogEvent toInputLogEvent() {
+        return new InputLogEvent().withTimestamp(timestamp).withMessage(message);
+    }
+}
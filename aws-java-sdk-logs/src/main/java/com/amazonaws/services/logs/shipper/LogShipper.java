@@ -0,0 +1,643 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.logs.shipper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.logs.AWSLogs;
+import com.amazonaws.services.logs.model.CreateLogGroupRequest;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import com.amazonaws.services.logs.model.RejectedLogEventsInfo;
+import com.amazonaws.services.logs.model.ResourceAlreadyExistsException;
+import com.amazonaws.services.logs.model.ResourceNotFoundException;
+
+/**
+ * Sends log events to CloudWatch Logs in the background, buffering them so that many are sent per
+ * {@code PutLogEvents} call.
+ * <p>
+ * The events added are sent in batches of up to 10,000 events and 1 MiB, sorted by timestamp and
+ * spanning at most 24 hours, once there are enough of them to fill a batch, or once they have
+ * been buffered for {@link LogShipperConfig#getMaxBufferedTimeMs()}. Since a log stream takes a
+ * single call at a time, chained by sequence tokens, the events are spread over
+ * {@link LogShipperConfig#getStreamCount()} log streams, named after the given prefix, each
+ * written to by its own thread. The sequence token of each stream is kept between calls, and
+ * taken from the error when it is outdated, for instance because another process wrote to the
+ * stream.
+ * <p>
+ * Adding an event never blocks: the events added while
+ * {@link LogShipperConfig#getMaxBufferedEvents()} events are buffered, and those which could not
+ * be sent after {@link LogShipperConfig#getMaxRetries()} retries, are appended to the
+ * {@link LogShipperConfig#getSpillFile() spill file}, if any, or dropped. The counts of the events
+ * sent, rejected, spilled and dropped are available from the getters of the shipper.
+ * <p>
+ * Instances of {@code LogShipper} are thread-safe, and should be shut down once no longer
+ * needed, for the events buffered to be sent.
+ */
+public class LogShipper {
+
+    private static final Log log = LogFactory.getLog(LogShipper.class);
+
+    /** The maximum number of events of a PutLogEvents call. */
+    static final int MAX_BATCH_EVENTS = 10000;
+
+    /** The maximum size of a PutLogEvents call, counting the messages and the overhead of each event. */
+    static final int MAX_BATCH_SIZE_BYTES = 1024 * 1024;
+
+    /** The size each event counts for in a PutLogEvents call, on top of its message. */
+    static final int EVENT_OVERHEAD_BYTES = 26;
+
+    /** The maximum size of an event, overhead included; longer messages are truncated. */
+    static final int MAX_EVENT_SIZE_BYTES = 256 * 1024;
+
+    /** The maximum time between the first and last events of a PutLogEvents call. */
+    static final long MAX_BATCH_SPAN_MS = TimeUnit.HOURS.toMillis(24);
+
+    /** The number of calls made again right away with the sequence token expected, in a row. */
+    private static final int MAX_SEQUENCE_TOKEN_RETRIES = 10;
+
+    private static final int MAX_RETRY_DELAY_SHIFT = 10;
+
+    /**
+     * The time the sender threads are given to spill their events once interrupted on shutdown,
+     * before the spill file is closed.
+     */
+    private static final long SENDERS_STOP_WAIT_MS = 1000;
+
+    private final AWSLogs logs;
+    private final String logGroupName;
+    private final LogShipperConfig config;
+    private final long maxBufferedTimeNanos;
+    private final SpillFile spillFile;
+
+    private final ExecutorService executor;
+
+    /** The events waiting to be sent, in the order they were added, guarded by {@link #lock} */
+    private final ArrayDeque<BufferedLogEvent> buffer = new ArrayDeque<BufferedLogEvent>();
+    private long bufferedBytes;
+    private boolean flushRequested;
+    private boolean shutdown;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition eventsAdded = lock.newCondition();
+
+    private final AtomicLong sentEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final AtomicLong spilledEvents = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * Constructs a shipper sending events to the given log group with the default configuration.
+     *
+     * @see #LogShipper(AWSLogs, String, String, LogShipperConfig)
+     */
+    public LogShipper(AWSLogs logs, String logGroupName, String logStreamNamePrefix) {
+        this(logs, logGroupName, logStreamNamePrefix, new LogShipperConfig());
+    }
+
+    /**
+     * Constructs a shipper sending events to the given log group, and starts its threads.
+     *
+     * @param logs
+     *            The client to send the events with.
+     * @param logGroupName
+     *            The name of the log group.
+     * @param logStreamNamePrefix
+     *            The prefix of the names of the log streams written to, which are followed by a
+     *            dash and the index of the stream, from 0 to the stream count excluded. The
+     *            prefix should be unique to this shipper, for instance by including the name of
+     *            the host, since streams shared with other writers make calls fail on outdated
+     *            sequence tokens.
+     * @param config
+     *            The configuration of the shipper.
+     */
+    public LogShipper(AWSLogs logs, String logGroupName, String logStreamNamePrefix, LogShipperConfig config) {
+        this.logs = logs;
+        this.logGroupName = logGroupName;
+        this.config = new LogShipperConfig(config);
+        this.maxBufferedTimeNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getMaxBufferedTimeMs());
+        this.spillFile = this.config.getSpillFile() == null ? null : new SpillFile(this.config.getSpillFile());
+
+        this.executor = Executors.newFixedThreadPool(this.config.getStreamCount(),
+                new DaemonThreadFactory("LogShipperThread-"));
+        for (int i = 0; i < this.config.getStreamCount(); i++) {
+            executor.execute(new StreamSender(logStreamNamePrefix + "-" + i));
+        }
+    }
+
+    /**
+     * Adds an event to send, timestamped with the current time.
+     *
+     * @see #addEvent(long, String)
+     */
+    public boolean addEvent(String message) {
+        return addEvent(System.currentTimeMillis(), message);
+    }
+
+    /**
+     * Adds an event to send.
+     *
+     * @param timestamp
+     *            The time of the event, in milliseconds since the epoch. Events older than the
+     *            retention period of the log group, or more than 14 days old or 2 hours in the
+     *            future, are rejected by the service.
+     * @param message
+     *            The message of the event, truncated to the maximum size of an event if longer.
+     * @return True if the event was buffered, false if it was spilled or dropped because the
+     *         buffer is full.
+     * @throws IllegalStateException
+     *             If the shipper has been shut down.
+     */
+    public boolean addEvent(long timestamp, String message) {
+        if (message == null || message.length() == 0) {
+            throw new IllegalArgumentException("The message must be set, and not empty");
+        }
+        message = truncate(message);
+        BufferedLogEvent event = new BufferedLogEvent(timestamp, message,
+                utf8Length(message) + EVENT_OVERHEAD_BYTES, System.nanoTime());
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new IllegalStateException("The shipper has been shut down");
+            }
+            if (buffer.size() < config.getMaxBufferedEvents()) {
+                buffer.add(event);
+                bufferedBytes += event.sizeInBytes;
+                if (buffer.size() == 1 || isBatchFull()) {
+                    eventsAdded.signal();
+                }
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        spillOrDrop(Collections.singletonList(event));
+        return false;
+    }
+
+    /**
+     * Sends the events added so far without waiting for more events to batch them with. Does not
+     * wait for them to be sent.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (!buffer.isEmpty()) {
+                flushRequested = true;
+                eventsAdded.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events, and waits for the events added to be sent, up to the given time.
+     * The events still buffered when the time is up, or being retried, are spilled or dropped:
+     * the sender threads are then interrupted, and waited for a little longer, so that they spill
+     * their events before the spill file is closed.
+     *
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The unit of the timeout.
+     * @return True if all the events were sent, or given up on, in time.
+     * @throws AmazonClientException
+     *             If the calling thread is interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        lock.lock();
+        try {
+            shutdown = true;
+            eventsAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the log events to be sent", e);
+        } finally {
+            if (!terminated) {
+                executor.shutdownNow();
+                awaitSendersStopped();
+                List<BufferedLogEvent> remaining;
+                lock.lock();
+                try {
+                    remaining = new ArrayList<BufferedLogEvent>(buffer);
+                    buffer.clear();
+                    bufferedBytes = 0;
+                } finally {
+                    lock.unlock();
+                }
+                if (!remaining.isEmpty()) {
+                    spillOrDrop(remaining);
+                }
+            }
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        }
+        return terminated;
+    }
+
+    /**
+     * Waits a little for the sender threads to stop once interrupted. An HTTP call in progress is
+     * not interrupted, so its events are dropped if it does not complete by then.
+     */
+    private void awaitSendersStopped() {
+        boolean interrupted = Thread.interrupted();
+        try {
+            executor.awaitTermination(SENDERS_STOP_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be sent.
+     */
+    public int getBufferedEventsCount() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events accepted by the service.
+     */
+    public long getSentEventsCount() {
+        return sentEvents.get();
+    }
+
+    /**
+     * Returns the number of events sent but rejected by the service, for being too old or too
+     * far in the future.
+     */
+    public long getRejectedEventsCount() {
+        return rejectedEvents.get();
+    }
+
+    /**
+     * Returns the number of events appended to the spill file, because the buffer was full or
+     * they could not be sent.
+     */
+    public long getSpilledEventsCount() {
+        return spilledEvents.get();
+    }
+
+    /**
+     * Returns the number of events dropped, because the buffer was full or they could not be
+     * sent, and there is no spill file, or it could not be written.
+     */
+    public long getDroppedEventsCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Whether the buffer holds enough events to fill a batch; must be called holding the lock.
+     */
+    private boolean isBatchFull() {
+        return buffer.size() >= MAX_BATCH_EVENTS || bufferedBytes >= MAX_BATCH_SIZE_BYTES;
+    }
+
+    /**
+     * Waits for a batch of events to be due, and takes it off the buffer.
+     *
+     * @return The events of the batch, in the order they were added, or null once the shipper is
+     *         shut down and all the events were taken.
+     */
+    private List<BufferedLogEvent> takeBatch() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                BufferedLogEvent first = buffer.peek();
+                if (first == null) {
+                    flushRequested = false;
+                    if (shutdown) {
+                        return null;
+                    }
+                    eventsAdded.await();
+                    continue;
+                }
+                long waitNanos = first.addedNanos + maxBufferedTimeNanos - System.nanoTime();
+                if (waitNanos <= 0 || shutdown || flushRequested || isBatchFull()) {
+                    List<BufferedLogEvent> batch = pollBatch();
+                    if (!buffer.isEmpty()) {
+                        // let another sender take the rest
+                        eventsAdded.signal();
+                    }
+                    return batch;
+                }
+                eventsAdded.awaitNanos(waitNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes off the buffer as many events as fit in a PutLogEvents call; must be called holding
+     * the lock.
+     */
+    private List<BufferedLogEvent> pollBatch() {
+        List<BufferedLogEvent> batch = new ArrayList<BufferedLogEvent>();
+        long batchBytes = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        BufferedLogEvent event;
+        while (batch.size() < MAX_BATCH_EVENTS && (event = buffer.peek()) != null) {
+            if (batchBytes + event.sizeInBytes > MAX_BATCH_SIZE_BYTES) {
+                break;
+            }
+            long min = Math.min(minTimestamp, event.timestamp);
+            long max = Math.max(maxTimestamp, event.timestamp);
+            if (!batch.isEmpty() && max - min > MAX_BATCH_SPAN_MS) {
+                break;
+            }
+            buffer.poll();
+            batch.add(event);
+            batchBytes += event.sizeInBytes;
+            minTimestamp = min;
+            maxTimestamp = max;
+        }
+        bufferedBytes -= batchBytes;
+        return batch;
+    }
+
+    private void spillOrDrop(List<BufferedLogEvent> events) {
+        if (spillFile != null && spillFile.append(events)) {
+            spilledEvents.addAndGet(events.size());
+        } else {
+            droppedEvents.addAndGet(events.size());
+        }
+    }
+
+    /**
+     * Returns the number of events of a call of the given size which the service rejected.
+     */
+    private static int rejectedCount(RejectedLogEventsInfo info, int size) {
+        if (info == null) {
+            return 0;
+        }
+        int tooOld = Math.max(indexOrZero(info.getTooOldLogEventEndIndex()),
+                indexOrZero(info.getExpiredLogEventEndIndex()));
+        int tooNew = info.getTooNewLogEventStartIndex() == null ? 0 : size - info.getTooNewLogEventStartIndex();
+        return Math.min(size, Math.max(0, tooOld) + Math.max(0, tooNew));
+    }
+
+    private static int indexOrZero(Integer index) {
+        return index == null ? 0 : index;
+    }
+
+    /**
+     * Returns the given message, cut so that the event fits the maximum size of an event.
+     */
+    static String truncate(String message) {
+        final int maxBytes = MAX_EVENT_SIZE_BYTES - EVENT_OVERHEAD_BYTES;
+        if (message.length() <= maxBytes / 3) {
+            return message;
+        }
+        int bytes = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int charBytes;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < message.length()
+                    && Character.isLowSurrogate(message.charAt(i + 1))) {
+                charBytes = 4;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                return message.substring(0, i);
+            }
+            bytes += charBytes;
+            if (charBytes == 4) {
+                i++;
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Returns the length of the UTF-8 encoding of the given string, unpaired surrogates counting
+     * for the one byte they are replaced with.
+     */
+    static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Sends batches of events to one log stream, one call at a time, keeping its sequence token.
+     */
+    private class StreamSender implements Runnable {
+        private final String logStreamName;
+        private String sequenceToken;
+
+        StreamSender(String logStreamName) {
+            this.logStreamName = logStreamName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<BufferedLogEvent> batch;
+                while ((batch = takeBatch()) != null) {
+                    // events added concurrently can be slightly out of order
+                    Collections.sort(batch, BufferedLogEvent.BY_TIMESTAMP);
+                    try {
+                        send(batch);
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to send " + batch.size() + " log events to stream " + logStreamName, e);
+                        spillOrDrop(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shut down without waiting for the events to be sent
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Sends a batch of events, retrying until it is sent or the retries are exhausted, in
+         * which case it is spilled or dropped.
+         */
+        private void send(List<BufferedLogEvent> batch) throws InterruptedException {
+            List<InputLogEvent> events = new ArrayList<InputLogEvent>(batch.size());
+            for (BufferedLogEvent event : batch) {
+                events.add(event.toInputLogEvent());
+            }
+            int retries = 0;
+            int sequenceTokenRetries = 0;
+            boolean created = false;
+            while (true) {
+                AmazonClientException failure;
+                try {
+                    PutLogEventsResult result = logs.putLogEvents(new PutLogEventsRequest(logGroupName,
+                            logStreamName, events).withSequenceToken(sequenceToken));
+                    sequenceToken = result.getNextSequenceToken();
+                    int rejected = rejectedCount(result.getRejectedLogEventsInfo(), events.size());
+                    if (rejected > 0) {
+                        log.warn(rejected + " log events were rejected by stream " + logStreamName
+                                + " for being too old or too new: " + result.getRejectedLogEventsInfo());
+                    }
+                    rejectedEvents.addAndGet(rejected);
+                    sentEvents.addAndGet(events.size() - rejected);
+                    return;
+                } catch (InvalidSequenceTokenException e) {
+                    sequenceToken = e.getExpectedSequenceToken();
+                    if (++sequenceTokenRetries <= MAX_SEQUENCE_TOKEN_RETRIES) {
+                        continue;
+                    }
+                    failure = e;
+                } catch (DataAlreadyAcceptedException e) {
+                    // a previous attempt was accepted, but its response was lost
+                    sequenceToken = e.getExpectedSequenceToken();
+                    sentEvents.addAndGet(events.size());
+                    return;
+                } catch (ResourceNotFoundException e) {
+                    if (!config.isCreateLogStreams()) {
+                        giveUp(batch, e);
+                        return;
+                    }
+                    failure = e;
+                    if (!created) {
+                        try {
+                            createLogStream();
+                            created = true;
+                            sequenceToken = null;
+                            continue;
+                        } catch (AmazonClientException ce) {
+                            failure = ce;
+                        }
+                    }
+                } catch (AmazonServiceException e) {
+                    if (e.getErrorType() == ErrorType.Client && !"ThrottlingException".equals(e.getErrorCode())) {
+                        giveUp(batch, e);
+                        return;
+                    }
+                    failure = e;
+                } catch (AmazonClientException e) {
+                    failure = e;
+                }
+
+                if (retries >= config.getMaxRetries()) {
+                    giveUp(batch, failure);
+                    return;
+                }
+                try {
+                    Thread.sleep(config.getRetryDelayMs() << Math.min(retries, MAX_RETRY_DELAY_SHIFT));
+                } catch (InterruptedException e) {
+                    spillOrDrop(batch);
+                    throw e;
+                }
+                retries++;
+            }
+        }
+
+        private void giveUp(List<BufferedLogEvent> batch, AmazonClientException e) {
+            log.warn("Failed to send " + batch.size() + " log events to stream " + logStreamName, e);
+            spillOrDrop(batch);
+        }
+
+        private void createLogStream() {
+            try {
+                logs.createLogStream(new CreateLogStreamRequest(logGroupName, logStreamName));
+            } catch (ResourceAlreadyExistsException e) {
+                return;
+            } catch (ResourceNotFoundException e) {
+                try {
+                    logs.createLogGroup(new CreateLogGroupRequest(logGroupName));
+                } catch (ResourceAlreadyExistsException ae) {
+                    // created by another writer
+                }
+                try {
+                    logs.createLogStream(new CreateLogStreamRequest(logGroupName, logStreamName));
+                } catch (ResourceAlreadyExistsException ae) {
+                    // created by another writer
+                }
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+        private final String namePrefix;
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName(namePrefix + threadCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
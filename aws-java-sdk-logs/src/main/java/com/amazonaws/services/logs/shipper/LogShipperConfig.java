@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.logs.shipper;
+
+import java.io.File;
+
+/**
+ * Configuration options for a {@link LogShipper}.
+ */
+public class LogShipperConfig {
+
+    /** 4 streams */
+    public static final int STREAM_COUNT_DEFAULT = 4;
+
+    /** 1 second */
+    public static final long MAX_BUFFERED_TIME_MS_DEFAULT = 1000;
+
+    /** 100000 events */
+    public static final int MAX_BUFFERED_EVENTS_DEFAULT = 100000;
+
+    /** 5 retries */
+    public static final int MAX_RETRIES_DEFAULT = 5;
+
+    /** 500 milliseconds */
+    public static final long RETRY_DELAY_MS_DEFAULT = 500;
+
+    /** true */
+    public static final boolean CREATE_LOG_STREAMS_DEFAULT = true;
+
+    /** The number of log streams written to in parallel. */
+    private int streamCount = STREAM_COUNT_DEFAULT;
+
+    /** The maximum time an event is buffered for before being sent. */
+    private long maxBufferedTimeMs = MAX_BUFFERED_TIME_MS_DEFAULT;
+
+    /** The maximum number of events buffered, past which events are spilled or dropped. */
+    private int maxBufferedEvents = MAX_BUFFERED_EVENTS_DEFAULT;
+
+    /** The number of times a batch of events is sent again before being given up on. */
+    private int maxRetries = MAX_RETRIES_DEFAULT;
+
+    /** The time to wait before sending again a batch of events which could not be sent. */
+    private long retryDelayMs = RETRY_DELAY_MS_DEFAULT;
+
+    /** Whether to create the log streams, and the log group, which do not exist. */
+    private boolean createLogStreams = CREATE_LOG_STREAMS_DEFAULT;
+
+    /** The file the events which cannot be buffered or sent are appended to, if any. */
+    private File spillFile;
+
+    public LogShipperConfig() {
+    }
+
+    /** copy constructor */
+    public LogShipperConfig(LogShipperConfig other) {
+        streamCount = other.streamCount;
+        maxBufferedTimeMs = other.maxBufferedTimeMs;
+        maxBufferedEvents = other.maxBufferedEvents;
+        maxRetries = other.maxRetries;
+        retryDelayMs = other.retryDelayMs;
+        createLogStreams = other.createLogStreams;
+        spillFile = other.spillFile;
+    }
+
+    @Override
+    public String toString() {
+        return "LogShipperConfig [streamCount=" + streamCount + ", maxBufferedTimeMs=" + maxBufferedTimeMs
+                + ", maxBufferedEvents=" + maxBufferedEvents + ", maxRetries=" + maxRetries + ", retryDelayMs="
+                + retryDelayMs + ", createLogStreams=" + createLogStreams + ", spillFile=" + spillFile + "]";
+    }
+
+    /**
+     * The number of log streams written to in parallel. A log stream accepts a single
+     * {@code PutLogEvents} call at a time, as each call needs the sequence token returned by the
+     * previous one, so writing to several streams multiplies the rate at which events can be sent.
+     */
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * The number of log streams written to in parallel. A log stream accepts a single
+     * {@code PutLogEvents} call at a time, as each call needs the sequence token returned by the
+     * previous one, so writing to several streams multiplies the rate at which events can be sent.
+     */
+    public void setStreamCount(int streamCount) {
+        if (streamCount < 1) {
+            throw new IllegalArgumentException("streamCount must be at least 1");
+        }
+        this.streamCount = streamCount;
+    }
+
+    public LogShipperConfig withStreamCount(int streamCount) {
+        setStreamCount(streamCount);
+        return this;
+    }
+
+    /**
+     * The maximum time an event is buffered for before being sent, unless a full batch of events
+     * is buffered sooner.
+     */
+    public long getMaxBufferedTimeMs() {
+        return maxBufferedTimeMs;
+    }
+
+    /**
+     * The maximum time an event is buffered for before being sent, unless a full batch of events
+     * is buffered sooner.
+     */
+    public void setMaxBufferedTimeMs(long maxBufferedTimeMs) {
+        if (maxBufferedTimeMs < 0) {
+            throw new IllegalArgumentException("maxBufferedTimeMs cannot be negative");
+        }
+        this.maxBufferedTimeMs = maxBufferedTimeMs;
+    }
+
+    public LogShipperConfig withMaxBufferedTimeMs(long maxBufferedTimeMs) {
+        setMaxBufferedTimeMs(maxBufferedTimeMs);
+        return this;
+    }
+
+    /**
+     * The maximum number of events buffered, waiting to be sent. The events added once the buffer
+     * is full are appended to the spill file, if any, or dropped, rather than blocking the
+     * threads adding them.
+     */
+    public int getMaxBufferedEvents() {
+        return maxBufferedEvents;
+    }
+
+    /**
+     * The maximum number of events buffered, waiting to be sent. The events added once the buffer
+     * is full are appended to the spill file, if any, or dropped, rather than blocking the
+     * threads adding them.
+     */
+    public void setMaxBufferedEvents(int maxBufferedEvents) {
+        if (maxBufferedEvents < 1) {
+            throw new IllegalArgumentException("maxBufferedEvents must be at least 1");
+        }
+        this.maxBufferedEvents = maxBufferedEvents;
+    }
+
+    public LogShipperConfig withMaxBufferedEvents(int maxBufferedEvents) {
+        setMaxBufferedEvents(maxBufferedEvents);
+        return this;
+    }
+
+    /**
+     * The number of times a batch of events is sent again, after being throttled or failing,
+     * before being appended to the spill file, if any, or dropped. Calls failing because of an
+     * outdated sequence token are made again right away, and are not counted.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * The number of times a batch of events is sent again, after being throttled or failing,
+     * before being appended to the spill file, if any, or dropped. Calls failing because of an
+     * outdated sequence token are made again right away, and are not counted.
+     */
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries cannot be negative");
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    public LogShipperConfig withMaxRetries(int maxRetries) {
+        setMaxRetries(maxRetries);
+        return this;
+    }
+
+    /**
+     * The time to wait before sending again a batch of events which could not be sent. The delay
+     * doubles with each retry of the batch.
+     */
+    public long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    /**
+     * The time to wait before sending again a batch of events which could not be sent. The delay
+     * doubles with each retry of the batch.
+     */
+    public void setRetryDelayMs(long retryDelayMs) {
+        if (retryDelayMs < 0) {
+            throw new IllegalArgumentException("retryDelayMs cannot be negative");
+        }
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public LogShipperConfig withRetryDelayMs(long retryDelayMs) {
+        setRetryDelayMs(retryDelayMs);
+        return this;
+    }
+
+    /**
+     * Whether to create the log streams written to, and their log group, when they do not exist.
+     */
+    public boolean isCreateLogStreams() {
+        return createLogStreams;
+    }
+
+    /**
+     * Whether to create the log streams written to, and their log group, when they do not exist.
+     */
+    public void setCreateLogStreams(boolean createLogStreams) {
+        this.createLogStreams = createLogStreams;
+    }
+
+    public LogShipperConfig withCreateLogStreams(boolean createLogStreams) {
+        setCreateLogStreams(createLogStreams);
+        return this;
+    }
+
+    /**
+     * The file the events are appended to when they cannot be buffered or sent, one event per
+     * line, as its timestamp in milliseconds, a tab and its message, with backslashes, tabs, carriage
+     * returns and line feeds escaped as {@code \\}, {@code \t}, {@code \r} and {@code \n}. If null,
+     * the default, such events are dropped.
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * The file the events are appended to when they cannot be buffered or sent, one event per
+     * line, as its timestamp in milliseconds, a tab and its message, with backslashes, tabs, carriage
+     * returns and line feeds escaped as {@code \\}, {@code \t}, {@code \r} and {@code \n}. If null,
+     * the default, such events are dropped.
+     */
+    public void setSpillFile(File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    public LogShipperConfig withSpillFile(File spillFile) {
+        setSpillFile(spillFile);
+        return this;
+    }
+}
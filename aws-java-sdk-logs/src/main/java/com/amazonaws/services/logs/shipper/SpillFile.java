@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.logs.shipper;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.util.IOUtils;
+
+/**
+ * Appends the events which could not be buffered or sent to a local file, one per line, in the
+ * format described by {@link LogShipperConfig#setSpillFile(File)}.
+ */
+class SpillFile {
+
+    private static final Log log = LogFactory.getLog(SpillFile.class);
+
+    private final File file;
+
+    /** Opened on the first event spilled */
+    private Writer writer;
+    /** Whether the file was closed, or could not be written */
+    private boolean closed;
+
+    SpillFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends the given events to the file.
+     *
+     * @return False if the events could not be written.
+     */
+    synchronized boolean append(List<BufferedLogEvent> events) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+            }
+            StringBuilder line = new StringBuilder();
+            for (BufferedLogEvent event : events) {
+                line.setLength(0);
+                line.append(event.timestamp).append('\t');
+                escape(event.message, line);
+                line.append('\n');
+                writer.write(line.toString());
+            }
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to write the log events to " + file + ", dropping the events from now on", e);
+            closed = true;
+            IOUtils.closeQuietly(writer, log);
+            writer = null;
+            return false;
+        }
+    }
+
+    /**
+     * Closes the file; the events appended from now on are not written.
+     */
+    synchronized void close() {
+        closed = true;
+        IOUtils.closeQuietly(writer, log);
+        writer = null;
+    }
+
+    private static void escape(String message, StringBuilder line) {
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            switch (c) {
+            case '\\':
+                line.append("\\\\");
+                break;
+            case '\t':
+                line.append("\\t");
+                break;
+            case '\r':
+                line.append("\\r");
+                break;
+            case '\n':
+                line.append("\\n");
+                break;
+            default:
+                line.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.logs.shipper;
+
+import static com.amazonaws.util.StringUtils.UTF8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.logs.AWSLogsClient;
+import com.amazonaws.services.logs.model.CreateLogStreamRequest;
+import com.amazonaws.services.logs.model.DataAlreadyAcceptedException;
+import com.amazonaws.services.logs.model.InputLogEvent;
+import com.amazonaws.services.logs.model.InvalidSequenceTokenException;
+import com.amazonaws.services.logs.model.PutLogEventsRequest;
+import com.amazonaws.services.logs.model.PutLogEventsResult;
+import com.amazonaws.services.logs.model.ResourceNotFoundException;
+
+public class LogShipperTest {
+
+    private static final String LOG_GROUP_NAME = "group";
+    private static final String LOG_STREAM_NAME = "stream-0";
+
+    /**
+     * Keeps the sequence token of each log stream, rejecting the calls made with another token as
+     * the service does, and records the events accepted. The response of the next accepted call
+     * can be lost, and all the calls can fail.
+     */
+    private static class FakeAWSLogs extends AWSLogsClient {
+        /** The token expected by each stream */
+        private final Map<String, String> sequenceTokens = new HashMap<String, String>();
+        /** The token of the last call accepted by each stream */
+        private final Map<String, String> acceptedTokens = new HashMap<String, String>();
+        private final List<InputLogEvent> accepted = new ArrayList<InputLogEvent>();
+        private int calls;
+        private int invalidTokenCalls;
+        private int nextToken;
+        private boolean loseNextResponse;
+        private boolean failing;
+
+        FakeAWSLogs() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public synchronized PutLogEventsResult putLogEvents(PutLogEventsRequest request) {
+            calls++;
+            String stream = request.getLogStreamName();
+            if (failing) {
+                throw new AmazonServiceException("Internal failure");
+            }
+            if (!sequenceTokens.containsKey(stream)) {
+                throw new ResourceNotFoundException("The specified log stream does not exist.");
+            }
+            String expected = sequenceTokens.get(stream);
+            String token = request.getSequenceToken();
+            if (acceptedTokens.containsKey(stream) && equal(token, acceptedTokens.get(stream))) {
+                DataAlreadyAcceptedException e = new DataAlreadyAcceptedException("The given batch of log "
+                        + "events has already been accepted.");
+                e.setExpectedSequenceToken(expected);
+                throw e;
+            }
+            if (!equal(token, expected)) {
+                invalidTokenCalls++;
+                InvalidSequenceTokenException e = new InvalidSequenceTokenException("The given sequence token "
+                        + "is invalid.");
+                e.setExpectedSequenceToken(expected);
+                throw e;
+            }
+
+            accepted.addAll(request.getLogEvents());
+            acceptedTokens.put(stream, token);
+            String next = "token-" + ++nextToken;
+            sequenceTokens.put(stream, next);
+            if (loseNextResponse) {
+                loseNextResponse = false;
+                throw new AmazonClientException("Unable to execute HTTP request: Connection reset");
+            }
+            return new PutLogEventsResult().withNextSequenceToken(next);
+        }
+
+        @Override
+        public synchronized void createLogStream(CreateLogStreamRequest request) {
+            sequenceTokens.put(request.getLogStreamName(), null);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        synchronized List<String> acceptedMessages() {
+            List<String> messages = new ArrayList<String>();
+            for (InputLogEvent event : accepted) {
+                messages.add(event.getMessage());
+            }
+            return messages;
+        }
+    }
+
+    private final FakeAWSLogs logs = new FakeAWSLogs();
+
+    private static LogShipperConfig newConfig() {
+        // a single stream, sending only on flush or shutdown
+        return new LogShipperConfig().withStreamCount(1).withMaxBufferedTimeMs(TimeUnit.MINUTES.toMillis(1))
+                .withRetryDelayMs(1);
+    }
+
+    /**
+     * Reads back the events of a spill file, in the format documented by
+     * {@link LogShipperConfig#setSpillFile(File)}.
+     */
+    private static List<InputLogEvent> readSpillFile(File file) throws Exception {
+        List<InputLogEvent> events = new ArrayList<InputLogEvent>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                StringBuilder message = new StringBuilder();
+                for (int i = tab + 1; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (c == '\\') {
+                        char escaped = line.charAt(++i);
+                        message.append(escaped == 't' ? '\t' : escaped == 'r' ? '\r' : escaped == 'n' ? '\n' : escaped);
+                    } else {
+                        message.append(c);
+                    }
+                }
+                events.add(new InputLogEvent().withTimestamp(Long.parseLong(line.substring(0, tab)))
+                        .withMessage(message.toString()));
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
+    private static File newSpillFile() throws Exception {
+        File file = File.createTempFile("LogShipperTest-", ".log");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testOutdatedSequenceTokenIsReplaced() throws Exception {
+        // another writer left the stream expecting another token
+        logs.sequenceTokens.put(LOG_STREAM_NAME, "token-from-another-writer");
+        LogShipper shipper = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig());
+        shipper.addEvent(3000, "c");
+        shipper.addEvent(1000, "a");
+        shipper.addEvent(2000, "b");
+        shipper.flush();
+        shipper.addEvent(4000, "d");
+
+        assertTrue(shipper.shutdown(5, TimeUnit.SECONDS));
+        // the events of a call are sorted by timestamp
+        assertEquals(Arrays.asList("a", "b", "c", "d"), logs.acceptedMessages());
+        assertEquals(1, logs.invalidTokenCalls);
+        assertEquals(4, shipper.getSentEventsCount());
+        assertEquals(0, shipper.getDroppedEventsCount());
+    }
+
+    @Test
+    public void testMissingLogStreamIsCreated() throws Exception {
+        LogShipper shipper = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig());
+        shipper.addEvent(1000, "a");
+
+        assertTrue(shipper.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a"), logs.acceptedMessages());
+        assertEquals(2, logs.calls);
+        assertEquals(1, shipper.getSentEventsCount());
+    }
+
+    @Test
+    public void testEventsAcceptedWithoutResponseAreNotSentTwice() throws Exception {
+        logs.sequenceTokens.put(LOG_STREAM_NAME, null);
+        logs.loseNextResponse = true;
+        LogShipper shipper = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig());
+        shipper.addEvent(1000, "a");
+        shipper.addEvent(2000, "b");
+        shipper.flush();
+        shipper.addEvent(3000, "c");
+
+        assertTrue(shipper.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b", "c"), logs.acceptedMessages());
+        assertEquals(3, shipper.getSentEventsCount());
+    }
+
+    @Test
+    public void testEventsOverTheBufferAreSpilled() throws Exception {
+        logs.sequenceTokens.put(LOG_STREAM_NAME, null);
+        File spillFile = newSpillFile();
+        LogShipper shipper = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig()
+                .withMaxBufferedEvents(2).withSpillFile(spillFile));
+        assertTrue(shipper.addEvent(1000, "a"));
+        assertTrue(shipper.addEvent(2000, "b"));
+        assertFalse(shipper.addEvent(3000, "tab\there"));
+        assertFalse(shipper.addEvent(4000, "lines\r\nand \\ backslash"));
+
+        assertTrue(shipper.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), logs.acceptedMessages());
+        assertEquals(2, shipper.getSpilledEventsCount());
+
+        List<InputLogEvent> spilled = readSpillFile(spillFile);
+        assertEquals(Arrays.asList(new InputLogEvent().withTimestamp(3000L).withMessage("tab\there"),
+                new InputLogEvent().withTimestamp(4000L).withMessage("lines\r\nand \\ backslash")), spilled);
+    }
+
+    @Test
+    public void testEventsNotSentAreSpilledForReplay() throws Exception {
+        logs.sequenceTokens.put(LOG_STREAM_NAME, null);
+        logs.failing = true;
+        File spillFile = newSpillFile();
+        LogShipper shipper = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig()
+                .withMaxRetries(2).withSpillFile(spillFile));
+        shipper.addEvent(2000, "b");
+        shipper.addEvent(1000, "a");
+
+        assertTrue(shipper.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(3, logs.calls);
+        assertEquals(2, shipper.getSpilledEventsCount());
+        assertEquals(0, shipper.getSentEventsCount());
+
+        // the events spilled can be sent again once the service is back
+        logs.failing = false;
+        LogShipper replay = new LogShipper(logs, LOG_GROUP_NAME, "stream", newConfig());
+        for (InputLogEvent event : readSpillFile(spillFile)) {
+            replay.addEvent(event.getTimestamp(), event.getMessage());
+        }
+        assertTrue(replay.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), logs.acceptedMessages());
+    }
+}
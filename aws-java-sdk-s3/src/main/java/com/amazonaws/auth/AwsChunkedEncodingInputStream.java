@@ -17,7 +17,6 @@ import static com.amazonaws.util.StringUtils.UTF8;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,8 +40,14 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
     private static final String CHUNK_SIGNATURE_HEADER = ";chunk-signature=";
     private static final int SIGNATURE_LENGTH = 64;
     private static final byte[] FINAL_CHUNK = new byte[0];
+    private static final byte[] CLRF_BYTES = {'\r', '\n'};
+    /** Hex encoded SHA-256 hash of the (empty) nonsig-extension. */
+    private static final String EMPTY_STRING_HASH =
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
 
     private InputStream is = null;
+    /** Buffer holding the data of the current chunk; allocated on first use. */
+    private byte[] chunkData;
     private final int maxBufferSize;
     private final byte[] kSigning;
     private final String dateTime;
@@ -276,15 +281,16 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
      * 		Returns true if next chunk is the last empty chunk.
      */
     private boolean setUpNextChunk() throws IOException {
-        byte[] chunkData = new byte[DEFAULT_CHUNK_SIZE];
+        // The chunk data is read into the same buffer for every chunk, as the
+        // previous chunk has been fully consumed by now
+        if (chunkData == null)
+            chunkData = new byte[DEFAULT_CHUNK_SIZE];
         int chunkSizeInBytes = 0;
         while (chunkSizeInBytes < DEFAULT_CHUNK_SIZE) {
-            /** Read from the buffer of the decoded stream */
             if (null != decodedStreamBuffer
                     && decodedStreamBuffer.hasNext()) {
                 chunkData[chunkSizeInBytes++] = decodedStreamBuffer.next();
             }
-            /** Read from the wrapped stream */
             else {
                 int bytesToRead = DEFAULT_CHUNK_SIZE - chunkSizeInBytes;
                 int count = is.read(chunkData, chunkSizeInBytes, bytesToRead);
@@ -298,24 +304,23 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
             }
         }
         if (chunkSizeInBytes == 0){
-            byte[] signedFinalChunk = createSignedChunk(FINAL_CHUNK);
-            currentChunkIterator = new ChunkContentIterator(signedFinalChunk);
+            currentChunkIterator = createSignedChunk(FINAL_CHUNK, 0);
             return true;
         }
         else {
-            if (chunkSizeInBytes < chunkData.length) {
-                chunkData = Arrays.copyOf(chunkData, chunkSizeInBytes);
-            }
-            byte[] signedChunkContent = createSignedChunk(chunkData);
-            currentChunkIterator = new ChunkContentIterator(signedChunkContent);
+            currentChunkIterator = createSignedChunk(chunkData, chunkSizeInBytes);
             return false;
         }
     }
 
-    private byte[] createSignedChunk(byte[] chunkData) {
+    /**
+     * Signs the given chunk data, returning an iterator over the signed chunk
+     * which reads the chunk data directly from the given buffer.
+     */
+    private ChunkContentIterator createSignedChunk(byte[] chunkData, int chunkSizeInBytes) {
         StringBuilder chunkHeader = new StringBuilder();
         // chunk-size
-        chunkHeader.append(Integer.toHexString(chunkData.length));
+        chunkHeader.append(Integer.toHexString(chunkSizeInBytes));
         // nonsig-extension
         String nonsigExtension = "";
         // sig-extension
@@ -324,8 +329,8 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
                 dateTime + "\n" +
                 keyPath + "\n" +
                 priorChunkSignature + "\n" +
-                BinaryUtils.toHex(aws4Signer.hash(nonsigExtension)) + "\n" +
-                BinaryUtils.toHex(aws4Signer.hash(chunkData));
+                EMPTY_STRING_HASH + "\n" +
+                BinaryUtils.toHex(aws4Signer.hash(chunkData, 0, chunkSizeInBytes));
         final String chunkSignature = BinaryUtils.toHex(aws4Signer.sign(
                 chunkStringToSign, kSigning, SigningAlgorithm.HmacSHA256));
         priorChunkSignature = chunkSignature;
@@ -334,14 +339,7 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
 
         try {
             byte[] header = chunkHeader.toString().getBytes(UTF8);
-            byte[] trailer = CLRF.getBytes(UTF8);
-            byte[] signedChunk = new byte[header.length + chunkData.length + trailer.length];
-            System.arraycopy(header, 0, signedChunk, 0, header.length);
-            System.arraycopy(chunkData, 0, signedChunk, header.length, chunkData.length);
-            System.arraycopy(trailer, 0,
-                    signedChunk, header.length + chunkData.length,
-                    trailer.length);
-            return signedChunk;
+            return new ChunkContentIterator(header, chunkData, chunkSizeInBytes, CLRF_BYTES);
         } catch (Exception e) {
             throw new AmazonClientException("Unable to sign the chunked data. " + e.getMessage(), e);
         }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.s3.iterable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Iterates over the pages of one or more listings, which are fetched in the
+ * background so that the next pages are usually available by the time they
+ * are needed.
+ * <p>
+ * The pages of a listing can only be fetched one after the other, as each
+ * page request refers to the previous page; but up to
+ * <code>maxConcurrentListings</code> listings are fetched concurrently, and
+ * their pages returned in the order they arrive. Fetching pauses whenever
+ * <code>maxPagesAhead</code> pages are waiting to be consumed, so an iterator
+ * that is abandoned holds on to a bounded number of pages, and no thread.
+ */
+final class PrefetchingPageIterator<P> implements Iterator<P> {
+
+    /**
+     * A listing made of pages, each of which is fetched from the previous one.
+     */
+    interface Listing<P> {
+        P firstPage();
+
+        /**
+         * Returns the page after the given one; or null if the given page is
+         * the last one.
+         */
+        P nextPage(P previous);
+    }
+
+    private final ExecutorService executor;
+    private final int maxPagesAhead;
+    private final int maxConcurrentListings;
+
+    /** The listings not started yet. */
+    private final LinkedList<Listing<P>> pendingListings = new LinkedList<Listing<P>>();
+    /** The started listings whose fetching is paused as too many pages are waiting. */
+    private final LinkedList<Fetch> pausedFetches = new LinkedList<Fetch>();
+    /** The fetched pages waiting to be consumed. */
+    private final LinkedList<P> pages = new LinkedList<P>();
+    private int activeListings;
+    private RuntimeException failure;
+
+    PrefetchingPageIterator(ExecutorService executor, int maxPagesAhead,
+            int maxConcurrentListings) {
+        if (maxPagesAhead < 1)
+            throw new IllegalArgumentException("maxPagesAhead must be at least 1");
+        if (maxConcurrentListings < 1)
+            throw new IllegalArgumentException("maxConcurrentListings must be at least 1");
+        this.executor = executor == null ? LazyHolder.executor : executor;
+        this.maxPagesAhead = maxPagesAhead;
+        this.maxConcurrentListings = maxConcurrentListings;
+    }
+
+    /**
+     * Adds a listing whose pages are to be returned by this iterator.
+     */
+    void addListing(Listing<P> listing) {
+        List<Fetch> toStart;
+        synchronized (this) {
+            pendingListings.add(listing);
+            toStart = fetchesToStart();
+        }
+        start(toStart);
+    }
+
+    @Override
+    public boolean hasNext() {
+        synchronized (this) {
+            boolean interrupted = false;
+            try {
+                while (pages.isEmpty() && failure == null
+                        && (activeListings > 0 || !pendingListings.isEmpty())) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            if (interrupted)
+                throw new AbortedException("Interrupted while waiting for the next page");
+            if (!pages.isEmpty())
+                return true;
+            if (failure != null)
+                throw failure;
+            return false;
+        }
+    }
+
+    @Override
+    public P next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        P page;
+        List<Fetch> toStart;
+        synchronized (this) {
+            page = pages.removeFirst();
+            toStart = fetchesToStart();
+        }
+        start(toStart);
+        return page;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the fetches that can be started or resumed now, with the
+     * iterator's lock held.
+     */
+    private List<Fetch> fetchesToStart() {
+        List<Fetch> toStart = new ArrayList<Fetch>();
+        if (failure != null)
+            return toStart;
+        int pagesAhead = pages.size();
+        while (pagesAhead < maxPagesAhead && !pausedFetches.isEmpty()) {
+            toStart.add(pausedFetches.removeFirst());
+            pagesAhead++;
+        }
+        while (activeListings < maxConcurrentListings && !pendingListings.isEmpty()) {
+            toStart.add(new Fetch(pendingListings.removeFirst()));
+            activeListings++;
+        }
+        return toStart;
+    }
+
+    private void start(List<Fetch> fetches) {
+        for (Fetch fetch : fetches) {
+            executor.execute(fetch);
+        }
+    }
+
+    /**
+     * Fetches the next page of a listing, and then the page after that as
+     * long as there are not too many pages waiting.
+     */
+    private final class Fetch implements Runnable {
+        private final Listing<P> listing;
+        private P lastPage;
+
+        Fetch(Listing<P> listing) {
+            this.listing = listing;
+        }
+
+        @Override
+        public void run() {
+            P page;
+            try {
+                page = lastPage == null ? listing.firstPage() : listing.nextPage(lastPage);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            } catch (Error e) {
+                fail(new AmazonClientException("Unable to fetch the next page", e));
+                throw e;
+            }
+            List<Fetch> toStart;
+            synchronized (PrefetchingPageIterator.this) {
+                if (page == null) {
+                    activeListings--;
+                } else {
+                    lastPage = page;
+                    pages.add(page);
+                    if (failure == null)
+                        pausedFetches.add(this);
+                }
+                toStart = fetchesToStart();
+                PrefetchingPageIterator.this.notifyAll();
+            }
+            start(toStart);
+        }
+
+        private void fail(RuntimeException e) {
+            synchronized (PrefetchingPageIterator.this) {
+                if (failure == null)
+                    failure = e;
+                activeListings--;
+                PrefetchingPageIterator.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Used to avoid creating the threads until absolutely necessary.
+     */
+    private static final class LazyHolder {
+        /** The threads used to fetch pages if no executor is specified. */
+        private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setName("java-sdk-s3-listing-thread-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
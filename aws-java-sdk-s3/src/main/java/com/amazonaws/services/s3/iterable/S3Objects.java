@@ -15,6 +15,8 @@
 package com.amazonaws.services.s3.iterable;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
@@ -34,6 +36,11 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
  * The list of {@link S3ObjectSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
  * {@link S3Objects#withBatchSize(int)} method.
+ * <p>
+ * Large listings can be sped up by fetching pages in the background, ahead of
+ * the iteration, with {@link S3Objects#withPrefetchedPages(int)}; and by
+ * listing the "subdirectories" of the bucket or prefix concurrently, with
+ * {@link S3Objects#withParallelListing(String, int)}.
  */
 public class S3Objects implements Iterable<S3ObjectSummary> {
 
@@ -41,6 +48,10 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
     private String prefix = null;
     private String bucketName;
     private Integer batchSize = null;
+    private int prefetchedPages = 0;
+    private String delimiter = null;
+    private int maxConcurrentListings = 1;
+    private ExecutorService executorService = null;
 
     private S3Objects(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -91,6 +102,59 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
         return this;
     }
 
+    /**
+     * Sets the number of pages of {@link S3ObjectSummary}s to fetch ahead of
+     * the iteration, in the background, so that the time spent waiting for
+     * the next page overlaps with the processing of the current one. By
+     * default, pages are fetched one at a time, in the iterating thread, when
+     * they are needed.
+     *
+     * @param prefetchedPages
+     *            How many pages to fetch ahead of the iteration.
+     */
+    public S3Objects withPrefetchedPages(int prefetchedPages) {
+        if (prefetchedPages < 0)
+            throw new IllegalArgumentException("prefetchedPages must not be negative");
+        this.prefetchedPages = prefetchedPages;
+        return this;
+    }
+
+    /**
+     * Lists the objects under each common prefix up to the given delimiter
+     * (eg each "subdirectory", if the delimiter is "/") as a separate listing,
+     * with up to the given number of listings fetched concurrently.
+     * <p>
+     * Pages are returned as soon as they are fetched, so the object summaries
+     * are no longer returned in the order of their keys.
+     *
+     * @param delimiter
+     *            The delimiter splitting keys into the common prefixes listed
+     *            concurrently.
+     * @param maxConcurrentListings
+     *            How many listings to fetch concurrently.
+     */
+    public S3Objects withParallelListing(String delimiter, int maxConcurrentListings) {
+        if (delimiter == null || delimiter.length() == 0)
+            throw new IllegalArgumentException("A delimiter must be specified");
+        if (maxConcurrentListings < 1)
+            throw new IllegalArgumentException("maxConcurrentListings must be at least 1");
+        this.delimiter = delimiter;
+        this.maxConcurrentListings = maxConcurrentListings;
+        return this;
+    }
+
+    /**
+     * Sets the executor service used to fetch pages in the background. By
+     * default, pages are fetched by a shared pool of daemon threads.
+     *
+     * @param executorService
+     *            The executor service to fetch pages with.
+     */
+    public S3Objects withExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
     public Integer getBatchSize() {
         return batchSize;
     }
@@ -107,6 +171,22 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
         return s3;
     }
 
+    public int getPrefetchedPages() {
+        return prefetchedPages;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public int getMaxConcurrentListings() {
+        return maxConcurrentListings;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
     private class S3ObjectIterator implements Iterator<S3ObjectSummary> {
 
         private ObjectListing currentListing = null;
@@ -149,8 +229,84 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
 
     }
 
+    /**
+     * Iterates over the object summaries of the pages fetched in the
+     * background, listing the common prefixes of each page separately.
+     */
+    private class PrefetchingObjectIterator implements Iterator<S3ObjectSummary> {
+
+        private final PrefetchingPageIterator<ObjectListing> pages =
+            new PrefetchingPageIterator<ObjectListing>(getExecutorService(),
+                    Math.max(1, getPrefetchedPages()), getMaxConcurrentListings());
+
+        private Iterator<S3ObjectSummary> currentIterator = null;
+
+        PrefetchingObjectIterator() {
+            pages.addListing(new ObjectListingPages(getPrefix(), getDelimiter()));
+        }
+
+        @Override
+        public boolean hasNext() {
+            prepareCurrentIterator();
+            return currentIterator != null && currentIterator.hasNext();
+        }
+
+        @Override
+        public S3ObjectSummary next() {
+            prepareCurrentIterator();
+            if ( currentIterator == null ) {
+                throw new NoSuchElementException();
+            }
+            return currentIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void prepareCurrentIterator() {
+            while ( (currentIterator == null || !currentIterator.hasNext()) && pages.hasNext() ) {
+                ObjectListing listing = pages.next();
+                for ( String commonPrefix : listing.getCommonPrefixes() ) {
+                    pages.addListing(new ObjectListingPages(commonPrefix, null));
+                }
+                currentIterator = listing.getObjectSummaries().iterator();
+            }
+        }
+    }
+
+    private class ObjectListingPages implements PrefetchingPageIterator.Listing<ObjectListing> {
+
+        private final String prefix;
+        private final String delimiter;
+
+        ObjectListingPages(String prefix, String delimiter) {
+            this.prefix = prefix;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public ObjectListing firstPage() {
+            ListObjectsRequest req = new ListObjectsRequest();
+            req.setBucketName(getBucketName());
+            req.setPrefix(prefix);
+            req.setDelimiter(delimiter);
+            req.setMaxKeys(getBatchSize());
+            return getS3().listObjects(req);
+        }
+
+        @Override
+        public ObjectListing nextPage(ObjectListing previous) {
+            return previous.isTruncated() ? getS3().listNextBatchOfObjects(previous) : null;
+        }
+    }
+
     @Override
     public Iterator<S3ObjectSummary> iterator() {
+        if ( getPrefetchedPages() > 0 || getDelimiter() != null ) {
+            return new PrefetchingObjectIterator();
+        }
         return new S3ObjectIterator();
     }
 
@@ -15,6 +15,8 @@
 package com.amazonaws.services.s3.iterable;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ListVersionsRequest;
@@ -33,7 +35,9 @@ import com.amazonaws.services.s3.model.VersionListing;
  * <p>
  * The list of {@link S3VersionSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
- * {@link S3Versions#withBatchSize(int)} method.
+ * {@link S3Versions#withBatchSize(int)} method, and pages can be fetched in
+ * the background, ahead of the iteration, with the
+ * {@link S3Versions#withPrefetchedPages(int)} method.
  */
 public class S3Versions implements Iterable<S3VersionSummary> {
 
@@ -42,6 +46,8 @@ public class S3Versions implements Iterable<S3VersionSummary> {
     private String prefix;
     private String key;
     private Integer batchSize;
+    private int prefetchedPages;
+    private ExecutorService executorService;
 
     private S3Versions(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -111,6 +117,35 @@ public class S3Versions implements Iterable<S3VersionSummary> {
         return this;
     }
 
+    /**
+     * Sets the number of pages of {@link S3VersionSummary}s to fetch ahead of
+     * the iteration, in the background, so that the time spent waiting for
+     * the next page overlaps with the processing of the current one. By
+     * default, pages are fetched one at a time, in the iterating thread, when
+     * they are needed.
+     *
+     * @param prefetchedPages
+     *            How many pages to fetch ahead of the iteration.
+     */
+    public S3Versions withPrefetchedPages(int prefetchedPages) {
+        if (prefetchedPages < 0)
+            throw new IllegalArgumentException("prefetchedPages must not be negative");
+        this.prefetchedPages = prefetchedPages;
+        return this;
+    }
+
+    /**
+     * Sets the executor service used to fetch pages in the background. By
+     * default, pages are fetched by a shared pool of daemon threads.
+     *
+     * @param executorService
+     *            The executor service to fetch pages with.
+     */
+    public S3Versions withExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
     public Integer getBatchSize() {
         return batchSize;
     }
@@ -131,6 +166,14 @@ public class S3Versions implements Iterable<S3VersionSummary> {
         return bucketName;
     }
 
+    public int getPrefetchedPages() {
+        return prefetchedPages;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
     private class VersionIterator implements Iterator<S3VersionSummary> {
 
         private VersionListing currentListing = null;
@@ -197,8 +240,95 @@ public class S3Versions implements Iterable<S3VersionSummary> {
 
     }
 
+    /**
+     * Iterates over the version summaries of the pages fetched in the
+     * background.
+     */
+    private class PrefetchingVersionIterator implements Iterator<S3VersionSummary> {
+
+        private final PrefetchingPageIterator<VersionListing> pages =
+            new PrefetchingPageIterator<VersionListing>(getExecutorService(),
+                    getPrefetchedPages(), 1);
+
+        private Iterator<S3VersionSummary> currentIterator = null;
+        private S3VersionSummary nextSummary = null;
+        private boolean pastKey = false;
+
+        PrefetchingVersionIterator() {
+            pages.addListing(new VersionListingPages());
+        }
+
+        @Override
+        public boolean hasNext() {
+            prepareNextSummary();
+            return nextSummary != null;
+        }
+
+        @Override
+        public S3VersionSummary next() {
+            prepareNextSummary();
+            if (nextSummary == null) {
+                throw new NoSuchElementException();
+            }
+            S3VersionSummary returnValue = nextSummary;
+            nextSummary = null;
+            return returnValue;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void prepareNextSummary() {
+            if (nextSummary != null || pastKey) {
+                return;
+            }
+            while ((currentIterator == null || !currentIterator.hasNext())
+                    && pages.hasNext()) {
+                currentIterator = pages.next().getVersionSummaries().iterator();
+            }
+            if (currentIterator != null && currentIterator.hasNext()) {
+                S3VersionSummary summary = currentIterator.next();
+                if (getKey() == null || summary.getKey().equals(getKey())) {
+                    nextSummary = summary;
+                } else {
+                    // Past the versions of the key; the remaining pages are
+                    // of no interest
+                    pastKey = true;
+                }
+            }
+        }
+    }
+
+    private class VersionListingPages implements PrefetchingPageIterator.Listing<VersionListing> {
+
+        @Override
+        public VersionListing firstPage() {
+            ListVersionsRequest req = new ListVersionsRequest();
+            req.setBucketName(getBucketName());
+
+            if (getKey() != null) {
+                req.setPrefix(getKey());
+            } else {
+                req.setPrefix(getPrefix());
+            }
+
+            req.setMaxResults(getBatchSize());
+            return getS3().listVersions(req);
+        }
+
+        @Override
+        public VersionListing nextPage(VersionListing previous) {
+            return previous.isTruncated() ? getS3().listNextBatchOfVersions(previous) : null;
+        }
+    }
+
     @Override
     public Iterator<S3VersionSummary> iterator() {
+        if (getPrefetchedPages() > 0) {
+            return new PrefetchingVersionIterator();
+        }
         return new VersionIterator();
     }
 
@@ -17,10 +17,7 @@
  */
 package com.amazonaws.services.s3.model.transform;
 
-import static com.amazonaws.util.StringUtils.UTF8;
-
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -177,52 +174,86 @@ public class XmlResponsesSaxParser {
                 log.debug("Sanitizing XML document destined for handler " + handler.getClass());
             }
 
-            InputStream sanitizedInputStream = null;
+            /*
+             * Replace any carriage return (\r) characters with explicit XML
+             * character entities, to prevent the SAX parser from
+             * misinterpreting 0x0D characters as 0x0A and being unable to
+             * parse the XML. This is done as the document is read, rather
+             * than on a copy of the whole document.
+             */
+            return new CarriageReturnEscapingInputStream(inputStream);
+        }
+    }
 
-            try {
+    /**
+     * Replaces the carriage return characters of a UTF-8 encoded document with
+     * XML character entities. As 0x0D never occurs within a multi-byte UTF-8
+     * sequence, this can be done on the bytes of the document, without
+     * decoding it.
+     */
+    private static final class CarriageReturnEscapingInputStream extends InputStream {
+        private static final byte[] ESCAPED_CARRIAGE_RETURN = {'&', '#', '0', '1', '3', ';'};
 
-                /*
-                 * Read object listing XML document from input stream provided into a
-                 * string buffer, so we can replace troublesome characters before
-                 * sending the document to the XML parser.
-                 */
-                StringBuilder listingDocBuffer = new StringBuilder();
-                BufferedReader br = new BufferedReader(
-                    new InputStreamReader(inputStream, Constants.DEFAULT_ENCODING));
-
-                char[] buf = new char[8192];
-                int read = -1;
-                while ((read = br.read(buf)) != -1) {
-                    listingDocBuffer.append(buf, 0, read);
-                }
-                br.close();
-
-                /*
-                 * Replace any carriage return (\r) characters with explicit XML
-                 * character entities, to prevent the SAX parser from
-                 * misinterpreting 0x0D characters as 0x0A and being unable to
-                 * parse the XML.
-                 */
-                String listingDoc = listingDocBuffer.toString().replaceAll("\r", "&#013;");
-
-                sanitizedInputStream = new ByteArrayInputStream(
-                    listingDoc.getBytes(UTF8));
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private int pos;
+        private int limit;
+        /** Index of the next byte of the entity to return; or its length if none. */
+        private int escapePos = ESCAPED_CARRIAGE_RETURN.length;
 
-            } catch (IOException e) {
-                throw e;
-
-            } catch (Throwable t) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    if (log.isErrorEnabled()) {
-                        log.error("Unable to close response InputStream after failure sanitizing XML document", e);
+        CarriageReturnEscapingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int count = read(b, 0, 1);
+            return count == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < len) {
+                if (escapePos < ESCAPED_CARRIAGE_RETURN.length) {
+                    b[off + count++] = ESCAPED_CARRIAGE_RETURN[escapePos++];
+                    continue;
+                }
+                if (pos == limit) {
+                    // Don't block for more input if there is some to return
+                    if (count > 0) {
+                        break;
+                    }
+                    int read = in.read(buffer, 0, buffer.length);
+                    if (read == -1) {
+                        return -1;
                     }
+                    pos = 0;
+                    limit = read;
+                    continue;
+                }
+                byte c = buffer[pos++];
+                if (c == '\r') {
+                    escapePos = 0;
+                } else {
+                    b[off + count++] = c;
                 }
-                throw new AmazonClientException("Failed to sanitize XML document destined for handler "
-                    + handler.getClass(), t);
             }
-            return sanitizedInputStream;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (ESCAPED_CARRIAGE_RETURN.length - escapePos) + (limit - pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
         }
     }
 
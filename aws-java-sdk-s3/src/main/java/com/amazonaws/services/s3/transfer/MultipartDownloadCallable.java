@@ -0,0 +1,504 @@
+/*
+ * Copyright 2010-2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.s3.transfer;
+
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+import static com.amazonaws.util.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.internal.FileLocks;
+import com.amazonaws.services.s3.internal.ServiceUtils;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.transfer.Transfer.TransferState;
+import com.amazonaws.services.s3.transfer.exception.FileLockException;
+import com.amazonaws.services.s3.transfer.internal.AbstractTransfer;
+import com.amazonaws.services.s3.transfer.internal.DownloadImpl;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+
+/**
+ * Downloads an object by fetching byte ranges of it concurrently, each over
+ * its own connection, and writing each range at its position in the
+ * destination file.
+ * <p>
+ * The parts still to be downloaded are handed out from a shared counter to
+ * this callable and to the helper tasks it submits to the thread pool, so
+ * the download makes progress even when no pool thread is free to help. The
+ * numbers of the completed parts are recorded in the
+ * {@link PersistableDownload} of the download, so that a paused download
+ * resumes with the missing parts only.
+ */
+final class MultipartDownloadCallable implements Callable<File> {
+    private static final Log log = LogFactory.getLog(MultipartDownloadCallable.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3;
+    private final CountDownLatch latch;
+    private final GetObjectRequest req;
+    private final DownloadImpl download;
+    private final File dstfile;
+    private final ObjectMetadata objectMetadata;
+    private final long partSize;
+    private final int numParts;
+    private final ExecutorService threadPool;
+
+    /** The parts still to be downloaded, in increasing order. */
+    private final int[] pendingParts;
+    /** Index in pendingParts of the next part to hand out. */
+    private final AtomicInteger nextPendingPart = new AtomicInteger();
+    /** Bit i is set if part number i+1 has been completely written. */
+    private final BitSet completedParts = new BitSet();
+    /** The objects whose content is currently being read. */
+    private final Set<S3Object> inFlight = Collections.synchronizedSet(new HashSet<S3Object>());
+    private final List<Helper> helpers = new CopyOnWriteArrayList<Helper>();
+
+    /** The failure which aborted the download, if any. */
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private volatile boolean aborted;
+    /** True if the download was aborted by the user, rather than a failure. */
+    private volatile boolean canceled;
+    private FileChannel channel;
+
+    /**
+     * @param objectMetadata
+     *            the metadata of the whole object, whose ETag all the parts
+     *            are required to match
+     * @param completedPartNumbers
+     *            the numbers of the parts already written to the destination
+     *            file by a previous attempt at this download; or null if none
+     */
+    MultipartDownloadCallable(AmazonS3 s3, CountDownLatch latch,
+            GetObjectRequest req, DownloadImpl download, File dstfile,
+            ObjectMetadata objectMetadata, long partSize,
+            int[] completedPartNumbers, ExecutorService threadPool) {
+        if (s3 == null || latch == null || req == null || dstfile == null
+                || download == null || objectMetadata == null || threadPool == null)
+            throw new IllegalArgumentException();
+        if (partSize <= 0)
+            throw new IllegalArgumentException("Invalid part size: " + partSize);
+        long length = objectMetadata.getContentLength();
+        if ((length + partSize - 1) / partSize > MAXIMUM_UPLOAD_PARTS)
+            throw new IllegalArgumentException("Part size " + partSize
+                    + " too small for an object of " + length + " bytes");
+        this.s3 = s3;
+        this.latch = latch;
+        this.req = req;
+        this.download = download;
+        this.dstfile = dstfile;
+        this.objectMetadata = objectMetadata;
+        this.partSize = partSize;
+        this.threadPool = threadPool;
+        this.numParts = (int) Math.max(1, (length + partSize - 1) / partSize);
+        if (completedPartNumbers != null) {
+            for (int partNumber : completedPartNumbers) {
+                if (partNumber >= 1 && partNumber <= numParts)
+                    completedParts.set(partNumber - 1);
+            }
+        }
+        this.pendingParts = new int[numParts - completedParts.cardinality()];
+        for (int i = 0, j = 0; i < numParts; i++) {
+            if (!completedParts.get(i))
+                pendingParts[j++] = i + 1;
+        }
+        download.updatePersistableTransfer(newPersistableDownload());
+        // The parts are ranged GETs, whose metadata is not that of the object
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(req.getBucketName());
+        s3Object.setKey(req.getKey());
+        s3Object.setObjectMetadata(objectMetadata);
+        download.setS3Object(s3Object);
+    }
+
+    /**
+     * Returns the number of bytes of the object already downloaded by a
+     * previous attempt at this download.
+     */
+    long getCompletedBytes() {
+        long bytes = 0;
+        synchronized (completedParts) {
+            for (int i = completedParts.nextSetBit(0); i >= 0; i = completedParts.nextSetBit(i + 1)) {
+                bytes += partLength(i + 1);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Submits this callable to the given thread pool, returning a future
+     * whose cancellation also aborts the parts being downloaded.
+     */
+    Future<File> submitTo(ExecutorService executor) {
+        FutureTask<File> task = new FutureTask<File>(this) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                abort();
+                // Interrupting a thread writing to the file would close it
+                // for the helpers too; abort() stops the download already
+                return super.cancel(false);
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * This method must return a non-null object, or else the existing
+     * implementation in {@link AbstractTransfer#waitForCompletion()}
+     * would block forever.
+     *
+     * @return the downloaded file
+     */
+    @Override
+    public File call() throws Exception {
+        try {
+            latch.await();
+            download.setState(TransferState.InProgress);
+            downloadParts();
+            verifyIntegrity();
+            download.setState(TransferState.Completed);
+            return dstfile;
+        } catch (Throwable t) {
+            // Decided before stopping the helpers, which marks the download
+            // as aborted whatever the cause
+            TransferState state = canceled ? TransferState.Canceled : TransferState.Failed;
+            stop();
+            // Downloads aren't allowed to move from canceled to failed
+            if (download.getState() != TransferState.Canceled) {
+                download.setState(state);
+            }
+            if (t instanceof Exception)
+                throw (Exception) t;
+            else
+                throw (Error) t;
+        }
+    }
+
+    private void downloadParts() throws Exception {
+        File parentDirectory = dstfile.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists()) {
+            if (!(parentDirectory.mkdirs())) {
+                throw new AmazonClientException(
+                        "Unable to create directory in the path"
+                                + parentDirectory.getAbsolutePath());
+            }
+        }
+        if (!FileLocks.lock(dstfile)) {
+            throw new FileLockException("Fail to lock " + dstfile
+                    + " for multi-part download");
+        }
+        RandomAccessFile raf = null;
+        boolean succeeded = false;
+        try {
+            raf = new RandomAccessFile(dstfile, "rw");
+            raf.setLength(objectMetadata.getContentLength());
+            channel = raf.getChannel();
+
+            int helperCount = Math.min(pendingParts.length - 1, maxHelpers());
+            for (int i = 0; i < helperCount; i++) {
+                if (threadPool.isShutdown())
+                    throw new CancellationException("TransferManager has been shutdown");
+                Helper helper = new Helper();
+                helpers.add(helper);
+                helper.future = threadPool.submit(helper);
+            }
+            downloadPendingParts();
+            succeeded = true;
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            if (!succeeded)
+                stop();
+            // The helpers still running write to the file until they notice
+            // the abort, so it can only be closed and unlocked after them
+            awaitHelpers();
+            closeQuietly(raf, log);
+            FileLocks.unlock(dstfile);
+        }
+        // Rather than the consequences of the abort in the other parts
+        Throwable t = failure.get();
+        if (t instanceof Exception)
+            throw (Exception) t;
+        if (t != null)
+            throw (Error) t;
+        if (completedParts.cardinality() != numParts) {
+            throw new CancellationException("Download of " + dstfile + " was aborted");
+        }
+    }
+
+    /**
+     * Waits for the helpers which have started to finish, and prevents the
+     * others from starting.
+     */
+    private void awaitHelpers() {
+        boolean interrupted = false;
+        for (Helper helper : helpers) {
+            // A helper still queued behind other work in the pool has
+            // nothing left to do; waiting for it could deadlock the pool.
+            // Future.cancel can't tell, as it also succeeds on a running task
+            if (helper.started.compareAndSet(false, true))
+                continue;
+            for (;;) {
+                try {
+                    helper.finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Downloads parts until there are none left to hand out.
+     */
+    private void downloadPendingParts() throws IOException {
+        int index;
+        while (!aborted && (index = nextPendingPart.getAndIncrement()) < pendingParts.length) {
+            try {
+                downloadPart(pendingParts[index]);
+            } catch (RuntimeException e) {
+                abortWith(e);
+                throw e;
+            } catch (IOException e) {
+                abortWith(e);
+                throw e;
+            }
+        }
+    }
+
+    private void downloadPart(int partNumber) throws IOException {
+        final long start = (partNumber - 1) * partSize;
+        final long end = start + partLength(partNumber) - 1;
+        boolean hasRetried = false;
+        for (;;) {
+            GetObjectRequest partRequest = newPartRequest(start, end);
+            S3Object s3Object = s3.getObject(partRequest);
+            if (s3Object == null) {
+                throw new AmazonClientException("Object " + req.getKey()
+                        + " (bucket " + req.getBucketName()
+                        + ") has changed during the download to " + dstfile);
+            }
+            inFlight.add(s3Object);
+            try {
+                writePart(s3Object.getObjectContent(), start, end);
+                break;
+            } catch (IOException e) {
+                if (aborted)
+                    throw new CancellationException("Download of " + dstfile + " was aborted");
+                if (hasRetried)
+                    throw new AmazonClientException(
+                            "Unable to store object contents to disk: " + e.getMessage(), e);
+                log.info("Retry the download of part " + partNumber + " of object "
+                        + req.getKey() + " (bucket " + req.getBucketName() + ")", e);
+                hasRetried = true;
+            } finally {
+                inFlight.remove(s3Object);
+                s3Object.getObjectContent().abort();
+            }
+        }
+        synchronized (completedParts) {
+            completedParts.set(partNumber - 1);
+        }
+        download.updatePersistableTransfer(newPersistableDownload());
+    }
+
+    private PersistableDownload newPersistableDownload() {
+        return new PersistableDownload(req.getBucketName(), req.getKey(),
+                req.getVersionId(), null, req.getResponseHeaders(),
+                req.isRequesterPays(), dstfile.getAbsolutePath(), partSize,
+                completedPartNumbers(), objectMetadata.getETag());
+    }
+
+    /**
+     * Copies the given content to the destination file, starting at the given
+     * position.
+     */
+    private void writePart(InputStream content, long start, long end) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = start;
+        int bytesRead;
+        while ((bytesRead = content.read(buffer)) > -1) {
+            if (position + bytesRead > end + 1) {
+                throw new IOException("Received more data than requested for range "
+                        + start + "-" + end);
+            }
+            ByteBuffer src = ByteBuffer.wrap(buffer, 0, bytesRead);
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        }
+        if (position != end + 1) {
+            throw new IOException("Received " + (position - start)
+                    + " bytes instead of " + (end - start + 1) + " for range "
+                    + start + "-" + end);
+        }
+    }
+
+    private GetObjectRequest newPartRequest(long start, long end) {
+        GetObjectRequest partRequest = new GetObjectRequest(
+                req.getBucketName(), req.getKey(), req.getVersionId())
+            .withRange(start, end)
+            .withResponseHeaders(req.getResponseHeaders())
+            .withSSECustomerKey(req.getSSECustomerKey());
+        partRequest.setRequesterPays(req.isRequesterPays());
+        if (objectMetadata.getETag() != null)
+            partRequest.withMatchingETagConstraint(objectMetadata.getETag());
+        partRequest.setGeneralProgressListener(req.getGeneralProgressListener());
+        partRequest.setRequestMetricCollector(req.getRequestMetricCollector());
+        return partRequest;
+    }
+
+    private long partLength(int partNumber) {
+        final long start = (partNumber - 1) * partSize;
+        return Math.min(partSize, objectMetadata.getContentLength() - start);
+    }
+
+    private int[] completedPartNumbers() {
+        synchronized (completedParts) {
+            int[] partNumbers = new int[completedParts.cardinality()];
+            for (int i = completedParts.nextSetBit(0), j = 0; i >= 0; i = completedParts.nextSetBit(i + 1)) {
+                partNumbers[j++] = i + 1;
+            }
+            return partNumbers;
+        }
+    }
+
+    /**
+     * Compares the MD5 of the downloaded file with the ETag of the object, if
+     * the ETag is known to be the MD5 of its content.
+     */
+    private void verifyIntegrity() {
+        final String eTag = objectMetadata.getETag();
+        if (eTag == null || ServiceUtils.isMultipartUploadETag(eTag)
+                || ServiceUtils.skipContentMd5IntegrityCheck(objectMetadata)
+                || req.getSSECustomerKey() != null) {
+            return;
+        }
+        byte[] clientSideHash = null;
+        try {
+            clientSideHash = Md5Utils.computeMD5Hash(new FileInputStream(dstfile));
+        } catch (Exception e) {
+            log.warn("Unable to calculate MD5 hash to validate download: " + e.getMessage(), e);
+            return;
+        }
+        if (!Arrays.equals(clientSideHash, BinaryUtils.fromHex(eTag))) {
+            throw new AmazonClientException("Unable to verify integrity of data download.  " +
+                    "Client calculated content hash didn't match hash calculated by Amazon S3.  " +
+                    "The data stored in '" + dstfile.getAbsolutePath() + "' may be corrupt.");
+        }
+    }
+
+    /**
+     * Aborts the download, recording the given failure as its cause unless
+     * the download has already been aborted.
+     */
+    private void abortWith(Throwable t) {
+        if (!aborted)
+            failure.compareAndSet(null, t);
+        stop();
+    }
+
+    /**
+     * Cancels the download at the user's request.
+     */
+    void abort() {
+        canceled = true;
+        stop();
+    }
+
+    /**
+     * Stops handing out parts, and aborts the parts being downloaded. The
+     * helpers are not interrupted, as an interrupted write would close the
+     * file for all of them; they stop once their part is aborted.
+     */
+    private void stop() {
+        aborted = true;
+        for (Helper helper : helpers) {
+            Future<?> future = helper.future;
+            if (future != null)
+                future.cancel(false);
+        }
+        synchronized (inFlight) {
+            for (S3Object s3Object : inFlight) {
+                s3Object.getObjectContent().abort();
+            }
+        }
+    }
+
+    /**
+     * A task helping download the pending parts from the thread pool.
+     */
+    private final class Helper implements Callable<Void> {
+        /** Set by whichever of the helper or the download claims it first. */
+        final AtomicBoolean started = new AtomicBoolean();
+        /** Counted down once a started helper has stopped downloading. */
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile Future<?> future;
+
+        @Override
+        public Void call() {
+            if (!started.compareAndSet(false, true))
+                return null;
+            try {
+                downloadPendingParts();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                finished.countDown();
+            }
+            return null;
+        }
+    }
+
+    private int maxHelpers() {
+        if (threadPool instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) threadPool).getMaximumPoolSize();
+        return 10;
+    }
+}
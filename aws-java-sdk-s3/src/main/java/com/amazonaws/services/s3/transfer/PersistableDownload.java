@@ -63,10 +63,39 @@ public final class PersistableDownload extends PersistableTransfer {
     @JsonProperty
     private final String file;
 
+    /**
+     * The size of each byte range fetched by a multi-part download; or null
+     * if the object is downloaded over a single connection.
+     */
+    @JsonProperty
+    private final Long partSize;
+
+    /**
+     * The numbers (starting from 1) of the parts of a multi-part download
+     * that have been completely written to the file; or null if none.
+     */
+    @JsonProperty
+    private final int[] completedParts;
+
+    /**
+     * The ETag of the object being downloaded by a multi-part download, which
+     * all the parts are required to match.
+     */
+    @JsonProperty
+    private final String eTag;
+
     public PersistableDownload() {
         this(null, null, null, null, null, false, null);
     }
 
+    public PersistableDownload(String bucketName, String key,
+            String versionId, long[] range,
+            ResponseHeaderOverrides responseHeaders, boolean isRequesterPays,
+            String file) {
+        this(bucketName, key, versionId, range, responseHeaders,
+                isRequesterPays, file, null, null, null);
+    }
+
     public PersistableDownload(
             @JsonProperty(value = "bucketName") String bucketName,
             @JsonProperty(value = "key") String key,
@@ -74,7 +103,10 @@ public final class PersistableDownload extends PersistableTransfer {
             @JsonProperty(value = "range") long[] range,
             @JsonProperty(value = "responseHeaders") ResponseHeaderOverrides responseHeaders,
             @JsonProperty(value = "isRequesterPays") boolean isRequesterPays,
-            @JsonProperty(value = "file") String file) {
+            @JsonProperty(value = "file") String file,
+            @JsonProperty(value = "partSize") Long partSize,
+            @JsonProperty(value = "completedParts") int[] completedParts,
+            @JsonProperty(value = "eTag") String eTag) {
         this.bucketName = bucketName;
         this.key = key;
         this.versionId = versionId;
@@ -82,6 +114,9 @@ public final class PersistableDownload extends PersistableTransfer {
         this.responseHeaders = responseHeaders;
         this.isRequesterPays = isRequesterPays;
         this.file = file;
+        this.partSize = partSize;
+        this.completedParts = completedParts == null ? null : completedParts.clone();
+        this.eTag = eTag;
     }
 
     /**
@@ -134,6 +169,30 @@ public final class PersistableDownload extends PersistableTransfer {
         return file;
     }
 
+    /**
+     * Returns the size of each part of a multi-part download; or null if the
+     * object is downloaded over a single connection.
+     */
+    Long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the numbers of the parts of a multi-part download that have
+     * been completely downloaded; or null if none.
+     */
+    int[] getCompletedParts() {
+        return completedParts == null ? null : completedParts.clone();
+    }
+
+    /**
+     * Returns the ETag of the object being downloaded by a multi-part
+     * download.
+     */
+    String getETag() {
+        return eTag;
+    }
+
     String getPauseType() {
         return pauseType;
     }
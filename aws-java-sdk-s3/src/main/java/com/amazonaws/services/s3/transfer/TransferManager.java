@@ -14,6 +14,7 @@
  */
 package com.amazonaws.services.s3.transfer;
 
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
 import static com.amazonaws.services.s3.internal.ServiceUtils.APPEND_MODE;
 import static com.amazonaws.services.s3.internal.ServiceUtils.OVERWRITE_MODE;
 
@@ -743,6 +744,21 @@ public class TransferManager {
             final File file, final TransferStateChangeListener stateListener,
             final S3ProgressListener s3progressListener,
             final boolean resumeExistingDownload)
+    {
+        return doDownload(getObjectRequest, file, stateListener,
+                s3progressListener, resumeExistingDownload, null);
+    }
+
+    /**
+     * @param resumedDownload
+     *            the paused download being resumed, if it was a multi-part
+     *            download; or null
+     */
+    private Download doDownload(final GetObjectRequest getObjectRequest,
+            final File file, final TransferStateChangeListener stateListener,
+            final S3ProgressListener s3progressListener,
+            final boolean resumeExistingDownload,
+            final PersistableDownload resumedDownload)
     {
         appendSingleObjectUserAgent(getObjectRequest);
         String description = "Downloading from " + getObjectRequest.getBucketName() + "/" + getObjectRequest.getKey();
@@ -763,6 +779,7 @@ public class TransferManager {
 
         long startingByte = 0;
         long lastByte;
+        ObjectMetadata objectMetadata = null;
 
         long[] range = getObjectRequest.getRange();
         if (range != null
@@ -776,7 +793,7 @@ public class TransferManager {
                 getObjectMetadataRequest.setSSECustomerKey(getObjectRequest.getSSECustomerKey());
             if (getObjectRequest.getVersionId() != null)
                 getObjectMetadataRequest.setVersionId(getObjectRequest.getVersionId());
-            final ObjectMetadata objectMetadata = s3.getObjectMetadata(getObjectMetadataRequest);
+            objectMetadata = s3.getObjectMetadata(getObjectMetadataRequest);
 
             lastByte = objectMetadata.getContentLength() - 1;
         }
@@ -789,6 +806,28 @@ public class TransferManager {
         long totalBytesToDownload = lastByte - startingByte + 1;
         transferProgress.setTotalBytesToTransfer(totalBytesToDownload);
 
+        if (objectMetadata != null && TransferManagerUtils.isDownloadParallelizable(s3, getObjectRequest)) {
+            long partSize = TransferManagerUtils.calculateOptimalPartSizeForDownload(
+                    configuration, objectMetadata.getContentLength());
+            int[] completedParts = null;
+            if (resumedDownload != null
+                    && isResumable(resumedDownload, objectMetadata, file)) {
+                partSize = resumedDownload.getPartSize();
+                completedParts = resumedDownload.getCompletedParts();
+            }
+            if (resumedDownload != null
+                    || (!resumeExistingDownload && totalBytesToDownload >= configuration.getMultipartDownloadThreshold())) {
+                final CountDownLatch latch = new CountDownLatch(1);
+                MultipartDownloadCallable callable = new MultipartDownloadCallable(
+                        s3, latch, getObjectRequest, download, file,
+                        objectMetadata, partSize, completedParts, threadPool);
+                transferProgress.updateProgress(callable.getCompletedBytes());
+                download.setMonitor(new DownloadMonitor(download, callable.submitTo(threadPool)));
+                latch.countDown();
+                return download;
+            }
+        }
+
         long fileLength = -1;
         if (resumeExistingDownload) {
             if (!FileLocks.lock(file)) {
@@ -831,6 +870,24 @@ public class TransferManager {
         return download;
     }
 
+    /**
+     * Returns true if the parts of a paused multi-part download recorded as
+     * completed can be kept, ie if the object has not changed since, and the
+     * file they were written to still exists. The file was preallocated to
+     * the size of the object, so its length tells nothing about which parts
+     * were written.
+     */
+    private static boolean isResumable(PersistableDownload resumedDownload,
+            ObjectMetadata objectMetadata, File file) {
+        Long partSize = resumedDownload.getPartSize();
+        return partSize != null
+                && partSize > 0
+                && (objectMetadata.getContentLength() + partSize - 1) / partSize <= MAXIMUM_UPLOAD_PARTS
+                && resumedDownload.getETag() != null
+                && resumedDownload.getETag().equals(objectMetadata.getETag())
+                && file.exists();
+    }
+
     /**
      * Downloads all objects in the virtual directory designated by the
      * keyPrefix given to the destination directory given. All virtual
@@ -1545,6 +1602,10 @@ public class TransferManager {
         request.setRequesterPays(persistableDownload.isRequesterPays());
         request.setResponseHeaders(persistableDownload.getResponseHeaders());
 
+        if (persistableDownload.getPartSize() != null) {
+            return doDownload(request, new File(persistableDownload.getFile()),
+                    null, null, APPEND_MODE, persistableDownload);
+        }
         return doDownload(request, new File(persistableDownload.getFile()), null, null,
                 APPEND_MODE);
     }
@@ -39,6 +39,15 @@ public class TransferManagerConfiguration {
     /** Default minimum size of each part for multi-part copy. */
     private static final long DEFAULT_MINIMUM_COPY_PART_SIZE = 100 * MB;
 
+    /**
+     * Default size threshold for Amazon S3 object after which a download is
+     * split into ranges fetched in parallel; disabled by default.
+     */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD = Long.MAX_VALUE;
+
+    /** Default size of each range of a multi-part download. */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_PART_SIZE = 16 * MB;
+
     /**
      * The minimum part size for upload parts. Decreasing the minimum part size
      * will cause multipart uploads to be split into a larger number of smaller
@@ -77,6 +86,19 @@ public class TransferManagerConfiguration {
      */
     private long multipartCopyPartSize = DEFAULT_MINIMUM_COPY_PART_SIZE;
 
+    /**
+     * The size threshold, in bytes, for when to use multi-part downloads.
+     * Downloads of whole objects over this size will fetch byte ranges of the
+     * object concurrently, each over its own connection, while smaller objects
+     * are downloaded over a single connection.
+     */
+    private long multipartDownloadThreshold = DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD;
+
+    /**
+     * The size in bytes of each byte range fetched by a multi-part download.
+     */
+    private long multipartDownloadPartSize = DEFAULT_MULTIPART_DOWNLOAD_PART_SIZE;
+
     /**
      * Returns the minimum part size for upload parts.
      * Decreasing the minimum part size causes
@@ -192,4 +214,63 @@ public class TransferManagerConfiguration {
     public void setMultipartCopyThreshold(long multipartCopyThreshold) {
         this.multipartCopyThreshold = multipartCopyThreshold;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the size threshold in bytes for when to use multi-part
+     * downloads. Downloads of whole objects over this size will automatically
+     * fetch byte ranges of the object in parallel, while smaller objects are
+     * downloaded over a single connection. Multi-part downloads are disabled
+     * by default.
+     * <p>
+     * Downloads of byte ranges, and downloads through an encryption client,
+     * always use a single connection.
+     *
+     * @return The size threshold in bytes for when to use multi-part
+     *         downloads.
+     */
+    public long getMultipartDownloadThreshold() {
+        return multipartDownloadThreshold;
+    }
+
+    /**
+     * Sets the size threshold in bytes for when to use multi-part downloads.
+     * Downloads of whole objects over this size will automatically fetch byte
+     * ranges of the object in parallel, while smaller objects are downloaded
+     * over a single connection.
+     *
+     * @param multipartDownloadThreshold
+     *            The size threshold in bytes for when to use multi-part
+     *            downloads.
+     */
+    public void setMultipartDownloadThreshold(long multipartDownloadThreshold) {
+        this.multipartDownloadThreshold = multipartDownloadThreshold;
+    }
+
+    /**
+     * Returns the size in bytes of each byte range fetched by a multi-part
+     * download.
+     *
+     * @return The size in bytes of each part of a multi-part download.
+     */
+    public long getMultipartDownloadPartSize() {
+        return multipartDownloadPartSize;
+    }
+
+    /**
+     * Sets the size in bytes of each byte range fetched by a multi-part
+     * download. Decreasing this size will result in an increase in the number
+     * of requests to the server. Objects too large to be downloaded in 10,000
+     * parts of this size are downloaded in larger parts.
+     *
+     * @param multipartDownloadPartSize
+     *            The size in bytes of each part of a multi-part download.
+     * @throws IllegalArgumentException
+     *             if the size is not positive.
+     */
+    public void setMultipartDownloadPartSize(long multipartDownloadPartSize) {
+        if (multipartDownloadPartSize <= 0)
+            throw new IllegalArgumentException(
+                    "Invalid multi-part download part size: " + multipartDownloadPartSize);
+        this.multipartDownloadPartSize = multipartDownloadPartSize;
+    }
+}
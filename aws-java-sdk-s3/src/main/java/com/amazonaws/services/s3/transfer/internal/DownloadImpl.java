@@ -33,7 +33,7 @@ public class DownloadImpl extends AbstractTransfer implements Download {
     /**
      * Information to resume if the download is paused.
      */
-    private final PersistableDownload persistableDownload;
+    private volatile PersistableDownload persistableDownload;
 
     public DownloadImpl(String description, TransferProgress transferProgress,
             ProgressListenerChain progressListenerChain, S3Object s3Object,
@@ -82,7 +82,7 @@ public class DownloadImpl extends AbstractTransfer implements Download {
 
         this.monitor.getFuture().cancel(true);
 
-        if ( s3Object != null ) {
+        if ( s3Object != null && s3Object.getObjectContent() != null ) {
               s3Object.getObjectContent().abort();
         }
         setState(TransferState.Canceled);
@@ -118,6 +118,17 @@ public class DownloadImpl extends AbstractTransfer implements Download {
         }
     }
 
+    /**
+     * Replaces the information to resume this download if it is paused, as
+     * parts of a multi-part download complete. Has no effect if the state of
+     * this download is not to be captured.
+     */
+    public void updatePersistableTransfer(PersistableDownload persistableDownload) {
+        if (this.persistableDownload != null) {
+            this.persistableDownload = persistableDownload;
+        }
+    }
+
     /**
      * Returns the captured state of the download; or null if it should not be
      * captured (for security reason).
@@ -21,7 +21,10 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Encryption;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.transfer.PauseStatus;
 import com.amazonaws.services.s3.transfer.Transfer.TransferState;
@@ -71,6 +74,32 @@ public class TransferManagerUtils {
         return (getRequestFile(putObjectRequest) != null);
     }
 
+    /**
+     * Returns true if the specified download request can be split into
+     * byte ranges fetched in parallel.
+     *
+     * @param s3
+     *            The client used for the download.
+     * @param getObjectRequest
+     *            The request to check.
+     *
+     * @return True if this request can use parallel ranged requests for
+     *         faster downloads.
+     */
+    public static boolean isDownloadParallelizable(final AmazonS3 s3, final GetObjectRequest getObjectRequest) {
+        // The encryption client decrypts the object as a whole, and ranges of
+        // the object are already the caller's business.
+        if (s3 instanceof AmazonS3Encryption) return false;
+        if (getObjectRequest.getRange() != null) return false;
+
+        // The parts are constrained to match the ETag of the object, which
+        // cannot be combined with the caller's own constraints.
+        return getObjectRequest.getMatchingETagConstraints().isEmpty()
+                && getObjectRequest.getNonmatchingETagConstraints().isEmpty()
+                && getObjectRequest.getModifiedSinceConstraint() == null
+                && getObjectRequest.getUnmodifiedSinceConstraint() == null;
+    }
+
     /**
      * Returns the size of the data in this request, otherwise -1 if the content
      * length is unknown.
@@ -115,7 +144,7 @@ public class TransferManagerUtils {
     }
 
     /**
-     * Returns true if the the specified request should be processed as a
+     * Returns true if the specified request should be processed as a
      * multipart upload (instead of a single part upload).
      *
      * @param putObjectRequest
@@ -164,6 +193,27 @@ public class TransferManagerUtils {
                 configuration.getMultipartCopyPartSize());
     }
 
+    /**
+     * Calculates the size of each byte range fetched by a multi-part download
+     * of an object, so that the object is split in no more parts than a
+     * multi-part upload may have.
+     *
+     * @param configuration
+     *            configuration containing the default part size.
+     * @param contentLength
+     *            content length of the Amazon S3 object.
+     * @return the part size for a multi-part download.
+     */
+    public static long calculateOptimalPartSizeForDownload(
+            TransferManagerConfiguration configuration, long contentLength) {
+        double optimalPartSize = (double) contentLength
+                / (double) MAXIMUM_UPLOAD_PARTS;
+        // round up so we don't push the download over the maximum number of parts
+        optimalPartSize = Math.ceil(optimalPartSize);
+        return (long) Math.max(optimalPartSize,
+                configuration.getMultipartDownloadPartSize());
+    }
+
     /**
      * Determines the pause status based on the current state of transfer.
      */
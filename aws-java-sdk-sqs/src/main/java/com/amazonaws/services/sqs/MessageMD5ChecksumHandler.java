@@ -14,16 +14,16 @@
  */
 package com.amazonaws.services.sqs;
 
-import static com.amazonaws.util.StringUtils.UTF8;
-
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,17 +42,35 @@ import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.amazonaws.util.BinaryUtils;
-import com.amazonaws.util.Md5Utils;
 import com.amazonaws.util.TimingInfo;
 
 /**
  * SQS operations on sending and receiving messages will return the MD5 digest of the message body.
  * This custom request handler will verify that the message is correctly received by SQS, by
  * comparing the returned MD5 with the calculation according to the original request.
+ * <p>
+ * The digests are calculated by a {@link MessageDigest} reused by each thread, encoding the message
+ * bodies and attributes to UTF-8 straight into it. To save the CPU time of verifying every message,
+ * only a fraction of them can be verified, by setting the system property
+ * {@value #SAMPLE_RATE_SYSTEM_PROPERTY} to a value between 0 and 1.
+ * <p>
+ * The entries of a batch are verified one after the other by the thread handling the response: a
+ * batch holds at most 10 messages, which take microseconds to verify, less than handing them to
+ * other threads would cost.
  */
 public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
 
+    /**
+     * The system property setting the fraction of the messages sent and received whose MD5 digests
+     * are verified, between 0 (none) and 1 (all, the default).
+     */
+    public static final String SAMPLE_RATE_SYSTEM_PROPERTY = "com.amazonaws.services.sqs.md5ChecksumSampleRate";
+
     private static final int INTEGER_SIZE_IN_BYTES = 4;
+    /** The initial number of chars of the buffers messages are encoded to UTF-8 with, grown as needed */
+    private static final int ENCODING_BUFFER_SIZE = 1024;
+    /** The maximum number of chars of the encoding buffers kept for the next messages */
+    private static final int MAX_RETAINED_ENCODING_BUFFER_SIZE = 64 * 1024;
     private static final byte STRING_TYPE_FIELD_INDEX = 1;
     private static final byte BINARY_TYPE_FIELD_INDEX = 2;
     private static final byte STRING_LIST_TYPE_FIELD_INDEX = 3;
@@ -70,6 +88,49 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
 
     private static final Log log = LogFactory.getLog(MessageMD5ChecksumHandler.class);
 
+    private static final ThreadLocal<Md5Calculator> md5Calculator = new ThreadLocal<Md5Calculator>() {
+        @Override
+        protected Md5Calculator initialValue() {
+            return new Md5Calculator();
+        }
+    };
+
+    private final double sampleRate;
+
+    /**
+     * Constructs a handler verifying the fraction of the messages set by the system property
+     * {@value #SAMPLE_RATE_SYSTEM_PROPERTY}, or all of them if it is not set.
+     */
+    public MessageMD5ChecksumHandler() {
+        this(sampleRateFromSystemProperty());
+    }
+
+    /**
+     * Constructs a handler verifying the given fraction of the messages, between 0 (none) and 1
+     * (all).
+     */
+    public MessageMD5ChecksumHandler(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("The sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    private static double sampleRateFromSystemProperty() {
+        String sampleRate = System.getProperty(SAMPLE_RATE_SYSTEM_PROPERTY);
+        if (sampleRate != null) {
+            try {
+                double rate = Double.parseDouble(sampleRate);
+                if (rate >= 0 && rate <= 1) {
+                    return rate;
+                }
+            } catch (NumberFormatException e) {
+            }
+            log.warn("Ignoring invalid value of " + SAMPLE_RATE_SYSTEM_PROPERTY + ": " + sampleRate);
+        }
+        return 1;
+    }
+
     @Override
     public void afterResponse(Request<?> request, Object response, TimingInfo timingInfo) {
         if (request != null && response != null) {
@@ -102,8 +163,11 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
      * Throw an exception if the MD5 checksums returned in the SendMessageResult do not match the
      * client-side calculation based on the original message in the SendMessageRequest.
      */
-    private static void sendMessageOperationMd5Check(SendMessageRequest sendMessageRequest,
-                                                     SendMessageResult sendMessageResult) {
+    private void sendMessageOperationMd5Check(SendMessageRequest sendMessageRequest,
+                                              SendMessageResult sendMessageResult) {
+        if (!isSampled()) {
+            return;
+        }
         String messageBodySent = sendMessageRequest.getMessageBody();
         String bodyMd5Returned = sendMessageResult.getMD5OfMessageBody();
         String clientSideBodyMd5 = calculateMessageBodyMd5(messageBodySent);
@@ -127,9 +191,12 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
      * Throw an exception if the MD5 checksums included in the ReceiveMessageResult do not match the
      * client-side calculation on the received messages.
      */
-    private static void receiveMessageResultMd5Check(ReceiveMessageResult receiveMessageResult) {
+    private void receiveMessageResultMd5Check(ReceiveMessageResult receiveMessageResult) {
         if (receiveMessageResult.getMessages() != null) {
             for (Message messageReceived : receiveMessageResult.getMessages()) {
+                if (!isSampled()) {
+                    continue;
+                }
                 String messageBody = messageReceived.getBody();
                 String bodyMd5Returned = messageReceived.getMD5OfBody();
                 String clientSideBodyMd5 = calculateMessageBodyMd5(messageBody);
@@ -155,8 +222,8 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
      * Throw an exception if the MD5 checksums returned in the SendMessageBatchResult do not match
      * the client-side calculation based on the original messages in the SendMessageBatchRequest.
      */
-    private static void sendMessageBatchOperationMd5Check(SendMessageBatchRequest sendMessageBatchRequest,
-                                                          SendMessageBatchResult sendMessageBatchResult) {
+    private void sendMessageBatchOperationMd5Check(SendMessageBatchRequest sendMessageBatchRequest,
+                                                   SendMessageBatchResult sendMessageBatchResult) {
         Map<String, SendMessageBatchRequestEntry> idToRequestEntryMap = new HashMap<String, SendMessageBatchRequestEntry>();
         if (sendMessageBatchRequest.getEntries() != null) {
             for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.getEntries()) {
@@ -166,6 +233,9 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
 
         if (sendMessageBatchResult.getSuccessful() != null) {
             for (SendMessageBatchResultEntry entry : sendMessageBatchResult.getSuccessful()) {
+                if (!isSampled()) {
+                    continue;
+                }
                 String messageBody = idToRequestEntryMap.get(entry.getId()).getMessageBody();
                 String bodyMd5Returned = entry.getMD5OfMessageBody();
                 String clientSideBodyMd5 = calculateMessageBodyMd5(messageBody);
@@ -188,6 +258,13 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
         }
     }
 
+    /**
+     * Returns whether to verify the next message, according to the sample rate.
+     */
+    private boolean isSampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && md5Calculator.get().random.nextDouble() < sampleRate);
+    }
+
     /**
      * Returns the hex-encoded MD5 hash String of the given message body.
      */
@@ -195,14 +272,15 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
         if (log.isDebugEnabled()) {
             log.debug("Message body: " + messageBody);
         }
-        byte[] expectedMd5;
+        Md5Calculator calculator = md5Calculator.get();
         try {
-            expectedMd5 = Md5Utils.computeMD5Hash(messageBody.getBytes(UTF8));
-        } catch (Exception e) {
+            calculator.updateBytes(messageBody);
+        } catch (RuntimeException e) {
+            calculator.digest.reset();
             throw new AmazonClientException("Unable to calculate the MD5 hash of the message body. " + e.getMessage(),
                     e);
         }
-        String expectedMd5Hex = BinaryUtils.toHex(expectedMd5);
+        String expectedMd5Hex = BinaryUtils.toHex(calculator.digest.digest());
         if (log.isDebugEnabled()) {
             log.debug("Expected  MD5 of message body: " + expectedMd5Hex);
         }
@@ -216,46 +294,51 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
         if (log.isDebugEnabled()) {
             log.debug("Message attribtues: " + messageAttributes);
         }
-        List<String> sortedAttributeNames = new ArrayList<String>(messageAttributes.keySet());
-        Collections.sort(sortedAttributeNames);
+        Iterable<String> sortedAttributeNames;
+        if (messageAttributes instanceof SortedMap && ((SortedMap<String, ?>) messageAttributes).comparator() == null) {
+            sortedAttributeNames = messageAttributes.keySet();
+        } else {
+            List<String> names = new ArrayList<String>(messageAttributes.keySet());
+            Collections.sort(names);
+            sortedAttributeNames = names;
+        }
 
-        MessageDigest md5Digest = null;
+        Md5Calculator calculator = md5Calculator.get();
         try {
-            md5Digest = MessageDigest.getInstance("MD5");
-
             for (String attrName : sortedAttributeNames) {
                 MessageAttributeValue attrValue = messageAttributes.get(attrName);
 
                 // Encoded Name
-                updateLengthAndBytes(md5Digest, attrName);
+                calculator.updateLengthAndBytes(attrName);
                 // Encoded Type
-                updateLengthAndBytes(md5Digest, attrValue.getDataType());
+                calculator.updateLengthAndBytes(attrValue.getDataType());
 
                 // Encoded Value
                 if (attrValue.getStringValue() != null) {
-                    md5Digest.update(STRING_TYPE_FIELD_INDEX);
-                    updateLengthAndBytes(md5Digest, attrValue.getStringValue());
+                    calculator.digest.update(STRING_TYPE_FIELD_INDEX);
+                    calculator.updateLengthAndBytes(attrValue.getStringValue());
                 } else if (attrValue.getBinaryValue() != null) {
-                    md5Digest.update(BINARY_TYPE_FIELD_INDEX);
-                    updateLengthAndBytes(md5Digest, attrValue.getBinaryValue());
+                    calculator.digest.update(BINARY_TYPE_FIELD_INDEX);
+                    calculator.updateLengthAndBytes(attrValue.getBinaryValue());
                 } else if (attrValue.getStringListValues() != null) {
-                    md5Digest.update(STRING_LIST_TYPE_FIELD_INDEX);
+                    calculator.digest.update(STRING_LIST_TYPE_FIELD_INDEX);
                     for (String strListMember : attrValue.getStringListValues()) {
-                        updateLengthAndBytes(md5Digest, strListMember);
+                        calculator.updateLengthAndBytes(strListMember);
                     }
                 } else if (attrValue.getBinaryListValues() != null) {
-                    md5Digest.update(BINARY_LIST_TYPE_FIELD_INDEX);
+                    calculator.digest.update(BINARY_LIST_TYPE_FIELD_INDEX);
                     for (ByteBuffer byteListMember : attrValue.getBinaryListValues()) {
-                        updateLengthAndBytes(md5Digest, byteListMember);
+                        calculator.updateLengthAndBytes(byteListMember);
                     }
                 }
             }
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
+            calculator.digest.reset();
             throw new AmazonClientException("Unable to calculate the MD5 hash of the message attributes. "
                     + e.getMessage(), e);
         }
 
-        String expectedMd5Hex = BinaryUtils.toHex(md5Digest.digest());
+        String expectedMd5Hex = BinaryUtils.toHex(calculator.digest.digest());
         if (log.isDebugEnabled()) {
             log.debug("Expected  MD5 of message attributes: " + expectedMd5Hex);
         }
@@ -263,27 +346,115 @@ public class MessageMD5ChecksumHandler extends AbstractRequestHandler {
     }
 
     /**
-     * Update the digest using a sequence of bytes that consists of the length (in 4 bytes) of the
-     * input String and the actual utf8-encoded byte values.
+     * The MD5 digest and the encoding buffers reused by a thread.
      */
-    private static void updateLengthAndBytes(MessageDigest digest, String str) throws UnsupportedEncodingException {
-        byte[] utf8Encoded = str.getBytes(UTF8);
-        ByteBuffer lengthBytes = ByteBuffer.allocate(INTEGER_SIZE_IN_BYTES).putInt(utf8Encoded.length);
-        digest.update(lengthBytes.array());
-        digest.update(utf8Encoded);
-    }
+    private static final class Md5Calculator {
+        private final MessageDigest digest;
+        private char[] chars = new char[ENCODING_BUFFER_SIZE];
+        private byte[] bytes = new byte[3 * ENCODING_BUFFER_SIZE];
+        /** The number of bytes of the String last encoded */
+        private int encodedLength;
+        private final byte[] lengthBytes = new byte[INTEGER_SIZE_IN_BYTES];
+        private final Random random = new Random();
 
-    /**
-     * Update the digest using a sequence of bytes that consists of the length (in 4 bytes) of the
-     * input ByteBuffer and all the bytes it contains.
-     */
-    private static void updateLengthAndBytes(MessageDigest digest, ByteBuffer binaryValue) {
-        // Rewind the ByteBuffer, in case that get/put operations were applied to
-        // the unmarshalled BB before it's passed to this handler.
-        binaryValue.rewind();
-        int size = binaryValue.remaining();
-        ByteBuffer lengthBytes = ByteBuffer.allocate(INTEGER_SIZE_IN_BYTES).putInt(size);
-        digest.update(lengthBytes.array());
-        digest.update(binaryValue);
+        Md5Calculator() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AmazonClientException("Unable to calculate MD5 hashes. " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Update the digest using a sequence of bytes that consists of the length (in 4 bytes) of
+         * the input String and the actual utf8-encoded byte values.
+         */
+        void updateLengthAndBytes(String str) {
+            byte[] utf8Encoded = encode(str);
+            int length = encodedLength;
+            updateLength(length);
+            digest.update(utf8Encoded, 0, length);
+        }
+
+        /**
+         * Update the digest using a sequence of bytes that consists of the length (in 4 bytes) of
+         * the input ByteBuffer and all the bytes it contains.
+         */
+        void updateLengthAndBytes(ByteBuffer binaryValue) {
+            // Digest all the bytes, in case that get/put operations were applied to the
+            // unmarshalled BB before it's passed to this handler, without moving its position.
+            ByteBuffer bytes = binaryValue.duplicate();
+            bytes.rewind();
+            updateLength(bytes.remaining());
+            digest.update(bytes);
+        }
+
+        /**
+         * Update the digest using the utf8-encoded byte values of the input String.
+         */
+        void updateBytes(String str) {
+            byte[] utf8Encoded = encode(str);
+            digest.update(utf8Encoded, 0, encodedLength);
+        }
+
+        private void updateLength(int length) {
+            lengthBytes[0] = (byte) (length >>> 24);
+            lengthBytes[1] = (byte) (length >>> 16);
+            lengthBytes[2] = (byte) (length >>> 8);
+            lengthBytes[3] = (byte) length;
+            digest.update(lengthBytes);
+        }
+
+        /**
+         * Encodes the given String to UTF-8, as {@link String#getBytes} does, replacing the
+         * unpaired surrogates by a '?'. The number of bytes encoded is left in
+         * {@link #encodedLength}.
+         *
+         * @return The buffer holding the encoded String, which is reused by the next call.
+         */
+        private byte[] encode(String str) {
+            int length = str.length();
+            char[] chars = this.chars;
+            byte[] bytes = this.bytes;
+            if (chars.length < length) {
+                chars = new char[length];
+                bytes = new byte[3 * length];
+                // keep the buffers for the next messages, unless unusually large
+                if (length <= MAX_RETAINED_ENCODING_BUFFER_SIZE) {
+                    this.chars = chars;
+                    this.bytes = bytes;
+                }
+            }
+            str.getChars(0, length, chars, 0);
+
+            int n = 0;
+            int i = 0;
+            while (i < length && chars[i] < 0x80) {
+                bytes[n++] = (byte) chars[i++];
+            }
+            for (; i < length; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xc0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, chars[++i]);
+                    bytes[n++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    bytes[n++] = '?';
+                } else {
+                    bytes[n++] = (byte) (0xe0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            encodedLength = n;
+            return bytes;
+        }
     }
 }
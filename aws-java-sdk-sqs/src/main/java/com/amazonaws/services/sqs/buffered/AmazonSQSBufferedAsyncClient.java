@@ -15,9 +15,10 @@
 
 package com.amazonaws.services.sqs.buffered;
 
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
@@ -84,7 +85,10 @@ public class AmazonSQSBufferedAsyncClient implements AmazonSQSAsync {
     public static final String USER_AGENT = AmazonSQSBufferedAsyncClient.class.getSimpleName() + "/"
             + VersionInfoUtils.getVersion();
 
-    private final CachingMap buffers = new CachingMap(16, (float) 0.75, true);
+    /** The maximum number of queue buffers kept. */
+    private static final int MAX_BUFFERS = 100;
+
+    private final ConcurrentMap<String, QueueBuffer> buffers = new ConcurrentHashMap<String, QueueBuffer>();
     private final AmazonSQSAsync realSQS;
     private final QueueBufferConfig bufferConfigExemplar;
 
@@ -168,6 +172,16 @@ public class AmazonSQSBufferedAsyncClient implements AmazonSQSAsync {
         realSQS.shutdown();
     }
 
+    /**
+     * Shuts down the queue buffers, making the messages they pre-fetched visible again, but not the
+     * client wrapped, which remains usable by its owner.
+     */
+    void shutdownBuffers() {
+        for (QueueBuffer buffer : buffers.values()) {
+            buffer.shutdownAndClear();
+        }
+    }
+
     public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest)
             throws AmazonServiceException, AmazonClientException {
         ResultConverter.appendUserAgent(changeMessageVisibilityBatchRequest, USER_AGENT);
@@ -336,28 +350,39 @@ public class AmazonSQSBufferedAsyncClient implements AmazonSQSAsync {
      * 
      * @return a queue buffer associated with the provided queue URL. Never null
      */
-    private synchronized QueueBuffer getQBuffer(String qUrl) {
+    private QueueBuffer getQBuffer(String qUrl) {
         QueueBuffer toReturn = buffers.get(qUrl);
         if (null == toReturn) {
             QueueBufferConfig config = new QueueBufferConfig(bufferConfigExemplar);
-            toReturn = new QueueBuffer(config, qUrl, realSQS);
-            buffers.put(qUrl, toReturn);
+            QueueBuffer created = new QueueBuffer(config, qUrl, realSQS);
+            toReturn = buffers.putIfAbsent(qUrl, created);
+            if (null == toReturn) {
+                toReturn = created;
+                removeLeastRecentlyUsedBuffers();
+            }
         }
+        toReturn.touch();
         return toReturn;
     }
 
-    class CachingMap extends LinkedHashMap<String, QueueBuffer> {
-        private static final long serialVersionUID = 1;
-        private static final int MAX_ENTRIES = 100;
-
-        public CachingMap(int initial, float loadFactor, boolean accessOrder) {
-            super(initial, loadFactor, accessOrder);
-        }
-
-        protected boolean removeEldestEntry(java.util.Map.Entry<String, QueueBuffer> eldest) {
-            return size() > MAX_ENTRIES;
+    /**
+     * Removes the least recently used queue buffers in excess of {@code MAX_BUFFERS}. Only called
+     * when a buffer is added, so scanning them all is cheap enough.
+     */
+    private synchronized void removeLeastRecentlyUsedBuffers() {
+        while (buffers.size() > MAX_BUFFERS) {
+            Map.Entry<String, QueueBuffer> eldest = null;
+            for (Map.Entry<String, QueueBuffer> entry : buffers.entrySet()) {
+                if (eldest == null
+                        || entry.getValue().getLastUsedNanos() - eldest.getValue().getLastUsedNanos() < 0) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            buffers.remove(eldest.getKey(), eldest.getValue());
         }
-
     }
 
     public Future<Void> changeMessageVisibilityAsync(ChangeMessageVisibilityRequest changeMessageVisibilityRequest,
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Handles the messages received by a {@link MessageProcessor}.
+ * <p>
+ * Implementations must be thread-safe, as the messages are handled
+ * concurrently. A message may be handled more than once, as SQS may deliver a
+ * message more than once.
+ */
+public interface MessageHandler {
+
+    /**
+     * Handles a message received from the queue. The message is deleted from
+     * the queue once this method returns; if it throws, the message is left
+     * in the queue, and received again once its visibility timeout expires.
+     *
+     * @param message
+     *            The message to handle.
+     * @throws Exception
+     *             If the message could not be handled.
+     */
+    void handleMessage(Message message) throws Exception;
+}
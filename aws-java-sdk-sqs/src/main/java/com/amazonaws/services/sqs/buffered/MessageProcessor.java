@@ -0,0 +1,436 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+/**
+ * Receives the messages of a queue and hands them to a {@link MessageHandler} on a bounded pool of
+ * threads, deleting each message once handled.
+ * <p>
+ * The queue is read through an {@link AmazonSQSBufferedAsyncClient}, which sends the deletes of
+ * the messages handled at about the same time as a single {@code DeleteMessageBatch} call. Unless
+ * the processor is given a buffered client of its own, it does not pre-fetch messages, and no more
+ * messages are received than there are threads free to handle them. The messages a given buffered
+ * client may have pre-fetched have their visibility timeout extended as soon as they are handed
+ * out, as part of it may have elapsed in the buffer. While a message is being handled, its
+ * visibility timeout is extended whenever half of it has elapsed, so that slow handlers do not
+ * cause the message to be received again.
+ * <p>
+ * {@link #shutdown(long, TimeUnit)} stops receiving messages and waits for those received to be
+ * handled and deleted. The messages of a receive call that completes too late to be handled are
+ * made visible again.
+ * <p>
+ * Instances of {@code MessageProcessor} are thread-safe.
+ */
+public class MessageProcessor {
+
+    private static final Log log = LogFactory.getLog(MessageProcessor.class);
+
+    /** The maximum number of messages a receive call returns. */
+    private static final int MAX_MESSAGES_PER_RECEIVE = 10;
+
+    /** The time to wait before receiving again after a receive call failed. */
+    private static final long RECEIVE_RETRY_DELAY_MS = 1000;
+
+    /** The time to wait for a handler thread to be free before checking for shutdown. */
+    private static final long SLOT_WAIT_MS = 100;
+
+    /** The long poll wait time of the receive calls not served from a pre-fetch buffer. */
+    private static final int RECEIVE_WAIT_SECONDS = QueueBufferConfig.LONGPOLL_WAIT_TIMEOUT_SECONDS_DEFAULT;
+
+    private final AmazonSQSAsync sqs;
+
+    /** The buffered client created by this processor, shut down with it; or null. */
+    private final AmazonSQSBufferedAsyncClient ownedClient;
+
+    /**
+     * Whether the messages received may have been pre-fetched, so part of their visibility timeout
+     * may already have elapsed.
+     */
+    private final boolean messagesMayBePrefetched;
+    private final String queueUrl;
+    private final MessageHandler handler;
+    private final MessageProcessorConfig config;
+
+    /** Permits for the messages which can be received and handled right away. */
+    private final Semaphore freeSlots;
+
+    /**
+     * The receipt handles of the messages being handled, with when their visibility timeout was
+     * last set, as of {@link System#nanoTime()}.
+     */
+    private final ConcurrentMap<String, Long> messagesInFlight = new ConcurrentHashMap<String, Long>();
+
+    /** The deletes of the messages handled, not known to be complete yet. */
+    private final ConcurrentLinkedQueue<Future<Void>> pendingDeletes = new ConcurrentLinkedQueue<Future<Void>>();
+
+    private final ExecutorService handlerThreads;
+    private final ScheduledExecutorService visibilityTimer;
+    private final Thread receiverThread;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running;
+    private volatile long visibilityTimeoutNanos;
+
+    /**
+     * Constructs a processor handling the messages of the given queue with the default
+     * configuration.
+     *
+     * @see #MessageProcessor(AmazonSQSAsync, String, MessageHandler, MessageProcessorConfig)
+     */
+    public MessageProcessor(AmazonSQSAsync sqs, String queueUrl, MessageHandler handler) {
+        this(sqs, queueUrl, handler, new MessageProcessorConfig());
+    }
+
+    /**
+     * Constructs a processor handling the messages of the given queue. It does not receive
+     * messages until started.
+     *
+     * @param sqs
+     *            The client to read the queue with. Unless it is an
+     *            {@link AmazonSQSBufferedAsyncClient}, it is wrapped in one which does not pre-fetch
+     *            messages. That one is shut down along with the processor, but the client given is
+     *            not.
+     * @param queueUrl
+     *            The URL of the queue.
+     * @param handler
+     *            The handler of the messages.
+     * @param config
+     *            The configuration of the processor.
+     */
+    public MessageProcessor(AmazonSQSAsync sqs, String queueUrl, MessageHandler handler,
+                            MessageProcessorConfig config) {
+        this.queueUrl = queueUrl;
+        this.handler = handler;
+        this.config = new MessageProcessorConfig(config);
+
+        if (sqs instanceof AmazonSQSBufferedAsyncClient) {
+            this.sqs = sqs;
+            this.ownedClient = null;
+            // a receive asking for a visibility timeout is not served from the pre-fetch buffer
+            this.messagesMayBePrefetched = this.config.getVisibilityTimeoutSeconds() <= 0;
+        } else {
+            this.ownedClient = new AmazonSQSBufferedAsyncClient(sqs, new QueueBufferConfig()
+                    .withMaxInflightReceiveBatches(0)
+                    .withMaxDoneReceiveBatches(0));
+            this.sqs = ownedClient;
+            this.messagesMayBePrefetched = false;
+        }
+
+        this.freeSlots = new Semaphore(this.config.getMaxConcurrentMessages());
+        this.handlerThreads = Executors.newFixedThreadPool(this.config.getMaxConcurrentMessages(),
+                new NamedThreadFactory("SQSMessageProcessorHandlerThread-", false));
+        this.visibilityTimer = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("SQSMessageProcessorVisibilityThread-", true));
+        this.receiverThread = new NamedThreadFactory("SQSMessageProcessorReceiverThread-", false)
+                .newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        receiveMessages();
+                    }
+                });
+    }
+
+    /**
+     * Starts receiving and handling messages.
+     *
+     * @throws IllegalStateException
+     *             If the processor has already been started.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The processor has already been started");
+        }
+
+        if (config.getVisibilityTimeoutSeconds() > 0) {
+            visibilityTimeoutNanos = TimeUnit.SECONDS.toNanos(config.getVisibilityTimeoutSeconds());
+        } else {
+            GetQueueAttributesRequest request = new GetQueueAttributesRequest().withQueueUrl(queueUrl)
+                    .withAttributeNames("VisibilityTimeout");
+            long visibilityTimeoutSeconds = Long.parseLong(sqs.getQueueAttributes(request).getAttributes()
+                    .get("VisibilityTimeout"));
+            visibilityTimeoutNanos = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+        }
+
+        running = true;
+        receiverThread.start();
+        long checkPeriodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(100), visibilityTimeoutNanos / 4);
+        visibilityTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    extendVisibility();
+                    forgetCompletedDeletes();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to extend the visibility timeout of the messages of " + queueUrl, e);
+                }
+            }
+        }, checkPeriodNanos, checkPeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops receiving messages, and waits for the messages already received to be handled and
+     * deleted, up to the given time. A receive call in progress is waited for, for its messages to
+     * be handled as well, for up to the long poll wait time of the client. If it is still in
+     * progress when the handler threads are shut down, its messages are made visible again instead.
+     * <p>
+     * The visibility timeout of the messages still being handled when this method returns is no
+     * longer extended. The buffered client the processor created, if any, is shut down, and the
+     * messages it may have pre-fetched are made visible again.
+     *
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The unit of the timeout.
+     * @return True if all the messages received were handled and deleted in time.
+     * @throws AmazonClientException
+     *             If the calling thread is interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        running = false;
+        try {
+            TimeUnit.NANOSECONDS.timedJoin(receiverThread, Math.max(1, deadline - System.nanoTime()));
+            if (receiverThread.isAlive()) {
+                receiverThread.interrupt();
+            }
+
+            handlerThreads.shutdown();
+            boolean done = handlerThreads.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    && !receiverThread.isAlive();
+
+            for (Future<Void> delete : pendingDeletes) {
+                try {
+                    delete.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    log.warn("Failed to delete a message handled from " + queueUrl, e.getCause());
+                    done = false;
+                } catch (TimeoutException e) {
+                    done = false;
+                    break;
+                }
+            }
+            return done;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the messages to be handled", e);
+        } finally {
+            visibilityTimer.shutdownNow();
+            if (ownedClient != null) {
+                ownedClient.shutdownBuffers();
+            }
+        }
+    }
+
+    /**
+     * Receives messages for as long as running, as many at a time as there are handler threads
+     * free.
+     */
+    private void receiveMessages() {
+        while (running) {
+            try {
+                if (!freeSlots.tryAcquire(SLOT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // take up to a receive call worth of the other free slots
+            int otherSlots = freeSlots.drainPermits();
+            int slots = 1 + Math.min(otherSlots, MAX_MESSAGES_PER_RECEIVE - 1);
+            freeSlots.release(otherSlots - (slots - 1));
+
+            ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(slots)
+                    .withWaitTimeSeconds(RECEIVE_WAIT_SECONDS);
+            if (config.getVisibilityTimeoutSeconds() > 0) {
+                request.setVisibilityTimeout(config.getVisibilityTimeoutSeconds());
+            }
+
+            List<Message> messages;
+            try {
+                messages = sqs.receiveMessage(request).getMessages();
+            } catch (AmazonClientException e) {
+                freeSlots.release(slots);
+                if (!running) {
+                    return;
+                }
+                log.warn("Failed to receive messages from " + queueUrl, e);
+                try {
+                    Thread.sleep(RECEIVE_RETRY_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+
+            freeSlots.release(slots - messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                if (messagesMayBePrefetched) {
+                    changeVisibility(message.getReceiptHandle());
+                }
+                messagesInFlight.put(message.getReceiptHandle(), System.nanoTime());
+                try {
+                    handlerThreads.execute(new HandleMessageTask(message));
+                } catch (RejectedExecutionException e) {
+                    // shut down while receiving
+                    releaseMessages(messages.subList(i, messages.size()));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the given messages, received but not handed to a handler, visible again right away.
+     */
+    private void releaseMessages(List<Message> messages) {
+        List<ChangeMessageVisibilityBatchRequestEntry> entries =
+                new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(messages.size());
+        for (Message message : messages) {
+            messagesInFlight.remove(message.getReceiptHandle());
+            freeSlots.release();
+            entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(entries.size()),
+                    message.getReceiptHandle()).withVisibilityTimeout(0));
+        }
+        try {
+            // not through the buffers, which may be shut down already
+            sqs.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+        } catch (AmazonClientException e) {
+            log.warn("Failed to release " + messages.size() + " messages not handled from " + queueUrl, e);
+        }
+    }
+
+    /**
+     * Extends the visibility timeout of the messages being handled, if half of it has elapsed.
+     */
+    private void extendVisibility() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Long> entry : messagesInFlight.entrySet()) {
+            if (now - entry.getValue() >= visibilityTimeoutNanos / 2
+                    && messagesInFlight.replace(entry.getKey(), entry.getValue(), now)) {
+                changeVisibility(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Sets the visibility timeout of a message to the full visibility timeout, from now on.
+     */
+    private void changeVisibility(String receiptHandle) {
+        int visibilityTimeoutSeconds = (int) TimeUnit.NANOSECONDS.toSeconds(visibilityTimeoutNanos);
+        sqs.changeMessageVisibilityAsync(new ChangeMessageVisibilityRequest(queueUrl, receiptHandle,
+                visibilityTimeoutSeconds));
+    }
+
+    /**
+     * Forgets about the deletes complete, logging those which failed.
+     */
+    private void forgetCompletedDeletes() {
+        Iterator<Future<Void>> deletes = pendingDeletes.iterator();
+        while (deletes.hasNext()) {
+            Future<Void> delete = deletes.next();
+            if (delete.isDone()) {
+                deletes.remove();
+                try {
+                    delete.get();
+                } catch (ExecutionException e) {
+                    log.warn("Failed to delete a message handled from " + queueUrl, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a message, and deletes it if handled successfully.
+     */
+    private class HandleMessageTask implements Runnable {
+        private final Message message;
+
+        HandleMessageTask(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handler.handleMessage(message);
+                pendingDeletes.offer(sqs.deleteMessageAsync(new DeleteMessageRequest(queueUrl, message
+                        .getReceiptHandle())));
+            } catch (Exception e) {
+                log.warn("Failed to handle message " + message.getMessageId() + " from " + queueUrl, e);
+            } finally {
+                messagesInFlight.remove(message.getReceiptHandle());
+                freeSlots.release();
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+        private final String namePrefix;
+        private final boolean daemon;
+
+        NamedThreadFactory(String namePrefix, boolean daemon) {
+            this.namePrefix = namePrefix;
+            this.daemon = daemon;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(daemon);
+            thread.setName(namePrefix + threadCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
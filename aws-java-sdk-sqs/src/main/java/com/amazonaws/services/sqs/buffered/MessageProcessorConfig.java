@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+/**
+ * Configuration options for a {@link MessageProcessor}.
+ */
+public class MessageProcessorConfig {
+
+    /** 10 messages */
+    public static final int MAX_CONCURRENT_MESSAGES_DEFAULT = 10;
+
+    /** -1, which means use the visibility timeout of the queue */
+    public static final int VISIBILITY_TIMEOUT_SECONDS_DEFAULT = -1;
+
+    /**
+     * The maximum number of messages handled at once, which is also the number of threads handling
+     * them.
+     */
+    private int maxConcurrentMessages = MAX_CONCURRENT_MESSAGES_DEFAULT;
+
+    /**
+     * The visibility timeout of the messages received, which the processor extends for as long as
+     * they are being handled.
+     */
+    private int visibilityTimeoutSeconds = VISIBILITY_TIMEOUT_SECONDS_DEFAULT;
+
+    public MessageProcessorConfig() {
+    }
+
+    /** copy constructor */
+    public MessageProcessorConfig(MessageProcessorConfig other) {
+        maxConcurrentMessages = other.maxConcurrentMessages;
+        visibilityTimeoutSeconds = other.visibilityTimeoutSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageProcessorConfig [maxConcurrentMessages=" + maxConcurrentMessages
+                + ", visibilityTimeoutSeconds=" + visibilityTimeoutSeconds + "]";
+    }
+
+    /**
+     * The maximum number of messages handled at once, which is also the number of threads handling
+     * them. No more messages are received than can be handled right away.
+     */
+    public int getMaxConcurrentMessages() {
+        return maxConcurrentMessages;
+    }
+
+    /**
+     * The maximum number of messages handled at once, which is also the number of threads handling
+     * them. No more messages are received than can be handled right away.
+     */
+    public void setMaxConcurrentMessages(int maxConcurrentMessages) {
+        if (maxConcurrentMessages < 1) {
+            throw new IllegalArgumentException("maxConcurrentMessages must be at least 1");
+        }
+        this.maxConcurrentMessages = maxConcurrentMessages;
+    }
+
+    public MessageProcessorConfig withMaxConcurrentMessages(int maxConcurrentMessages) {
+        setMaxConcurrentMessages(maxConcurrentMessages);
+        return this;
+    }
+
+    /**
+     * The visibility timeout of the messages received. While a message is being handled, its
+     * visibility timeout is extended by that much whenever half of it has elapsed, so that it is not
+     * received by another consumer. Set it to -1 to use the visibility timeout of the queue; if the
+     * queue is read through an {@link AmazonSQSBufferedAsyncClient} configured with its own
+     * visibility timeout, set it to the same value.
+     */
+    public int getVisibilityTimeoutSeconds() {
+        return visibilityTimeoutSeconds;
+    }
+
+    /**
+     * The visibility timeout of the messages received. While a message is being handled, its
+     * visibility timeout is extended by that much whenever half of it has elapsed, so that it is not
+     * received by another consumer. Set it to -1 to use the visibility timeout of the queue; if the
+     * queue is read through an {@link AmazonSQSBufferedAsyncClient} configured with its own
+     * visibility timeout, set it to the same value.
+     */
+    public void setVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+        if (visibilityTimeoutSeconds == 0) {
+            throw new IllegalArgumentException("Visibility timeout value may not be equal to zero");
+        }
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+    }
+
+    public MessageProcessorConfig withVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+        setVisibilityTimeoutSeconds(visibilityTimeoutSeconds);
+        return this;
+    }
+}
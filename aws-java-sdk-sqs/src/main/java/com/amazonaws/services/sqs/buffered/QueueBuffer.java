@@ -18,7 +18,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.amazonaws.AmazonClientException;
@@ -62,11 +64,46 @@ class QueueBuffer {
      */
     static ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());;
 
+    /**
+     * The timer closing the send batches of all queue buffers once they have been open for
+     * {@code maxBatchOpenMs}, so that no thread needs to wait for each batch to time out.
+     */
+    static ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    /**
+     * The minimum time between two updates of {@code lastUsedNanos}, so that the threads using the
+     * buffer do not all write it on each call.
+     */
+    private static final long LAST_USED_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * When this buffer was last used, as of {@link System#nanoTime()}, give or take
+     * {@code LAST_USED_GRANULARITY_NANOS}.
+     */
+    private volatile long lastUsedNanos = System.nanoTime();
+
     QueueBuffer(QueueBufferConfig paramConfig, String url, AmazonSQSAsync sqs) {
         realSqs = sqs;
         config = paramConfig;
-        sendBuffer = new SendQueueBuffer(sqs, executor, paramConfig, url);
-        receiveBuffer = new ReceiveQueueBuffer(sqs, executor, paramConfig, url);
+        sendBuffer = new SendQueueBuffer(sqs, executor, timer, paramConfig, url);
+        receiveBuffer = new ReceiveQueueBuffer(sqs, executor, timer, paramConfig, url);
+    }
+
+    /**
+     * Records that this buffer is being used.
+     */
+    void touch() {
+        long now = System.nanoTime();
+        if (now - lastUsedNanos > LAST_USED_GRANULARITY_NANOS) {
+            lastUsedNanos = now;
+        }
+    }
+
+    /**
+     * @return when this buffer was last used, as of {@link System#nanoTime()}
+     */
+    long getLastUsedNanos() {
+        return lastUsedNanos;
     }
 
     /**
@@ -199,6 +236,15 @@ class QueueBuffer {
         receiveBuffer.shutdown();
     }
 
+    /**
+     * Shuts down the queue buffer, and makes the messages it pre-fetched visible again in the
+     * queue.
+     */
+    public void shutdownAndClear() {
+        receiveBuffer.shutdown();
+        receiveBuffer.clear();
+    }
+
     /**
      * this method carefully waits for futures. If waiting throws, it converts the exceptions to the
      * exceptions that SQS clients expect. This is what we use to turn asynchronous calls into
@@ -110,6 +110,17 @@ public class QueueBufferConfig {
 
     public static final int LONGPOLL_WAIT_TIMEOUT_SECONDS_DEFAULT = 20;
 
+    /**
+     * Should the number of receive batches in flight and pre-fetched adapt to the rate at which
+     * messages are consumed, up to maxInflightReceiveBatches and maxDoneReceiveBatches? When
+     * enabled, the visibility timeout of the pre-fetched messages about to expire is also extended
+     * if they are expected to be consumed in time, or else the messages are returned to the queue.
+     */
+    private boolean adaptivePrefetching;
+
+    /** false */
+    public static final boolean ADAPTIVE_PREFETCHING_DEFAULT = false;
+
     public QueueBufferConfig(long maxBatchOpenMs, int maxInflightOutboundBatches, int maxInflightReceiveBatches,
             int maxDoneReceiveBatches, boolean paramLongPoll, long maxBatchSizeBytes, int visibilityTimeout,
             int longPollTimeout, int maxBatch) {
@@ -123,6 +134,7 @@ public class QueueBufferConfig {
         this.visibilityTimeoutSeconds = visibilityTimeout;
         this.longPollWaitTimeoutSeconds = longPollTimeout;
         this.maxBatchSize = maxBatch;
+        this.adaptivePrefetching = ADAPTIVE_PREFETCHING_DEFAULT;
     }
 
     public QueueBufferConfig() {
@@ -142,6 +154,7 @@ public class QueueBufferConfig {
         maxInflightOutboundBatches = other.maxInflightOutboundBatches;
         maxInflightReceiveBatches = other.maxInflightReceiveBatches;
         visibilityTimeoutSeconds = other.visibilityTimeoutSeconds;
+        adaptivePrefetching = other.adaptivePrefetching;
     }
 
     @Override
@@ -150,7 +163,8 @@ public class QueueBufferConfig {
                 + longPoll + ", maxInflightOutboundBatches=" + maxInflightOutboundBatches
                 + ", maxInflightReceiveBatches=" + maxInflightReceiveBatches + ", maxDoneReceiveBatches="
                 + maxDoneReceiveBatches + ", maxBatchSizeBytes=" + maxBatchSizeBytes + ", visibilityTimeoutSeconds="
-                + visibilityTimeoutSeconds + ", longPollWaitTimeoutSeconds=" + longPollWaitTimeoutSeconds + "]";
+                + visibilityTimeoutSeconds + ", longPollWaitTimeoutSeconds=" + longPollWaitTimeoutSeconds
+                + ", adaptivePrefetching=" + adaptivePrefetching + "]";
     }
 
     /**
@@ -390,6 +404,43 @@ public class QueueBufferConfig {
         return this;
     }
 
+    /**
+     * Should the number of receive batches in flight and pre-fetched adapt to the rate at which
+     * messages are consumed? If true, the buffer keeps enough receive batches in flight and
+     * pre-fetched to satisfy the receive requests at the rate they were recently made, up to
+     * maxInflightReceiveBatches and maxDoneReceiveBatches; but no more messages than are consumed
+     * in half the visibility timeout, and a single receive batch in flight while the queue looks
+     * empty. <br>
+     * The visibility timeout of the pre-fetched messages about to expire is also extended, if they
+     * are expected to be consumed before the extended timeout expires; or else the messages are
+     * returned to the queue, for other clients to receive. <br>
+     * Defaults to false.
+     */
+    public boolean isAdaptivePrefetching() {
+        return adaptivePrefetching;
+    }
+
+    /**
+     * Should the number of receive batches in flight and pre-fetched adapt to the rate at which
+     * messages are consumed? If true, the buffer keeps enough receive batches in flight and
+     * pre-fetched to satisfy the receive requests at the rate they were recently made, up to
+     * maxInflightReceiveBatches and maxDoneReceiveBatches; but no more messages than are consumed
+     * in half the visibility timeout, and a single receive batch in flight while the queue looks
+     * empty. <br>
+     * The visibility timeout of the pre-fetched messages about to expire is also extended, if they
+     * are expected to be consumed before the extended timeout expires; or else the messages are
+     * returned to the queue, for other clients to receive. <br>
+     * Defaults to false.
+     */
+    public void setAdaptivePrefetching(boolean adaptivePrefetching) {
+        this.adaptivePrefetching = adaptivePrefetching;
+    }
+
+    public QueueBufferConfig withAdaptivePrefetching(boolean adaptivePrefetching) {
+        this.adaptivePrefetching = adaptivePrefetching;
+        return this;
+    }
+
     /**
      * this method checks the config for validity. If the config is deemed to be invalid, an
      * informative exception is thrown.
@@ -17,18 +17,27 @@ package com.amazonaws.services.sqs.buffered;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
 import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
@@ -39,12 +48,15 @@ import com.amazonaws.services.sqs.model.ReceiveMessageResult;
  * It uses the provided executor to pre-fetch messages from the server and keeps them in a buffer
  * which it uses to satisfy incoming requests. The number of requests pre-fetched and kept in the
  * buffer, as well as the maximum number of threads used to retrieve the messages are configurable.
+ * With adaptive pre-fetching, those are only upper bounds, and the buffer keeps in flight and
+ * pre-fetched the batches needed to keep up with the rate at which messages are consumed; see
+ * {@link QueueBufferConfig#isAdaptivePrefetching()}.
  * <p>
- * Synchronization strategy: - Threads must hold the TaskSpawnSyncPoint object monitor to spawn a
- * new task or modify the number of inflight tasks - Threads must hold the monitor of the "futures"
- * list to modify the list - Threads must hold the monitor of the "finishedTasks" list to modify the
- * list - If you need to lock both futures and finishedTasks, lock futures first and finishedTasks
- * second
+ * Synchronization strategy: - The issued futures and the finished tasks are added to lock-free
+ * queues - Only one thread at a time matches the futures with the finished tasks, the others
+ * leaving to it the work they would have done (see {@code satisfyFuturesFromBuffer}) - The number
+ * of inflight tasks is updated by compare-and-set - Threads must hold the TaskSpawnSyncPoint object
+ * monitor to look up the visibility timeout of the queue
  */
 public class ReceiveQueueBuffer {
 
@@ -70,9 +82,14 @@ public class ReceiveQueueBuffer {
 
     private final Executor executor;
 
+    /**
+     * The timer checking the visibility of the pre-fetched messages, with adaptive pre-fetching.
+     */
+    private final ScheduledExecutorService timer;
+
     private final AmazonSQS sqsClient;
 
-    private long bufferCounter = 0;
+    private final AtomicLong bufferCounter = new AtomicLong();
 
     /**
      * This buffer's queue visibility timeout. Used to detect expired message that should not be
@@ -82,13 +99,12 @@ public class ReceiveQueueBuffer {
     private volatile long visibilityTimeoutNanos = -1;
 
     /**
-     * Used as permits controlling the number of in flight receive batches. Synchronized by
-     * {@code taskSpawnSyncPoint}.
+     * Used as permits controlling the number of in flight receive batches.
      */
-    private volatile int inflightReceiveMessageBatches;
+    private final AtomicInteger inflightReceiveMessageBatches = new AtomicInteger();
 
     /**
-     * synchronize on this object to create new receive batches or modify inflight message count
+     * synchronize on this object to look up the visibility timeout of the queue
      */
     private final Object taskSpawnSyncPoint = new Object();
 
@@ -96,14 +112,34 @@ public class ReceiveQueueBuffer {
     volatile boolean shutDown = false;
 
     /** message delivery futures we gave out */
-    private final LinkedList<ReceiveMessageFuture> futures = new LinkedList<ReceiveMessageFuture>();
+    private final ConcurrentLinkedQueue<ReceiveMessageFuture> futures = new ConcurrentLinkedQueue<ReceiveMessageFuture>();
+
+    /** finished batches are stored in this queue. */
+    private final ConcurrentLinkedQueue<ReceiveMessageBatchTask> finishedTasks = new ConcurrentLinkedQueue<ReceiveMessageBatchTask>();
+
+    /** The number of batches in {@code finishedTasks}, whose own size is not constant time. */
+    private final AtomicInteger finishedTaskCount = new AtomicInteger();
+
+    /**
+     * The number of requests to match the futures with the finished tasks since the thread doing
+     * it started; zero if none is.
+     */
+    private final AtomicInteger satisfyRequests = new AtomicInteger();
+
+    /** The number of messages requested by the futures not satisfied yet. */
+    private final AtomicInteger waitingMessages = new AtomicInteger();
 
-    /** finished batches are stored in this list. */
-    private LinkedList<ReceiveMessageBatchTask> finishedTasks = new LinkedList<ReceiveMessageBatchTask>();
+    /** The recent receive statistics, used by adaptive pre-fetching. */
+    private final PrefetchStatistics statistics = new PrefetchStatistics();
 
-    ReceiveQueueBuffer(AmazonSQS paramSQS, Executor paramExecutor, QueueBufferConfig paramConfig, String url) {
+    /** Whether a check of the visibility of the pre-fetched messages is scheduled. */
+    private final AtomicBoolean visibilityCheckScheduled = new AtomicBoolean();
+
+    ReceiveQueueBuffer(AmazonSQS paramSQS, Executor paramExecutor, ScheduledExecutorService paramTimer,
+                       QueueBufferConfig paramConfig, String url) {
         config = paramConfig;
         executor = paramExecutor;
+        timer = paramTimer;
         sqsClient = paramSQS;
         qUrl = url;
 
@@ -116,7 +152,7 @@ public class ReceiveQueueBuffer {
     public void shutdown() {
         shutDown = true;
         try {
-            while (inflightReceiveMessageBatches > 0)
+            while (inflightReceiveMessageBatches.get() > 0)
                 Thread.sleep(100);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -160,20 +196,26 @@ public class ReceiveQueueBuffer {
      */
     private ReceiveMessageFuture issueFuture(int size,
                                              QueueBufferCallback<ReceiveMessageRequest, ReceiveMessageResult> callback) {
-        synchronized (futures) {
-            ReceiveMessageFuture theFuture = new ReceiveMessageFuture(callback, size);
-            futures.addLast(theFuture);
-            return theFuture;
-        }
+        ReceiveMessageFuture theFuture = new ReceiveMessageFuture(callback, size);
+        waitingMessages.addAndGet(size);
+        futures.offer(theFuture);
+        return theFuture;
     }
 
     /**
      * Attempts to satisfy some or all of the already-issued futures from the local buffer. If the
      * buffer is empty or there are no futures, this method won't do anything.
+     * <p>
+     * If another thread is already satisfying futures, this method returns right away, and that
+     * thread goes over the futures and finished tasks once more before it returns.
      */
     private void satisfyFuturesFromBuffer() {
-        synchronized (futures) {
-            synchronized (finishedTasks) {
+        if (satisfyRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        try {
+            do {
                 // attempt to satisfy futures until we run out of either futures or
                 // finished tasks
                 while ((!futures.isEmpty()) && (!finishedTasks.isEmpty())) {
@@ -182,22 +224,36 @@ public class ReceiveQueueBuffer {
                     // Fufill the future from a non expired task if there is one. There is still a
                     // slight chance that the first task could have expired between the time we
                     // pruned and the time we fufill the future
-                    if (!finishedTasks.isEmpty()) {
-                        fufillFuture(futures.poll());
+                    ReceiveMessageBatchTask task = finishedTasks.peek();
+                    if (task != null) {
+                        fufillFuture(futures.poll(), task);
                     }
                 }
-            }
+                requests = satisfyRequests.addAndGet(-requests);
+            } while (requests != 0);
+        } catch (RuntimeException e) {
+            // let the next caller satisfy the futures
+            satisfyRequests.set(0);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the given task from the finished tasks, unless already removed.
+     */
+    private void removeFinishedTask(ReceiveMessageBatchTask task) {
+        if (finishedTasks.remove(task)) {
+            finishedTaskCount.decrementAndGet();
         }
     }
 
     /**
      * Fills the future with whatever results were received by the full batch currently at the head
      * of the completed batch queue. Those results may be retrieved messages, or an exception. This
-     * method assumes that you are holding the finished tasks lock locks when invoking it. violate
-     * this assumption at your own peril
+     * method assumes that it is only invoked by the thread satisfying the futures. violate this
+     * assumption at your own peril
      */
-    private void fufillFuture(ReceiveMessageFuture future) {
-        ReceiveMessageBatchTask task = finishedTasks.getFirst();
+    private void fufillFuture(ReceiveMessageFuture future, ReceiveMessageBatchTask task) {
         ReceiveMessageResult result = new ReceiveMessageResult();
         LinkedList<Message> messages = new LinkedList<Message>();
         result.setMessages(messages);
@@ -219,9 +275,13 @@ public class ReceiveQueueBuffer {
         // we may have just drained the batch.
         batchDone = batchDone || task.isEmpty() || (exception != null);
         if (batchDone) {
-            finishedTasks.removeFirst();
+            removeFinishedTask(task);
         }
         result.setMessages(messages);
+        waitingMessages.addAndGet(-future.getRequestedSize());
+        if (config.isAdaptivePrefetching()) {
+            statistics.messagesConsumed(numRetrieved, System.nanoTime());
+        }
 
         // if after the above runs the exception is not null,
         // the finished batch has encountered an error, and we will
@@ -236,7 +296,7 @@ public class ReceiveQueueBuffer {
 
     /**
      * Prune any expired tasks that do not have an exception associated with them. This method
-     * assumes that you are holding the finishedTasks lock when invoking it
+     * assumes that it is only invoked by the thread satisfying the futures
      */
     private void pruneExpiredTasks() {
         int numberExpiredTasksPruned = pruneHeadTasks(new Predicate<ReceiveQueueBuffer.ReceiveMessageBatchTask>() {
@@ -260,7 +320,7 @@ public class ReceiveQueueBuffer {
     /**
      * Prune all tasks at the beginning of the finishedTasks list that meet the given condition.
      * Once a task is found that does not meet the given condition the pruning stops. This method assumes
-     * that you are holding the finishedTasks lock when invoking it.
+     * that it is only invoked by the thread satisfying the futures.
      * 
      * @param pruneCondition
      *            Condition on whether a task is eligible to be pruned
@@ -268,9 +328,10 @@ public class ReceiveQueueBuffer {
      */
     private int pruneHeadTasks(Predicate<ReceiveMessageBatchTask> pruneCondition) {
         int numberPruned = 0;
-        while (!finishedTasks.isEmpty()) {
-            if (pruneCondition.test(finishedTasks.getFirst())) {
-                finishedTasks.removeFirst();
+        ReceiveMessageBatchTask task;
+        while ((task = finishedTasks.peek()) != null) {
+            if (pruneCondition.test(task)) {
+                removeFinishedTask(task);
                 numberPruned++;
             } else {
                 break;
@@ -288,65 +349,200 @@ public class ReceiveQueueBuffer {
             return;
         }
 
-        int desiredBatches = config.getMaxDoneReceiveBatches();
-        desiredBatches = desiredBatches < 1 ? 1 : desiredBatches;
+        if (visibilityTimeoutNanos == -1) {
+            synchronized (taskSpawnSyncPoint) {
+                if (visibilityTimeoutNanos == -1) {
+                    GetQueueAttributesRequest request = new GetQueueAttributesRequest().withQueueUrl(qUrl)
+                            .withAttributeNames("VisibilityTimeout");
+                    ResultConverter.appendUserAgent(request, AmazonSQSBufferedAsyncClient.USER_AGENT);
+                    long visibilityTimeoutSeconds = Long.parseLong(sqsClient.getQueueAttributes(request)
+                            .getAttributes().get("VisibilityTimeout"));
+                    visibilityTimeoutNanos = TimeUnit.NANOSECONDS.convert(visibilityTimeoutSeconds, TimeUnit.SECONDS);
+                }
+            }
+        }
 
-        synchronized (finishedTasks) {
-            if (finishedTasks.size() >= desiredBatches)
-                return;
+        long now = System.nanoTime();
+        int desiredBatches = getDesiredDoneBatches(now);
 
-            // if we have some finished batches already, and
-            // existing inflight batches will bring us to the limit,
-            // don't spawn more. if our finished tasks cache is empty, we will
-            // always spawn a thread.
-            if (finishedTasks.size() > 0 && (finishedTasks.size() + inflightReceiveMessageBatches) >= desiredBatches) {
-                return;
-            }
+        int finished = finishedTaskCount.get();
+        if (finished >= desiredBatches)
+            return;
+
+        // if we have some finished batches already, and
+        // existing inflight batches will bring us to the limit,
+        // don't spawn more. if our finished tasks cache is empty, we will
+        // always spawn a thread.
+        if (finished > 0 && (finished + inflightReceiveMessageBatches.get()) >= desiredBatches) {
+            return;
         }
 
-        synchronized (taskSpawnSyncPoint) {
-            if (visibilityTimeoutNanos == -1) {
-                GetQueueAttributesRequest request = new GetQueueAttributesRequest().withQueueUrl(qUrl)
-                        .withAttributeNames("VisibilityTimeout");
-                ResultConverter.appendUserAgent(request, AmazonSQSBufferedAsyncClient.USER_AGENT);
-                long visibilityTimeoutSeconds = Long.parseLong(sqsClient.getQueueAttributes(request).getAttributes()
-                        .get("VisibilityTimeout"));
-                visibilityTimeoutNanos = TimeUnit.NANOSECONDS.convert(visibilityTimeoutSeconds, TimeUnit.SECONDS);
+        int max = getDesiredInflightBatches(now);
+        while (true) {
+            int inflight = inflightReceiveMessageBatches.get();
+            if (inflight >= max) {
+                return;
             }
-
-            int max = config.getMaxInflightReceiveBatches();
-            // must allow at least one inflight receive task, or receive won't
-            // work at all.
-            max = max > 0 ? max : 1;
-            int toSpawn = max - inflightReceiveMessageBatches;
-            if (toSpawn > 0) {
-                ReceiveMessageBatchTask task = new ReceiveMessageBatchTask(this);
-                ++inflightReceiveMessageBatches;
-                ++bufferCounter;
-                if (log.isTraceEnabled()) {
-                    log.trace("Spawned receive batch #" + bufferCounter + " (" + inflightReceiveMessageBatches + " of "
-                            + max + " inflight) for queue " + qUrl);
-                }
-                executor.execute(task);
+            if (inflightReceiveMessageBatches.compareAndSet(inflight, inflight + 1)) {
+                break;
             }
         }
+
+        ReceiveMessageBatchTask task = new ReceiveMessageBatchTask(this);
+        if (log.isTraceEnabled()) {
+            log.trace("Spawned receive batch #" + bufferCounter.incrementAndGet() + " ("
+                    + inflightReceiveMessageBatches.get() + " of " + max + " inflight) for queue " + qUrl);
+        }
+        executor.execute(task);
     }
 
     /**
      * This method is called by the batches after they have finished retrieving the messages.
      */
     void reportBatchFinished(ReceiveMessageBatchTask batch) {
-        synchronized (finishedTasks) {
-            finishedTasks.addLast(batch);
-            if (log.isTraceEnabled()) {
-                log.info("Queue " + qUrl + " now has " + finishedTasks.size() + " receive results cached ");
-            }
-        }
-        synchronized (taskSpawnSyncPoint) {
-            --inflightReceiveMessageBatches;
+        finishedTasks.offer(batch);
+        int finished = finishedTaskCount.incrementAndGet();
+        if (log.isTraceEnabled()) {
+            log.info("Queue " + qUrl + " now has " + finished + " receive results cached ");
         }
+        inflightReceiveMessageBatches.decrementAndGet();
         satisfyFuturesFromBuffer();
         spawnMoreReceiveTasks();
+        if (config.isAdaptivePrefetching()) {
+            scheduleVisibilityCheck();
+        }
+    }
+
+    /**
+     * @return the visibility timeout of the messages received, in nanoseconds
+     */
+    private long getVisibilityTimeoutNanos() {
+        if (config.getVisibilityTimeoutSeconds() > 0) {
+            return TimeUnit.NANOSECONDS.convert(config.getVisibilityTimeoutSeconds(), TimeUnit.SECONDS);
+        }
+        return visibilityTimeoutNanos;
+    }
+
+    /**
+     * @return the number of messages to receive while a receive batch is in flight: those
+     *         consumed meanwhile at the recent rate, twice over to absorb bursts, and those
+     *         requested by the futures not satisfied yet
+     */
+    private double getMessagesNeeded(long now) {
+        return statistics.getConsumptionRate(now) * statistics.getReceiveSeconds() * 2 + waitingMessages.get();
+    }
+
+    /**
+     * @return the number of messages a receive batch is expected to bring, at least one
+     */
+    private double getExpectedMessagesPerReceive() {
+        double messagesPerReceive = statistics.getMessagesPerReceive();
+        return messagesPerReceive < 0 ? config.getMaxBatchSize() : Math.max(1, messagesPerReceive);
+    }
+
+    /**
+     * @return the number of receive batches to keep in flight, at least one
+     */
+    private int getDesiredInflightBatches(long now) {
+        // must allow at least one inflight receive task, or receive won't
+        // work at all.
+        int max = Math.max(1, config.getMaxInflightReceiveBatches());
+        if (!config.isAdaptivePrefetching()) {
+            return max;
+        }
+
+        // receive batches bringing back less than a message on average mean that the queue is
+        // empty, and more concurrent long polls wouldn't bring more messages
+        double messagesPerReceive = statistics.getMessagesPerReceive();
+        if (messagesPerReceive >= 0 && messagesPerReceive < 1) {
+            return 1;
+        }
+        double batches = Math.ceil(getMessagesNeeded(now) / getExpectedMessagesPerReceive());
+        return (int) Math.max(1, Math.min(max, batches));
+    }
+
+    /**
+     * @return the number of receive batches to keep pre-fetched, at least one
+     */
+    private int getDesiredDoneBatches(long now) {
+        int max = Math.max(1, config.getMaxDoneReceiveBatches());
+        if (!config.isAdaptivePrefetching()) {
+            return max;
+        }
+
+        // no more messages than consumed in half the visibility timeout, so that they don't expire
+        // in the buffer, unless already waited for
+        double rate = statistics.getConsumptionRate(now);
+        double messages = Math.min(getMessagesNeeded(now), rate * getVisibilityTimeoutNanos() / 2e9);
+        messages = Math.max(messages, waitingMessages.get());
+        double batches = Math.ceil(messages / getExpectedMessagesPerReceive());
+        return (int) Math.max(1, Math.min(max, batches));
+    }
+
+    /**
+     * Checks the visibility of the pre-fetched messages periodically, for as long as there are
+     * some, unless already done.
+     */
+    private void scheduleVisibilityCheck() {
+        if (visibilityCheckScheduled.compareAndSet(false, true)) {
+            // checking twice in the last quarter of the visibility timeout
+            long delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(100), getVisibilityTimeoutNanos() / 8);
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // the check may call SQS, which the timer shouldn't wait for
+                    executor.execute(checkVisibility);
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Extends the visibility timeout of the pre-fetched messages about to expire, if they are
+     * expected to be consumed before the extended timeout expires; or else returns them to the
+     * queue.
+     */
+    private final Runnable checkVisibility = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                if (!shutDown) {
+                    checkVisibility();
+                }
+            } catch (RuntimeException e) {
+                log.warn("ReceiveQueueBuffer: visibility check failed " + e);
+            } finally {
+                visibilityCheckScheduled.set(false);
+                if (!shutDown && finishedTaskCount.get() > 0) {
+                    scheduleVisibilityCheck();
+                }
+            }
+        }
+    };
+
+    private void checkVisibility() {
+        long now = System.nanoTime();
+        long timeoutNanos = getVisibilityTimeoutNanos();
+        long marginNanos = timeoutNanos / 4;
+        double rate = statistics.getConsumptionRate(now);
+
+        // the messages to be consumed before those of the batch at hand
+        int messagesAhead = 0;
+        for (ReceiveMessageBatchTask task : finishedTasks) {
+            int count = task.getMessageCount();
+            messagesAhead += count;
+            if (count == 0 || task.getVisibilityDeadlineNano() - now > marginNanos) {
+                continue;
+            }
+
+            if (rate > 0 && messagesAhead / rate < timeoutNanos / 1e9) {
+                task.extendVisibility(timeoutNanos);
+            } else {
+                messagesAhead -= count;
+                removeFinishedTask(task);
+                task.clear();
+            }
+        }
     }
 
     /**
@@ -355,12 +551,10 @@ public class ReceiveQueueBuffer {
     public void clear() {
         boolean done = false;
         while (!done) {
-            ReceiveMessageBatchTask currentBatch = null;
-            synchronized (finishedTasks) {
-                currentBatch = finishedTasks.poll();
-            }
+            ReceiveMessageBatchTask currentBatch = finishedTasks.poll();
 
             if (currentBatch != null) {
+                finishedTaskCount.decrementAndGet();
                 currentBatch.clear();
             } else {
                 // ran out of batches to clear
@@ -369,6 +563,64 @@ public class ReceiveQueueBuffer {
         }
     }
 
+    /**
+     * The recent receive statistics of the buffer, from which adaptive pre-fetching sizes the
+     * number of receive batches in flight and pre-fetched.
+     */
+    private static class PrefetchStatistics {
+        /** The time over which the consumption rate is averaged, in seconds. */
+        private static final double RATE_PERIOD_SECONDS = 5;
+
+        /** The weight of a new sample in the receive averages. */
+        private static final double SAMPLE_WEIGHT = 0.2;
+
+        /** The rate messages are consumed at, per second, as of {@code lastConsumptionNanos}. */
+        private double consumptionRate;
+
+        private long lastConsumptionNanos = System.nanoTime();
+
+        /** The average time a receive batch is in flight, in seconds; one until measured. */
+        private double receiveSeconds = 1;
+
+        /** The average number of messages a receive batch brings; -1 until measured. */
+        private double messagesPerReceive = -1;
+
+        private boolean receiveMeasured;
+
+        /**
+         * Decays the rate exponentially over time, adding the messages consumed.
+         */
+        synchronized void messagesConsumed(int count, long now) {
+            consumptionRate = getConsumptionRate(now) + count / RATE_PERIOD_SECONDS;
+            lastConsumptionNanos = now;
+        }
+
+        synchronized double getConsumptionRate(long now) {
+            double elapsedSeconds = (now - lastConsumptionNanos) / 1e9;
+            return consumptionRate * Math.exp(-elapsedSeconds / RATE_PERIOD_SECONDS);
+        }
+
+        synchronized void receiveCompleted(long durationNanos, int count) {
+            double seconds = durationNanos / 1e9;
+            if (receiveMeasured) {
+                receiveSeconds += (seconds - receiveSeconds) * SAMPLE_WEIGHT;
+                messagesPerReceive += (count - messagesPerReceive) * SAMPLE_WEIGHT;
+            } else {
+                receiveSeconds = seconds;
+                messagesPerReceive = count;
+                receiveMeasured = true;
+            }
+        }
+
+        synchronized double getReceiveSeconds() {
+            return receiveSeconds;
+        }
+
+        synchronized double getMessagesPerReceive() {
+            return messagesPerReceive;
+        }
+    }
+
     private class ReceiveMessageFuture extends QueueBufferFuture<ReceiveMessageRequest, ReceiveMessageResult> {
         /* how many messages did the request ask for */
         private int requestedSize;
@@ -393,7 +645,7 @@ public class ReceiveQueueBuffer {
     private class ReceiveMessageBatchTask implements Runnable {
         private Exception exception = null;
         private List<Message> messages;
-        private long visibilityDeadlineNano;
+        private volatile long visibilityDeadlineNano;
         private boolean open = false;
         private ReceiveQueueBuffer parentBuffer;
 
@@ -455,6 +707,69 @@ public class ReceiveQueueBuffer {
             return System.nanoTime() > visibilityDeadlineNano;
         }
 
+        long getVisibilityDeadlineNano() {
+            return visibilityDeadlineNano;
+        }
+
+        /**
+         * @return the number of messages left in the batch, zero if they expired
+         */
+        synchronized int getMessageCount() {
+            if (!open) {
+                throw new IllegalStateException("batch is not open");
+            }
+
+            return isExpired() ? 0 : messages.size();
+        }
+
+        /**
+         * Extends the visibility timeout of the messages left in the batch. The messages whose
+         * visibility timeout couldn't be extended are removed from the batch, as they may be
+         * received by other clients before they would be consumed.
+         */
+        void extendVisibility(long timeoutNanos) {
+            List<Message> toExtend;
+            synchronized (this) {
+                toExtend = new ArrayList<Message>(messages);
+            }
+            if (toExtend.isEmpty()) {
+                return;
+            }
+
+            ChangeMessageVisibilityBatchRequest batchRequest = new ChangeMessageVisibilityBatchRequest()
+                    .withQueueUrl(qUrl);
+            ResultConverter.appendUserAgent(batchRequest, AmazonSQSBufferedAsyncClient.USER_AGENT);
+
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(
+                    toExtend.size());
+            int timeoutSeconds = (int) TimeUnit.SECONDS.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+            for (int i = 0, n = toExtend.size(); i < n; i++) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry().withId(Integer.toString(i))
+                        .withReceiptHandle(toExtend.get(i).getReceiptHandle()).withVisibilityTimeout(timeoutSeconds));
+            }
+            batchRequest.setEntries(entries);
+
+            // the new timeout starts at some point during the call
+            long deadline = System.nanoTime() + timeoutNanos;
+            ChangeMessageVisibilityBatchResult batchResult;
+            try {
+                batchResult = sqsClient.changeMessageVisibilityBatch(batchRequest);
+            } catch (AmazonClientException e) {
+                // Log and ignore; the messages may still be consumed before they expire.
+                log.warn("ReceiveMessageBatchTask: changeMessageVisibility failed " + e);
+                return;
+            }
+
+            Set<Message> failed = new HashSet<Message>();
+            for (BatchResultErrorEntry errorEntry : batchResult.getFailed()) {
+                failed.add(toExtend.get(Integer.parseInt(errorEntry.getId())));
+            }
+            synchronized (this) {
+                messages.removeAll(failed);
+                visibilityDeadlineNano = deadline;
+            }
+        }
+
         /**
          * Nacks and clears all messages remaining in the batch.
          */
@@ -512,7 +827,11 @@ public class ReceiveQueueBuffer {
                     request.withWaitTimeSeconds(config.getLongPollWaitTimeoutSeconds());
                 }
 
+                long start = System.nanoTime();
                 messages = sqsClient.receiveMessage(request).getMessages();
+                if (config.isAdaptivePrefetching()) {
+                    statistics.receiveCompleted(System.nanoTime() - start, messages.size());
+                }
             } catch (AmazonClientException e) {
                 exception = e;
             } finally {
@@ -16,9 +16,15 @@ package com.amazonaws.services.sqs.buffered;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,7 +59,12 @@ import com.amazonaws.services.sqs.model.SendMessageResult;
  * the current batch. <br>
  * Internally, the batch objects maintain a list of futures corresponding to the requests added to
  * them. When a batch completes, it loads the results into the futures and marks the futures as
- * complete.
+ * complete. <br>
+ * Requests are added to the open batch without locking; only the callers which find the open batch
+ * full synchronize with each other, to start a single new batch once the number of batches in
+ * flight allows it. As all the batches are held open for the same time, they time out in the order
+ * they are started; so they are queued in that order, and a single timer closes the first one
+ * still open when it times out, rather than a thread waiting on each batch.
  */
 public class SendQueueBuffer {
     private static Log log = LogFactory.getLog(SendQueueBuffer.class);
@@ -80,37 +91,81 @@ public class SendQueueBuffer {
     private final Executor executor;
 
     /**
-     * Object used to serialize sendMessage calls.
+     * The timer closing the batches held open for longer than {@code maxBatchOpenMs}.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The batches started, of all types, in the order they time out. Those closed before they time
+     * out are removed when the timer goes off.
+     */
+    private final ConcurrentLinkedQueue<OutboundBatchTask<?, ?>> timingOutBatches = new ConcurrentLinkedQueue<OutboundBatchTask<?, ?>>();
+
+    /**
+     * Whether the timer is set to close the first batch of {@code timingOutBatches}.
+     */
+    private final AtomicBoolean timerSet = new AtomicBoolean();
+
+    /**
+     * Closes the batches which timed out, and sets the timer for the next one to time out. Run by
+     * the timer; never more than one at a time, as guarded by {@code timerSet}.
+     */
+    private final Runnable closeTimedOutBatches = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                long now = System.nanoTime();
+                OutboundBatchTask<?, ?> task;
+                while ((task = timingOutBatches.peek()) != null
+                        && (task.isClosed() || now - task.getDeadlineNanos() >= 0)) {
+                    timingOutBatches.poll();
+                    task.close();
+                }
+                if (task != null) {
+                    timer.schedule(this, task.getDeadlineNanos() - now, TimeUnit.NANOSECONDS);
+                    return;
+                }
+
+                // a batch may be added right after the timer is unset, by a caller
+                // which saw it set
+                timerSet.set(false);
+                if (timingOutBatches.isEmpty() || !timerSet.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    };
+
+    /**
+     * Object used to serialize the creation of sendMessage batches.
      */
     private final Object sendMessageLock = new Object();
 
     /**
-     * Object used to serialize deleteMessage calls.
+     * Object used to serialize the creation of deleteMessage batches.
      */
     private final Object deleteMessageLock = new Object();
 
     /**
-     * Object used to serialize changeMessageVisibility calls.
+     * Object used to serialize the creation of changeMessageVisibility batches.
      */
     private final Object changeMessageVisibilityLock = new Object();
 
     /**
-     * Current batching task for sendMessage. Using a size 1 array to allow "passing by reference".
-     * Synchronized by {@code sendMessageLock}.
+     * Current batching task for sendMessage. Replaced while holding {@code sendMessageLock}.
      */
-    private final SendMessageBatchTask[] openSendMessageBatchTask = new SendMessageBatchTask[1];
+    private final AtomicReference<SendMessageBatchTask> openSendMessageBatchTask = new AtomicReference<SendMessageBatchTask>();
 
     /**
-     * Current batching task for deleteMessage. Using a size 1 array to allow
-     * "passing by reference". Synchronized by {@code deleteMessageLock}.
+     * Current batching task for deleteMessage. Replaced while holding {@code deleteMessageLock}.
      */
-    private final DeleteMessageBatchTask[] openDeleteMessageBatchTask = new DeleteMessageBatchTask[1];
+    private final AtomicReference<DeleteMessageBatchTask> openDeleteMessageBatchTask = new AtomicReference<DeleteMessageBatchTask>();
 
     /**
-     * Current batching task for changeMessageVisibility. Using a size 1 array to allow
-     * "passing by reference". Synchronized by {@code changeMessageVisibilityLock}.
+     * Current batching task for changeMessageVisibility. Replaced while holding
+     * {@code changeMessageVisibilityLock}.
      */
-    private final ChangeMessageVisibilityBatchTask[] openChangeMessageVisibilityBatchTask = new ChangeMessageVisibilityBatchTask[1];
+    private final AtomicReference<ChangeMessageVisibilityBatchTask> openChangeMessageVisibilityBatchTask = new AtomicReference<ChangeMessageVisibilityBatchTask>();
 
     /**
      * Permits controlling the number of in flight SendMessage batches.
@@ -127,9 +182,11 @@ public class SendQueueBuffer {
      */
     private final Semaphore inflightChangeMessageVisibilityBatches;
 
-    SendQueueBuffer(AmazonSQS sqsClient, Executor executor, QueueBufferConfig paramConfig, String url) {
+    SendQueueBuffer(AmazonSQS sqsClient, Executor executor, ScheduledExecutorService timer,
+                    QueueBufferConfig paramConfig, String url) {
         this.sqsClient = sqsClient;
         this.executor = executor;
+        this.timer = timer;
         this.config = paramConfig;
         qUrl = url;
         int maxBatch = config.getMaxInflightOutboundBatches();
@@ -200,30 +257,38 @@ public class SendQueueBuffer {
     public void flush() {
 
         try {
-            synchronized (sendMessageLock) {
-                inflightSendMessageBatches.acquire(config.getMaxInflightOutboundBatches());
-                inflightSendMessageBatches.release(config.getMaxInflightOutboundBatches());
-            }
-            synchronized (deleteMessageLock) {
-                inflightDeleteMessageBatches.acquire(config.getMaxInflightOutboundBatches());
-                inflightDeleteMessageBatches.release(config.getMaxInflightOutboundBatches());
-            }
-            synchronized (changeMessageVisibilityLock) {
-                inflightChangeMessageVisibilityBatches.acquire(config.getMaxInflightOutboundBatches());
-                inflightChangeMessageVisibilityBatches.release(config.getMaxInflightOutboundBatches());
-            }
+            flush(sendMessageLock, openSendMessageBatchTask, inflightSendMessageBatches);
+            flush(deleteMessageLock, openDeleteMessageBatchTask, inflightDeleteMessageBatches);
+            flush(changeMessageVisibilityLock, openChangeMessageVisibilityBatchTask,
+                    inflightChangeMessageVisibilityBatches);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Closes the open batch of one type of outbound requests, without waiting for its timeout, and
+     * waits for all the batches of that type to complete. No new batch can be started meanwhile.
+     */
+    private void flush(Object operationLock, AtomicReference<? extends OutboundBatchTask<?, ?>> openOutboundBatchTask,
+                       Semaphore inflightOperationBatches) throws InterruptedException {
+        synchronized (operationLock) {
+            OutboundBatchTask<?, ?> openTask = openOutboundBatchTask.get();
+            if (openTask != null) {
+                openTask.close();
+            }
+            inflightOperationBatches.acquire(config.getMaxInflightOutboundBatches());
+            inflightOperationBatches.release(config.getMaxInflightOutboundBatches());
+        }
+    }
+
     /**
      * Submits an outbound request for delivery to the queue associated with this buffer.
      * <p>
      * 
      * @param operationLock
-     *            the lock synchronizing calls for the call type ( {@code sendMessage},
-     *            {@code deleteMessage}, {@code changeMessageVisibility} )
+     *            the lock synchronizing the creation of batches for the call type (
+     *            {@code sendMessage}, {@code deleteMessage}, {@code changeMessageVisibility} )
      * @param openOutboundBatchTask
      *            the open batch task for this call type
      * @param request
@@ -236,28 +301,35 @@ public class SendQueueBuffer {
      */
     @SuppressWarnings("unchecked")
     <OBT extends OutboundBatchTask<R, Result>, R extends AmazonWebServiceRequest, Result> QueueBufferFuture<R, Result> submitOutboundRequest(Object operationLock,
-                                                                                                                                             OBT[] openOutboundBatchTask,
+                                                                                                                                             AtomicReference<OBT> openOutboundBatchTask,
                                                                                                                                              R request,
                                                                                                                                              final Semaphore inflightOperationBatches,
                                                                                                                                              QueueBufferCallback<R, Result> callback) {
         /*
          * Callers add requests to a single batch task (openOutboundBatchTask) until it is full or
-         * maxBatchOpenMs elapses. The total number of batch task in flight is controlled by the
-         * inflightOperationBatch semaphore capped at maxInflightOutboundBatches.
+         * maxBatchOpenMs elapses, without locking. The callers finding it closed start a new one
+         * under operationLock, so that only one of them does. The total number of batch task in
+         * flight is controlled by the inflightOperationBatch semaphore capped at
+         * maxInflightOutboundBatches.
          */
+        OBT openTask = openOutboundBatchTask.get();
         QueueBufferFuture<R, Result> theFuture = null;
+        if (openTask != null && (theFuture = openTask.addRequest(request, callback)) != null) {
+            return theFuture;
+        }
+
         try {
             synchronized (operationLock) {
-                if (openOutboundBatchTask[0] == null
-                        || ((theFuture = openOutboundBatchTask[0].addRequest(request, callback))) == null) {
+                // another caller may have started a new batch meanwhile
+                openTask = openOutboundBatchTask.get();
+                if (openTask == null || ((theFuture = openTask.addRequest(request, callback))) == null) {
 
                     OBT obt = (OBT) newOutboundBatchTask(request);
                     inflightOperationBatches.acquire();
-                    openOutboundBatchTask[0] = obt;
 
                     // Register a listener for the event signaling that the
                     // batch task has completed (successfully or not).
-                    openOutboundBatchTask[0].setOnCompleted(new Listener<OutboundBatchTask<R, Result>>() {
+                    obt.setOnCompleted(new Listener<OutboundBatchTask<R, Result>>() {
                         @Override
                         public void invoke(OutboundBatchTask<R, Result> task) {
                             inflightOperationBatches.release();
@@ -269,8 +341,9 @@ public class SendQueueBuffer {
                                 + inflightOperationBatches.availablePermits() + " free slots remain");
                     }
 
-                    theFuture = openOutboundBatchTask[0].addRequest(request, callback);
-                    executor.execute(openOutboundBatchTask[0]);
+                    theFuture = obt.addRequest(request, callback);
+                    openOutboundBatchTask.set(obt);
+                    closeOnTimeout(obt);
                     if (null == theFuture) {
                         // this can happen only if the request itself is flawed,
                         // so that it can't be added to any batch, even a brand
@@ -290,6 +363,18 @@ public class SendQueueBuffer {
         return theFuture;
     }
 
+    /**
+     * Has the given batch closed once it has been open for {@code maxBatchOpenMs}, unless closed
+     * before.
+     */
+    private void closeOnTimeout(OutboundBatchTask<?, ?> task) {
+        task.setDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getMaxBatchOpenMs()));
+        timingOutBatches.offer(task);
+        if (timerSet.compareAndSet(false, true)) {
+            timer.execute(closeTimedOutBatches);
+        }
+    }
+
     /**
      * Task to send a batch of outbound requests to SQS.
      * <p>
@@ -307,16 +392,40 @@ public class SendQueueBuffer {
      */
     private abstract class OutboundBatchTask<R extends AmazonWebServiceRequest, Result> implements Runnable {
 
-        protected final List<R> requests;
-        protected final ArrayList<QueueBufferFuture<R, Result>> futures;
+        /** Flag of {@code state} set once the batch is closed. */
+        private static final long CLOSED = 1L << 62;
+
+        /**
+         * The number of requests added (bits 32 to 61), the total weight of the requests added
+         * (bits 0 to 31) and whether the batch is closed. Only updated by compare-and-set, so that
+         * each request added is given its own slot.
+         */
+        private final AtomicLong state = new AtomicLong();
+
+        /**
+         * The number of slots whose request and future are set.
+         */
+        private final AtomicInteger filled = new AtomicInteger();
+
+        /**
+         * Whether the batch was submitted for execution, which happens once it is closed and all
+         * its slots are set, by whichever thread completes these.
+         */
+        private final AtomicBoolean dispatched = new AtomicBoolean();
 
-        private boolean closed;
+        private final Object[] requests;
+        private final Object[] futures;
 
         private volatile Listener<OutboundBatchTask<R, Result>> onCompleted;
 
+        /**
+         * When the batch times out, as of {@link System#nanoTime()}.
+         */
+        private volatile long deadlineNanos;
+
         public OutboundBatchTask() {
-            this.requests = new ArrayList<R>(config.getMaxBatchSize());
-            this.futures = new ArrayList<QueueBufferFuture<R, Result>>(config.getMaxBatchSize());
+            this.requests = new Object[config.getMaxBatchSize()];
+            this.futures = new Object[config.getMaxBatchSize()];
         }
 
         public void setOnCompleted(Listener<OutboundBatchTask<R, Result>> value) {
@@ -324,131 +433,148 @@ public class SendQueueBuffer {
         }
 
         /**
-         * Adds a request to the batch if it is still open and has capacity.
+         * Adds a request to the batch if it is still open and has capacity. Closes the batch, and
+         * submits it for execution, if the request made it full or did not fit in.
          * 
          * @return the future that can be used to get the results of the execution, or null if the
          *         addition failed.
          */
-        public synchronized QueueBufferFuture<R, Result> addRequest(R request, QueueBufferCallback<R, Result> callback) {
+        public QueueBufferFuture<R, Result> addRequest(R request, QueueBufferCallback<R, Result> callback) {
 
-            if (closed) {
-                return null;
-            }
+            long requestWeight = weightOf(request);
+            while (true) {
+                long current = state.get();
+                if ((current & CLOSED) != 0) {
+                    return null;
+                }
 
-            QueueBufferFuture<R, Result> theFuture = addIfAllowed(request, callback);
+                int count = countOf(current);
+                long weight = current & 0xFFFFFFFFL;
+                if (!isOkToAdd(count, weight, requestWeight)) {
+                    close();
+                    return null;
+                }
 
-            // if the addition did not work, or this addition made us full,
-            // we can close the request.
-            if ((null == theFuture) || isFull()) {
-                closed = true;
-                notify();
+                boolean full = isFull(count + 1, weight + requestWeight);
+                long next = ((long) (count + 1) << 32) | (weight + requestWeight) | (full ? CLOSED : 0);
+                if (state.compareAndSet(current, next)) {
+                    QueueBufferFuture<R, Result> theFuture = new QueueBufferFuture<R, Result>(callback);
+                    requests[count] = request;
+                    futures[count] = theFuture;
+                    filled.incrementAndGet();
+                    dispatchIfReady();
+                    return theFuture;
+                }
             }
+        }
 
-            return theFuture;
+        private int countOf(long state) {
+            return (int) ((state & ~CLOSED) >>> 32);
         }
 
         /**
-         * Adds the request to the batch if capacity allows it. Called by {@code addRequest} with a
-         * lock on {@code this} held.
-         * 
-         * @param request
-         * @return the future that will be signaled when the request is completed and can be used to
-         *         retrieve the result. Can be null if the addition could not be done
+         * Closes the batch and submits it for execution, unless already closed.
          */
-        private QueueBufferFuture<R, Result> addIfAllowed(R request, QueueBufferCallback<R, Result> callback) {
-
-            if (isOkToAdd(request)) {
+        public void close() {
+            while (true) {
+                long current = state.get();
+                if ((current & CLOSED) != 0) {
+                    return;
+                }
+                if (state.compareAndSet(current, current | CLOSED)) {
+                    dispatchIfReady();
+                    return;
+                }
+            }
+        }
 
-                requests.add(request);
+        /**
+         * Submits the batch for execution if it is closed and the callers given its slots have
+         * all set them, unless already submitted.
+         */
+        private void dispatchIfReady() {
+            long current = state.get();
+            if ((current & CLOSED) != 0 && filled.get() == countOf(current)
+                    && dispatched.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
 
-                QueueBufferFuture<R, Result> theFuture = new QueueBufferFuture<R, Result>(callback);
+        public boolean isClosed() {
+            return (state.get() & CLOSED) != 0;
+        }
 
-                futures.add(theFuture);
-                onRequestAdded(request);
-                return theFuture;
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
 
-            } else {
-                return null;
-            }
+        public void setDeadlineNanos(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
         }
 
         /**
-         * Checks whether it's okay to add the request to this buffer. Called by
-         * {@code addIfAllowed} with a lock on {@code this} held.
-         * 
-         * @param request
-         *            the request to add
-         * @return true if the request is okay to add, false otherwise
+         * Returns the weight a request adds to the batch, checked against its capacity by
+         * {@code isOkToAdd} and {@code isFull}.
          */
-        protected boolean isOkToAdd(R request) {
-            return requests.size() < config.getMaxBatchSize();
+        protected long weightOf(R request) {
+            return 0;
         }
 
         /**
-         * A hook to be run when a request is successfully added to this buffer. Called by
-         * {@code addIfAllowed} with a lock on {@code this} held.
+         * Checks whether it's okay to add the request to this buffer.
          * 
-         * @param request
-         *            the request that was added
+         * @param count
+         *            the number of requests already added
+         * @param weight
+         *            the total weight of the requests already added
+         * @param requestWeight
+         *            the weight of the request to add
+         * @return true if the request is okay to add, false otherwise
          */
-        protected void onRequestAdded(R request) {
-            // to be overridden by subclasses
+        protected boolean isOkToAdd(int count, long weight, long requestWeight) {
+            return count < config.getMaxBatchSize();
         }
 
         /**
-         * Checks whether the buffer is now full. Called by {@code addIfAllowed} with a lock on
-         * {@code this} held.
+         * Checks whether the buffer is full with the given requests.
          * 
          * @return whether the buffer is filled to capacity
          */
-        protected boolean isFull() {
-            return requests.size() >= config.getMaxBatchSize();
+        protected boolean isFull(int count, long weight) {
+            return count >= config.getMaxBatchSize();
         }
 
         /**
-         * Processes the batch once closed. Is <em>NOT</em> called with a lock on {@code this}.
-         * However, it's passed a local copy of both the {@code requests} and {@code futures} lists
-         * made while holding the lock.
+         * Processes the batch once closed. It's passed a copy of both the {@code requests} and
+         * {@code futures} added to the batch.
          */
         protected abstract void process(List<R> requests, List<QueueBufferFuture<R, Result>> futures);
 
         @Override
+        @SuppressWarnings("unchecked")
         public final void run() {
+            int count = countOf(state.get());
+            List<R> requests = new ArrayList<R>(count);
+            List<QueueBufferFuture<R, Result>> futures = new ArrayList<QueueBufferFuture<R, Result>>(count);
             try {
 
-                long deadlineMs = TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS)
-                        + config.getMaxBatchOpenMs() + 1;
-                long t = TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-
-                List<R> requests;
-                List<QueueBufferFuture<R, Result>> futures;
-
-                synchronized (this) {
-                    while (!closed && (t < deadlineMs)) {
-                        t = TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-
-                        // zero means "wait forever", can't have that.
-                        long toWait = Math.max(1, deadlineMs - t);
-                        wait(toWait);
-                    }
-
-                    closed = true;
-
-                    requests = new ArrayList<R>(this.requests);
-                    futures = new ArrayList<QueueBufferFuture<R, Result>>(this.futures);
+                for (int i = 0; i < count; i++) {
+                    requests.add((R) this.requests[i]);
+                    futures.add((QueueBufferFuture<R, Result>) this.futures[i]);
+                    // the batch may be referenced until it would have timed out
+                    this.requests[i] = null;
+                    this.futures[i] = null;
                 }
 
                 process(requests, futures);
 
-            } catch (InterruptedException e) {
-                failAll(e);
             } catch (AmazonClientException e) {
-                failAll(e);
+                failAll(futures, e);
             } catch (RuntimeException e) {
-                failAll(e);
+                failAll(futures, e);
                 throw e;
             } catch (Error e) {
-                failAll(new AmazonClientException("Error encountered", e));
+                failAll(futures, new AmazonClientException("Error encountered", e));
                 throw e;
             } finally {
                 // make a copy of the listener since it (theoretically) can be
@@ -460,7 +586,7 @@ public class SendQueueBuffer {
             }
         }
 
-        private void failAll(Exception e) {
+        private void failAll(List<QueueBufferFuture<R, Result>> futures, Exception e) {
             for (QueueBufferFuture<R, Result> f : futures) {
                 f.setFailure(e);
             }
@@ -469,22 +595,20 @@ public class SendQueueBuffer {
 
     private class SendMessageBatchTask extends OutboundBatchTask<SendMessageRequest, SendMessageResult> {
 
-        int batchSizeBytes = 0;
-
         @Override
-        protected boolean isOkToAdd(SendMessageRequest request) {
-            return (requests.size() < config.getMaxBatchSize())
-                    && ((request.getMessageBody().getBytes().length + batchSizeBytes) < config.getMaxBatchSizeBytes());
+        protected long weightOf(SendMessageRequest request) {
+            return request.getMessageBody().getBytes().length;
         }
 
         @Override
-        protected void onRequestAdded(SendMessageRequest request) {
-            batchSizeBytes += request.getMessageBody().getBytes().length;
+        protected boolean isOkToAdd(int count, long batchSizeBytes, long requestSizeBytes) {
+            return (count < config.getMaxBatchSize())
+                    && ((requestSizeBytes + batchSizeBytes) < config.getMaxBatchSizeBytes());
         }
 
         @Override
-        protected boolean isFull() {
-            return (requests.size() >= config.getMaxBatchSize()) || (batchSizeBytes >= config.getMaxBatchSizeBytes());
+        protected boolean isFull(int count, long batchSizeBytes) {
+            return (count >= config.getMaxBatchSize()) || (batchSizeBytes >= config.getMaxBatchSizeBytes());
         }
 
         @Override
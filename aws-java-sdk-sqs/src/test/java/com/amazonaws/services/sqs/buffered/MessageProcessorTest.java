@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+public class MessageProcessorTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/test";
+
+    /**
+     * Serves the messages queued to the receive calls, made in the calling thread like a blocking
+     * socket read, and records the messages deleted and made visible again. Receive calls can be
+     * held until a gate is opened, ignoring interrupts.
+     */
+    private static class FakeSQS extends AmazonSQSAsyncClient {
+        private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<Message>();
+        private final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch receiveStarted = new CountDownLatch(1);
+        private volatile CountDownLatch receiveGate;
+        private volatile CountDownLatch releasedLatch = new CountDownLatch(0);
+
+        FakeSQS(int messageCount) {
+            super(new BasicAWSCredentials("mock", "mock"));
+            for (int i = 0; i < messageCount; i++) {
+                messages.add(new Message().withMessageId("m" + i).withReceiptHandle("r" + i));
+            }
+        }
+
+        @Override
+        public Future<ReceiveMessageResult> receiveMessageAsync(final ReceiveMessageRequest request) {
+            FutureTask<ReceiveMessageResult> future = new FutureTask<ReceiveMessageResult>(
+                    new Callable<ReceiveMessageResult>() {
+                        @Override
+                        public ReceiveMessageResult call() {
+                            return receiveMessage(request);
+                        }
+                    });
+            future.run();
+            return future;
+        }
+
+        @Override
+        public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+            receiveStarted.countDown();
+            if (receiveGate != null) {
+                awaitUninterruptibly(receiveGate);
+            }
+            ReceiveMessageResult result = new ReceiveMessageResult();
+            Message message;
+            while (result.getMessages().size() < request.getMaxNumberOfMessages()
+                    && (message = messages.poll()) != null) {
+                result.getMessages().add(message);
+            }
+            if (result.getMessages().isEmpty()) {
+                // an empty long poll
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+            DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+            for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+                deleted.add(entry.getReceiptHandle());
+                result.getSuccessful().add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            }
+            return result;
+        }
+
+        @Override
+        public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request) {
+            for (ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+                assertEquals(Integer.valueOf(0), entry.getVisibilityTimeout());
+                released.add(entry.getReceiptHandle());
+                releasedLatch.countDown();
+            }
+            return new ChangeMessageVisibilityBatchResult();
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Records the messages handled, failing on those with the given ID.
+     */
+    private static class RecordingHandler implements MessageHandler {
+        private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch latch;
+        private final String failingMessageId;
+
+        RecordingHandler(int expectedMessages, String failingMessageId) {
+            this.latch = new CountDownLatch(expectedMessages);
+            this.failingMessageId = failingMessageId;
+        }
+
+        @Override
+        public void handleMessage(Message message) throws Exception {
+            handled.add(message.getMessageId());
+            latch.countDown();
+            if (message.getMessageId().equals(failingMessageId)) {
+                throw new Exception("Failed to handle " + message.getMessageId());
+            }
+        }
+    }
+
+    private static MessageProcessorConfig newConfig() {
+        // an explicit visibility timeout saves the GetQueueAttributes call
+        return new MessageProcessorConfig().withMaxConcurrentMessages(4).withVisibilityTimeoutSeconds(30);
+    }
+
+    @Test
+    public void testHandledMessagesAreDeleted() throws Exception {
+        FakeSQS sqs = new FakeSQS(25);
+        RecordingHandler handler = new RecordingHandler(25, "m3");
+        MessageProcessor processor = new MessageProcessor(sqs, QUEUE_URL, handler, newConfig());
+        processor.start();
+
+        assertTrue(handler.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(processor.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(25, handler.handled.size());
+        assertEquals(25, new HashSet<String>(handler.handled).size());
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < 25; i++) {
+            expected.add("r" + i);
+        }
+        // the message whose handler failed is left to be received again
+        expected.remove("r3");
+        assertEquals(expected, new HashSet<String>(sqs.deleted));
+        assertEquals(24, sqs.deleted.size());
+        assertTrue(sqs.released.isEmpty());
+    }
+
+    @Test
+    public void testMessagesReceivedAfterShutdownAreReleased() throws Exception {
+        FakeSQS sqs = new FakeSQS(2);
+        sqs.receiveGate = new CountDownLatch(1);
+        sqs.releasedLatch = new CountDownLatch(2);
+        RecordingHandler handler = new RecordingHandler(0, null);
+        MessageProcessor processor = new MessageProcessor(sqs, QUEUE_URL, handler, newConfig());
+        processor.start();
+
+        assertTrue(sqs.receiveStarted.await(5, TimeUnit.SECONDS));
+        // the receive call outlives the shutdown and its interrupt
+        assertFalse(processor.shutdown(50, TimeUnit.MILLISECONDS));
+        sqs.receiveGate.countDown();
+
+        assertTrue(sqs.releasedLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(new HashSet<String>(Arrays.asList("r0", "r1")), new HashSet<String>(sqs.released));
+        assertTrue(handler.handled.isEmpty());
+        assertTrue(sqs.deleted.isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+public class ReceiveQueueBufferTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/test";
+
+    /**
+     * Answers the first receive call with three messages and the others with
+     * none, and records the messages made visible again.
+     */
+    private static class FakeSQS extends AmazonSQSAsyncClient {
+        private final AtomicInteger receives = new AtomicInteger();
+        private final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+
+        FakeSQS() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+            return new GetQueueAttributesResult().addAttributesEntry("VisibilityTimeout", "30");
+        }
+
+        @Override
+        public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+            ReceiveMessageResult result = new ReceiveMessageResult();
+            if (receives.getAndIncrement() == 0) {
+                for (int i = 0; i < 3; i++) {
+                    result.getMessages().add(new Message().withMessageId("m" + i).withReceiptHandle("r" + i));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request) {
+            for (ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+                assertEquals(Integer.valueOf(0), entry.getVisibilityTimeout());
+                released.add(entry.getReceiptHandle());
+            }
+            return new ChangeMessageVisibilityBatchResult();
+        }
+    }
+
+    private final FakeSQS sqs = new FakeSQS();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testShutdownAndClearReleasesThePrefetchedMessages() throws Exception {
+        QueueBufferConfig config = new QueueBufferConfig().withLongPoll(false).withMaxInflightReceiveBatches(1)
+                .withMaxDoneReceiveBatches(1);
+        ReceiveQueueBuffer buffer = new ReceiveQueueBuffer(sqs, executor, timer, config, QUEUE_URL);
+
+        ReceiveMessageResult result = buffer.receiveMessageAsync(
+                new ReceiveMessageRequest(QUEUE_URL).withMaxNumberOfMessages(1), null).get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getMessages().size());
+        String received = result.getMessages().get(0).getReceiptHandle();
+
+        buffer.shutdown();
+        buffer.clear();
+
+        HashSet<String> expected = new HashSet<String>(Arrays.asList("r0", "r1", "r2"));
+        expected.remove(received);
+        assertEquals(expected, new HashSet<String>(sqs.released));
+        assertEquals(2, sqs.released.size());
+        // the batch holding the messages left was pre-fetched, so no other receive was needed
+        assertEquals(1, sqs.receives.get());
+
+        try {
+            buffer.receiveMessageAsync(new ReceiveMessageRequest(QUEUE_URL), null);
+            fail("Expected receiving from a buffer shut down to fail");
+        } catch (AmazonClientException expectedException) {
+        }
+    }
+}
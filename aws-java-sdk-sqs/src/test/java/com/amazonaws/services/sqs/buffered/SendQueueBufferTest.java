@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015 Amazon Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amazonaws.services.sqs.buffered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+public class SendQueueBufferTest {
+
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/test";
+
+    /**
+     * Answers send batches with a message ID made of each message body, and
+     * records the size of each batch and the number of times each body was
+     * sent.
+     */
+    private static class FakeSQS extends AmazonSQSAsyncClient {
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        private final ConcurrentMap<String, AtomicInteger> sends = new ConcurrentHashMap<String, AtomicInteger>();
+        private volatile AmazonServiceException failure;
+
+        FakeSQS() {
+            super(new BasicAWSCredentials("mock", "mock"));
+        }
+
+        @Override
+        public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+            if (failure != null) {
+                throw failure;
+            }
+            batchSizes.add(request.getEntries().size());
+            SendMessageBatchResult result = new SendMessageBatchResult();
+            for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                AtomicInteger count = new AtomicInteger();
+                AtomicInteger existing = sends.putIfAbsent(entry.getMessageBody(), count);
+                (existing != null ? existing : count).incrementAndGet();
+                result.getSuccessful().add(new SendMessageBatchResultEntry().withId(entry.getId())
+                        .withMessageId("id-" + entry.getMessageBody()));
+            }
+            return result;
+        }
+    }
+
+    private final FakeSQS sqs = new FakeSQS();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private SendQueueBuffer newBuffer(long maxBatchOpenMs) {
+        QueueBufferConfig config = new QueueBufferConfig().withMaxBatchOpenMs(maxBatchOpenMs)
+                .withMaxInflightOutboundBatches(2);
+        return new SendQueueBuffer(sqs, executor, timer, config, QUEUE_URL);
+    }
+
+    @Test
+    public void testSendsAreBatchedAndMatchedToTheirResults() throws Exception {
+        // batches are only closed by being full or flushed
+        SendQueueBuffer buffer = newBuffer(TimeUnit.MINUTES.toMillis(1));
+        List<Future<SendMessageResult>> futures = new ArrayList<Future<SendMessageResult>>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(buffer.sendMessage(new SendMessageRequest(QUEUE_URL, "m" + i), null));
+        }
+        buffer.flush();
+
+        for (int i = 0; i < 25; i++) {
+            assertTrue(futures.get(i).isDone());
+            assertEquals("id-m" + i, futures.get(i).get().getMessageId());
+        }
+        List<Integer> batchSizes = new ArrayList<Integer>(sqs.batchSizes);
+        Collections.sort(batchSizes);
+        assertEquals(Arrays.asList(5, 10, 10), batchSizes);
+    }
+
+    @Test
+    public void testConcurrentSendsAreEachSentOnce() throws Exception {
+        final SendQueueBuffer buffer = newBuffer(5);
+        final int threads = 8;
+        final int sendsPerThread = 200;
+        final List<List<Future<SendMessageResult>>> futures = new ArrayList<List<Future<SendMessageResult>>>();
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            final List<Future<SendMessageResult>> threadFutures = new ArrayList<Future<SendMessageResult>>();
+            futures.add(threadFutures);
+            senders.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < sendsPerThread; i++) {
+                        threadFutures.add(buffer.sendMessage(
+                                new SendMessageRequest(QUEUE_URL, thread + "-" + i), null));
+                    }
+                }
+            });
+        }
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        buffer.flush();
+
+        assertEquals(threads * sendsPerThread, sqs.sends.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < sendsPerThread; i++) {
+                String body = t + "-" + i;
+                assertEquals(1, sqs.sends.get(body).get());
+                assertEquals("id-" + body, futures.get(t).get(i).get(1, TimeUnit.SECONDS).getMessageId());
+            }
+        }
+        for (int size : sqs.batchSizes) {
+            assertTrue(size <= QueueBufferConfig.MAX_BATCH_SIZE_DEFAULT);
+        }
+    }
+
+    @Test
+    public void testOpenBatchIsSentOnTimeout() throws Exception {
+        SendQueueBuffer buffer = newBuffer(50);
+        Future<SendMessageResult> future = buffer.sendMessage(new SendMessageRequest(QUEUE_URL, "m"), null);
+
+        assertEquals("id-m", future.get(5, TimeUnit.SECONDS).getMessageId());
+        assertEquals(Collections.singletonList(1), sqs.batchSizes);
+    }
+
+    @Test
+    public void testFailedBatchFailsAllItsSends() throws Exception {
+        SendQueueBuffer buffer = newBuffer(TimeUnit.MINUTES.toMillis(1));
+        sqs.failure = new AmazonServiceException("Batch failed");
+        List<Future<SendMessageResult>> futures = new ArrayList<Future<SendMessageResult>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(buffer.sendMessage(new SendMessageRequest(QUEUE_URL, "m" + i), null));
+        }
+        buffer.flush();
+
+        for (Future<SendMessageResult> future : futures) {
+            try {
+                future.get();
+                fail("Expected the send to fail");
+            } catch (ExecutionException e) {
+                assertSame(sqs.failure, e.getCause());
+            }
+        }
+
+        // the batch released its permit, so later sends still go through
+        sqs.failure = null;
+        Future<SendMessageResult> future = buffer.sendMessage(new SendMessageRequest(QUEUE_URL, "n"), null);
+        buffer.flush();
+        assertEquals("id-n", future.get().getMessageId());
+    }
+}